@@ -0,0 +1,76 @@
+package com.dualtracklife.lifeagent.config;
+
+import com.dualtracklife.lifeagent.service.AIAdmissionController;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * AI接口准入过滤器
+ * 只拦截会调用大模型的接口，积压时返回429和Retry-After；其他接口不受影响
+ */
+@Component
+public class AIAdmissionFilter extends OncePerRequestFilter {
+
+    // 会调用大模型的接口（方法 + 路径）
+    private static final List<String[]> AI_ENDPOINTS = List.of(
+            new String[]{"POST", "/api/spring-ai/**"},
+            new String[]{"GET", "/api/spring-ai/test"},
+            new String[]{"POST", "/api/life-agent/conversations/*/messages"}
+    );
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    @Autowired
+    private AIAdmissionController aiAdmissionController;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        for (String[] endpoint : AI_ENDPOINTS) {
+            if (endpoint[0].equals(request.getMethod()) && pathMatcher.match(endpoint[1], path)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long retryAfterSeconds = aiAdmissionController.tryAdmit();
+        if (retryAfterSeconds == 0) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        Map<String, Object> body = new HashMap<>();
+        body.put("success", false);
+        body.put("error", "AI服务繁忙，请稍后重试");
+        body.put("retryAfterSeconds", retryAfterSeconds);
+        body.put("timestamp", System.currentTimeMillis());
+
+        response.setStatus(429);
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        objectMapper.writeValue(response.getOutputStream(), body);
+    }
+}
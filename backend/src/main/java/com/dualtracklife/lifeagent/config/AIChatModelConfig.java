@@ -0,0 +1,95 @@
+package com.dualtracklife.lifeagent.config;
+
+import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatModel;
+import com.dualtracklife.lifeagent.service.*;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * AI对话模型配置
+ * 对外只暴露一个主ChatModel：
+ * - 默认：在DashScope和可选的OpenAI兼容提供方之间按健康状态和延迟路由，失败自动切换
+ * - life-agent.ai.recording.mode = record：在路由之上录制所有交互
+ * - life-agent.ai.recording.mode = replay：完全不访问网络，从录制文件回放，用于离线基准测试和回归测试
+ */
+@Configuration
+public class AIChatModelConfig {
+
+    @Value("${life-agent.ai.recording.mode:none}")
+    private String recordingMode;
+
+    @Value("${life-agent.ai.recording.file:./ai-recordings.ndjson}")
+    private String recordingFile;
+
+    @Value("${life-agent.ai.recording.time-scale:1.0}")
+    private double timeScale;
+
+    @Value("${life-agent.ai.providers.openai-compatible.enabled:false}")
+    private boolean openAICompatibleEnabled;
+
+    @Value("${life-agent.ai.providers.openai-compatible.name:openai-compatible}")
+    private String openAICompatibleName;
+
+    @Value("${life-agent.ai.providers.openai-compatible.base-url:http://localhost:8000/v1}")
+    private String openAICompatibleBaseUrl;
+
+    @Value("${life-agent.ai.providers.openai-compatible.api-key:}")
+    private String openAICompatibleApiKey;
+
+    @Value("${life-agent.ai.providers.openai-compatible.model:qwen-max}")
+    private String openAICompatibleModel;
+
+    @Value("${life-agent.ai.providers.openai-compatible.request-timeout-ms:20000}")
+    private long openAICompatibleRequestTimeoutMs;
+
+    @Value("${life-agent.ai.providers.failure-threshold:3}")
+    private int failureThreshold;
+
+    @Value("${life-agent.ai.providers.cooldown-ms:10000}")
+    private long cooldownMs;
+
+    @Value("${life-agent.ai.providers.exploration-rate:0.05}")
+    private double explorationRate;
+
+    @Bean
+    public ChatBackendRegistry chatBackendRegistry(DashScopeChatModel dashScopeChatModel,
+                                                   WebClient.Builder webClientBuilder,
+                                                   ObjectMapper objectMapper) {
+        List<ChatBackend> backends = new ArrayList<>();
+        backends.add(new ChatBackend("dashscope", dashScopeChatModel, failureThreshold, cooldownMs));
+        if (openAICompatibleEnabled) {
+            ChatModel openAICompatible = new OpenAICompatibleChatModel(webClientBuilder, objectMapper,
+                    openAICompatibleBaseUrl, openAICompatibleApiKey, openAICompatibleModel,
+                    Duration.ofMillis(openAICompatibleRequestTimeoutMs));
+            backends.add(new ChatBackend(openAICompatibleName, openAICompatible, failureThreshold, cooldownMs));
+            System.out.println("[AIChatModel] 已启用备用提供方：" + openAICompatibleName + " -> " + openAICompatibleBaseUrl);
+        }
+        return new ChatBackendRegistry(backends, explorationRate);
+    }
+
+    @Bean
+    @Primary
+    public ChatModel lifeAgentChatModel(ChatBackendRegistry chatBackendRegistry, ObjectMapper objectMapper) {
+        if ("replay".equals(recordingMode)) {
+            System.out.println("[AIChatModel] 回放模式已开启，录制文件：" + recordingFile + "，时间缩放：" + timeScale);
+            return new ReplayChatModel(new AIInteractionStore(Path.of(recordingFile), objectMapper), timeScale);
+        }
+
+        ChatModel chatModel = new RoutingChatModel(chatBackendRegistry);
+        if ("record".equals(recordingMode)) {
+            System.out.println("[AIChatModel] 录制模式已开启，录制文件：" + recordingFile);
+            chatModel = new RecordingChatModel(chatModel, new AIInteractionStore(Path.of(recordingFile), objectMapper));
+        }
+        return chatModel;
+    }
+}
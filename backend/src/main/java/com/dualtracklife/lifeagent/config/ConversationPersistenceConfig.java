@@ -0,0 +1,26 @@
+package com.dualtracklife.lifeagent.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * 对话持久化配置
+ * 应用默认排除了数据源自动配置；开启 life-agent.conversation.persistence.enabled 后按 spring.datasource.* 创建数据源，
+ * JPA仓库和JdbcTemplate随之由自动配置启用，对话和消息经ConversationWriteBehind写入数据库
+ */
+@Configuration
+@ConditionalOnProperty(name = "life-agent.conversation.persistence.enabled", havingValue = "true")
+@EnableConfigurationProperties(DataSourceProperties.class)
+public class ConversationPersistenceConfig {
+
+    @Bean
+    public DataSource dataSource(DataSourceProperties properties) {
+        System.out.println("[ConversationPersistence] 对话持久化已开启，数据源: " + properties.determineUrl());
+        return properties.initializeDataSourceBuilder().build();
+    }
+}
@@ -6,10 +6,15 @@ import com.dualtracklife.user.model.User;
 import com.dualtracklife.user.service.UserService;
 import com.dualtracklife.lifeevent.model.LifeEvent;
 import com.dualtracklife.lifeevent.service.EventService;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.LocalDate;
 import java.util.Map;
 import java.util.HashMap;
@@ -41,6 +46,12 @@ public class LifeAgentController {
     @Autowired
     private EventService eventService;
     
+    @Autowired
+    private ConversationTransferService conversationTransferService;
+    
+    @Value("${life-agent.ai.deadline.blocking-timeout-ms:30000}")
+    private long chatTimeoutMs;
+    
     /**
      * 健康检查接口
      */
@@ -226,12 +237,26 @@ public class LifeAgentController {
      */
     @PostMapping("/conversations/{conversationId}/messages")
     public ResponseEntity<AIMessage> chatWithAI(
-            @PathVariable Long conversationId, @RequestBody Map<String, Object> request) {
+            @PathVariable Long conversationId,
+            @RequestHeader(value = AIDeadline.TIMEOUT_HEADER, required = false) String timeoutHeader,
+            @RequestHeader(value = ChatIdempotencyCache.IDEMPOTENCY_HEADER, required = false) String idempotencyKey,
+            @RequestBody Map<String, Object> request) {
         Long userId = Long.valueOf(request.get("userId").toString());
         String userMessage = (String) request.get("message");
+        AIDeadline deadline = AIDeadline.fromHeader(timeoutHeader, chatTimeoutMs);
         
-        AIMessage aiResponse = aiConversationService.chatWithAI(conversationId, userId, userMessage);
-        return ResponseEntity.ok(aiResponse);
+        try {
+            AIMessage aiResponse = aiConversationService.chatWithAI(conversationId, userId, userMessage, deadline,
+                    idempotencyKey);
+            return ResponseEntity.ok(aiResponse);
+        } catch (AIDeadlineExceededException e) {
+            return ResponseEntity.status(504).build();
+        } catch (ChatIdempotencyCache.KeyReuseException e) {
+            return ResponseEntity.unprocessableEntity().build();
+        } catch (AIReplyFailedException e) {
+            // 仅带幂等键的请求会走到这里，客户端可用同一个键重试
+            return ResponseEntity.status(503).build();
+        }
     }
     
     /**
@@ -245,22 +270,79 @@ public class LifeAgentController {
         return ResponseEntity.ok(messages);
     }
     
+    /**
+     * 分页获取对话历史
+     * cursor取自上一页返回的beforeCursor（更早）或afterCursor（更新），direction为before或after
+     */
+    @GetMapping("/conversations/{conversationId}/messages/page")
+    public ResponseEntity<?> getConversationHistoryPage(
+            @PathVariable Long conversationId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "before") String direction,
+            @RequestParam(required = false) Integer pageSize) {
+        try {
+            return ResponseEntity.ok(aiConversationService.getMessagePage(conversationId, cursor, direction, pageSize));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(createErrorResponse(e.getMessage()));
+        }
+    }
+    
     /**
      * 获取用户的所有对话会话
      */
     @GetMapping("/users/{userId}/conversations")
-    public ResponseEntity<List<AIConversation>> getUserConversations(@PathVariable Long userId) {
-        List<AIConversation> conversations = aiConversationService.getUserConversations(userId);
+    public ResponseEntity<List<AIConversation>> getUserConversations(
+            @PathVariable Long userId, @RequestParam(required = false) Integer limit) {
+        List<AIConversation> conversations = limit != null
+                ? aiConversationService.getUserConversations(userId, Math.max(0, limit))
+                : aiConversationService.getUserConversations(userId);
         return ResponseEntity.ok(conversations);
     }
     
+    /**
+     * 导出用户的全部对话（NDJSON），边读边写，不在内存中组装完整响应
+     */
+    @GetMapping("/users/{userId}/conversations/export")
+    public void exportConversations(@PathVariable Long userId, HttpServletResponse response) throws IOException {
+        response.setContentType(ConversationTransferService.NDJSON_MEDIA_TYPE);
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"conversations-" + userId + ".ndjson\"");
+        long messages = conversationTransferService.exportUserConversations(userId, response.getOutputStream());
+        System.out.println("[LifeAgentController] 用户 " + userId + " 导出对话消息 " + messages + " 条");
+    }
+    
+    /**
+     * 从NDJSON导入对话到用户，格式与导出相同
+     * 导入不是原子的：遇到格式错误的行时返回400，error给出行号，出错行之前的会话和消息已经导入且不会回滚，
+     * conversations、messages和conversationIds描述这部分已导入的数据
+     */
+    @PostMapping(value = "/users/{userId}/conversations/import", consumes = ConversationTransferService.NDJSON_MEDIA_TYPE)
+    public ResponseEntity<Map<String, Object>> importConversations(
+            @PathVariable Long userId, InputStream body) throws IOException {
+        ConversationTransferService.ImportResult result = conversationTransferService.importUserConversations(userId, body);
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", result.isSuccess());
+        response.put("conversations", result.getConversations());
+        response.put("messages", result.getMessages());
+        response.put("conversationIds", result.getConversationIds());
+        if (!result.isSuccess()) {
+            response.put("error", result.getError());
+            return ResponseEntity.badRequest().body(response);
+        }
+        return ResponseEntity.ok(response);
+    }
+    
     /**
      * 获取用户与特定角色的对话会话
      */
     @GetMapping("/users/{userId}/roles/{roleId}/conversations")
     public ResponseEntity<List<AIConversation>> getUserRoleConversations(
-            @PathVariable Long userId, @PathVariable String roleId) {
-        List<AIConversation> conversations = aiConversationService.getUserRoleConversations(userId, roleId);
+            @PathVariable Long userId, @PathVariable String roleId, @RequestParam(required = false) Integer limit) {
+        List<AIConversation> conversations = limit != null
+                ? aiConversationService.getUserRoleConversations(userId, roleId, Math.max(0, limit))
+                : aiConversationService.getUserRoleConversations(userId, roleId);
         return ResponseEntity.ok(conversations);
     }
     
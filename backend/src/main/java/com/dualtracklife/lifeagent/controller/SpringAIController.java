@@ -2,14 +2,33 @@ package com.dualtracklife.lifeagent.controller;
 
 import com.dualtracklife.lifeagent.service.SpringAIService;
 import com.dualtracklife.lifeagent.service.AIConversationService;
+import com.dualtracklife.lifeagent.service.AIPanelService;
+import com.dualtracklife.lifeagent.service.AIRequestScheduler;
+import com.dualtracklife.lifeagent.service.AIDeadline;
+import com.dualtracklife.lifeagent.service.AIDeadlineExceededException;
+import com.dualtracklife.lifeagent.service.AIDeadlineMetrics;
+import com.dualtracklife.lifeagent.service.ChatBackendRegistry;
+import com.dualtracklife.lifeagent.service.AIAdmissionController;
+import com.dualtracklife.lifeagent.service.EventAnalysisService;
+import com.dualtracklife.lifeagent.service.EventEnrichmentQueue;
+import com.dualtracklife.lifeagent.service.LifeTrajectoryService;
+import com.dualtracklife.lifeagent.service.SpeculativeAnalysisService;
+import com.dualtracklife.lifeagent.service.TrajectoryAnalysisService;
+import com.dualtracklife.lifeagent.service.ConversationStore;
+import com.dualtracklife.lifeagent.service.ChatIdempotencyCache;
+import com.dualtracklife.lifeevent.model.LifeEvent;
+import com.dualtracklife.lifeevent.service.EventService;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import reactor.core.publisher.Flux;
 
 import java.util.Map;
 import java.util.HashMap;
+import java.util.List;
 
 /**
  * Spring AI增强控制器
@@ -26,6 +45,51 @@ public class SpringAIController {
     @Autowired
     private AIConversationService aiConversationService;
     
+    @Autowired
+    private AIPanelService aiPanelService;
+    
+    @Autowired
+    private AIRequestScheduler aiRequestScheduler;
+    
+    @Autowired
+    private AIDeadlineMetrics aiDeadlineMetrics;
+
+    @Autowired
+    private ChatBackendRegistry chatBackendRegistry;
+
+    @Autowired
+    private EventAnalysisService eventAnalysisService;
+
+    @Autowired
+    private EventService eventService;
+
+    @Autowired
+    private TrajectoryAnalysisService trajectoryAnalysisService;
+
+    @Autowired
+    private EventEnrichmentQueue eventEnrichmentQueue;
+
+    @Autowired
+    private SpeculativeAnalysisService speculativeAnalysisService;
+
+    @Autowired
+    private LifeTrajectoryService lifeTrajectoryService;
+
+    @Autowired
+    private AIAdmissionController aiAdmissionController;
+
+    @Autowired
+    private ConversationStore conversationStore;
+
+    @Autowired
+    private ChatIdempotencyCache chatIdempotencyCache;
+    
+    @Value("${life-agent.ai.deadline.blocking-timeout-ms:30000}")
+    private long blockingTimeoutMs;
+    
+    @Value("${life-agent.ai.deadline.streaming-timeout-ms:120000}")
+    private long streamingTimeoutMs;
+    
     /**
      * 健康检查接口
      */
@@ -45,14 +109,18 @@ public class SpringAIController {
      * 简单AI聊天接口
      */
     @PostMapping("/simple/chat")
-    public ResponseEntity<Map<String, Object>> simpleChat(@RequestBody Map<String, Object> request) {
+    public ResponseEntity<Map<String, Object>> simpleChat(
+            @RequestHeader(value = AIDeadline.TIMEOUT_HEADER, required = false) String timeoutHeader,
+            @RequestBody Map<String, Object> request) {
         String query = (String) request.get("query");
         if (query == null || query.trim().isEmpty()) {
             return ResponseEntity.badRequest().body(createErrorResponse("查询内容不能为空"));
         }
         
         try {
-            String response = springAIService.simpleChat(query);
+            String response = aiRequestScheduler.execute(AIRequestScheduler.Priority.INTERACTIVE_BLOCKING, userIdOf(request),
+                    deadlineOf(timeoutHeader, false),
+                    () -> springAIService.simpleChat(query));
             
             Map<String, Object> result = new HashMap<>();
             result.put("success", true);
@@ -62,6 +130,8 @@ public class SpringAIController {
             result.put("model", "qwen-max");
             
             return ResponseEntity.ok(result);
+        } catch (AIDeadlineExceededException e) {
+            return ResponseEntity.status(504).body(createErrorResponse("AI请求超时：" + e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity.internalServerError().body(createErrorResponse("AI服务暂时不可用：" + e.getMessage()));
         }
@@ -71,14 +141,18 @@ public class SpringAIController {
      * 流式AI聊天接口
      */
     @PostMapping(value = "/stream/chat", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public Flux<String> streamChat(@RequestBody Map<String, Object> request) {
+    public Flux<String> streamChat(
+            @RequestHeader(value = AIDeadline.TIMEOUT_HEADER, required = false) String timeoutHeader,
+            @RequestBody Map<String, Object> request) {
         String query = (String) request.get("query");
         System.out.println("[streamChat] 收到请求: query=" + query);
         if (query == null || query.trim().isEmpty()) {
             return Flux.just("错误：查询内容不能为空");
         }
         try {
-            return springAIService.streamChat(query)
+            return aiRequestScheduler.schedule(AIRequestScheduler.Priority.INTERACTIVE_STREAMING, userIdOf(request),
+                    deadlineOf(timeoutHeader, true),
+                    () -> springAIService.streamChat(query))
                 .doOnNext(chunk -> System.out.println("[streamChat] 输出: " + chunk));
         } catch (Exception e) {
             System.out.println("[streamChat] 异常: " + e.getMessage());
@@ -90,7 +164,9 @@ public class SpringAIController {
      * 基于角色的AI聊天
      */
     @PostMapping("/role/chat")
-    public ResponseEntity<Map<String, Object>> roleBasedChat(@RequestBody Map<String, Object> request) {
+    public ResponseEntity<Map<String, Object>> roleBasedChat(
+            @RequestHeader(value = AIDeadline.TIMEOUT_HEADER, required = false) String timeoutHeader,
+            @RequestBody Map<String, Object> request) {
         String roleId = (String) request.get("roleId");
         String query = (String) request.get("query");
         String context = (String) request.get("context");
@@ -100,7 +176,9 @@ public class SpringAIController {
         }
         
         try {
-            String response = springAIService.roleBasedChat(roleId, query, context);
+            String response = aiRequestScheduler.execute(AIRequestScheduler.Priority.INTERACTIVE_BLOCKING, userIdOf(request),
+                    deadlineOf(timeoutHeader, false),
+                    () -> springAIService.roleBasedChat(roleId, query, context));
             
             Map<String, Object> result = new HashMap<>();
             result.put("success", true);
@@ -111,6 +189,8 @@ public class SpringAIController {
             result.put("model", "qwen-max");
             
             return ResponseEntity.ok(result);
+        } catch (AIDeadlineExceededException e) {
+            return ResponseEntity.status(504).body(createErrorResponse("AI请求超时：" + e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity.internalServerError().body(createErrorResponse("AI服务暂时不可用：" + e.getMessage()));
         }
@@ -120,7 +200,9 @@ public class SpringAIController {
      * 基于角色的流式AI聊天
      */
     @PostMapping(value = "/role/stream/chat", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public Flux<String> roleBasedStreamChat(@RequestBody Map<String, Object> request) {
+    public Flux<String> roleBasedStreamChat(
+            @RequestHeader(value = AIDeadline.TIMEOUT_HEADER, required = false) String timeoutHeader,
+            @RequestBody Map<String, Object> request) {
         String roleId = (String) request.get("roleId");
         String query = (String) request.get("query");
         String context = (String) request.get("context");
@@ -129,7 +211,9 @@ public class SpringAIController {
             return Flux.just("错误：角色ID和查询内容不能为空");
         }
         try {
-            return springAIService.roleBasedStreamChat(roleId, query, context)
+            return aiRequestScheduler.schedule(AIRequestScheduler.Priority.INTERACTIVE_STREAMING, userIdOf(request),
+                    deadlineOf(timeoutHeader, true),
+                    () -> springAIService.roleBasedStreamChat(roleId, query, context))
                 .doOnNext(chunk -> System.out.println("[roleBasedStreamChat] 输出: " + chunk));
         } catch (Exception e) {
             System.out.println("[roleBasedStreamChat] 异常: " + e.getMessage());
@@ -137,70 +221,195 @@ public class SpringAIController {
         }
     }
     
+    /**
+     * 专家团流式问答：多个AI角色并发回答同一问题，按角色标记的事件交错输出
+     */
+    @PostMapping(value = "/panel/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @SuppressWarnings("unchecked")
+    public Flux<ServerSentEvent<Map<String, Object>>> panelStreamChat(
+            @RequestHeader(value = AIDeadline.TIMEOUT_HEADER, required = false) String timeoutHeader,
+            @RequestBody Map<String, Object> request) {
+        String query = (String) request.get("query");
+        List<String> roleIds = (List<String>) request.get("roleIds");
+        String context = (String) request.get("context");
+        System.out.println("[panelStreamChat] 收到请求: roleIds=" + roleIds + ", query=" + query);
+        if (query == null || query.trim().isEmpty()) {
+            return Flux.just(errorEvent("错误：查询内容不能为空"));
+        }
+        try {
+            return aiPanelService.panelStream(userIdOf(request), deadlineOf(timeoutHeader, true), query, roleIds, context);
+        } catch (IllegalArgumentException e) {
+            return Flux.just(errorEvent("错误：" + e.getMessage()));
+        }
+    }
+    
     /**
      * 事件分析AI聊天
      */
     @PostMapping("/event/analysis")
-    public ResponseEntity<Map<String, Object>> eventAnalysis(@RequestBody Map<String, Object> request) {
+    public ResponseEntity<Map<String, Object>> eventAnalysis(
+            @RequestHeader(value = AIDeadline.TIMEOUT_HEADER, required = false) String timeoutHeader,
+            @RequestBody Map<String, Object> request) {
         String eventTitle = (String) request.get("eventTitle");
         String eventDescription = (String) request.get("eventDescription");
         String eventType = (String) request.get("eventType");
         String userQuery = (String) request.get("userQuery");
+        Long eventId = longOf(request.get("eventId"));
+        
+        // 传入eventId时按已保存的事件分析，结果会被缓存直到事件被修改；未输入问题时使用默认问题，可命中预计算结果
+        LifeEvent event = null;
+        if (eventId != null) {
+            event = eventService.getEventById(eventId);
+            if (event == null) {
+                event = lifeTrajectoryService.getEventById(eventId);
+            }
+            if (event == null) {
+                return ResponseEntity.badRequest().body(createErrorResponse("事件不存在"));
+            }
+            Long userId = userIdOf(request);
+            if (userId != null && !userId.equals(event.getUserId())) {
+                return ResponseEntity.status(403).body(createErrorResponse("无权限访问此事件"));
+            }
+            eventTitle = event.getTitle();
+            if (userQuery == null) {
+                userQuery = EventAnalysisService.DEFAULT_QUERY;
+            }
+        }
         
         if (eventTitle == null || userQuery == null) {
             return ResponseEntity.badRequest().body(createErrorResponse("事件标题和用户问题不能为空"));
         }
         
         try {
-            String response = springAIService.eventAnalysisChat(eventTitle, eventDescription, eventType, userQuery);
-            
             Map<String, Object> result = new HashMap<>();
+            if (event != null) {
+                EventAnalysisService.EventAnalysisResult analysis = eventAnalysisService.analyzeEvent(event, userQuery,
+                        AIRequestScheduler.Priority.INTERACTIVE_BLOCKING, deadlineOf(timeoutHeader, false));
+                result.put("analysis", analysis.getAnalysis());
+                result.put("analysisId", analysis.getAnalysisId());
+                result.put("cached", analysis.isCached());
+                result.put("eventId", event.getId());
+            } else {
+                String title = eventTitle;
+                String query = userQuery;
+                String response = aiRequestScheduler.execute(AIRequestScheduler.Priority.INTERACTIVE_BLOCKING, userIdOf(request),
+                        deadlineOf(timeoutHeader, false),
+                        () -> springAIService.eventAnalysisChat(title, eventDescription, eventType, query));
+                result.put("analysis", response);
+                result.put("cached", false);
+            }
+            
             result.put("success", true);
             result.put("eventTitle", eventTitle);
             result.put("userQuery", userQuery);
-            result.put("analysis", response);
             result.put("timestamp", System.currentTimeMillis());
             result.put("analysisType", "event_analysis");
             
             return ResponseEntity.ok(result);
+        } catch (AIDeadlineExceededException e) {
+            return ResponseEntity.status(504).body(createErrorResponse("AI请求超时：" + e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity.internalServerError().body(createErrorResponse("AI分析服务暂时不可用：" + e.getMessage()));
         }
     }
     
+    /**
+     * 事件分析AI聊天 - 流式版本
+     */
+    @PostMapping(value = "/event/analysis/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<String> eventAnalysisStream(
+            @RequestHeader(value = AIDeadline.TIMEOUT_HEADER, required = false) String timeoutHeader,
+            @RequestBody Map<String, Object> request) {
+        String eventTitle = (String) request.get("eventTitle");
+        String eventDescription = (String) request.get("eventDescription");
+        String eventType = (String) request.get("eventType");
+        String userQuery = (String) request.get("userQuery");
+        if (eventTitle == null || userQuery == null) {
+            return Flux.just("错误：事件标题和用户问题不能为空");
+        }
+        try {
+            return aiRequestScheduler.schedule(AIRequestScheduler.Priority.INTERACTIVE_STREAMING, userIdOf(request),
+                    deadlineOf(timeoutHeader, true),
+                    () -> springAIService.eventAnalysisStreamChat(eventTitle, eventDescription, eventType, userQuery));
+        } catch (Exception e) {
+            System.out.println("[eventAnalysisStream] 异常: " + e.getMessage());
+            return Flux.just("AI分析服务暂时不可用：" + e.getMessage());
+        }
+    }
+    
     /**
      * 人生轨迹分析
      */
     @PostMapping("/trajectory/analysis")
-    public ResponseEntity<Map<String, Object>> trajectoryAnalysis(@RequestBody Map<String, Object> request) {
+    public ResponseEntity<Map<String, Object>> trajectoryAnalysis(
+            @RequestHeader(value = AIDeadline.TIMEOUT_HEADER, required = false) String timeoutHeader,
+            @RequestBody Map<String, Object> request) {
         String userEvents = (String) request.get("userEvents");
         String analysisType = (String) request.get("analysisType");
+        Long userId = userIdOf(request);
         
-        if (userEvents == null || analysisType == null) {
+        // 未传入userEvents时读取用户已保存的事件，按紧凑格式编码；incremental=true时只提交上次分析之后的变化
+        if ((userEvents == null && userId == null) || analysisType == null) {
             return ResponseEntity.badRequest().body(createErrorResponse("用户事件和分析类型不能为空"));
         }
         
         try {
-            String response = springAIService.lifeTrajectoryAnalysis(userEvents, analysisType);
-            
             Map<String, Object> result = new HashMap<>();
+            if (userEvents != null) {
+                String response = aiRequestScheduler.execute(AIRequestScheduler.Priority.INTERACTIVE_BLOCKING, userId,
+                        deadlineOf(timeoutHeader, false),
+                        () -> springAIService.lifeTrajectoryAnalysis(userEvents, analysisType));
+                result.put("analysis", response);
+            } else {
+                boolean incremental = Boolean.TRUE.equals(request.get("incremental"));
+                result.putAll(trajectoryAnalysisService.analyzeUserTrajectory(userId, analysisType, incremental,
+                        deadlineOf(timeoutHeader, false)));
+            }
+            
             result.put("success", true);
             result.put("analysisType", analysisType);
-            result.put("analysis", response);
             result.put("timestamp", System.currentTimeMillis());
             result.put("scope", "life_trajectory");
             
             return ResponseEntity.ok(result);
+        } catch (AIDeadlineExceededException e) {
+            return ResponseEntity.status(504).body(createErrorResponse("AI请求超时：" + e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(createErrorResponse(e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity.internalServerError().body(createErrorResponse("轨迹分析服务暂时不可用：" + e.getMessage()));
         }
     }
     
+    /**
+     * 人生轨迹分析 - 流式版本
+     */
+    @PostMapping(value = "/trajectory/analysis/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<String> trajectoryAnalysisStream(
+            @RequestHeader(value = AIDeadline.TIMEOUT_HEADER, required = false) String timeoutHeader,
+            @RequestBody Map<String, Object> request) {
+        String userEvents = (String) request.get("userEvents");
+        String analysisType = (String) request.get("analysisType");
+        if (userEvents == null || analysisType == null) {
+            return Flux.just("错误：用户事件和分析类型不能为空");
+        }
+        try {
+            return aiRequestScheduler.schedule(AIRequestScheduler.Priority.INTERACTIVE_STREAMING, userIdOf(request),
+                    deadlineOf(timeoutHeader, true),
+                    () -> springAIService.lifeTrajectoryAnalysisStream(userEvents, analysisType));
+        } catch (Exception e) {
+            System.out.println("[trajectoryAnalysisStream] 异常: " + e.getMessage());
+            return Flux.just("轨迹分析服务暂时不可用：" + e.getMessage());
+        }
+    }
+    
     /**
      * 个性化建议生成
      */
     @PostMapping("/personalized/advice")
-    public ResponseEntity<Map<String, Object>> personalizedAdvice(@RequestBody Map<String, Object> request) {
+    public ResponseEntity<Map<String, Object>> personalizedAdvice(
+            @RequestHeader(value = AIDeadline.TIMEOUT_HEADER, required = false) String timeoutHeader,
+            @RequestBody Map<String, Object> request) {
         String userProfile = (String) request.get("userProfile");
         String currentSituation = (String) request.get("currentSituation");
         String goals = (String) request.get("goals");
@@ -210,7 +419,9 @@ public class SpringAIController {
         }
         
         try {
-            String response = springAIService.generatePersonalizedAdvice(userProfile, currentSituation, goals);
+            String response = aiRequestScheduler.execute(AIRequestScheduler.Priority.INTERACTIVE_BLOCKING, userIdOf(request),
+                    deadlineOf(timeoutHeader, false),
+                    () -> springAIService.generatePersonalizedAdvice(userProfile, currentSituation, goals));
             
             Map<String, Object> result = new HashMap<>();
             result.put("success", true);
@@ -219,16 +430,43 @@ public class SpringAIController {
             result.put("adviceType", "personalized");
             
             return ResponseEntity.ok(result);
+        } catch (AIDeadlineExceededException e) {
+            return ResponseEntity.status(504).body(createErrorResponse("AI请求超时：" + e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity.internalServerError().body(createErrorResponse("个性化建议服务暂时不可用：" + e.getMessage()));
         }
     }
     
+    /**
+     * 个性化建议生成 - 流式版本
+     */
+    @PostMapping(value = "/personalized/advice/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<String> personalizedAdviceStream(
+            @RequestHeader(value = AIDeadline.TIMEOUT_HEADER, required = false) String timeoutHeader,
+            @RequestBody Map<String, Object> request) {
+        String userProfile = (String) request.get("userProfile");
+        String currentSituation = (String) request.get("currentSituation");
+        String goals = (String) request.get("goals");
+        if (userProfile == null || currentSituation == null || goals == null) {
+            return Flux.just("错误：用户档案、当前情况和目标不能为空");
+        }
+        try {
+            return aiRequestScheduler.schedule(AIRequestScheduler.Priority.INTERACTIVE_STREAMING, userIdOf(request),
+                    deadlineOf(timeoutHeader, true),
+                    () -> springAIService.generatePersonalizedAdviceStream(userProfile, currentSituation, goals));
+        } catch (Exception e) {
+            System.out.println("[personalizedAdviceStream] 异常: " + e.getMessage());
+            return Flux.just("个性化建议服务暂时不可用：" + e.getMessage());
+        }
+    }
+    
     /**
      * 情感支持对话
      */
     @PostMapping("/emotional/support")
-    public ResponseEntity<Map<String, Object>> emotionalSupport(@RequestBody Map<String, Object> request) {
+    public ResponseEntity<Map<String, Object>> emotionalSupport(
+            @RequestHeader(value = AIDeadline.TIMEOUT_HEADER, required = false) String timeoutHeader,
+            @RequestBody Map<String, Object> request) {
         String emotionalState = (String) request.get("emotionalState");
         String situation = (String) request.get("situation");
         String userMessage = (String) request.get("userMessage");
@@ -238,7 +476,9 @@ public class SpringAIController {
         }
         
         try {
-            String response = springAIService.emotionalSupportChat(emotionalState, situation, userMessage);
+            String response = aiRequestScheduler.execute(AIRequestScheduler.Priority.INTERACTIVE_BLOCKING, userIdOf(request),
+                    deadlineOf(timeoutHeader, false),
+                    () -> springAIService.emotionalSupportChat(emotionalState, situation, userMessage));
             
             Map<String, Object> result = new HashMap<>();
             result.put("success", true);
@@ -248,16 +488,43 @@ public class SpringAIController {
             result.put("supportType", "emotional");
             
             return ResponseEntity.ok(result);
+        } catch (AIDeadlineExceededException e) {
+            return ResponseEntity.status(504).body(createErrorResponse("AI请求超时：" + e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity.internalServerError().body(createErrorResponse("情感支持服务暂时不可用：" + e.getMessage()));
         }
     }
     
+    /**
+     * 情感支持对话 - 流式版本
+     */
+    @PostMapping(value = "/emotional/support/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<String> emotionalSupportStream(
+            @RequestHeader(value = AIDeadline.TIMEOUT_HEADER, required = false) String timeoutHeader,
+            @RequestBody Map<String, Object> request) {
+        String emotionalState = (String) request.get("emotionalState");
+        String situation = (String) request.get("situation");
+        String userMessage = (String) request.get("userMessage");
+        if (emotionalState == null || userMessage == null) {
+            return Flux.just("错误：情感状态和用户消息不能为空");
+        }
+        try {
+            return aiRequestScheduler.schedule(AIRequestScheduler.Priority.INTERACTIVE_STREAMING, userIdOf(request),
+                    deadlineOf(timeoutHeader, true),
+                    () -> springAIService.emotionalSupportStreamChat(emotionalState, situation, userMessage));
+        } catch (Exception e) {
+            System.out.println("[emotionalSupportStream] 异常: " + e.getMessage());
+            return Flux.just("情感支持服务暂时不可用：" + e.getMessage());
+        }
+    }
+    
     /**
      * 决策支持分析
      */
     @PostMapping("/decision/support")
-    public ResponseEntity<Map<String, Object>> decisionSupport(@RequestBody Map<String, Object> request) {
+    public ResponseEntity<Map<String, Object>> decisionSupport(
+            @RequestHeader(value = AIDeadline.TIMEOUT_HEADER, required = false) String timeoutHeader,
+            @RequestBody Map<String, Object> request) {
         String decision = (String) request.get("decision");
         String options = (String) request.get("options");
         String considerations = (String) request.get("considerations");
@@ -267,7 +534,9 @@ public class SpringAIController {
         }
         
         try {
-            String response = springAIService.decisionSupportAnalysis(decision, options, considerations);
+            String response = aiRequestScheduler.execute(AIRequestScheduler.Priority.INTERACTIVE_BLOCKING, userIdOf(request),
+                    deadlineOf(timeoutHeader, false),
+                    () -> springAIService.decisionSupportAnalysis(decision, options, considerations));
             
             Map<String, Object> result = new HashMap<>();
             result.put("success", true);
@@ -277,17 +546,43 @@ public class SpringAIController {
             result.put("analysisType", "decision_support");
             
             return ResponseEntity.ok(result);
+        } catch (AIDeadlineExceededException e) {
+            return ResponseEntity.status(504).body(createErrorResponse("AI请求超时：" + e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity.internalServerError().body(createErrorResponse("决策支持服务暂时不可用：" + e.getMessage()));
         }
     }
     
+    /**
+     * 决策支持分析 - 流式版本
+     */
+    @PostMapping(value = "/decision/support/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<String> decisionSupportStream(
+            @RequestHeader(value = AIDeadline.TIMEOUT_HEADER, required = false) String timeoutHeader,
+            @RequestBody Map<String, Object> request) {
+        String decision = (String) request.get("decision");
+        String options = (String) request.get("options");
+        String considerations = (String) request.get("considerations");
+        if (decision == null || options == null) {
+            return Flux.just("错误：决策内容和选项不能为空");
+        }
+        try {
+            return aiRequestScheduler.schedule(AIRequestScheduler.Priority.INTERACTIVE_STREAMING, userIdOf(request),
+                    deadlineOf(timeoutHeader, true),
+                    () -> springAIService.decisionSupportAnalysisStream(decision, options, considerations));
+        } catch (Exception e) {
+            System.out.println("[decisionSupportStream] 异常: " + e.getMessage());
+            return Flux.just("决策支持服务暂时不可用：" + e.getMessage());
+        }
+    }
+    
     /**
      * 会话流式聊天（集成到对话管理）
      */
     @PostMapping(value = "/conversation/{conversationId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public Flux<String> conversationStreamChat(
             @PathVariable Long conversationId,
+            @RequestHeader(value = AIDeadline.TIMEOUT_HEADER, required = false) String timeoutHeader,
             @RequestBody Map<String, Object> request) {
         Long userId = Long.valueOf(request.get("userId").toString());
         String userMessage = (String) request.get("message");
@@ -296,7 +591,7 @@ public class SpringAIController {
             return Flux.just("错误：消息内容不能为空");
         }
         try {
-            return aiConversationService.streamChatWithAI(conversationId, userId, userMessage)
+            return aiConversationService.streamChatWithAI(conversationId, userId, userMessage, deadlineOf(timeoutHeader, true))
                 .doOnNext(chunk -> System.out.println("[conversationStreamChat] 输出: " + chunk));
         } catch (Exception e) {
             System.out.println("[conversationStreamChat] 异常: " + e.getMessage());
@@ -310,7 +605,9 @@ public class SpringAIController {
     @GetMapping("/test")
     public ResponseEntity<Map<String, Object>> testAI() {
         try {
-            String testResponse = springAIService.simpleChat("你好，请简单介绍一下你自己。");
+            String testResponse = aiRequestScheduler.execute(AIRequestScheduler.Priority.INTERACTIVE_BLOCKING, null,
+                    deadlineOf(null, false),
+                    () -> springAIService.simpleChat("你好，请简单介绍一下你自己。"));
             
             Map<String, Object> result = new HashMap<>();
             result.put("success", true);
@@ -332,7 +629,52 @@ public class SpringAIController {
         }
     }
     
+    /**
+     * AI调度、截止时间和服务提供方统计信息
+     */
+    @GetMapping("/metrics")
+    public ResponseEntity<Map<String, Object>> metrics() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("scheduler", aiRequestScheduler.getStats());
+        result.put("deadlines", aiDeadlineMetrics.getStats());
+        result.put("providers", chatBackendRegistry.getStats());
+        result.put("enrichment", eventEnrichmentQueue.getStats());
+        result.put("speculation", speculativeAnalysisService.getStats());
+        result.put("admission", aiAdmissionController.getStats());
+        result.put("promptCache", springAIService.getPromptCacheStats());
+        result.put("conversationStore", conversationStore.getStats());
+        result.put("idempotency", chatIdempotencyCache.getStats());
+        result.put("timestamp", System.currentTimeMillis());
+        return ResponseEntity.ok(result);
+    }
+    
     // 辅助方法
+    private AIDeadline deadlineOf(String timeoutHeader, boolean streaming) {
+        return AIDeadline.fromHeader(timeoutHeader, streaming ? streamingTimeoutMs : blockingTimeoutMs);
+    }
+    
+    private Long userIdOf(Map<String, Object> request) {
+        return longOf(request.get("userId"));
+    }
+    
+    private Long longOf(Object value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(value.toString());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    private ServerSentEvent<Map<String, Object>> errorEvent(String message) {
+        return ServerSentEvent.<Map<String, Object>>builder()
+                .event("error")
+                .data(createErrorResponse(message))
+                .build();
+    }
+    
     private Map<String, Object> createErrorResponse(String message) {
         Map<String, Object> response = new HashMap<>();
         response.put("success", false);
@@ -0,0 +1,92 @@
+package com.dualtracklife.lifeagent.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * AI分析记录模型
+ * 保存结构化的AI分析结果，事件分析按事件ID和内容哈希复用
+ */
+@Entity
+@Table(name = "ai_analysis_records", indexes = {
+    @Index(name = "idx_event_content", columnList = "eventId, contentHash"),
+    @Index(name = "idx_analysis_user_type", columnList = "userId, analysisType")
+})
+public class AIAnalysisRecord {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long userId;
+
+    // 关联的事件ID（仅事件分析）
+    private Long eventId;
+
+    // 分析类型：event, trajectory, personalized_advice, emotional_support, decision_support
+    @Column(nullable = false)
+    private String analysisType;
+
+    // 输入内容哈希（事件内容 + 用户问题 + 提示词版本）
+    private String contentHash;
+
+    // 输入数据（JSON格式）
+    @Column(nullable = false, length = 10000)
+    private String inputData;
+
+    // 分析结果（JSON格式）
+    @Column(nullable = false, length = 10000)
+    private String analysisResult;
+
+    // 使用的AI模型
+    private String aiModel;
+
+    // 处理时间（毫秒）
+    private Integer processingTime;
+
+    private LocalDateTime createdAt;
+
+    // 构造函数
+    public AIAnalysisRecord() {
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public AIAnalysisRecord(Long userId, String analysisType, String inputData, String analysisResult) {
+        this();
+        this.userId = userId;
+        this.analysisType = analysisType;
+        this.inputData = inputData;
+        this.analysisResult = analysisResult;
+    }
+
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    public Long getEventId() { return eventId; }
+    public void setEventId(Long eventId) { this.eventId = eventId; }
+
+    public String getAnalysisType() { return analysisType; }
+    public void setAnalysisType(String analysisType) { this.analysisType = analysisType; }
+
+    public String getContentHash() { return contentHash; }
+    public void setContentHash(String contentHash) { this.contentHash = contentHash; }
+
+    public String getInputData() { return inputData; }
+    public void setInputData(String inputData) { this.inputData = inputData; }
+
+    public String getAnalysisResult() { return analysisResult; }
+    public void setAnalysisResult(String analysisResult) { this.analysisResult = analysisResult; }
+
+    public String getAiModel() { return aiModel; }
+    public void setAiModel(String aiModel) { this.aiModel = aiModel; }
+
+    public Integer getProcessingTime() { return processingTime; }
+    public void setProcessingTime(Integer processingTime) { this.processingTime = processingTime; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+}
@@ -10,6 +10,8 @@ import java.time.LocalDateTime;
 @Entity
 @Table(name = "ai_conversations")
 public class AIConversation {
+    public static final int MAX_SESSION_TITLE_LENGTH = 200;
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -20,7 +22,7 @@ public class AIConversation {
     @Column(nullable = false)
     private String roleId;
     
-    @Column(nullable = false, length = 200)
+    @Column(nullable = false, length = MAX_SESSION_TITLE_LENGTH)
     private String sessionTitle;
     
     // 会话类型：general_chat, event_analysis, goal_planning, emotional_support, decision_making
@@ -94,8 +96,15 @@ public class AIConversation {
     }
     
     public void completeSession(String summary, String insights) {
+        completeSession(summary, insights, LocalDateTime.now());
+    }
+    
+    /**
+     * 以指定时间结束会话，例如空闲超时自动结束时以最后活跃时间为结束时间
+     */
+    public void completeSession(String summary, String insights, LocalDateTime endedAt) {
         this.status = "completed";
-        this.endedAt = LocalDateTime.now();
+        this.endedAt = endedAt;
         this.summary = summary;
         this.keyInsights = insights;
         this.updatedAt = LocalDateTime.now();
@@ -121,7 +130,11 @@ public class AIConversation {
     public void setRoleId(String roleId) { this.roleId = roleId; }
     
     public String getSessionTitle() { return sessionTitle; }
-    public void setSessionTitle(String sessionTitle) { this.sessionTitle = sessionTitle; }
+    // 标题可能由事件标题拼接而成，超过列长度时截断
+    public void setSessionTitle(String sessionTitle) {
+        this.sessionTitle = sessionTitle != null && sessionTitle.length() > MAX_SESSION_TITLE_LENGTH
+                ? sessionTitle.substring(0, MAX_SESSION_TITLE_LENGTH) : sessionTitle;
+    }
     
     public String getConversationType() { return conversationType; }
     public void setConversationType(String conversationType) { this.conversationType = conversationType; }
@@ -8,7 +8,9 @@ import java.time.LocalDateTime;
  * 存储具体的对话消息内容
  */
 @Entity
-@Table(name = "ai_messages")
+@Table(name = "ai_messages", indexes = {
+    @Index(name = "idx_messages_conversation_order", columnList = "conversationId, messageOrder")
+})
 public class AIMessage {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -27,10 +29,12 @@ public class AIMessage {
     @Column(nullable = false)
     private String messageType;
     
-    @Column(nullable = false, length = 5000)
+    // AI回复可能超过几千字，使用TEXT避免长回复无法写入
+    @Column(nullable = false, columnDefinition = "TEXT")
     private String content;
     
     // 消息上下文信息（JSON格式）
+    @Column(columnDefinition = "TEXT")
     private String contextInfo;
     
     // AI响应的置信度 (0-1)
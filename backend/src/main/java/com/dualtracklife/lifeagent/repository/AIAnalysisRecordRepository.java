@@ -0,0 +1,33 @@
+package com.dualtracklife.lifeagent.repository;
+
+import com.dualtracklife.lifeagent.model.AIAnalysisRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * AI分析记录仓库
+ * 只在开启持久化（life-agent.conversation.persistence.enabled）时可用
+ */
+public interface AIAnalysisRecordRepository extends JpaRepository<AIAnalysisRecord, Long> {
+
+    /**
+     * 按事件和内容哈希查找最新的分析结果，命中 (event_id, content_hash) 索引
+     */
+    Optional<AIAnalysisRecord> findFirstByEventIdAndContentHashOrderByIdDesc(Long eventId, String contentHash);
+
+    Optional<AIAnalysisRecord> findFirstByUserIdAndAnalysisTypeOrderByIdDesc(Long userId, String analysisType);
+
+    @Query("select r.id from AIAnalysisRecord r where r.eventId = :eventId")
+    List<Long> findIdsByEventId(@Param("eventId") Long eventId);
+
+    @Modifying
+    @Transactional
+    @Query("delete from AIAnalysisRecord r where r.eventId = :eventId")
+    int deleteByEventId(@Param("eventId") Long eventId);
+}
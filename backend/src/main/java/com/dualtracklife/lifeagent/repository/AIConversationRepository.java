@@ -0,0 +1,19 @@
+package com.dualtracklife.lifeagent.repository;
+
+import com.dualtracklife.lifeagent.model.AIConversation;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
+
+/**
+ * AI对话会话仓库
+ * 只在开启对话持久化（life-agent.conversation.persistence.enabled）时可用
+ */
+public interface AIConversationRepository extends JpaRepository<AIConversation, Long> {
+
+    List<AIConversation> findByUserId(Long userId);
+
+    @Query("select coalesce(max(c.id), 0) from AIConversation c")
+    Long findMaxId();
+}
@@ -0,0 +1,35 @@
+package com.dualtracklife.lifeagent.repository;
+
+import com.dualtracklife.lifeagent.model.AIMessage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+/**
+ * AI消息仓库
+ * 只在开启对话持久化（life-agent.conversation.persistence.enabled）时可用；写入由ConversationWriteBehind批量完成
+ */
+public interface AIMessageRepository extends JpaRepository<AIMessage, Long> {
+
+    List<AIMessage> findByConversationIdOrderByMessageOrderAsc(Long conversationId);
+
+    /**
+     * 按序号区间读取一页消息，命中 (conversation_id, message_order) 索引
+     */
+    List<AIMessage> findByConversationIdAndMessageOrderBetweenOrderByMessageOrderAsc(
+            Long conversationId, Integer fromOrder, Integer toOrder);
+
+    /**
+     * 用户每个会话的消息数，返回 [conversationId, count]
+     */
+    @Query("select m.conversationId, count(m) from AIMessage m where m.userId = :userId group by m.conversationId")
+    List<Object[]> countByConversationForUser(@Param("userId") Long userId);
+
+    @Query("select coalesce(max(m.messageOrder), 0) from AIMessage m where m.conversationId = :conversationId")
+    Integer findMaxMessageOrder(@Param("conversationId") Long conversationId);
+
+    @Query("select coalesce(max(m.id), 0) from AIMessage m")
+    Long findMaxId();
+}
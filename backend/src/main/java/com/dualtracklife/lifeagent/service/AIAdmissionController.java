@@ -0,0 +1,112 @@
+package com.dualtracklife.lifeagent.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * AI请求准入控制（CoDel）
+ * 以调度器中交互请求的排队时延为信号：时延偶尔超过目标值（突发）不处理，
+ * 连续超过目标值达到一个观察窗口，说明形成了持续积压，此时进入丢弃状态，拒绝所有新的AI请求，
+ * 让已排队的请求消化积压；时延回落到目标值以下即退出丢弃状态。
+ * 排队时延是排队最久的请求已等待的时间，它超过目标值多少，时延就至少已经连续超标多久，
+ * 因此积压在两次判断之间形成时也能立即进入丢弃状态，不必再等一个观察窗口。
+ * 被拒绝的请求立即返回429，而不是排队到超时
+ */
+@Service
+public class AIAdmissionController {
+
+    @Autowired
+    private AIRequestScheduler aiRequestScheduler;
+
+    @Value("${life-agent.ai.admission.enabled:true}")
+    private boolean enabled;
+
+    // 可接受的排队时延（毫秒）
+    @Value("${life-agent.ai.admission.target-delay-ms:2000}")
+    private long targetDelayMs;
+
+    // 时延需要持续超过目标值多久才开始拒绝（毫秒）
+    @Value("${life-agent.ai.admission.interval-ms:5000}")
+    private long intervalMs;
+
+    // 时间来源，测试中替换
+    private LongSupplier clock = System::currentTimeMillis;
+
+    // 时延开始超过目标值的时间，未超过时为0
+    private long aboveTargetSince = 0;
+    private boolean dropping = false;
+    private long droppingSince = 0;
+    private long lastDelayMs = 0;
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * 判断是否接收新的AI请求
+     *
+     * @return 接收时返回0，拒绝时返回建议的重试等待秒数
+     */
+    public long tryAdmit() {
+        if (!enabled) {
+            return 0;
+        }
+        long delay = aiRequestScheduler.interactiveQueueDelayMillis();
+        long now = clock.getAsLong();
+
+        boolean reject;
+        synchronized (this) {
+            lastDelayMs = delay;
+            reject = sustainedAboveTarget(delay, now);
+            if (reject && !dropping) {
+                droppingSince = now;
+                System.out.println("[AIAdmission] 交互请求排队时延 " + delay + "ms 持续超过目标值，开始拒绝新请求");
+            } else if (!reject && dropping) {
+                System.out.println("[AIAdmission] 排队时延回落到 " + delay + "ms，恢复接收请求，丢弃状态持续 "
+                        + (now - droppingSince) + "ms");
+            }
+            dropping = reject;
+        }
+
+        if (reject) {
+            rejected.incrementAndGet();
+            // 积压大致需要当前排队时延才能消化完
+            return Math.max(1, (delay + 999) / 1000);
+        }
+        admitted.incrementAndGet();
+        return 0;
+    }
+
+    /**
+     * 时延是否已连续超过目标值一个观察窗口；只在持有本对象锁时调用
+     */
+    private boolean sustainedAboveTarget(long delay, long now) {
+        if (delay < targetDelayMs) {
+            aboveTargetSince = 0;
+            return false;
+        }
+        // 排队最久的请求在等待满目标值时，时延就已经超标
+        long oldestAboveSince = now - (delay - targetDelayMs);
+        aboveTargetSince = aboveTargetSince == 0 ? oldestAboveSince : Math.min(aboveTargetSince, oldestAboveSince);
+        return now - aboveTargetSince >= intervalMs;
+    }
+
+    /**
+     * 获取准入控制统计信息
+     */
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("dropping", dropping);
+        stats.put("lastQueueDelayMs", lastDelayMs);
+        stats.put("targetDelayMs", targetDelayMs);
+        stats.put("admitted", admitted.get());
+        stats.put("rejected", rejected.get());
+        return stats;
+    }
+}
@@ -0,0 +1,154 @@
+package com.dualtracklife.lifeagent.service;
+
+import com.dualtracklife.lifeagent.model.AIAnalysisRecord;
+import com.dualtracklife.lifeagent.repository.AIAnalysisRecordRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AI分析记录存储服务
+ * 对应 ai_analysis_records 表。开启持久化时记录写入数据库，ID由数据库生成，按事件 + 内容哈希、
+ * 用户 + 分析类型的查找直接走数据库索引，内存中只按最近使用缓存有限条记录，重启后已有的分析结果仍可复用；
+ * 未开启时记录和索引只保存在当前进程内存中，重启后丢失
+ */
+@Service
+public class AIAnalysisRecordService {
+
+    @Autowired(required = false)
+    private AIAnalysisRecordRepository repository;
+
+    @Value("${life-agent.conversation.persistence.record-cache-capacity:10000}")
+    private int cacheCapacity;
+
+    // 未开启持久化时保存全部记录；开启时作为按最近使用淘汰的读缓存（只在持有本对象锁时访问）
+    private final LinkedHashMap<Long, AIAnalysisRecord> records = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, AIAnalysisRecord> eldest) {
+            return isPersistent() && size() > cacheCapacity;
+        }
+    };
+    // 以下索引只在未开启持久化时使用
+    private final Map<Long, Map<String, Long>> eventIndex = new ConcurrentHashMap<>(); // eventId -> contentHash -> recordId
+    private final Map<String, Long> latestIndex = new ConcurrentHashMap<>(); // userId:analysisType -> 最新的recordId
+    private final AtomicLong nextRecordId = new AtomicLong(1);
+
+    public boolean isPersistent() {
+        return repository != null;
+    }
+
+    /**
+     * 保存分析记录
+     */
+    public AIAnalysisRecord save(AIAnalysisRecord record) {
+        if (isPersistent()) {
+            return cache(repository.save(record));
+        }
+        if (record.getId() == null) {
+            record.setId(nextRecordId.getAndIncrement());
+        }
+        cache(record);
+        latestIndex.merge(latestKey(record.getUserId(), record.getAnalysisType()), record.getId(), Math::max);
+        if (record.getEventId() != null && record.getContentHash() != null) {
+            eventIndex.computeIfAbsent(record.getEventId(), k -> new ConcurrentHashMap<>())
+                    .put(record.getContentHash(), record.getId());
+        }
+        return record;
+    }
+
+    private synchronized AIAnalysisRecord cache(AIAnalysisRecord record) {
+        records.put(record.getId(), record);
+        return record;
+    }
+
+    private synchronized AIAnalysisRecord cached(Long recordId) {
+        return records.get(recordId);
+    }
+
+    public AIAnalysisRecord getById(Long recordId) {
+        AIAnalysisRecord record = cached(recordId);
+        if (record == null && isPersistent()) {
+            record = repository.findById(recordId).map(this::cache).orElse(null);
+        }
+        return record;
+    }
+
+    /**
+     * 按事件ID和内容哈希查找已有的分析结果
+     */
+    public AIAnalysisRecord findByEvent(Long eventId, String contentHash) {
+        if (isPersistent()) {
+            return repository.findFirstByEventIdAndContentHashOrderByIdDesc(eventId, contentHash)
+                    .map(this::cache).orElse(null);
+        }
+        Map<String, Long> byHash = eventIndex.get(eventId);
+        Long recordId = byHash != null ? byHash.get(contentHash) : null;
+        return recordId != null ? getById(recordId) : null;
+    }
+
+    /**
+     * 获取用户某类分析的最新记录
+     */
+    public AIAnalysisRecord findLatest(Long userId, String analysisType) {
+        if (isPersistent()) {
+            return repository.findFirstByUserIdAndAnalysisTypeOrderByIdDesc(userId, analysisType)
+                    .map(this::cache).orElse(null);
+        }
+        Long recordId = latestIndex.get(latestKey(userId, analysisType));
+        return recordId != null ? getById(recordId) : null;
+    }
+
+    /**
+     * 删除某个事件的全部分析结果，返回被删除的记录ID
+     */
+    public Collection<Long> deleteByEvent(Long eventId) {
+        Set<Long> removed = new HashSet<>();
+        if (isPersistent()) {
+            removed.addAll(repository.findIdsByEventId(eventId));
+            repository.deleteByEventId(eventId);
+            synchronized (this) {
+                removed.forEach(records::remove);
+            }
+            return removed;
+        }
+
+        Map<String, Long> byHash = eventIndex.remove(eventId);
+        if (byHash != null) {
+            removed.addAll(byHash.values());
+        }
+        synchronized (this) {
+            Set<String> staleLatest = new HashSet<>();
+            for (Long recordId : removed) {
+                AIAnalysisRecord record = records.remove(recordId);
+                if (record != null && latestIndex.remove(latestKey(record.getUserId(), record.getAnalysisType()), recordId)) {
+                    staleLatest.add(latestKey(record.getUserId(), record.getAnalysisType()));
+                }
+            }
+            // 被删除的记录是最新记录时，改为指向剩余记录中最新的一条
+            for (AIAnalysisRecord record : records.values()) {
+                String key = latestKey(record.getUserId(), record.getAnalysisType());
+                if (staleLatest.contains(key)) {
+                    latestIndex.merge(key, record.getId(), Math::max);
+                }
+            }
+        }
+        return removed;
+    }
+
+    private String latestKey(Long userId, String analysisType) {
+        return userId + ":" + analysisType;
+    }
+
+    public int size() {
+        if (isPersistent()) {
+            return (int) repository.count();
+        }
+        synchronized (this) {
+            return records.size();
+        }
+    }
+}
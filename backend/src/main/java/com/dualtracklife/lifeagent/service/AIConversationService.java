@@ -4,11 +4,11 @@ import com.dualtracklife.lifeagent.model.*;
 import com.dualtracklife.lifeevent.model.LifeEvent;
 import org.springframework.stereotype.Service;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import reactor.core.publisher.Flux;
 
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * AI对话管理服务 - 集成Spring AI
@@ -23,21 +23,30 @@ public class AIConversationService {
     @Autowired
     private SpringAIService springAIService;
     
-    // 模拟数据存储
-    private Map<Long, AIConversation> conversationRepository = new HashMap<>();
-    private Map<Long, List<AIMessage>> messageRepository = new HashMap<>();
-    private Long conversationIdCounter = 1L;
-    private Long messageIdCounter = 1L;
+    @Autowired
+    private AIRequestScheduler aiRequestScheduler;
+    
+    @Autowired
+    private IntentClassifier intentClassifier;
+    
+    @Autowired
+    private ConversationStore conversationStore;
+    
+    @Autowired
+    private ChatIdempotencyCache idempotencyCache;
+    
+    @Value("${life-agent.conversation.page-size:20}")
+    private int defaultPageSize;
+    
+    @Value("${life-agent.conversation.max-page-size:100}")
+    private int maxPageSize;
     
     /**
      * 开始新的对话会话
      */
     public AIConversation startConversation(Long userId, String roleId, String conversationType) {
-        AIConversation conversation = new AIConversation(userId, roleId, conversationType);
-        conversation.setId(conversationIdCounter++);
-        
-        conversationRepository.put(conversation.getId(), conversation);
-        messageRepository.put(conversation.getId(), new ArrayList<>());
+        AIConversation conversation = conversationStore.createConversation(
+                new AIConversation(userId, roleId, conversationType));
         
         // 更新用户与AI角色的关系
         aiRoleService.updateRelationship(userId, roleId);
@@ -55,6 +64,7 @@ public class AIConversationService {
         AIConversation conversation = startConversation(userId, recommendedRoleId, "event_analysis");
         conversation.setRelatedEventId(event.getId());
         conversation.setSessionTitle("关于「" + event.getTitle() + "」的深度分析");
+        conversationStore.update(conversation);
         
         // 使用Spring AI生成开场消息
         String openingMessage = generateEventOpeningMessageWithAI(event, recommendedRoleId);
@@ -67,22 +77,28 @@ public class AIConversationService {
      * 发送消息
      */
     public AIMessage sendMessage(Long conversationId, Long userId, String roleId, String messageType, String content) {
-        AIConversation conversation = conversationRepository.get(conversationId);
+        return sendMessage(conversationId, userId, roleId, messageType, content, null, null);
+    }
+    
+    /**
+     * 发送带标签和上下文信息的消息
+     * 追加后消息即进入写缓冲，可能随时被写入数据库，所有字段必须在追加之前设置好
+     */
+    public AIMessage sendMessage(Long conversationId, Long userId, String roleId, String messageType, String content,
+                                 String tags, String contextInfo) {
+        AIConversation conversation = conversationStore.getConversation(conversationId);
         if (conversation == null) {
             throw new IllegalArgumentException("对话会话不存在");
         }
         
-        List<AIMessage> messages = messageRepository.get(conversationId);
-        int messageOrder = messages.size() + 1;
-        
         AIMessage message = new AIMessage(conversationId, userId, roleId, messageType, content);
-        message.setId(messageIdCounter++);
-        message.setMessageOrder(messageOrder);
-        
-        messages.add(message);
+        message.setTags(tags);
+        message.setContextInfo(contextInfo);
+        // 消息ID和会话内序号由存储在追加时分配
+        message = conversationStore.appendMessage(conversationId, message);
         
-        // 更新会话的最后活跃时间
-        conversation.updateLastActive();
+        // 更新会话的最后活跃时间，同时调整用户会话索引
+        conversationStore.touch(conversation);
         
         return message;
     }
@@ -91,17 +107,54 @@ public class AIConversationService {
      * 用户发送消息并获取AI回复
      */
     public AIMessage chatWithAI(Long conversationId, Long userId, String userMessage) {
-        AIConversation conversation = conversationRepository.get(conversationId);
+        return chatWithAI(conversationId, userId, userMessage, null);
+    }
+    
+    /**
+     * 带幂等键的对话请求：同一会话内重复的键返回第一次的AI回复或等待其完成，不重复保存消息和调用模型。
+     * 模型调用失败时抛出AIReplyFailedException而不是返回兜底回复，使用同一个键重试时不会再次保存用户消息
+     */
+    public AIMessage chatWithAI(Long conversationId, Long userId, String userMessage, AIDeadline deadline,
+                                String idempotencyKey) {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return chatWithAI(conversationId, userId, userMessage, deadline);
+        }
+        return idempotencyCache.execute(conversationId, idempotencyKey, userId, userMessage, deadline,
+                attempt -> chatWithAI(conversationId, userId, userMessage, deadline, attempt));
+    }
+    
+    /**
+     * 用户发送消息并获取AI回复，截止时间会传递到调度器和模型调用
+     */
+    public AIMessage chatWithAI(Long conversationId, Long userId, String userMessage, AIDeadline deadline) {
+        return chatWithAI(conversationId, userId, userMessage, deadline, (ChatIdempotencyCache.Attempt) null);
+    }
+    
+    /**
+     * attempt不为null时是带幂等键的请求：复用之前已保存的用户消息，模型失败时抛出异常
+     */
+    private AIMessage chatWithAI(Long conversationId, Long userId, String userMessage, AIDeadline deadline,
+                                 ChatIdempotencyCache.Attempt attempt) {
+        AIConversation conversation = conversationStore.getConversation(conversationId);
         if (conversation == null) {
             throw new IllegalArgumentException("对话会话不存在");
         }
         
-        // 保存用户消息
-        sendMessage(conversationId, userId, conversation.getRoleId(), "user", userMessage);
+        // 在本地判断这条消息的意图，意图标签随用户消息一起保存
+        IntentClassifier.IntentPrediction intent = intentClassifier.classify(userMessage);
+        if (attempt == null || attempt.getSavedUserMessage() == null) {
+            AIMessage saved = sendMessage(conversationId, userId, conversation.getRoleId(), "user", userMessage,
+                    intentTag(intent), null);
+            if (attempt != null) {
+                attempt.userMessageSaved(saved);
+            }
+        }
         
         // 使用Spring AI生成回复
-        String aiResponse = generateAIResponseWithSpringAI(conversation, userMessage);
-        AIMessage aiMessage = sendMessage(conversationId, userId, conversation.getRoleId(), "ai", aiResponse);
+        String aiResponse = generateAIResponseWithSpringAI(conversation, userMessage, resolveHandler(conversation, intent),
+                deadline, attempt == null);
+        AIMessage aiMessage = sendMessage(conversationId, userId, conversation.getRoleId(), "ai", aiResponse,
+                null, intentContext(intent));
         
         // 更新用户与AI角色的关系
         aiRoleService.updateRelationship(userId, conversation.getRoleId());
@@ -113,59 +166,117 @@ public class AIConversationService {
      * 流式聊天接口
      */
     public Flux<String> streamChatWithAI(Long conversationId, Long userId, String userMessage) {
-        AIConversation conversation = conversationRepository.get(conversationId);
+        return streamChatWithAI(conversationId, userId, userMessage, null);
+    }
+    
+    /**
+     * 流式聊天接口，截止时间到期后取消模型调用，不保存不完整的回复
+     */
+    public Flux<String> streamChatWithAI(Long conversationId, Long userId, String userMessage, AIDeadline deadline) {
+        AIConversation conversation = conversationStore.getConversation(conversationId);
         if (conversation == null) {
             return Flux.error(new IllegalArgumentException("对话会话不存在"));
         }
         
-        // 保存用户消息
-        sendMessage(conversationId, userId, conversation.getRoleId(), "user", userMessage);
+        // 在本地判断这条消息的意图，意图标签随用户消息一起保存
+        IntentClassifier.IntentPrediction intent = intentClassifier.classify(userMessage);
+        sendMessage(conversationId, userId, conversation.getRoleId(), "user", userMessage, intentTag(intent), null);
+        String handler = resolveHandler(conversation, intent);
         
         // 构建对话上下文
         String context = buildConversationContext(conversation, userMessage);
         
         // 使用Spring AI生成流式回复
-        Flux<String> responseStream = springAIService.roleBasedStreamChat(
-                conversation.getRoleId(), userMessage, context);
+        Flux<String> responseStream = aiRequestScheduler.schedule(
+                AIRequestScheduler.Priority.INTERACTIVE_STREAMING, userId, deadline,
+                () -> generateAIStreamResponse(conversation, userMessage, context, handler));
         
         // 收集完整回复并保存
         StringBuilder fullResponse = new StringBuilder();
         return responseStream.doOnNext(chunk -> fullResponse.append(chunk))
                 .doOnComplete(() -> {
                     // 保存完整的AI回复
-                    sendMessage(conversationId, userId, conversation.getRoleId(), "ai", fullResponse.toString());
+                    sendMessage(conversationId, userId, conversation.getRoleId(), "ai", fullResponse.toString(),
+                            null, intentContext(intent));
                     // 更新用户与AI角色的关系
                     aiRoleService.updateRelationship(userId, conversation.getRoleId());
                 });
     }
     
     /**
-     * 使用Spring AI生成AI回复
+     * 用户消息上记录的意图标签
+     */
+    private String intentTag(IntentClassifier.IntentPrediction intent) {
+        return intent != null ? "intent:" + intent.getIntent() : null;
+    }
+    
+    /**
+     * AI回复上记录的意图预测详情
      */
-    private String generateAIResponseWithSpringAI(AIConversation conversation, String userMessage) {
+    private String intentContext(IntentClassifier.IntentPrediction intent) {
+        return intent != null ? intent.toContextInfo() : null;
+    }
+    
+    /**
+     * 选择本条消息的处理方式：意图分类置信度足够时按消息意图，否则沿用会话开始时的对话类型
+     */
+    private String resolveHandler(AIConversation conversation, IntentClassifier.IntentPrediction intent) {
+        return IntentClassifier.resolveHandler(intent, conversation.getConversationType());
+    }
+    
+    /**
+     * 使用Spring AI生成AI回复；fallbackOnError为false时模型失败抛出AIReplyFailedException，不返回兜底回复
+     */
+    private String generateAIResponseWithSpringAI(AIConversation conversation, String userMessage, String handler,
+                                                  AIDeadline deadline, boolean fallbackOnError) {
         try {
             // 构建对话上下文
             String context = buildConversationContext(conversation, userMessage);
             
-            // 根据对话类型选择不同的AI服务方法
-            switch (conversation.getConversationType()) {
-                case "event_analysis":
-                    return generateEventAnalysisResponse(conversation, userMessage, context);
-                case "emotional_support":
-                    return generateEmotionalSupportResponse(conversation, userMessage, context);
-                case "decision_support":
-                    return generateDecisionSupportResponse(conversation, userMessage, context);
-                case "life_planning":
-                    return generateLifePlanningResponse(conversation, userMessage, context);
-                default:
-                    return springAIService.roleBasedChat(conversation.getRoleId(), userMessage, context);
-            }
+            // 根据处理方式选择不同的AI服务方法，经调度器排队后再调用模型
+            return aiRequestScheduler.execute(AIRequestScheduler.Priority.INTERACTIVE_BLOCKING, conversation.getUserId(), deadline, () -> {
+                switch (handler) {
+                    case "event_analysis":
+                        return generateEventAnalysisResponse(conversation, userMessage, context);
+                    case "emotional_support":
+                        return generateEmotionalSupportResponse(conversation, userMessage, context);
+                    case "decision_support":
+                        return generateDecisionSupportResponse(conversation, userMessage, context);
+                    case "life_planning":
+                        return generateLifePlanningResponse(conversation, userMessage, context);
+                    default:
+                        return springAIService.roleBasedChat(conversation.getRoleId(), userMessage, context);
+                }
+            });
+        } catch (AIDeadlineExceededException e) {
+            // 调用方已经放弃等待，不再生成兜底回复
+            throw e;
         } catch (Exception e) {
+            if (!fallbackOnError) {
+                // 兜底回复不能作为幂等键的结果缓存，交给客户端用同一个键重试
+                throw new AIReplyFailedException(e);
+            }
             // 如果AI服务出错，返回友好的错误消息
             return "抱歉，我现在遇到了一些技术问题。请稍后再试，或者换个方式表达您的问题。";
         }
     }
     
+    /**
+     * 按处理方式生成流式回复
+     */
+    private Flux<String> generateAIStreamResponse(AIConversation conversation, String userMessage, String context, String handler) {
+        switch (handler) {
+            case "emotional_support":
+                return springAIService.emotionalSupportStreamChat("需要支持", context, userMessage);
+            case "decision_support":
+                return springAIService.decisionSupportAnalysisStream(userMessage, "待分析", context);
+            case "life_planning":
+                return springAIService.generatePersonalizedAdviceStream("用户档案", context, userMessage);
+            default:
+                return springAIService.roleBasedStreamChat(conversation.getRoleId(), userMessage, context);
+        }
+    }
+    
     /**
      * 生成事件分析回复
      */
@@ -213,7 +324,8 @@ public class AIConversationService {
                     roleName, event.getTitle(), getEventTypeDescription(event.getEventType())
             );
             
-            return springAIService.roleBasedChat(roleId, prompt, "");
+            return aiRequestScheduler.execute(AIRequestScheduler.Priority.INTERACTIVE_BLOCKING, event.getUserId(),
+                    () -> springAIService.roleBasedChat(roleId, prompt, ""));
         } catch (Exception e) {
             // 如果AI生成失败，使用默认消息
             AIRole role = aiRoleService.getRoleById(roleId);
@@ -224,9 +336,9 @@ public class AIConversationService {
     }
     
     /**
-     * 构建对话上下文
+     * 构建对话上下文（包级可见，供benchmarks模块测量）
      */
-    private String buildConversationContext(AIConversation conversation, String currentMessage) {
+    String buildConversationContext(AIConversation conversation, String currentMessage) {
         StringBuilder context = new StringBuilder();
         
         // 添加会话类型信息
@@ -283,41 +395,92 @@ public class AIConversationService {
      * 获取对话历史
      */
     public List<AIMessage> getConversationHistory(Long conversationId, int limit) {
-        List<AIMessage> messages = messageRepository.getOrDefault(conversationId, new ArrayList<>());
-        
-        return messages.stream()
-                .sorted(Comparator.comparing(AIMessage::getMessageOrder))
-                .skip(Math.max(0, messages.size() - limit))
-                .collect(Collectors.toList());
+        // 消息日志按序号追加，直接取最后limit条
+        return conversationStore.getRecentMessages(conversationId, limit);
+    }
+    
+    /**
+     * 按消息序号分页获取对话历史（键集分页）
+     * direction为before时返回游标之前更早的消息，没有游标时从最新一页开始；
+     * direction为after时返回游标之后更新的消息，没有游标时从第一条开始。
+     * 消息序号在会话内连续，每页直接按序号区间读取，与历史总长度无关
+     */
+    public MessagePage getMessagePage(Long conversationId, String cursor, String direction, Integer pageSize) {
+        if (conversationStore.getConversation(conversationId) == null) {
+            throw new IllegalArgumentException("对话会话不存在");
+        }
+        boolean forward = "after".equalsIgnoreCase(direction);
+        if (!forward && direction != null && !"before".equalsIgnoreCase(direction)) {
+            throw new IllegalArgumentException("direction只能是before或after");
+        }
+        int size = Math.min(Math.max(1, pageSize != null ? pageSize : defaultPageSize), maxPageSize);
+        Integer anchor = cursor != null && !cursor.isBlank() ? MessageCursor.decode(conversationId, cursor) : null;
+        
+        int fromOrder;
+        int toOrder;
+        if (forward) {
+            fromOrder = anchor != null ? anchor + 1 : 1;
+            toOrder = fromOrder + size - 1;
+        } else {
+            toOrder = anchor != null ? anchor - 1 : conversationStore.getMessageCount(conversationId);
+            fromOrder = Math.max(1, toOrder - size + 1);
+        }
+        List<AIMessage> messages = toOrder >= fromOrder
+                ? conversationStore.getMessageRange(conversationId, fromOrder, toOrder)
+                : new ArrayList<>();
+        
+        MessagePage page = new MessagePage();
+        page.setMessages(messages);
+        page.setPageSize(size);
+        if (messages.isEmpty()) {
+            // 空页保留原游标，向后翻页的客户端可以用它继续轮询新消息
+            page.setAfterCursor(anchor != null ? MessageCursor.encode(conversationId, forward ? anchor : anchor - 1) : null);
+            return page;
+        }
+        int firstOrder = messages.get(0).getMessageOrder();
+        int lastOrder = messages.get(messages.size() - 1).getMessageOrder();
+        page.setHasOlder(firstOrder > 1);
+        page.setHasNewer(lastOrder < conversationStore.getMessageCount(conversationId));
+        page.setBeforeCursor(firstOrder > 1 ? MessageCursor.encode(conversationId, firstOrder) : null);
+        page.setAfterCursor(MessageCursor.encode(conversationId, lastOrder));
+        return page;
     }
     
     /**
      * 获取用户的所有对话会话
      */
     public List<AIConversation> getUserConversations(Long userId) {
-        return conversationRepository.values().stream()
-                .filter(conv -> conv.getUserId().equals(userId))
-                .sorted((c1, c2) -> c2.getLastActiveAt().compareTo(c1.getLastActiveAt()))
-                .collect(Collectors.toList());
+        return getUserConversations(userId, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * 获取用户最近活跃的limit个对话会话，直接读取用户索引
+     */
+    public List<AIConversation> getUserConversations(Long userId, int limit) {
+        return conversationStore.getUserConversations(userId, limit);
     }
     
     /**
      * 获取用户与特定角色的对话会话
      */
     public List<AIConversation> getUserRoleConversations(Long userId, String roleId) {
-        return conversationRepository.values().stream()
-                .filter(conv -> conv.getUserId().equals(userId) && conv.getRoleId().equals(roleId))
-                .sorted((c1, c2) -> c2.getLastActiveAt().compareTo(c1.getLastActiveAt()))
-                .collect(Collectors.toList());
+        return getUserRoleConversations(userId, roleId, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * 获取用户与特定角色最近活跃的limit个对话会话
+     */
+    public List<AIConversation> getUserRoleConversations(Long userId, String roleId, int limit) {
+        return conversationStore.getUserRoleConversations(userId, roleId, limit);
     }
     
     /**
      * 结束对话会话
      */
     public void endConversation(Long conversationId, String summary, String insights) {
-        AIConversation conversation = conversationRepository.get(conversationId);
+        AIConversation conversation = conversationStore.getConversation(conversationId);
         if (conversation != null) {
-            conversation.completeSession(summary, insights);
+            conversationStore.endConversation(conversation, summary, insights);
         }
     }
     
@@ -325,7 +488,7 @@ public class AIConversationService {
      * 切换AI角色
      */
     public AIConversation switchRole(Long currentConversationId, String newRoleId, String reason) {
-        AIConversation currentConversation = conversationRepository.get(currentConversationId);
+        AIConversation currentConversation = conversationStore.getConversation(currentConversationId);
         if (currentConversation == null) {
             throw new IllegalArgumentException("当前对话会话不存在");
         }
@@ -343,6 +506,7 @@ public class AIConversationService {
         // 复制相关信息
         newConversation.setRelatedEventId(currentConversation.getRelatedEventId());
         newConversation.setRelatedGoalId(currentConversation.getRelatedGoalId());
+        conversationStore.update(newConversation);
         
         // 使用Spring AI生成切换消息
         try {
@@ -352,7 +516,8 @@ public class AIConversationService {
                     newRole.getRoleName(), reason
             );
             
-            String switchMessage = springAIService.roleBasedChat(newRoleId, switchPrompt, "");
+            String switchMessage = aiRequestScheduler.execute(AIRequestScheduler.Priority.INTERACTIVE_BLOCKING,
+                    newConversation.getUserId(), () -> springAIService.roleBasedChat(newRoleId, switchPrompt, ""));
             sendMessage(newConversation.getId(), newConversation.getUserId(), newRoleId, "ai", switchMessage);
         } catch (Exception e) {
             // 如果AI生成失败，使用默认消息
@@ -369,38 +534,50 @@ public class AIConversationService {
      * 获取对话统计信息
      */
     public ConversationStats getConversationStats(Long userId) {
-        List<AIConversation> userConversations = getUserConversations(userId);
-        List<AIMessage> allMessages = new ArrayList<>();
-        
-        for (AIConversation conv : userConversations) {
-            allMessages.addAll(messageRepository.getOrDefault(conv.getId(), new ArrayList<>()));
-        }
+        // 计数器在创建会话、发送消息、结束会话时增量更新，这里直接读取
+        ConversationCounters counters = conversationStore.getUserCounters(userId);
         
         ConversationStats stats = new ConversationStats();
-        stats.setTotalConversations(userConversations.size());
-        stats.setTotalMessages(allMessages.size());
-        stats.setActiveConversations((int) userConversations.stream().filter(AIConversation::isActive).count());
-        
-        // 统计各角色的对话次数
-        Map<String, Integer> roleStats = userConversations.stream()
-                .collect(Collectors.groupingBy(
-                        AIConversation::getRoleId,
-                        Collectors.collectingAndThen(Collectors.counting(), Math::toIntExact)
-                ));
-        stats.setRoleInteractionStats(roleStats);
-        
-        // 计算平均会话时长
-        double avgDuration = userConversations.stream()
-                .filter(conv -> conv.getEndedAt() != null)
-                .mapToLong(AIConversation::getDurationMinutes)
-                .average()
-                .orElse(0.0);
-        stats.setAverageSessionDuration(avgDuration);
+        stats.setTotalConversations(counters.getConversations());
+        stats.setTotalMessages(Math.toIntExact(counters.getMessages()));
+        stats.setActiveConversations(counters.getActiveConversations());
+        stats.setRoleInteractionStats(counters.getRoleConversations());
+        stats.setAverageSessionDuration(counters.getAverageSessionMinutes());
         
         return stats;
     }
     
     // 内部类定义
+    public static class MessagePage {
+        private List<AIMessage> messages;
+        private Integer pageSize;
+        // 取更早一页用的游标，已到第一条时为null
+        private String beforeCursor;
+        // 取更新一页用的游标
+        private String afterCursor;
+        private Boolean hasOlder = false;
+        private Boolean hasNewer = false;
+        
+        // Getters and Setters
+        public List<AIMessage> getMessages() { return messages; }
+        public void setMessages(List<AIMessage> messages) { this.messages = messages; }
+        
+        public Integer getPageSize() { return pageSize; }
+        public void setPageSize(Integer pageSize) { this.pageSize = pageSize; }
+        
+        public String getBeforeCursor() { return beforeCursor; }
+        public void setBeforeCursor(String beforeCursor) { this.beforeCursor = beforeCursor; }
+        
+        public String getAfterCursor() { return afterCursor; }
+        public void setAfterCursor(String afterCursor) { this.afterCursor = afterCursor; }
+        
+        public Boolean getHasOlder() { return hasOlder; }
+        public void setHasOlder(Boolean hasOlder) { this.hasOlder = hasOlder; }
+        
+        public Boolean getHasNewer() { return hasNewer; }
+        public void setHasNewer(Boolean hasNewer) { this.hasNewer = hasNewer; }
+    }
+    
     public static class ConversationStats {
         private Integer totalConversations;
         private Integer totalMessages;
@@ -0,0 +1,95 @@
+package com.dualtracklife.lifeagent.service;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * AI请求截止时间
+ * 由请求头或接口默认值创建，沿着 控制器 -> AIConversationService -> 调度器 -> 模型调用 传递，
+ * 超过截止时间的工作会被放弃，避免为已经离开的调用方继续消耗模型容量
+ */
+public final class AIDeadline {
+
+    /** 客户端声明的超时时间（毫秒） */
+    public static final String TIMEOUT_HEADER = "X-Request-Timeout-Ms";
+
+    private static final long MAX_TIMEOUT_MS = 10 * 60 * 1000L;
+
+    private static final ThreadLocal<AIDeadline> CURRENT = new ThreadLocal<>();
+
+    private final long deadlineNanos;
+
+    private AIDeadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * 从现在起指定毫秒后截止
+     */
+    public static AIDeadline after(long timeoutMs) {
+        long bounded = Math.max(1, Math.min(timeoutMs, MAX_TIMEOUT_MS));
+        return new AIDeadline(System.nanoTime() + bounded * 1_000_000);
+    }
+
+    /**
+     * 根据请求头创建截止时间，请求头缺失或非法时使用接口默认值
+     */
+    public static AIDeadline fromHeader(String timeoutHeader, long defaultTimeoutMs) {
+        if (timeoutHeader != null && !timeoutHeader.isBlank()) {
+            try {
+                long timeoutMs = Long.parseLong(timeoutHeader.trim());
+                if (timeoutMs > 0) {
+                    return after(timeoutMs);
+                }
+            } catch (NumberFormatException e) {
+                // 使用默认值
+            }
+        }
+        return after(defaultTimeoutMs);
+    }
+
+    public long remainingMillis() {
+        return Math.max(0, (deadlineNanos - System.nanoTime()) / 1_000_000);
+    }
+
+    public Duration remaining() {
+        return Duration.ofMillis(remainingMillis());
+    }
+
+    public boolean isExpired() {
+        return System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    /**
+     * 已过期时抛出异常，用于在开始一段工作之前检查
+     */
+    public void checkNotExpired(String stage) {
+        if (isExpired()) {
+            throw new AIDeadlineExceededException(stage);
+        }
+    }
+
+    /**
+     * 当前线程上正在执行的AI调用的截止时间，没有时返回null
+     */
+    public static AIDeadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 在绑定截止时间的情况下执行调用，供SpringAIService在模型调用时读取
+     */
+    public static <T> T callWithin(AIDeadline deadline, Supplier<T> call) {
+        AIDeadline previous = CURRENT.get();
+        CURRENT.set(deadline);
+        try {
+            return call.get();
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+}
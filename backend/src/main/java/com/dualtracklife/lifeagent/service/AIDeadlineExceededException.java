@@ -0,0 +1,21 @@
+package com.dualtracklife.lifeagent.service;
+
+/**
+ * AI请求超过截止时间
+ * stage表示在哪个阶段放弃：skipped（开始前已过期）、queue（排队超时）、model（模型调用超时）
+ */
+public class AIDeadlineExceededException extends RuntimeException {
+
+    public static final String STAGE_SKIPPED = "skipped";
+    public static final String STAGE_QUEUE = "queue";
+    public static final String STAGE_MODEL = "model";
+
+    private final String stage;
+
+    public AIDeadlineExceededException(String stage) {
+        super("AI请求已超过截止时间（" + stage + "）");
+        this.stage = stage;
+    }
+
+    public String getStage() { return stage; }
+}
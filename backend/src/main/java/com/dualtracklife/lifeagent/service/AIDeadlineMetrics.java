@@ -0,0 +1,46 @@
+package com.dualtracklife.lifeagent.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 截止时间统计
+ * 记录按时完成和各阶段超时放弃的请求数量
+ */
+@Component
+public class AIDeadlineMetrics {
+
+    private final AtomicLong completedInTime = new AtomicLong();
+    private final Map<String, AtomicLong> missesByStage = new ConcurrentHashMap<>();
+
+    public void recordMet() {
+        completedInTime.incrementAndGet();
+    }
+
+    public void recordMiss(String stage) {
+        missesByStage.computeIfAbsent(stage, k -> new AtomicLong()).incrementAndGet();
+    }
+
+    /**
+     * 获取统计快照
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        Map<String, Long> misses = new HashMap<>();
+        long totalMisses = 0;
+        for (Map.Entry<String, AtomicLong> entry : missesByStage.entrySet()) {
+            misses.put(entry.getKey(), entry.getValue().get());
+            totalMisses += entry.getValue().get();
+        }
+        long met = completedInTime.get();
+        stats.put("completedInTime", met);
+        stats.put("missed", totalMisses);
+        stats.put("missedByStage", misses);
+        stats.put("missRate", met + totalMisses == 0 ? 0.0 : (double) totalMisses / (met + totalMisses));
+        return stats;
+    }
+}
@@ -0,0 +1,138 @@
+package com.dualtracklife.lifeagent.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * AI交互录制文件存储
+ * 使用紧凑的NDJSON格式（每行一条记录）保存请求/响应对和流式分片时间，供离线回放使用
+ */
+public class AIInteractionStore {
+
+    public static final String TYPE_CALL = "call";
+    public static final String TYPE_STREAM = "stream";
+
+    private final Path file;
+    private final ObjectMapper objectMapper;
+
+    public AIInteractionStore(Path file, ObjectMapper objectMapper) {
+        this.file = file;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 追加一条录制记录
+     */
+    public synchronized void append(AIInteractionRecord record) {
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                writer.write(objectMapper.writeValueAsString(record));
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("写入AI录制文件失败：" + file, e);
+        }
+    }
+
+    /**
+     * 加载全部录制记录，按请求键分组（同一请求可能被录制多次）
+     */
+    public Map<String, List<AIInteractionRecord>> load() {
+        Map<String, List<AIInteractionRecord>> records = new HashMap<>();
+        if (!Files.exists(file)) {
+            return records;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                AIInteractionRecord record = objectMapper.readValue(line, AIInteractionRecord.class);
+                records.computeIfAbsent(record.getK(), k -> new ArrayList<>()).add(record);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取AI录制文件失败：" + file, e);
+        }
+        return records;
+    }
+
+    public Path getFile() { return file; }
+
+    /**
+     * 计算请求键：按消息类型和文本内容做SHA-256，忽略模型参数
+     */
+    public static String keyOf(Prompt prompt) {
+        StringBuilder canonical = new StringBuilder();
+        for (Message message : prompt.getInstructions()) {
+            canonical.append(message.getMessageType().getValue()).append('\n');
+            canonical.append(message.getText() != null ? message.getText() : "").append('\n');
+        }
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(canonical.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 单条录制记录，字段名刻意缩短以压缩文件体积
+     * k: 请求键, t: call/stream, l: 总耗时(毫秒), r: 完整回复, c: 流式分片 [距上一分片的毫秒数, 文本]
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class AIInteractionRecord {
+        private String k;
+        private String t;
+        private Long l;
+        private String r;
+        private List<List<Object>> c;
+
+        public AIInteractionRecord() {
+        }
+
+        public AIInteractionRecord(String k, String t, Long l, String r, List<List<Object>> c) {
+            this.k = k;
+            this.t = t;
+            this.l = l;
+            this.r = r;
+            this.c = c;
+        }
+
+        // Getters and Setters
+        public String getK() { return k; }
+        public void setK(String k) { this.k = k; }
+
+        public String getT() { return t; }
+        public void setT(String t) { this.t = t; }
+
+        public Long getL() { return l; }
+        public void setL(Long l) { this.l = l; }
+
+        public String getR() { return r; }
+        public void setR(String r) { this.r = r; }
+
+        public List<List<Object>> getC() { return c; }
+        public void setC(List<List<Object>> c) { this.c = c; }
+    }
+}
@@ -0,0 +1,129 @@
+package com.dualtracklife.lifeagent.service;
+
+import com.dualtracklife.lifeagent.model.AIRole;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * AI专家团服务
+ * 针对同一个问题并发询问2-5个AI角色，把各角色的流式回答交错合并到同一个SSE连接中，
+ * 总耗时取决于最慢的角色，而不是各角色耗时之和。
+ * 各角色的调用作为同一个请求提交给调度器，一起拿到槽位，不会因为属于同一个用户而彼此排队
+ */
+@Service
+public class AIPanelService {
+
+    public static final int MIN_PANEL_ROLES = 2;
+    public static final int MAX_PANEL_ROLES = 5;
+
+    @Autowired
+    private AIRoleService aiRoleService;
+
+    @Autowired
+    private SpringAIService springAIService;
+
+    @Autowired
+    private AIRequestScheduler aiRequestScheduler;
+
+    /**
+     * 专家团流式问答
+     * 事件类型：role_start, chunk, role_done, role_error, panel_done，数据中均带有roleId
+     */
+    public Flux<ServerSentEvent<Map<String, Object>>> panelStream(Long userId, AIDeadline deadline, String question, List<String> roleIds, String context) {
+        List<AIRole> roles = resolvePanelRoles(roleIds);
+        long panelStart = System.currentTimeMillis();
+
+        List<Supplier<Flux<String>>> calls = new ArrayList<>();
+        for (AIRole role : roles) {
+            calls.add(() -> springAIService.roleBasedStreamChat(role.getRoleId(), question, context));
+        }
+        List<Flux<String>> scheduled = aiRequestScheduler.scheduleGroup(
+                AIRequestScheduler.Priority.INTERACTIVE_STREAMING, userId, deadline, calls);
+
+        List<Flux<ServerSentEvent<Map<String, Object>>>> roleStreams = new ArrayList<>();
+        for (int i = 0; i < roles.size(); i++) {
+            roleStreams.add(roleStream(roles.get(i), scheduled.get(i)));
+        }
+
+        Map<String, Object> done = new HashMap<>();
+        done.put("roles", roles.stream().map(AIRole::getRoleId).toList());
+
+        // merge会同时订阅所有角色的流，分片按到达顺序交错输出
+        return Flux.merge(roleStreams)
+                .concatWith(Flux.defer(() -> {
+                    done.put("elapsedMs", System.currentTimeMillis() - panelStart);
+                    return Flux.just(event("panel_done", done));
+                }));
+    }
+
+    /**
+     * 单个角色的事件流，某个角色失败不影响其他角色
+     */
+    private Flux<ServerSentEvent<Map<String, Object>>> roleStream(AIRole role, Flux<String> content) {
+        return Flux.defer(() -> {
+            long roleStart = System.currentTimeMillis();
+
+            Flux<ServerSentEvent<Map<String, Object>>> chunks = content
+                    .map(chunk -> {
+                        Map<String, Object> data = roleData(role);
+                        data.put("content", chunk);
+                        return event("chunk", data);
+                    });
+
+            return Flux.just(event("role_start", roleData(role)))
+                    .concatWith(chunks)
+                    .concatWith(Flux.defer(() -> {
+                        Map<String, Object> data = roleData(role);
+                        data.put("elapsedMs", System.currentTimeMillis() - roleStart);
+                        return Flux.just(event("role_done", data));
+                    }))
+                    .onErrorResume(e -> {
+                        Map<String, Object> data = roleData(role);
+                        data.put("error", "AI服务暂时不可用：" + e.getMessage());
+                        return Flux.just(event("role_error", data));
+                    });
+        });
+    }
+
+    /**
+     * 校验并解析专家团角色：去重后需要2-5个已启用的角色
+     */
+    private List<AIRole> resolvePanelRoles(List<String> roleIds) {
+        if (roleIds == null) {
+            throw new IllegalArgumentException("专家团角色不能为空");
+        }
+
+        List<AIRole> roles = new ArrayList<>();
+        for (String roleId : new LinkedHashSet<>(roleIds)) {
+            AIRole role = aiRoleService.getRoleById(roleId);
+            if (role == null || !role.getIsActive()) {
+                throw new IllegalArgumentException("AI角色不存在：" + roleId);
+            }
+            roles.add(role);
+        }
+
+        if (roles.size() < MIN_PANEL_ROLES || roles.size() > MAX_PANEL_ROLES) {
+            throw new IllegalArgumentException("专家团需要" + MIN_PANEL_ROLES + "-" + MAX_PANEL_ROLES + "个不同的AI角色");
+        }
+        return roles;
+    }
+
+    private Map<String, Object> roleData(AIRole role) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("roleId", role.getRoleId());
+        data.put("roleName", role.getRoleName());
+        return data;
+    }
+
+    private ServerSentEvent<Map<String, Object>> event(String type, Map<String, Object> data) {
+        return ServerSentEvent.<Map<String, Object>>builder()
+                .event(type)
+                .data(data)
+                .build();
+    }
+}
@@ -0,0 +1,12 @@
+package com.dualtracklife.lifeagent.service;
+
+/**
+ * AI回复生成失败
+ * 带幂等键的请求不返回兜底回复，客户端可以使用同一个键重试
+ */
+public class AIReplyFailedException extends RuntimeException {
+
+    public AIReplyFailedException(Throwable cause) {
+        super("AI回复生成失败: " + cause.getMessage(), cause);
+    }
+}
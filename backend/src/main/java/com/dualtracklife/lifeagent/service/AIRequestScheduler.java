@@ -0,0 +1,498 @@
+package com.dualtracklife.lifeagent.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * AI请求调度器
+ * 位于SpringAIService之前，控制同时发往大模型的请求数量：
+ * - 按优先级分类：交互式流式 > 交互式阻塞 > 后台任务
+ * - 同一优先级内按用户做公平排队（虚拟完成时间），单个用户的大量请求不会挤占其他用户
+ * - 一组同时发起的调用（如专家团的各个角色）作为一个请求排队，一次占用多个槽位，按调用数量计入公平排队
+ * - 后台任务最多占用固定数量的并发槽位，剩余槽位永远留给交互请求
+ * - 等待超过阈值的请求会被提前调度，防止饥饿
+ * - 携带截止时间的请求在排队或模型调用超时后会被放弃
+ */
+@Service
+public class AIRequestScheduler {
+
+    public enum Priority {
+        INTERACTIVE_STREAMING,
+        INTERACTIVE_BLOCKING,
+        BACKGROUND
+    }
+
+    /** 未登录或未携带用户ID的请求共用一个排队队列 */
+    public static final Long ANONYMOUS_USER_ID = 0L;
+
+    private static final long NO_QUEUED = Long.MIN_VALUE;
+    private static final Priority[] INTERACTIVE_PRIORITIES = {Priority.INTERACTIVE_STREAMING, Priority.INTERACTIVE_BLOCKING};
+
+    @Value("${life-agent.ai.scheduler.max-concurrent:8}")
+    private int maxConcurrent;
+
+    @Value("${life-agent.ai.scheduler.background-max-concurrent:2}")
+    private int backgroundMaxConcurrent;
+
+    @Value("${life-agent.ai.scheduler.starvation-threshold-ms:5000}")
+    private long starvationThresholdMs;
+
+    @Autowired
+    private AIDeadlineMetrics deadlineMetrics;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<Priority, PriorityQueue<Ticket>> queues = new EnumMap<>(Priority.class);
+    private final Map<Priority, Map<Long, Double>> lastFinishTags = new EnumMap<>(Priority.class);
+    private final Map<Priority, Double> virtualTimes = new EnumMap<>(Priority.class);
+    // 每个优先级按入队顺序排列的请求，已出队的在队首时才移除；只在持有锁时访问
+    private final Map<Priority, ArrayDeque<Ticket>> arrivals = new EnumMap<>(Priority.class);
+    // 每个优先级排队最久的请求的入队时间（nanoTime），没有排队时为NO_QUEUED；在锁内更新，读取不加锁
+    private final AtomicLongArray oldestQueuedNanos = new AtomicLongArray(Priority.values().length);
+    private int inFlight = 0;
+    private int backgroundInFlight = 0;
+    private long sequence = 0;
+
+    // 统计信息
+    private final Map<Priority, AtomicLong> dispatchedCounts = new EnumMap<>(Priority.class);
+    private final Map<Priority, AtomicLong> totalWaitMillis = new EnumMap<>(Priority.class);
+    private final Map<Priority, AtomicLong> maxWaitMillis = new EnumMap<>(Priority.class);
+    private final AtomicLong starvationPromotions = new AtomicLong();
+
+    public AIRequestScheduler() {
+        for (Priority priority : Priority.values()) {
+            queues.put(priority, new PriorityQueue<>(Comparator
+                    .comparingDouble((Ticket t) -> t.finishTag)
+                    .thenComparingLong(t -> t.sequence)));
+            lastFinishTags.put(priority, new HashMap<>());
+            virtualTimes.put(priority, 0.0);
+            arrivals.put(priority, new ArrayDeque<>());
+            oldestQueuedNanos.set(priority.ordinal(), NO_QUEUED);
+            dispatchedCounts.put(priority, new AtomicLong());
+            totalWaitMillis.put(priority, new AtomicLong());
+            maxWaitMillis.put(priority, new AtomicLong());
+        }
+    }
+
+    /**
+     * 以指定优先级执行阻塞式AI调用，排队期间阻塞当前线程
+     */
+    public <T> T execute(Priority priority, Long userId, Supplier<T> call) {
+        return execute(priority, userId, null, call);
+    }
+
+    /**
+     * 以指定优先级和截止时间执行阻塞式AI调用
+     * 排队超时直接放弃；拿到槽位后截止时间绑定到当前线程，由SpringAIService约束模型调用
+     */
+    public <T> T execute(Priority priority, Long userId, AIDeadline deadline, Supplier<T> call) {
+        try {
+            if (deadline != null) {
+                deadline.checkNotExpired(AIDeadlineExceededException.STAGE_SKIPPED);
+            }
+            Ticket ticket = enqueue(priority, userId);
+            awaitGrant(ticket, deadline);
+
+            try {
+                T result = deadline != null ? AIDeadline.callWithin(deadline, call) : call.get();
+                if (deadline != null) {
+                    deadlineMetrics.recordMet();
+                }
+                return result;
+            } finally {
+                finish(ticket);
+            }
+        } catch (AIDeadlineExceededException e) {
+            deadlineMetrics.recordMiss(e.getStage());
+            throw e;
+        }
+    }
+
+    /**
+     * 以指定优先级执行流式AI调用，拿到并发槽位后才订阅上游，流结束或被取消时释放槽位
+     */
+    public <T> Flux<T> schedule(Priority priority, Long userId, Supplier<Flux<T>> call) {
+        return schedule(priority, userId, null, call);
+    }
+
+    /**
+     * 以指定优先级和截止时间执行流式AI调用
+     * 截止时间是从订阅开始计算的总时长，到期后取消上游订阅，底层HTTP请求随之中断
+     */
+    public <T> Flux<T> schedule(Priority priority, Long userId, AIDeadline deadline, Supplier<Flux<T>> call) {
+        // 每次订阅单独排队
+        return Flux.defer(() -> scheduled(new TicketGroup(priority, userId, 1), deadline, call));
+    }
+
+    /**
+     * 以指定优先级和截止时间执行一组同时发起的流式AI调用，返回与calls一一对应的流
+     * 整组作为同一个用户的一个请求排队：组内调用不会彼此排队，拿到槽位时一次占用与调用数量相同的槽位
+     * （最多max-concurrent个），公平排队按调用数量计费；每个调用结束时各自归还一个槽位。返回的每个流只能订阅一次
+     */
+    public <T> List<Flux<T>> scheduleGroup(Priority priority, Long userId, AIDeadline deadline, List<Supplier<Flux<T>>> calls) {
+        TicketGroup group = new TicketGroup(priority, userId, calls.size());
+        List<Flux<T>> results = new ArrayList<>();
+        for (Supplier<Flux<T>> call : calls) {
+            results.add(scheduled(group, deadline, call));
+        }
+        return results;
+    }
+
+    private <T> Flux<T> scheduled(TicketGroup group, AIDeadline deadline, Supplier<Flux<T>> call) {
+        return Flux.defer(() -> {
+            if (deadline != null && deadline.isExpired()) {
+                group.leave();
+                deadlineMetrics.recordMiss(AIDeadlineExceededException.STAGE_SKIPPED);
+                return Flux.<T>error(new AIDeadlineExceededException(AIDeadlineExceededException.STAGE_SKIPPED));
+            }
+
+            Ticket ticket = group.join();
+            // 组内调用共享同一个授权，某个调用取消排队时不能取消其他调用的等待
+            Mono<Boolean> granted = Mono.fromFuture(ticket.grant, true);
+            if (deadline != null) {
+                granted = granted.timeout(deadline.remaining())
+                        .onErrorMap(TimeoutException.class,
+                                e -> new AIDeadlineExceededException(AIDeadlineExceededException.STAGE_QUEUE));
+            }
+
+            Flux<T> result = granted.flatMapMany(ok -> {
+                Flux<T> upstream = call.get();
+                if (deadline == null) {
+                    return upstream;
+                }
+                // 共享同一个到期信号，使超时按绝对截止时间而不是分片间隔计算
+                Mono<Long> expiry = Mono.delay(deadline.remaining()).cache();
+                return upstream.timeout(expiry, chunk -> expiry)
+                        .onErrorMap(TimeoutException.class,
+                                e -> new AIDeadlineExceededException(AIDeadlineExceededException.STAGE_MODEL))
+                        .doOnComplete(deadlineMetrics::recordMet);
+            });
+
+            return result
+                    .doOnError(AIDeadlineExceededException.class, e -> deadlineMetrics.recordMiss(e.getStage()))
+                    .doFinally(signal -> finish(ticket));
+        });
+    }
+
+    /**
+     * 等待调度器分配槽位，有截止时间时最多等待到截止时间
+     */
+    private void awaitGrant(Ticket ticket, AIDeadline deadline) {
+        try {
+            if (deadline != null) {
+                ticket.grant.get(deadline.remainingMillis(), TimeUnit.MILLISECONDS);
+            } else {
+                ticket.grant.get();
+            }
+        } catch (TimeoutException e) {
+            finish(ticket);
+            throw new AIDeadlineExceededException(AIDeadlineExceededException.STAGE_QUEUE);
+        } catch (InterruptedException e) {
+            finish(ticket);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("AI请求在排队时被中断", e);
+        } catch (ExecutionException e) {
+            finish(ticket);
+            throw new IllegalStateException("AI请求调度失败", e.getCause());
+        }
+    }
+
+    /**
+     * 入队：计算用户在该优先级内的虚拟完成时间，然后尝试调度
+     */
+    private Ticket enqueue(Priority priority, Long userId) {
+        return enqueue(priority, userId, 1);
+    }
+
+    /**
+     * 入队一个包含members个调用的请求，虚拟完成时间按调用数量推进
+     */
+    private Ticket enqueue(Priority priority, Long userId, int members) {
+        Long flowKey = userId != null ? userId : ANONYMOUS_USER_ID;
+        Ticket ticket;
+        List<Ticket> granted;
+
+        lock.lock();
+        try {
+            Map<Long, Double> finishTags = lastFinishTags.get(priority);
+            double startTag = Math.max(virtualTimes.get(priority), finishTags.getOrDefault(flowKey, 0.0));
+            ticket = new Ticket(priority, flowKey, startTag, startTag + members, sequence++, members);
+            finishTags.put(flowKey, ticket.finishTag);
+            queues.get(priority).add(ticket);
+            arrivals.get(priority).add(ticket);
+            if (oldestQueuedNanos.get(priority.ordinal()) == NO_QUEUED) {
+                oldestQueuedNanos.set(priority.ordinal(), ticket.enqueuedAtNanos);
+            }
+            granted = dispatchLocked();
+        } finally {
+            lock.unlock();
+        }
+
+        grantAll(granted);
+        return ticket;
+    }
+
+    /**
+     * 请求中的一个调用结束（完成、失败或取消）：全部调用都在排队时结束则出队，已占用槽位则释放一个；
+     * 组内剩余调用仍多于占用的槽位时（组大于max-concurrent）暂不释放。单个调用的请求只生效一次
+     */
+    private void finish(Ticket ticket) {
+        List<Ticket> granted;
+
+        lock.lock();
+        try {
+            if (ticket.state == TicketState.DONE) {
+                return;
+            }
+            ticket.members--;
+            if (ticket.state == TicketState.QUEUED) {
+                if (ticket.members > 0) {
+                    return;
+                }
+                queues.get(ticket.priority).remove(ticket);
+                ticket.state = TicketState.DONE;
+                ticket.grant.cancel(false);
+                refreshOldestLocked(ticket.priority);
+                return;
+            }
+            if (ticket.members <= 0) {
+                ticket.state = TicketState.DONE;
+            }
+            if (ticket.members >= ticket.slots) {
+                return;
+            }
+            int released = ticket.slots - Math.max(ticket.members, 0);
+            ticket.slots -= released;
+            inFlight -= released;
+            if (ticket.priority == Priority.BACKGROUND) {
+                backgroundInFlight -= released;
+            }
+            granted = dispatchLocked();
+        } finally {
+            lock.unlock();
+        }
+
+        grantAll(granted);
+    }
+
+    /**
+     * 在持有锁的情况下尽可能多地分配空闲槽位
+     * 被选中的请求需要的槽位不够时停止分配，让空出的槽位留给它，避免多槽位的请求被单槽位请求一直插队
+     */
+    private List<Ticket> dispatchLocked() {
+        List<Ticket> granted = new ArrayList<>();
+        while (inFlight < maxConcurrent) {
+            Ticket next = selectNextLocked();
+            if (next == null) {
+                break;
+            }
+            int slots = slotsFor(next);
+            if (inFlight + slots > maxConcurrent) {
+                break;
+            }
+
+            PriorityQueue<Ticket> queue = queues.get(next.priority);
+            queue.remove(next);
+            virtualTimes.put(next.priority, next.startTag);
+            if (queue.isEmpty()) {
+                // 该优先级没有排队请求时所有用户都处于空闲状态，可以清理完成时间记录
+                lastFinishTags.get(next.priority).clear();
+            }
+
+            next.state = TicketState.DISPATCHED;
+            next.slots = slots;
+            refreshOldestLocked(next.priority);
+            inFlight += slots;
+            if (next.priority == Priority.BACKGROUND) {
+                backgroundInFlight += slots;
+            }
+            recordWait(next);
+            granted.add(next);
+        }
+        return granted;
+    }
+
+    /**
+     * 选择下一个请求：优先处理等待超过饥饿阈值最久的请求，否则按优先级顺序
+     */
+    private Ticket selectNextLocked() {
+        long now = System.nanoTime();
+
+        Ticket starved = null;
+        for (Priority priority : Priority.values()) {
+            Ticket head = queues.get(priority).peek();
+            if (head != null && !backgroundSlotsAvailable(head)) {
+                continue;
+            }
+            if (head != null && waitedMillis(head, now) >= starvationThresholdMs
+                    && (starved == null || head.enqueuedAtNanos < starved.enqueuedAtNanos)) {
+                starved = head;
+            }
+        }
+        if (starved != null) {
+            if (starved != queues.get(Priority.INTERACTIVE_STREAMING).peek()) {
+                starvationPromotions.incrementAndGet();
+            }
+            return starved;
+        }
+
+        for (Priority priority : Priority.values()) {
+            Ticket head = queues.get(priority).peek();
+            if (head != null && backgroundSlotsAvailable(head)) {
+                return head;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 请求拿到槽位时占用的槽位数：组内尚未结束的调用数，不超过该优先级能占用的槽位上限
+     */
+    private int slotsFor(Ticket ticket) {
+        int limit = ticket.priority == Priority.BACKGROUND ? backgroundMaxConcurrent : maxConcurrent;
+        return Math.max(1, Math.min(ticket.members, limit));
+    }
+
+    private boolean backgroundSlotsAvailable(Ticket ticket) {
+        return ticket.priority != Priority.BACKGROUND || backgroundInFlight + slotsFor(ticket) <= backgroundMaxConcurrent;
+    }
+
+    private void grantAll(List<Ticket> granted) {
+        for (Ticket ticket : granted) {
+            ticket.grant.complete(Boolean.TRUE);
+        }
+    }
+
+    private void recordWait(Ticket ticket) {
+        long waited = waitedMillis(ticket, System.nanoTime());
+        dispatchedCounts.get(ticket.priority).incrementAndGet();
+        totalWaitMillis.get(ticket.priority).addAndGet(waited);
+        maxWaitMillis.get(ticket.priority).accumulateAndGet(waited, Math::max);
+    }
+
+    private long waitedMillis(Ticket ticket, long nowNanos) {
+        return (nowNanos - ticket.enqueuedAtNanos) / 1_000_000;
+    }
+
+    /**
+     * 请求出队后更新该优先级排队最久的请求：跳过队首已经不在排队的请求，每个请求只被移除一次
+     */
+    private void refreshOldestLocked(Priority priority) {
+        ArrayDeque<Ticket> queued = arrivals.get(priority);
+        while (!queued.isEmpty() && queued.peek().state != TicketState.QUEUED) {
+            queued.poll();
+        }
+        oldestQueuedNanos.set(priority.ordinal(), queued.isEmpty() ? NO_QUEUED : queued.peek().enqueuedAtNanos);
+    }
+
+    /**
+     * 交互请求当前的排队时延：排队最久的交互请求已等待的毫秒数，没有排队时为0。
+     * 每次准入判断都会调用，只读取两个时间戳，不加锁也不遍历队列
+     */
+    public long interactiveQueueDelayMillis() {
+        long now = System.nanoTime();
+        long delay = 0;
+        for (Priority priority : INTERACTIVE_PRIORITIES) {
+            long oldest = oldestQueuedNanos.get(priority.ordinal());
+            if (oldest != NO_QUEUED) {
+                delay = Math.max(delay, (now - oldest) / 1_000_000);
+            }
+        }
+        return delay;
+    }
+
+    /**
+     * 获取调度统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        lock.lock();
+        try {
+            stats.put("maxConcurrent", maxConcurrent);
+            stats.put("backgroundMaxConcurrent", backgroundMaxConcurrent);
+            stats.put("inFlight", inFlight);
+            stats.put("backgroundInFlight", backgroundInFlight);
+            for (Priority priority : Priority.values()) {
+                Map<String, Object> classStats = new HashMap<>();
+                long dispatched = dispatchedCounts.get(priority).get();
+                classStats.put("waiting", queues.get(priority).size());
+                classStats.put("dispatched", dispatched);
+                classStats.put("averageWaitMs", dispatched == 0 ? 0.0 : (double) totalWaitMillis.get(priority).get() / dispatched);
+                classStats.put("maxWaitMs", maxWaitMillis.get(priority).get());
+                stats.put(priority.name().toLowerCase(), classStats);
+            }
+        } finally {
+            lock.unlock();
+        }
+        stats.put("starvationPromotions", starvationPromotions.get());
+        return stats;
+    }
+
+    private enum TicketState { QUEUED, DISPATCHED, DONE }
+
+    private static class Ticket {
+        private final Priority priority;
+        private final Long userId;
+        private final double startTag;
+        private final double finishTag;
+        private final long sequence;
+        private final long enqueuedAtNanos = System.nanoTime();
+        private final CompletableFuture<Boolean> grant = new CompletableFuture<>();
+        private TicketState state = TicketState.QUEUED;
+        // 尚未结束的调用数和当前占用的槽位数，只在持有锁时访问
+        private int members;
+        private int slots;
+
+        private Ticket(Priority priority, Long userId, double startTag, double finishTag, long sequence, int members) {
+            this.priority = priority;
+            this.userId = userId;
+            this.startTag = startTag;
+            this.finishTag = finishTag;
+            this.sequence = sequence;
+            this.members = members;
+        }
+    }
+
+    /**
+     * 一组共用一个请求排队的调用：第一个调用订阅时入队，因截止时间已过而跳过的调用不计入
+     */
+    private class TicketGroup {
+        private final Priority priority;
+        private final Long userId;
+        private int pending;
+        private Ticket ticket;
+
+        private TicketGroup(Priority priority, Long userId, int size) {
+            this.priority = priority;
+            this.userId = userId;
+            this.pending = size;
+        }
+
+        synchronized Ticket join() {
+            if (ticket == null) {
+                ticket = enqueue(priority, userId, pending);
+            }
+            return ticket;
+        }
+
+        synchronized void leave() {
+            if (ticket != null) {
+                finish(ticket);
+            } else {
+                pending--;
+            }
+        }
+    }
+}
@@ -8,6 +8,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import jakarta.annotation.PostConstruct;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
@@ -17,9 +18,13 @@ import java.util.stream.Collectors;
 @Service
 public class AIRoleService {
     
+    @Autowired
+    private IntentClassifier intentClassifier;
+    
     // 模拟数据存储，实际应该使用Repository
     private Map<String, AIRole> roleRepository = new HashMap<>();
-    private Map<String, UserAIRelationship> relationshipRepository = new HashMap<>();
+    // 每轮对话都会更新关系，需支持并发访问
+    private Map<String, UserAIRelationship> relationshipRepository = new ConcurrentHashMap<>();
     
     @PostConstruct
     public void initializeRoles() {
@@ -204,8 +209,16 @@ public class AIRoleService {
     
     /**
      * 智能推荐最适合的AI角色
+     * 先用本地意图分类器判断事件标题和描述，置信度足够时采用其推荐，否则按事件类型规则推荐
      */
     public String recommendRoleForEvent(LifeEvent event) {
+        String text = (event.getTitle() != null ? event.getTitle() : "") + "\n"
+                + (event.getDescription() != null ? event.getDescription() : "");
+        IntentClassifier.IntentPrediction prediction = intentClassifier.classify(text);
+        if (prediction != null && prediction.isRoleConfident() && roleRepository.containsKey(prediction.getRoleId())) {
+            return prediction.getRoleId();
+        }
+        
         String eventType = event.getEventType();
         String emotionalState = event.getEmotionalState();
         Integer importanceLevel = event.getImportanceLevel();
@@ -0,0 +1,142 @@
+package com.dualtracklife.lifeagent.service;
+
+import org.springframework.ai.chat.model.ChatModel;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 单个大模型服务提供方及其实时健康状态
+ * 维护调用延迟和首个分片延迟的EWMA、错误率EWMA，连续失败达到阈值后熔断一段时间，
+ * 冷却结束后进入半开状态，只放行一个探测请求：成功则恢复，失败则立即重新熔断
+ */
+public class ChatBackend {
+
+    private static final double EWMA_ALPHA = 0.2;
+
+    private final String name;
+    private final ChatModel chatModel;
+    private final int failureThreshold;
+    private final long cooldownMs;
+
+    private double callLatencyEwmaMs = -1;
+    private double firstChunkLatencyEwmaMs = -1;
+    private double errorRateEwma = 0;
+    private int consecutiveFailures = 0;
+    private long circuitOpenUntil = 0;
+    // 半开状态下已放行的探测请求尚未结束
+    private boolean probeInFlight = false;
+    private long totalRequests = 0;
+    private long totalFailures = 0;
+
+    public ChatBackend(String name, ChatModel chatModel, int failureThreshold, long cooldownMs) {
+        this.name = name;
+        this.chatModel = chatModel;
+        this.failureThreshold = failureThreshold;
+        this.cooldownMs = cooldownMs;
+    }
+
+    /**
+     * 是否可以接收请求：未熔断，或熔断冷却已结束且没有正在进行的探测请求
+     */
+    public synchronized boolean isAvailable() {
+        return consecutiveFailures < failureThreshold
+                || (!probeInFlight && System.currentTimeMillis() >= circuitOpenUntil);
+    }
+
+    /**
+     * 调用前占用一次调用机会：未熔断时总是成功；半开状态只有第一个调用方成功，成为探测请求，
+     * 探测结束（recordSuccess、recordFailure或releaseProbe）前其他调用方跳过该提供方
+     */
+    public synchronized boolean tryAcquire() {
+        if (consecutiveFailures < failureThreshold) {
+            return true;
+        }
+        if (probeInFlight || System.currentTimeMillis() < circuitOpenUntil) {
+            return false;
+        }
+        probeInFlight = true;
+        return true;
+    }
+
+    /**
+     * 探测请求没有结果就结束（如流式请求被取消）时归还探测机会
+     */
+    public synchronized void releaseProbe() {
+        probeInFlight = false;
+    }
+
+    public synchronized boolean isHealthy() {
+        return consecutiveFailures < failureThreshold;
+    }
+
+    /**
+     * 记录成功：流式请求记录首个分片延迟，阻塞请求记录完整调用延迟
+     */
+    public synchronized void recordSuccess(long latencyMs, boolean streaming) {
+        totalRequests++;
+        if (streaming) {
+            firstChunkLatencyEwmaMs = ewma(firstChunkLatencyEwmaMs, latencyMs);
+        } else {
+            callLatencyEwmaMs = ewma(callLatencyEwmaMs, latencyMs);
+        }
+        errorRateEwma = errorRateEwma * (1 - EWMA_ALPHA);
+        consecutiveFailures = 0;
+        probeInFlight = false;
+    }
+
+    /**
+     * 记录失败：失败前已等待的时间同样计入延迟EWMA，使超时或变慢后才出错的提供方排到后面；
+     * 失败只会让延迟估计变大，避免立即返回的错误（如连接被拒绝）让提供方显得更快
+     */
+    public synchronized void recordFailure(long latencyMs, boolean streaming) {
+        if (streaming) {
+            firstChunkLatencyEwmaMs = Math.max(firstChunkLatencyEwmaMs, ewma(firstChunkLatencyEwmaMs, latencyMs));
+        } else {
+            callLatencyEwmaMs = Math.max(callLatencyEwmaMs, ewma(callLatencyEwmaMs, latencyMs));
+        }
+        totalRequests++;
+        totalFailures++;
+        errorRateEwma = errorRateEwma * (1 - EWMA_ALPHA) + EWMA_ALPHA;
+        consecutiveFailures++;
+        probeInFlight = false;
+        if (consecutiveFailures >= failureThreshold) {
+            circuitOpenUntil = System.currentTimeMillis() + cooldownMs;
+        }
+    }
+
+    /**
+     * 路由评分，越小越好：预期延迟按错误率放大；尚无延迟样本时返回-1，由路由器决定是否探索
+     */
+    public synchronized double score(boolean streaming) {
+        double latency = streaming ? firstChunkLatencyEwmaMs : callLatencyEwmaMs;
+        if (latency < 0) {
+            return -1;
+        }
+        return latency * (1 + 4 * errorRateEwma);
+    }
+
+    private double ewma(double current, long sample) {
+        return current < 0 ? sample : current * (1 - EWMA_ALPHA) + sample * EWMA_ALPHA;
+    }
+
+    public String getName() { return name; }
+
+    public ChatModel getChatModel() { return chatModel; }
+
+    /**
+     * 获取健康状态快照
+     */
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("name", name);
+        stats.put("healthy", isHealthy());
+        stats.put("callLatencyEwmaMs", callLatencyEwmaMs);
+        stats.put("firstChunkLatencyEwmaMs", firstChunkLatencyEwmaMs);
+        stats.put("errorRateEwma", errorRateEwma);
+        stats.put("consecutiveFailures", consecutiveFailures);
+        stats.put("totalRequests", totalRequests);
+        stats.put("totalFailures", totalFailures);
+        return stats;
+    }
+}
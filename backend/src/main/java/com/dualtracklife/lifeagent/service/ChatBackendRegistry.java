@@ -0,0 +1,75 @@
+package com.dualtracklife.lifeagent.service;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 大模型服务提供方注册表
+ * 按实时健康状态、错误率和延迟EWMA给出每次请求的候选顺序
+ */
+public class ChatBackendRegistry {
+
+    private final List<ChatBackend> backends;
+    private final double explorationRate;
+
+    /**
+     * @param backends        按配置优先级排列的服务提供方，评分相同时靠前者优先
+     * @param explorationRate 随机把一个健康的提供方提到首位的概率，用于刷新非首选提供方的延迟样本
+     */
+    public ChatBackendRegistry(List<ChatBackend> backends, double explorationRate) {
+        if (backends.isEmpty()) {
+            throw new IllegalArgumentException("至少需要配置一个AI服务提供方");
+        }
+        this.backends = List.copyOf(backends);
+        this.explorationRate = explorationRate;
+    }
+
+    /**
+     * 本次请求的候选顺序：可用的按评分升序，熔断中的排在最后；路由时仍要经过ChatBackend.tryAcquire，
+     * 排在最后的提供方只有在冷却结束后才会作为探测请求被尝试
+     * 没有延迟样本的提供方排在有样本的之后，避免冷启动时把流量都打到未验证的提供方上
+     */
+    public List<ChatBackend> rankedBackends(boolean streaming) {
+        List<ChatBackend> available = new ArrayList<>();
+        List<ChatBackend> unavailable = new ArrayList<>();
+        for (ChatBackend backend : backends) {
+            if (backend.isAvailable()) {
+                available.add(backend);
+            } else {
+                unavailable.add(backend);
+            }
+        }
+
+        Map<ChatBackend, Double> scores = new HashMap<>();
+        for (ChatBackend backend : available) {
+            double score = backend.score(streaming);
+            scores.put(backend, score < 0 ? Double.MAX_VALUE : score);
+        }
+        // List.sort是稳定排序，评分相同时保持配置顺序
+        available.sort(Comparator.comparingDouble(scores::get));
+
+        if (available.size() > 1 && ThreadLocalRandom.current().nextDouble() < explorationRate) {
+            ChatBackend explored = available.remove(1 + ThreadLocalRandom.current().nextInt(available.size() - 1));
+            available.add(0, explored);
+        }
+
+        List<ChatBackend> ranked = new ArrayList<>(available);
+        ranked.addAll(unavailable);
+        return ranked;
+    }
+
+    public List<ChatBackend> getBackends() {
+        return backends;
+    }
+
+    /**
+     * 获取各提供方的健康状态
+     */
+    public List<Map<String, Object>> getStats() {
+        List<Map<String, Object>> stats = new ArrayList<>();
+        for (ChatBackend backend : backends) {
+            stats.add(backend.getStats());
+        }
+        return stats;
+    }
+}
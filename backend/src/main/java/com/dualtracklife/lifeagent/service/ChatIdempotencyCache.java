@@ -0,0 +1,263 @@
+package com.dualtracklife.lifeagent.service;
+
+import com.dualtracklife.lifeagent.model.AIMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 对话请求幂等缓存
+ * 客户端超时重试时携带同一个Idempotency-Key，直接返回第一次请求的AI回复，
+ * 第一次请求还在生成时等待同一个结果，不再重复保存用户消息和调用模型。
+ * 请求失败时结果不缓存，重试会重新生成回复，但第一次已经保存的用户消息记在键上，重试时复用而不再追加。
+ * 每个会话保留最近max-keys-per-conversation个键，超过ttl-minutes的键失效
+ */
+@Service
+public class ChatIdempotencyCache {
+
+    public static final String IDEMPOTENCY_HEADER = "Idempotency-Key";
+
+    @Value("${life-agent.ai.idempotency.ttl-minutes:10}")
+    private long ttlMinutes;
+
+    @Value("${life-agent.ai.idempotency.max-keys-per-conversation:64}")
+    private int maxKeysPerConversation;
+
+    private final Map<Long, KeyTable> tables = new ConcurrentHashMap<>();
+    // TTL统一，按写入顺序即到期顺序，过期清理只看队首
+    private final Queue<Expiry> expiryQueue = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong replays = new AtomicLong();
+    private final AtomicLong attached = new AtomicLong();
+
+    /**
+     * 按幂等键执行一次对话请求；没有键时直接执行。
+     * chat收到本键的Attempt：其中已有保存过的用户消息时应直接使用，否则保存后通过userMessageSaved登记
+     */
+    public AIMessage execute(Long conversationId, String key, Long userId, String userMessage,
+                             AIDeadline deadline, Function<Attempt, AIMessage> chat) {
+        if (key == null || key.isBlank()) {
+            return chat.apply(new Attempt());
+        }
+        purgeExpired();
+
+        long now = System.nanoTime();
+        KeyResult entry;
+        boolean owner = false;
+        while (true) {
+            KeyTable table = tables.computeIfAbsent(conversationId, id -> new KeyTable(maxKeysPerConversation));
+            synchronized (table) {
+                if (table.retired) {
+                    // 表刚被清理移除，重新获取
+                    continue;
+                }
+                entry = table.get(key);
+                if (entry == null || entry.expiresAt - now <= 0) {
+                    entry = new KeyResult(userId, userMessage, new Attempt(), expiresAt(now));
+                    table.put(key, entry);
+                    expiryQueue.add(new Expiry(conversationId, key, entry));
+                    entry.claimed = true;
+                    owner = true;
+                } else if (entry.matches(userId, userMessage) && !entry.claimed) {
+                    // 上一次执行失败，由本次重试接着执行
+                    entry.claimed = true;
+                    owner = true;
+                    retries.incrementAndGet();
+                }
+            }
+            break;
+        }
+
+        if (!owner) {
+            if (!entry.matches(userId, userMessage)) {
+                throw new KeyReuseException();
+            }
+            return await(entry, deadline);
+        }
+
+        executions.incrementAndGet();
+        AIMessage result;
+        try {
+            result = chat.apply(entry.attempt);
+        } catch (Throwable e) {
+            // 失败不缓存，等待中的重复请求得到同样的异常；保留已保存的用户消息供重试复用
+            releaseForRetry(conversationId, key, entry);
+            entry.future.completeExceptionally(e);
+            throw e;
+        }
+        entry.future.complete(result);
+        return result;
+    }
+
+    /**
+     * 执行失败后把键换成未被占用的新条目：沿用同一个Attempt，重新计算有效期
+     */
+    private void releaseForRetry(Long conversationId, String key, KeyResult failed) {
+        KeyTable table = tables.get(conversationId);
+        if (table == null) {
+            return;
+        }
+        synchronized (table) {
+            if (table.retired) {
+                return;
+            }
+            KeyResult retry = new KeyResult(failed.userId, failed.userMessage, failed.attempt, expiresAt(System.nanoTime()));
+            if (table.replace(key, failed, retry)) {
+                expiryQueue.add(new Expiry(conversationId, key, retry));
+            }
+        }
+    }
+
+    private long expiresAt(long now) {
+        return now + TimeUnit.MINUTES.toNanos(ttlMinutes);
+    }
+
+    private AIMessage await(KeyResult entry, AIDeadline deadline) {
+        if (entry.future.isDone()) {
+            replays.incrementAndGet();
+        } else {
+            attached.incrementAndGet();
+        }
+        try {
+            return deadline != null
+                    ? entry.future.get(Math.max(0, deadline.remainingMillis()), TimeUnit.MILLISECONDS)
+                    : entry.future.get();
+        } catch (TimeoutException e) {
+            throw new AIDeadlineExceededException(AIDeadlineExceededException.STAGE_MODEL);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待重复请求的结果时被中断", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private void purgeExpired() {
+        long now = System.nanoTime();
+        Expiry head;
+        while ((head = expiryQueue.peek()) != null && head.entry.expiresAt - now <= 0) {
+            if (!expiryQueue.remove(head)) {
+                continue;
+            }
+            KeyTable table = tables.get(head.conversationId);
+            if (table == null) {
+                continue;
+            }
+            synchronized (table) {
+                table.remove(head.key, head.entry);
+                if (table.isEmpty()) {
+                    table.retired = true;
+                    tables.remove(head.conversationId, table);
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取幂等缓存统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("conversations", tables.size());
+        stats.put("pendingExpiries", expiryQueue.size());
+        stats.put("executions", executions.get());
+        stats.put("retriesAfterFailure", retries.get());
+        stats.put("replays", replays.get());
+        stats.put("attachedToInFlight", attached.get());
+        return stats;
+    }
+
+    /**
+     * 一个幂等键上的执行状态，在同一个键的多次执行（失败后重试）之间共享
+     */
+    public static class Attempt {
+        private volatile AIMessage savedUserMessage;
+
+        /**
+         * 之前的执行已经保存的用户消息，没有时返回null
+         */
+        public AIMessage getSavedUserMessage() {
+            return savedUserMessage;
+        }
+
+        public void userMessageSaved(AIMessage message) {
+            this.savedUserMessage = message;
+        }
+    }
+
+    /**
+     * 单个会话的幂等键表，按写入顺序淘汰最早的键；读写需持有本对象的锁
+     */
+    private static class KeyTable extends LinkedHashMap<String, KeyResult> {
+        private final int maxKeys;
+        private boolean retired;
+
+        KeyTable(int maxKeys) {
+            this.maxKeys = maxKeys;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, KeyResult> eldest) {
+            return size() > maxKeys;
+        }
+    }
+
+    private static class KeyResult {
+        private final CompletableFuture<AIMessage> future = new CompletableFuture<>();
+        // 第一次请求的用户和消息原文，同一个键用于不同内容时拒绝
+        private final Long userId;
+        private final String userMessage;
+        private final Attempt attempt;
+        private final long expiresAt;
+        // 已有请求在执行或已执行完，读写需持有所在KeyTable的锁
+        private boolean claimed;
+
+        KeyResult(Long userId, String userMessage, Attempt attempt, long expiresAt) {
+            this.userId = userId;
+            this.userMessage = userMessage;
+            this.attempt = attempt;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean matches(Long userId, String userMessage) {
+            return Objects.equals(this.userId, userId) && Objects.equals(this.userMessage, userMessage);
+        }
+    }
+
+    /**
+     * 同一个幂等键用于内容不同的请求
+     */
+    public static class KeyReuseException extends RuntimeException {
+        public KeyReuseException() {
+            super("Idempotency-Key已用于内容不同的请求");
+        }
+    }
+
+    private static class Expiry {
+        private final Long conversationId;
+        private final String key;
+        private final KeyResult entry;
+
+        Expiry(Long conversationId, String key, KeyResult entry) {
+            this.conversationId = conversationId;
+            this.key = key;
+            this.entry = entry;
+        }
+    }
+}
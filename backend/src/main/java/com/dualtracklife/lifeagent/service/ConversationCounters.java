@@ -0,0 +1,74 @@
+package com.dualtracklife.lifeagent.service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单个用户的对话计数器
+ * 由ConversationStore在会话创建、追加消息、结束会话时增量更新，读取统计时不遍历会话和消息
+ */
+public class ConversationCounters {
+
+    private final AtomicInteger conversations = new AtomicInteger();
+    private final AtomicInteger activeConversations = new AtomicInteger();
+    private final AtomicLong messages = new AtomicLong();
+    private final Map<String, AtomicInteger> roleConversations = new ConcurrentHashMap<>();
+    // 已结束会话的数量和时长合计（分钟），用于计算平均会话时长
+    private final AtomicInteger endedConversations = new AtomicInteger();
+    private final AtomicLong endedMinutes = new AtomicLong();
+
+    void conversationStarted(String roleId, boolean active) {
+        conversations.incrementAndGet();
+        roleConversations.computeIfAbsent(roleId, k -> new AtomicInteger()).incrementAndGet();
+        if (active) {
+            activeConversations.incrementAndGet();
+        }
+    }
+
+    /**
+     * 从活跃变为结束时调用一次
+     */
+    void conversationEnded(long durationMinutes) {
+        activeConversations.decrementAndGet();
+        endedConversations.incrementAndGet();
+        endedMinutes.addAndGet(durationMinutes);
+    }
+
+    /**
+     * 计入一个已经结束的会话（从已有数据重建计数时使用）
+     */
+    void conversationAlreadyEnded(long durationMinutes) {
+        endedConversations.incrementAndGet();
+        endedMinutes.addAndGet(durationMinutes);
+    }
+
+    void messagesAdded(long count) {
+        messages.addAndGet(count);
+    }
+
+    public int getConversations() {
+        return conversations.get();
+    }
+
+    public int getActiveConversations() {
+        return activeConversations.get();
+    }
+
+    public long getMessages() {
+        return messages.get();
+    }
+
+    public Map<String, Integer> getRoleConversations() {
+        Map<String, Integer> result = new HashMap<>();
+        roleConversations.forEach((roleId, count) -> result.put(roleId, count.get()));
+        return result;
+    }
+
+    public double getAverageSessionMinutes() {
+        int ended = endedConversations.get();
+        return ended > 0 ? (double) endedMinutes.get() / ended : 0.0;
+    }
+}
@@ -0,0 +1,105 @@
+package com.dualtracklife.lifeagent.service;
+
+import com.dualtracklife.lifeagent.model.AIMessage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 单个会话的只追加消息日志
+ * 消息按追加顺序存放在固定大小的分块中，消息序号即位置（从1开始），
+ * 读取最后k条或某个序号区间只访问对应位置，不排序也不复制整个列表。
+ * 追加在日志自身的锁内进行；读取不加锁，先读volatile的size，只访问已发布的位置
+ */
+public class ConversationMessageLog {
+
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    // 扩容时只复制外层的分块引用数组，已有分块不动
+    private volatile AIMessage[][] chunks = new AIMessage[1][];
+    private volatile int size = 0;
+    // 已从热数据中淘汰，之后的追加应重新加载日志
+    private volatile boolean evicted = false;
+
+    /**
+     * 追加消息并设置会话内序号
+     */
+    public synchronized AIMessage append(AIMessage message) {
+        int index = size;
+        int chunkIndex = index >>> CHUNK_BITS;
+        AIMessage[][] current = chunks;
+        if (chunkIndex >= current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        if (current[chunkIndex] == null) {
+            current[chunkIndex] = new AIMessage[CHUNK_SIZE];
+        }
+        current[chunkIndex][index & CHUNK_MASK] = message;
+        message.setMessageOrder(index + 1);
+
+        chunks = current;
+        // size的volatile写发布上面的全部写入
+        size = index + 1;
+        return message;
+    }
+
+    void markEvicted() {
+        evicted = true;
+    }
+
+    public boolean isEvicted() {
+        return evicted;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 最后k条消息，按序号升序
+     */
+    public List<AIMessage> tail(int k) {
+        int end = size;
+        return slice(Math.max(0, end - Math.max(0, k)), end);
+    }
+
+    /**
+     * 序号在[fromOrder, toOrder]之间的消息，按序号升序，超出范围的部分忽略
+     */
+    public List<AIMessage> range(int fromOrder, int toOrder) {
+        int end = Math.min(size, toOrder);
+        return slice(Math.max(0, fromOrder - 1), end);
+    }
+
+    /**
+     * 全部消息的快照
+     */
+    public List<AIMessage> snapshot() {
+        return slice(0, size);
+    }
+
+    /**
+     * 按序号获取单条消息，不存在时返回null
+     */
+    public AIMessage get(int order) {
+        if (order < 1 || order > size) {
+            return null;
+        }
+        return chunks[(order - 1) >>> CHUNK_BITS][(order - 1) & CHUNK_MASK];
+    }
+
+    private List<AIMessage> slice(int fromIndex, int toIndex) {
+        if (fromIndex >= toIndex) {
+            return new ArrayList<>();
+        }
+        AIMessage[][] current = chunks;
+        List<AIMessage> result = new ArrayList<>(toIndex - fromIndex);
+        for (int i = fromIndex; i < toIndex; i++) {
+            result.add(current[i >>> CHUNK_BITS][i & CHUNK_MASK]);
+        }
+        return result;
+    }
+}
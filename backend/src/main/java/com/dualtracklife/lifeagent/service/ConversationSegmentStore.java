@@ -0,0 +1,465 @@
+package com.dualtracklife.lifeagent.service;
+
+import com.dualtracklife.lifeagent.model.AIMessage;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 对话消息冷数据段
+ * 空闲会话的消息按紧凑的二进制格式追加写入内存映射的段文件，堆上只保留每个会话的位置信息；
+ * 再次访问时从映射区读回并删除该记录。段内记录全部失效后删除段文件；
+ * 已写满的段中有效记录的比例低于compact-live-ratio时，把剩余记录复制到当前追加的段并删除旧段，
+ * 避免少数长期空闲的会话占住整个段文件。
+ * 段文件只是进程内的冷数据层，持久化由ConversationWriteBehind负责。每个进程使用配置目录下自己的子目录（pid-进程号），
+ * 同一台机器上的多个实例互不影响；关闭时删除本进程的子目录，启动时清理已退出进程遗留的子目录
+ */
+@Service
+public class ConversationSegmentStore {
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String PROCESS_DIR_PREFIX = "pid-";
+
+    // FileChannel.map单次映射不能超过Integer.MAX_VALUE字节
+    private static final int MAX_SEGMENT_SIZE_MB = (int) (Integer.MAX_VALUE / (1024L * 1024L));
+
+    // 估算堆占用：每条消息对象及其包装字段的固定开销、每个字符串对象的固定开销
+    private static final long MESSAGE_OVERHEAD_BYTES = 160;
+    private static final long STRING_OVERHEAD_BYTES = 40;
+
+    @Value("${life-agent.conversation.cold-tier.enabled:true}")
+    private boolean enabled;
+
+    @Value("${life-agent.conversation.cold-tier.directory:${java.io.tmpdir}/life-agent-segments}")
+    private String directory;
+
+    @Value("${life-agent.conversation.cold-tier.segment-size-mb:64}")
+    private int segmentSizeMb;
+
+    @Value("${life-agent.conversation.cold-tier.compact-live-ratio:0.25}")
+    private double compactLiveRatio;
+
+    private Path segmentDir;
+    // 会话ID -> 记录位置
+    private final Map<Long, SegmentEntry> entries = new ConcurrentHashMap<>();
+    private final Map<Integer, Segment> segments = new ConcurrentHashMap<>();
+    // 当前追加的段，只在持有本对象锁时访问
+    private Segment active;
+    private int nextSegmentId = 1;
+
+    private final AtomicLong pageOuts = new AtomicLong();
+    private final AtomicLong pageIns = new AtomicLong();
+    private final AtomicLong pageInNanos = new AtomicLong();
+    private final AtomicLong maxPageInNanos = new AtomicLong();
+    private final AtomicLong heapBytesSaved = new AtomicLong();
+    private final AtomicLong liveSegmentBytes = new AtomicLong();
+    private final AtomicLong compactions = new AtomicLong();
+    private final AtomicLong compactedBytes = new AtomicLong();
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        if (segmentSizeMb < 1 || segmentSizeMb > MAX_SEGMENT_SIZE_MB) {
+            throw new IllegalArgumentException("life-agent.conversation.cold-tier.segment-size-mb 必须在1到"
+                    + MAX_SEGMENT_SIZE_MB + "之间，当前为" + segmentSizeMb);
+        }
+        Path baseDir = Paths.get(directory);
+        Files.createDirectories(baseDir);
+        deleteStaleProcessDirs(baseDir);
+        segmentDir = baseDir.resolve(PROCESS_DIR_PREFIX + ProcessHandle.current().pid());
+        Files.createDirectories(segmentDir);
+        // 进程号可能被复用，清掉同名子目录中的旧文件
+        deleteSegmentFiles(segmentDir);
+        System.out.println("[ConversationSegmentStore] 冷数据段目录: " + segmentDir.toAbsolutePath());
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (segmentDir != null) {
+            deleteSegmentFiles(segmentDir);
+            Files.deleteIfExists(segmentDir);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean contains(Long conversationId) {
+        return entries.containsKey(conversationId);
+    }
+
+    /**
+     * 冷数据中该会话的消息数，不在冷数据中时返回-1
+     */
+    public int getMessageCount(Long conversationId) {
+        SegmentEntry entry = entries.get(conversationId);
+        return entry != null ? entry.messageCount : -1;
+    }
+
+    /**
+     * 把会话的全部消息写入段文件。调用方需保证写入期间该会话没有新消息
+     */
+    public synchronized void pageOut(Long conversationId, List<AIMessage> messages) throws IOException {
+        byte[] record = encode(messages);
+        Segment segment = segmentFor(record.length);
+        int offset = segment.append(record);
+
+        long heapBytes = estimateHeapBytes(messages);
+        SegmentEntry previous = entries.put(conversationId,
+                new SegmentEntry(segment, offset, record.length, messages.size(), heapBytes));
+        if (previous != null) {
+            release(previous);
+        }
+        pageOuts.incrementAndGet();
+        heapBytesSaved.addAndGet(heapBytes);
+        liveSegmentBytes.addAndGet(record.length);
+    }
+
+    /**
+     * 读回会话的消息并删除冷数据记录，不在冷数据中时返回null
+     */
+    public List<AIMessage> pageIn(Long conversationId) {
+        // 先移除再读取：整理过程中记录可能被复制到别的段，移除后整理不会再移动它；
+        // 旧段文件即使已删除，映射区在缓冲对象回收前仍可读
+        SegmentEntry entry = entries.remove(conversationId);
+        if (entry == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        ByteBuffer record = entry.segment.buffer.slice(entry.offset, entry.length);
+        List<AIMessage> messages = decode(record);
+        long elapsed = System.nanoTime() - start;
+
+        synchronized (this) {
+            release(entry);
+        }
+        heapBytesSaved.addAndGet(-entry.heapBytes);
+        liveSegmentBytes.addAndGet(-entry.length);
+        pageIns.incrementAndGet();
+        pageInNanos.addAndGet(elapsed);
+        maxPageInNanos.accumulateAndGet(elapsed, Math::max);
+        return messages;
+    }
+
+    /**
+     * 逐条读取冷数据中的消息但不移回堆（导出等一次性遍历使用），不在冷数据中时返回false
+     */
+    public boolean forEachMessage(Long conversationId, Consumer<AIMessage> action) {
+        SegmentEntry entry = entries.get(conversationId);
+        if (entry == null) {
+            return false;
+        }
+        ByteBuffer record = entry.segment.buffer.slice(entry.offset, entry.length);
+        int count = record.getInt();
+        for (int i = 0; i < count; i++) {
+            action.accept(decodeMessage(record));
+        }
+        return true;
+    }
+
+    private Segment segmentFor(int recordLength) throws IOException {
+        if (active == null || !active.fits(recordLength)) {
+            Segment previous = active;
+            int capacity = (int) Math.max(segmentSizeMb * 1024L * 1024L, recordLength);
+            int id = nextSegmentId++;
+            active = new Segment(id, segmentDir.resolve(String.format("%08d%s", id, SEGMENT_SUFFIX)), capacity);
+            segments.put(active.id, active);
+            if (previous != null && previous.liveBytes == 0) {
+                delete(previous);
+            }
+        }
+        return active;
+    }
+
+    /**
+     * 调用方需持有本对象的锁
+     */
+    private void release(SegmentEntry entry) {
+        Segment segment = entry.segment;
+        segment.liveBytes -= entry.length;
+        if (segment == active || !segments.containsKey(segment.id)) {
+            return;
+        }
+        if (segment.liveBytes == 0) {
+            delete(segment);
+        } else if (segment.liveBytes < compactLiveRatio * segment.writeOffset) {
+            compact(segment);
+        }
+    }
+
+    /**
+     * 把段中仍有效的记录复制到当前追加的段，全部移走后删除旧段；
+     * 正在读回的记录已从索引中移除，留在旧段中，由读回后的释放删除旧段。调用方需持有本对象的锁
+     */
+    private void compact(Segment segment) {
+        long moved = 0;
+        for (Map.Entry<Long, SegmentEntry> e : entries.entrySet()) {
+            SegmentEntry old = e.getValue();
+            if (old.segment != segment) {
+                continue;
+            }
+            byte[] record = new byte[old.length];
+            segment.buffer.get(old.offset, record);
+            SegmentEntry copy;
+            try {
+                Segment target = segmentFor(record.length);
+                copy = new SegmentEntry(target, target.append(record), old.length, old.messageCount, old.heapBytes);
+            } catch (IOException ex) {
+                System.out.println("[ConversationSegmentStore] 整理段 " + segment.id + " 失败: " + ex.getMessage());
+                return;
+            }
+            if (entries.replace(e.getKey(), old, copy)) {
+                moved += old.length;
+                segment.liveBytes -= old.length;
+            } else {
+                // 复制期间记录已被读回
+                copy.segment.liveBytes -= copy.length;
+            }
+        }
+        if (segment.liveBytes == 0) {
+            delete(segment);
+        }
+        compactions.incrementAndGet();
+        compactedBytes.addAndGet(moved);
+    }
+
+    private void delete(Segment segment) {
+        segments.remove(segment.id);
+        try {
+            // 映射区在缓冲对象回收时释放，文件可以先删除
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            System.out.println("[ConversationSegmentStore] 删除段文件失败: " + segment.path + " " + e.getMessage());
+        }
+    }
+
+    private static void deleteSegmentFiles(Path dir) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * 删除进程已经退出（如异常终止未执行关闭清理）的实例留下的子目录，仍在运行的实例的目录不动
+     */
+    private static void deleteStaleProcessDirs(Path baseDir) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(baseDir, PROCESS_DIR_PREFIX + "*")) {
+            for (Path dir : stream) {
+                long pid;
+                try {
+                    pid = Long.parseLong(dir.getFileName().toString().substring(PROCESS_DIR_PREFIX.length()));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                if (pid == ProcessHandle.current().pid() || ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false)) {
+                    continue;
+                }
+                try {
+                    deleteSegmentFiles(dir);
+                    Files.deleteIfExists(dir);
+                } catch (IOException e) {
+                    System.out.println("[ConversationSegmentStore] 清理遗留段目录失败: " + dir + " " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // ==================== 记录格式 ====================
+
+    private byte[] encode(List<AIMessage> messages) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 * messages.size() + 4);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(messages.size());
+        for (AIMessage m : messages) {
+            out.writeLong(m.getId());
+            out.writeLong(m.getConversationId());
+            out.writeLong(m.getUserId());
+            writeString(out, m.getRoleId());
+            writeString(out, m.getMessageType());
+            writeString(out, m.getContent());
+            writeString(out, m.getContextInfo());
+            out.writeBoolean(m.getConfidence() != null);
+            if (m.getConfidence() != null) {
+                out.writeFloat(m.getConfidence());
+            }
+            writeString(out, m.getEmotionalAnalysis());
+            writeString(out, m.getUserFeedback());
+            out.writeInt(m.getMessageOrder());
+            out.writeBoolean(Boolean.TRUE.equals(m.getIsKeyMessage()));
+            writeString(out, m.getTags());
+            writeTime(out, m.getCreatedAt());
+            writeTime(out, m.getUpdatedAt());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private List<AIMessage> decode(ByteBuffer record) {
+        int count = record.getInt();
+        List<AIMessage> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            messages.add(decodeMessage(record));
+        }
+        return messages;
+    }
+
+    private AIMessage decodeMessage(ByteBuffer record) {
+        AIMessage m = new AIMessage();
+        m.setId(record.getLong());
+        m.setConversationId(record.getLong());
+        m.setUserId(record.getLong());
+        m.setRoleId(readString(record));
+        m.setMessageType(readString(record));
+        m.setContent(readString(record));
+        m.setContextInfo(readString(record));
+        m.setConfidence(record.get() != 0 ? record.getFloat() : null);
+        m.setEmotionalAnalysis(readString(record));
+        m.setUserFeedback(readString(record));
+        m.setMessageOrder(record.getInt());
+        m.setIsKeyMessage(record.get() != 0);
+        m.setTags(readString(record));
+        m.setCreatedAt(readTime(record));
+        m.setUpdatedAt(readTime(record));
+        return m;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] utf8 = new byte[length];
+        in.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static void writeTime(DataOutputStream out, LocalDateTime time) throws IOException {
+        out.writeBoolean(time != null);
+        if (time != null) {
+            out.writeLong(time.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(time.getNano());
+        }
+    }
+
+    private static LocalDateTime readTime(ByteBuffer in) {
+        if (in.get() == 0) {
+            return null;
+        }
+        long epochSecond = in.getLong();
+        return LocalDateTime.ofEpochSecond(epochSecond, in.getInt(), ZoneOffset.UTC);
+    }
+
+    private static long estimateHeapBytes(List<AIMessage> messages) {
+        long total = 0;
+        for (AIMessage m : messages) {
+            total += MESSAGE_OVERHEAD_BYTES + stringBytes(m.getRoleId()) + stringBytes(m.getMessageType())
+                    + stringBytes(m.getContent()) + stringBytes(m.getContextInfo())
+                    + stringBytes(m.getEmotionalAnalysis()) + stringBytes(m.getUserFeedback()) + stringBytes(m.getTags());
+        }
+        return total;
+    }
+
+    private static long stringBytes(String value) {
+        // 中文内容按每字符2字节计
+        return value != null ? STRING_OVERHEAD_BYTES + 2L * value.length() : 0;
+    }
+
+    /**
+     * 获取冷数据统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("coldConversations", entries.size());
+        stats.put("segments", segments.size());
+        stats.put("segmentBytes", liveSegmentBytes.get());
+        stats.put("heapBytesSaved", heapBytesSaved.get());
+        stats.put("pageOuts", pageOuts.get());
+        stats.put("pageIns", pageIns.get());
+        long count = pageIns.get();
+        stats.put("avgPageInMs", count > 0 ? pageInNanos.get() / 1_000_000.0 / count : 0.0);
+        stats.put("maxPageInMs", maxPageInNanos.get() / 1_000_000.0);
+        stats.put("compactions", compactions.get());
+        stats.put("compactedBytes", compactedBytes.get());
+        return stats;
+    }
+
+    /**
+     * 一个段文件及其映射区
+     */
+    private static class Segment {
+        private final int id;
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private int writeOffset = 0;
+        // 仍有效的记录字节数，只在持有外部对象锁时修改
+        private long liveBytes = 0;
+
+        Segment(int id, Path path, int capacity) throws IOException {
+            this.id = id;
+            this.path = path;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                // 关闭通道后映射仍然有效
+                this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            }
+        }
+
+        boolean fits(int length) {
+            return buffer.capacity() - writeOffset >= length;
+        }
+
+        int append(byte[] record) {
+            int offset = writeOffset;
+            buffer.put(offset, record);
+            writeOffset += record.length;
+            liveBytes += record.length;
+            return offset;
+        }
+    }
+
+    private static class SegmentEntry {
+        private final Segment segment;
+        private final int offset;
+        private final int length;
+        private final int messageCount;
+        private final long heapBytes;
+
+        SegmentEntry(Segment segment, int offset, int length, int messageCount, long heapBytes) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.messageCount = messageCount;
+            this.heapBytes = heapBytes;
+        }
+    }
+}
@@ -0,0 +1,632 @@
+package com.dualtracklife.lifeagent.service;
+
+import com.dualtracklife.lifeagent.model.AIConversation;
+import com.dualtracklife.lifeagent.model.AIMessage;
+import com.dualtracklife.lifeagent.repository.AIConversationRepository;
+import com.dualtracklife.lifeagent.repository.AIMessageRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 对话会话和消息存储
+ * 会话和消息ID由原子计数器分配；每个会话的消息保存在各自的只追加日志中，
+ * 追加消息时在该日志的锁内分配连续的消息序号，不同会话之间互不阻塞。
+ * 另外按用户、用户 + 角色维护以最后活跃时间倒序排列的会话索引，列出某个用户的会话时不扫描全部会话。
+ * 开启对话持久化后内存作为热数据层：读取先查内存，未命中再从数据库加载；写入只进入ConversationWriteBehind的缓冲，
+ * 消息日志超过hot-capacity时按最后活跃时间淘汰已全部落库的会话消息，会话元数据保留在内存中。
+ * 会话元数据和索引不淘汰：每个会话只占几百字节，而列会话、按活跃时间排序都依赖完整索引。
+ * 每个用户的会话数、消息数等统计由ConversationCounters增量维护。
+ * 每个会话在IdleTimerWheel中有一个空闲超时，活跃时刷新；超时后自动结束仍处于活跃状态的会话，
+ * 开启冷数据层时把它的消息写入ConversationSegmentStore的段文件并移出堆，下次访问时再读回
+ */
+@Service
+public class ConversationStore {
+
+    // 遍历数据库中的消息时每次读取的条数
+    private static final int EXPORT_PAGE_SIZE = 500;
+
+    // 内存存储 - 实际项目中应该使用数据库
+    private final Map<Long, AIConversation> conversations = new ConcurrentHashMap<>();
+    private final Map<Long, ConversationMessageLog> messageLogs = new ConcurrentHashMap<>();
+    private final AtomicLong nextConversationId = new AtomicLong(1);
+    private final AtomicLong nextMessageId = new AtomicLong(1);
+
+    // 用户 -> 会话、用户:角色 -> 会话，按最后活跃时间倒序
+    private final Map<Long, NavigableMap<ActivityKey, AIConversation>> userIndex = new ConcurrentHashMap<>();
+    private final Map<String, NavigableMap<ActivityKey, AIConversation>> userRoleIndex = new ConcurrentHashMap<>();
+    // 会话当前在索引中的键，活跃时间变化时据此移除旧位置
+    private final Map<Long, ActivityKey> activityKeys = new ConcurrentHashMap<>();
+    // 全部会话按最后活跃时间倒序，淘汰热数据时从最久未活跃的一端开始
+    private final NavigableMap<ActivityKey, Long> activityIndex = new ConcurrentSkipListMap<>();
+
+    @Autowired
+    private ConversationWriteBehind writeBehind;
+
+    // 仅在开启对话持久化时存在
+    @Autowired(required = false)
+    private AIConversationRepository conversationRepository;
+
+    @Autowired(required = false)
+    private AIMessageRepository messageRepository;
+
+    @Value("${life-agent.conversation.hot-capacity:10000}")
+    private int hotCapacity;
+
+    @Autowired
+    private ConversationSegmentStore segmentStore;
+
+    @Value("${life-agent.conversation.idle-timeout-minutes:30}")
+    private long idleTimeoutMinutes;
+
+    @Value("${life-agent.conversation.idle-tick-ms:1000}")
+    private long idleTickMs;
+
+    @Value("${life-agent.conversation.idle-wheel-size:512}")
+    private int idleWheelSize;
+
+    private IdleTimerWheel idleWheel;
+    private final AtomicLong idleCompletions = new AtomicLong();
+    private final AtomicLong idleEvictions = new AtomicLong();
+
+    // 已从数据库加载过会话列表的用户
+    private final Set<Long> loadedUsers = ConcurrentHashMap.newKeySet();
+
+    // 用户 -> 对话计数器；修改会话或消息前先取计数器，保证首次创建时从已有数据重建的结果不会重复计数
+    private final Map<Long, ConversationCounters> userCounters = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        idleWheel = new IdleTimerWheel(idleTickMs, idleWheelSize, TimeUnit.MINUTES.toMillis(idleTimeoutMinutes),
+                this::onIdle, "conversation-idle-sweeper");
+        idleWheel.start();
+        if (!isPersistent()) {
+            return;
+        }
+        // ID由本存储分配，重启后从数据库中的最大值继续
+        nextConversationId.set(conversationRepository.findMaxId() + 1);
+        nextMessageId.set(messageRepository.findMaxId() + 1);
+        writeBehind.setAfterFlush(this::evictColdConversations);
+        System.out.println("[ConversationStore] 对话持久化已开启，热数据容量 " + hotCapacity + " 个会话");
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (idleWheel != null) {
+            idleWheel.stop();
+        }
+    }
+
+    private boolean isPersistent() {
+        return conversationRepository != null && messageRepository != null && writeBehind.isEnabled();
+    }
+
+    /**
+     * 保存新会话并分配ID
+     */
+    public AIConversation createConversation(AIConversation conversation) {
+        ConversationCounters counters = countersOf(conversation.getUserId());
+        conversation.setId(nextConversationId.getAndIncrement());
+        messageLogs.put(conversation.getId(), new ConversationMessageLog());
+        conversations.put(conversation.getId(), conversation);
+        synchronized (conversation) {
+            reindex(conversation);
+        }
+        counters.conversationStarted(conversation.getRoleId(), conversation.isActive());
+        idleWheel.touch(conversation.getId());
+        writeBehind.markDirty(conversation);
+        return conversation;
+    }
+
+    /**
+     * 导入会话（例如从导出文件迁移），重新分配ID，保留状态和时间
+     */
+    public AIConversation importConversation(AIConversation conversation) {
+        if (conversation.getLastActiveAt() == null) {
+            conversation.setLastActiveAt(LocalDateTime.now());
+        }
+        AIConversation imported = createConversation(conversation);
+        if (imported.getEndedAt() != null && imported.getStartedAt() != null) {
+            countersOf(imported.getUserId()).conversationAlreadyEnded(imported.getDurationMinutes());
+        }
+        return imported;
+    }
+
+    /**
+     * 结束会话；只有从活跃变为结束时计入统计
+     */
+    public void endConversation(AIConversation conversation, String summary, String insights) {
+        ConversationCounters counters = countersOf(conversation.getUserId());
+        synchronized (conversation) {
+            boolean wasActive = conversation.isActive();
+            conversation.completeSession(summary, insights);
+            if (wasActive) {
+                counters.conversationEnded(conversation.getDurationMinutes());
+            }
+        }
+        writeBehind.markDirty(conversation);
+    }
+
+    /**
+     * 空闲超时自动结束会话，以最后活跃时间为结束时间，时长不包含等待超时的这段时间。
+     * 超时触发后会话可能又被刷新了活跃时间，因此在会话锁内重新确认已空闲满超时时间
+     *
+     * @return 会话仍然空闲时返回true（无论是否由本次结束）
+     */
+    private boolean endIfIdle(AIConversation conversation) {
+        ConversationCounters counters = countersOf(conversation.getUserId());
+        boolean ended = false;
+        synchronized (conversation) {
+            LocalDateTime lastActive = conversation.getLastActiveAt() != null
+                    ? conversation.getLastActiveAt() : conversation.getStartedAt();
+            // 时间轮按刻度到期，允许提前一个刻度
+            long idleMs = Duration.between(lastActive, LocalDateTime.now()).toMillis();
+            if (idleMs < TimeUnit.MINUTES.toMillis(idleTimeoutMinutes) - idleTickMs) {
+                return false;
+            }
+            if (conversation.isActive()) {
+                conversation.completeSession("会话空闲超时，已自动结束", null, lastActive);
+                counters.conversationEnded(conversation.getDurationMinutes());
+                ended = true;
+            }
+        }
+        if (ended) {
+            writeBehind.markDirty(conversation);
+            idleCompletions.incrementAndGet();
+        }
+        return true;
+    }
+
+    /**
+     * 用户的对话计数器
+     */
+    public ConversationCounters getUserCounters(Long userId) {
+        return countersOf(userId);
+    }
+
+    private ConversationCounters countersOf(Long userId) {
+        return userCounters.computeIfAbsent(userId, this::rebuildCounters);
+    }
+
+    /**
+     * 用户第一次用到计数器时，按已有的会话（包括数据库中的）重建一次，之后只做增量更新
+     */
+    private ConversationCounters rebuildCounters(Long userId) {
+        ConversationCounters counters = new ConversationCounters();
+        loadUser(userId);
+        NavigableMap<ActivityKey, AIConversation> index = userIndex.get(userId);
+        if (index == null) {
+            return counters;
+        }
+        Map<Long, Long> persistedCounts = new HashMap<>();
+        if (isPersistent()) {
+            for (Object[] row : messageRepository.countByConversationForUser(userId)) {
+                persistedCounts.put((Long) row[0], (Long) row[1]);
+            }
+        }
+        Set<Long> seen = new HashSet<>();
+        for (AIConversation conversation : index.values()) {
+            if (!seen.add(conversation.getId())) {
+                continue;
+            }
+            counters.conversationStarted(conversation.getRoleId(), conversation.isActive());
+            if (conversation.getEndedAt() != null) {
+                counters.conversationAlreadyEnded(conversation.getDurationMinutes());
+            }
+            // 热数据中的日志包含尚未落库的消息，以它为准
+            ConversationMessageLog log = messageLogs.get(conversation.getId());
+            int coldCount = segmentStore.getMessageCount(conversation.getId());
+            counters.messagesAdded(log != null ? log.size()
+                    : coldCount >= 0 ? coldCount : persistedCounts.getOrDefault(conversation.getId(), 0L));
+        }
+        return counters;
+    }
+
+    /**
+     * 会话属性（标题、状态、摘要等）修改后调用，以便写入数据库
+     */
+    public void update(AIConversation conversation) {
+        writeBehind.markDirty(conversation);
+    }
+
+    /**
+     * 更新会话的最后活跃时间，并调整它在用户索引中的位置
+     */
+    public void touch(AIConversation conversation) {
+        synchronized (conversation) {
+            conversation.updateLastActive();
+            reindex(conversation);
+        }
+        idleWheel.touch(conversation.getId());
+        writeBehind.markDirty(conversation);
+    }
+
+    /**
+     * 用户的会话，按最后活跃时间倒序，最多limit个
+     */
+    public List<AIConversation> getUserConversations(Long userId, int limit) {
+        loadUser(userId);
+        return firstPage(userIndex.get(userId), limit);
+    }
+
+    /**
+     * 用户与某个角色的会话，按最后活跃时间倒序，最多limit个
+     */
+    public List<AIConversation> getUserRoleConversations(Long userId, String roleId, int limit) {
+        loadUser(userId);
+        return firstPage(userRoleIndex.get(userRoleKey(userId, roleId)), limit);
+    }
+
+    private List<AIConversation> firstPage(NavigableMap<ActivityKey, AIConversation> index, int limit) {
+        List<AIConversation> page = new ArrayList<>();
+        if (index == null) {
+            return page;
+        }
+        // 重新索引的瞬间同一会话可能同时出现在新旧两个位置，按ID去重
+        Set<Long> seen = new HashSet<>();
+        for (AIConversation conversation : index.values()) {
+            if (page.size() >= limit) {
+                break;
+            }
+            if (seen.add(conversation.getId())) {
+                page.add(conversation);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * 调用方需持有会话对象的锁，保证同一会话的移除和插入不交错
+     */
+    private void reindex(AIConversation conversation) {
+        ActivityKey key = new ActivityKey(conversation.getLastActiveAt(), conversation.getId());
+        ActivityKey previous = activityKeys.put(conversation.getId(), key);
+
+        NavigableMap<ActivityKey, AIConversation> byUser =
+                userIndex.computeIfAbsent(conversation.getUserId(), k -> new ConcurrentSkipListMap<>());
+        NavigableMap<ActivityKey, AIConversation> byUserRole =
+                userRoleIndex.computeIfAbsent(userRoleKey(conversation.getUserId(), conversation.getRoleId()),
+                        k -> new ConcurrentSkipListMap<>());
+        // 先插入新位置再移除旧位置，并发读取时会话不会暂时消失
+        byUser.put(key, conversation);
+        byUserRole.put(key, conversation);
+        activityIndex.put(key, conversation.getId());
+        if (previous != null && !previous.equals(key)) {
+            byUser.remove(previous);
+            byUserRole.remove(previous);
+            activityIndex.remove(previous);
+        }
+    }
+
+    /**
+     * 首次列出某个用户的会话时，把数据库中不在内存里的会话加入索引
+     */
+    private void loadUser(Long userId) {
+        if (!isPersistent() || loadedUsers.contains(userId)) {
+            return;
+        }
+        conversationRepository.findByUserId(userId).forEach(this::register);
+        loadedUsers.add(userId);
+    }
+
+    /**
+     * 登记从数据库加载的会话；内存中已有同ID会话时以内存为准
+     */
+    private AIConversation register(AIConversation loaded) {
+        AIConversation existing = conversations.putIfAbsent(loaded.getId(), loaded);
+        if (existing != null) {
+            return existing;
+        }
+        synchronized (loaded) {
+            reindex(loaded);
+        }
+        if (loaded.isActive()) {
+            idleWheel.touch(loaded.getId());
+        }
+        return loaded;
+    }
+
+    private String userRoleKey(Long userId, String roleId) {
+        return userId + ":" + roleId;
+    }
+
+    public AIConversation getConversation(Long conversationId) {
+        AIConversation conversation = conversations.get(conversationId);
+        if (conversation != null || !isPersistent()) {
+            return conversation;
+        }
+        return conversationRepository.findById(conversationId).map(this::register).orElse(null);
+    }
+
+    public Collection<AIConversation> getAllConversations() {
+        return conversations.values();
+    }
+
+    /**
+     * 追加消息，分配消息ID和会话内序号
+     */
+    public AIMessage appendMessage(Long conversationId, AIMessage message) {
+        AIConversation conversation = getConversation(conversationId);
+        if (conversation == null) {
+            throw new IllegalArgumentException("对话会话不存在");
+        }
+        ConversationCounters counters = countersOf(conversation.getUserId());
+        while (true) {
+            ConversationMessageLog log = logOf(conversationId);
+            if (log == null) {
+                throw new IllegalArgumentException("对话会话不存在");
+            }
+            synchronized (log) {
+                // 取到日志后恰好被淘汰，重新加载后再追加
+                if (log.isEvicted()) {
+                    continue;
+                }
+                message.setId(nextMessageId.getAndIncrement());
+                log.append(message);
+                // 在日志锁内入队，淘汰时看到的未写入计数不会漏掉这条消息
+                writeBehind.enqueueMessage(message);
+                counters.messagesAdded(1);
+                return message;
+            }
+        }
+    }
+
+    /**
+     * 批量追加消息（导入时使用），一次加锁分配ID和序号，逐条进入写缓冲
+     */
+    public void appendMessages(Long conversationId, List<AIMessage> messages) {
+        AIConversation conversation = getConversation(conversationId);
+        if (conversation == null) {
+            throw new IllegalArgumentException("对话会话不存在");
+        }
+        ConversationCounters counters = countersOf(conversation.getUserId());
+        while (true) {
+            ConversationMessageLog log = logOf(conversationId);
+            if (log == null) {
+                throw new IllegalArgumentException("对话会话不存在");
+            }
+            synchronized (log) {
+                if (log.isEvicted()) {
+                    continue;
+                }
+                for (AIMessage message : messages) {
+                    message.setId(nextMessageId.getAndIncrement());
+                    log.append(message);
+                    writeBehind.enqueueMessage(message);
+                }
+                counters.messagesAdded(messages.size());
+                return;
+            }
+        }
+    }
+
+    /**
+     * 按序号逐条遍历会话的全部消息，不把冷数据移回堆（导出使用）。
+     * 热数据直接按位置读取，冷数据段逐条解码，数据库中的按序号区间分页读取
+     */
+    public void forEachMessage(Long conversationId, Consumer<AIMessage> action) {
+        ConversationMessageLog log = messageLogs.get(conversationId);
+        if (log != null) {
+            int size = log.size();
+            for (int order = 1; order <= size; order++) {
+                action.accept(log.get(order));
+            }
+            return;
+        }
+        if (segmentStore.forEachMessage(conversationId, action) || !isPersistent()) {
+            return;
+        }
+        for (int from = 1; ; from += EXPORT_PAGE_SIZE) {
+            List<AIMessage> page = messageRepository.findByConversationIdAndMessageOrderBetweenOrderByMessageOrderAsc(
+                    conversationId, from, from + EXPORT_PAGE_SIZE - 1);
+            page.forEach(action);
+            if (page.size() < EXPORT_PAGE_SIZE) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 会话的消息日志；热数据中没有时从冷数据段读回，再没有时从数据库加载
+     */
+    private ConversationMessageLog logOf(Long conversationId) {
+        ConversationMessageLog log = messageLogs.get(conversationId);
+        if (log != null) {
+            return log;
+        }
+        if (!segmentStore.contains(conversationId) && (!isPersistent() || getConversation(conversationId) == null)) {
+            return null;
+        }
+        return messageLogs.computeIfAbsent(conversationId, id -> {
+            List<AIMessage> messages = segmentStore.pageIn(id);
+            if (messages == null) {
+                messages = isPersistent() ? messageRepository.findByConversationIdOrderByMessageOrderAsc(id) : List.of();
+            }
+            ConversationMessageLog loaded = new ConversationMessageLog();
+            messages.forEach(loaded::append);
+            // 读回后重新计时，空闲后再次移出
+            idleWheel.touch(id);
+            return loaded;
+        });
+    }
+
+    /**
+     * 会话空闲超时：仍处于活跃状态的自动结束，开启冷数据层时把消息移出堆。在时间轮的工作线程上执行
+     */
+    void onIdle(Long conversationId) {
+        AIConversation conversation = conversations.get(conversationId);
+        if (conversation == null) {
+            return;
+        }
+        if (!endIfIdle(conversation)) {
+            // 刷新活跃时间时已重新计时
+            return;
+        }
+        if (segmentStore.isEnabled()) {
+            try {
+                pageOut(conversationId);
+            } catch (IOException e) {
+                System.out.println("[ConversationStore] 会话 " + conversationId + " 写入冷数据段失败: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 把会话的消息写入冷数据段并移出堆
+     */
+    void pageOut(Long conversationId) throws IOException {
+        ConversationMessageLog log = messageLogs.get(conversationId);
+        if (log == null || log.size() == 0) {
+            return;
+        }
+        synchronized (log) {
+            if (log.isEvicted()) {
+                return;
+            }
+            segmentStore.pageOut(conversationId, log.snapshot());
+            log.markEvicted();
+            messageLogs.remove(conversationId, log);
+            if (!writeBehind.hasPending(conversationId)) {
+                writeBehind.forget(conversationId);
+            }
+        }
+        idleEvictions.incrementAndGet();
+    }
+
+    /**
+     * 热数据超过容量时，从最久未活跃的会话开始淘汰已全部写入数据库的消息日志。
+     * 由写线程在每次刷新后调用
+     */
+    void evictColdConversations() {
+        if (messageLogs.size() <= hotCapacity) {
+            return;
+        }
+        int evicted = 0;
+        for (Long conversationId : activityIndex.descendingMap().values()) {
+            if (messageLogs.size() <= hotCapacity) {
+                break;
+            }
+            ConversationMessageLog log = messageLogs.get(conversationId);
+            if (log == null) {
+                continue;
+            }
+            synchronized (log) {
+                if (log.isEvicted() || writeBehind.hasPending(conversationId)) {
+                    continue;
+                }
+                log.markEvicted();
+                messageLogs.remove(conversationId, log);
+                writeBehind.forget(conversationId);
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            System.out.println("[ConversationStore] 淘汰 " + evicted + " 个会话的消息热数据，剩余 " + messageLogs.size());
+        }
+    }
+
+    /**
+     * 热数据统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("conversations", conversations.size());
+        stats.put("hotMessageLogs", messageLogs.size());
+        stats.put("hotCapacity", hotCapacity);
+        stats.put("persistent", isPersistent());
+        stats.put("writeBehind", writeBehind.getStats());
+        stats.put("idleTracked", idleWheel.size());
+        stats.put("idleCompletions", idleCompletions.get());
+        stats.put("idleEvictions", idleEvictions.get());
+        stats.put("coldTier", segmentStore.getStats());
+        return stats;
+    }
+
+    /**
+     * 获取会话全部消息的快照，按序号排列
+     */
+    public List<AIMessage> getMessages(Long conversationId) {
+        ConversationMessageLog log = logOf(conversationId);
+        return log != null ? log.snapshot() : new ArrayList<>();
+    }
+
+    /**
+     * 获取会话最近的limit条消息，按序号排列
+     */
+    public List<AIMessage> getRecentMessages(Long conversationId, int limit) {
+        ConversationMessageLog log = logOf(conversationId);
+        return log != null ? log.tail(limit) : new ArrayList<>();
+    }
+
+    /**
+     * 获取会话中序号在[fromOrder, toOrder]之间的消息
+     */
+    public List<AIMessage> getMessageRange(Long conversationId, int fromOrder, int toOrder) {
+        ConversationMessageLog log = messageLogs.get(conversationId);
+        if (log == null && isPersistent() && !segmentStore.contains(conversationId)) {
+            // 不在热数据中的会话只按序号区间查询（idx_messages_conversation_order），不加载整个日志
+            return messageRepository.findByConversationIdAndMessageOrderBetweenOrderByMessageOrderAsc(
+                    conversationId, fromOrder, toOrder);
+        }
+        if (log == null) {
+            log = logOf(conversationId);
+        }
+        return log != null ? log.range(fromOrder, toOrder) : new ArrayList<>();
+    }
+
+    public int getMessageCount(Long conversationId) {
+        ConversationMessageLog log = messageLogs.get(conversationId);
+        int coldCount = segmentStore.getMessageCount(conversationId);
+        if (log == null && coldCount >= 0) {
+            return coldCount;
+        }
+        if (log == null && isPersistent()) {
+            return messageRepository.findMaxMessageOrder(conversationId);
+        }
+        return log != null ? log.size() : 0;
+    }
+
+    /**
+     * 索引键：最后活跃时间倒序，时间相同时按会话ID倒序
+     */
+    private static class ActivityKey implements Comparable<ActivityKey> {
+        private final LocalDateTime lastActiveAt;
+        private final Long conversationId;
+
+        ActivityKey(LocalDateTime lastActiveAt, Long conversationId) {
+            this.lastActiveAt = lastActiveAt;
+            this.conversationId = conversationId;
+        }
+
+        @Override
+        public int compareTo(ActivityKey other) {
+            int byTime = other.lastActiveAt.compareTo(lastActiveAt);
+            return byTime != 0 ? byTime : other.conversationId.compareTo(conversationId);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ActivityKey other)) {
+                return false;
+            }
+            return lastActiveAt.equals(other.lastActiveAt) && conversationId.equals(other.conversationId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(lastActiveAt, conversationId);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.dualtracklife.lifeagent.service;
+
+import com.dualtracklife.lifeagent.model.AIConversation;
+import com.dualtracklife.lifeagent.model.AIMessage;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 对话导出与导入（NDJSON）
+ * 每行一条记录：{"type":"conversation","conversation":{...}} 后面跟该会话按序号排列的
+ * {"type":"message","message":{...}}。导出逐条写入输出流，内存占用与历史总量无关；
+ * 导入逐行解析，会话重新分配ID并归属到目标用户，消息按批追加到对话存储。
+ * 每行写入前先校验必填字段，消息必须通过conversationId指向文件中在它之前出现的会话，否则视为格式错误。
+ * 导入不是原子的：遇到格式错误的行时停止，之前已追加的会话和消息保留，
+ * 结果中给出新建的会话ID和出错行号，调用方据此决定保留还是清理后重新导入
+ */
+@Service
+public class ConversationTransferService {
+
+    public static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+
+    private static final String TYPE_CONVERSATION = "conversation";
+    private static final String TYPE_MESSAGE = "message";
+
+    @Autowired
+    private ConversationStore conversationStore;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${life-agent.conversation.transfer.import-batch-size:500}")
+    private int importBatchSize;
+
+    private ObjectWriter conversationWriter;
+    private ObjectWriter messageWriter;
+    private ObjectReader conversationReader;
+    private ObjectReader messageReader;
+
+    @PostConstruct
+    public void init() {
+        // 逐条写入时不在每个值之后刷新，由输出缓冲决定写出时机
+        conversationWriter = objectMapper.writerFor(AIConversation.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        messageWriter = objectMapper.writerFor(AIMessage.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        // 导出中包含isActive等派生属性，导入时忽略
+        conversationReader = objectMapper.readerFor(AIConversation.class).without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        messageReader = objectMapper.readerFor(AIMessage.class).without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    /**
+     * 把用户的全部会话和消息写入输出流，返回导出的消息数
+     */
+    public long exportUserConversations(Long userId, OutputStream out) throws IOException {
+        long messageCount = 0;
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        for (AIConversation conversation : conversationStore.getUserConversations(userId, Integer.MAX_VALUE)) {
+            writeRecord(generator, TYPE_CONVERSATION, conversationWriter, conversation);
+
+            long[] written = {0};
+            conversationStore.forEachMessage(conversation.getId(), message -> {
+                try {
+                    writeRecord(generator, TYPE_MESSAGE, messageWriter, message);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                written[0]++;
+            });
+            messageCount += written[0];
+            // 每个会话结束后写出一次，客户端可以看到进度
+            generator.flush();
+        }
+        generator.flush();
+        return messageCount;
+    }
+
+    private void writeRecord(JsonGenerator generator, String type, ObjectWriter writer, Object value) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("type", type);
+        generator.writeFieldName(type);
+        writer.writeValue(generator, value);
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    /**
+     * 从NDJSON输入流导入会话和消息到目标用户，返回导入结果；遇到格式错误的行时停止并在结果中说明，
+     * 出错行之前的会话和消息已经写入，不会回滚
+     */
+    public ImportResult importUserConversations(Long userId, InputStream in) throws IOException {
+        ImportResult result = new ImportResult();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        // 导出文件中的会话ID -> 新分配的会话ID
+        Map<Long, Long> conversationIds = new HashMap<>();
+        Long currentConversationId = null;
+        List<AIMessage> batch = new ArrayList<>(importBatchSize);
+
+        String line;
+        long lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                JsonNode record = objectMapper.readTree(line);
+                String type = record.path("type").asText();
+                if (TYPE_CONVERSATION.equals(type)) {
+                    flushBatch(currentConversationId, batch, result);
+                    AIConversation conversation = conversationReader.readValue(record.get(TYPE_CONVERSATION));
+                    validate(conversation);
+                    Long originalId = conversation.getId();
+                    conversation.setUserId(userId);
+                    currentConversationId = conversationStore.importConversation(conversation).getId();
+                    result.conversationIds.add(currentConversationId);
+                    if (originalId != null) {
+                        conversationIds.put(originalId, currentConversationId);
+                    }
+                    result.conversations++;
+                } else if (TYPE_MESSAGE.equals(type)) {
+                    AIMessage message = messageReader.readValue(record.get(TYPE_MESSAGE));
+                    validate(message);
+                    Long targetId = conversationIds.get(message.getConversationId());
+                    if (targetId == null) {
+                        throw new IllegalArgumentException("消息所属的会话 " + message.getConversationId() + " 不在此前的记录中");
+                    }
+                    if (!targetId.equals(currentConversationId)) {
+                        flushBatch(currentConversationId, batch, result);
+                        currentConversationId = targetId;
+                    }
+                    message.setConversationId(targetId);
+                    message.setUserId(userId);
+                    batch.add(message);
+                    if (batch.size() >= importBatchSize) {
+                        flushBatch(currentConversationId, batch, result);
+                    }
+                } else {
+                    throw new IllegalArgumentException("未知的记录类型: " + type);
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                flushBatch(currentConversationId, batch, result);
+                result.error = "第" + lineNumber + "行: " + e.getMessage();
+                return result;
+            }
+        }
+        flushBatch(currentConversationId, batch, result);
+        return result;
+    }
+
+    /**
+     * 会话的必填字段，缺失时整行视为格式错误，不写入对话存储
+     */
+    private void validate(AIConversation conversation) {
+        if (conversation == null) {
+            throw new IllegalArgumentException("缺少conversation字段");
+        }
+        requireText(conversation.getRoleId(), "roleId");
+        requireText(conversation.getSessionTitle(), "sessionTitle");
+        requireText(conversation.getConversationType(), "conversationType");
+        requireText(conversation.getStatus(), "status");
+        if (conversation.getStartedAt() == null) {
+            throw new IllegalArgumentException("会话缺少startedAt");
+        }
+    }
+
+    /**
+     * 消息的必填字段；消息ID、序号和用户由导入时重新分配
+     */
+    private void validate(AIMessage message) {
+        if (message == null) {
+            throw new IllegalArgumentException("缺少message字段");
+        }
+        if (message.getConversationId() == null) {
+            throw new IllegalArgumentException("消息缺少conversationId");
+        }
+        requireText(message.getRoleId(), "roleId");
+        requireText(message.getMessageType(), "messageType");
+        if (message.getContent() == null) {
+            throw new IllegalArgumentException("消息缺少content");
+        }
+    }
+
+    private static void requireText(String value, String field) {
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("缺少" + field);
+        }
+    }
+
+    private void flushBatch(Long conversationId, List<AIMessage> batch, ImportResult result) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        conversationStore.appendMessages(conversationId, batch);
+        result.messages += batch.size();
+        batch.clear();
+    }
+
+    /**
+     * 导入结果；失败时conversations、messages和conversationIds是出错前已经写入的部分
+     */
+    public static class ImportResult {
+        private int conversations;
+        private long messages;
+        private final List<Long> conversationIds = new ArrayList<>();
+        private String error;
+
+        public int getConversations() { return conversations; }
+        public long getMessages() { return messages; }
+        public List<Long> getConversationIds() { return conversationIds; }
+        public String getError() { return error; }
+        public boolean isSuccess() { return error == null; }
+    }
+}
@@ -0,0 +1,386 @@
+package com.dualtracklife.lifeagent.service;
+
+import com.dualtracklife.lifeagent.model.AIConversation;
+import com.dualtracklife.lifeagent.model.AIMessage;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 对话写缓冲
+ * 新消息和有变化的会话先进入内存缓冲，后台线程按固定间隔把消息以JDBC批量插入写入数据库，
+ * 会话按ID去重后批量更新（不存在时插入）。请求线程只入队，不等待数据库。
+ * 批量写入失败时逐条写入：数据本身无法写入的行（超长、违反约束）转入死信，不阻塞其他行；
+ * 数据库不可用时保留数据等待下次重试，缓冲的消息总数不超过两倍queue-capacity。
+ * 未开启对话持久化（没有JdbcTemplate）时所有方法都是空操作
+ */
+@Service
+public class ConversationWriteBehind {
+
+    private static final String INSERT_MESSAGE_SQL = "INSERT INTO ai_messages (id, conversation_id, user_id, role_id, "
+            + "message_type, content, context_info, confidence, emotional_analysis, user_feedback, message_order, "
+            + "is_key_message, tags, created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String UPDATE_CONVERSATION_SQL = "UPDATE ai_conversations SET role_id = ?, session_title = ?, "
+            + "conversation_type = ?, related_event_id = ?, related_goal_id = ?, status = ?, summary = ?, key_insights = ?, "
+            + "satisfaction_rating = ?, last_active_at = ?, ended_at = ?, updated_at = ? WHERE id = ?";
+
+    private static final String INSERT_CONVERSATION_SQL = "INSERT INTO ai_conversations (id, user_id, role_id, "
+            + "session_title, conversation_type, related_event_id, related_goal_id, status, summary, key_insights, "
+            + "satisfaction_rating, started_at, last_active_at, ended_at, created_at, updated_at) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    @Autowired(required = false)
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${life-agent.conversation.persistence.flush-interval-ms:500}")
+    private long flushIntervalMs;
+
+    @Value("${life-agent.conversation.persistence.batch-size:200}")
+    private int batchSize;
+
+    @Value("${life-agent.conversation.persistence.queue-capacity:100000}")
+    private int queueCapacity;
+
+    @Value("${life-agent.conversation.persistence.dead-letter-capacity:1000}")
+    private int deadLetterCapacity;
+
+    private BlockingQueue<AIMessage> messageQueue;
+    private final Map<Long, AIConversation> dirtyConversations = new ConcurrentHashMap<>();
+    // 每个会话已入队但尚未写入的消息数，淘汰热数据前据此判断是否已落库
+    private final Map<Long, AtomicInteger> pendingByConversation = new ConcurrentHashMap<>();
+    // 写入失败的消息，下次刷新时优先重试，重试成功前不再从队列取新消息，因此不超过queue-capacity（只在持有本对象锁时访问）
+    private final List<AIMessage> retryMessages = new ArrayList<>();
+    // 最近放弃写入的行，最多保留dead-letter-capacity条供排查（只在持有本对象锁时访问）
+    private final Deque<DeadLetter> deadLetters = new ArrayDeque<>();
+    // 重试列表长度，刷新结束时更新，供统计读取
+    private volatile int retryBacklog;
+
+    private Thread worker;
+    private volatile boolean running;
+    private volatile Runnable afterFlush;
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong messagesWritten = new AtomicLong();
+    private final AtomicLong conversationsWritten = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong backpressureFlushes = new AtomicLong();
+    private final AtomicLong deadLettered = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        messageQueue = new LinkedBlockingQueue<>(queueCapacity);
+        if (!isEnabled()) {
+            return;
+        }
+        running = true;
+        worker = new Thread(this::runLoop, "conversation-write-behind");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (worker == null) {
+            return;
+        }
+        running = false;
+        worker.interrupt();
+        worker.join(5000);
+        // 关闭前写出剩余数据
+        flush();
+    }
+
+    public boolean isEnabled() {
+        return jdbcTemplate != null;
+    }
+
+    /**
+     * 每次后台刷新完成后在写线程上执行的回调，用于淘汰已落库的冷数据
+     */
+    public void setAfterFlush(Runnable afterFlush) {
+        this.afterFlush = afterFlush;
+    }
+
+    /**
+     * 新消息入队，立即返回；缓冲已满时由调用线程同步刷新作为背压，
+     * 数据库不可用时刷新腾不出空间，调用线程按刷新间隔等待，直到数据库恢复
+     */
+    public void enqueueMessage(AIMessage message) {
+        if (!isEnabled()) {
+            return;
+        }
+        AtomicInteger pending = pendingByConversation.computeIfAbsent(message.getConversationId(), k -> new AtomicInteger());
+        pending.incrementAndGet();
+        enqueued.incrementAndGet();
+        if (messageQueue.offer(message)) {
+            return;
+        }
+        try {
+            do {
+                backpressureFlushes.incrementAndGet();
+                flush();
+            } while (!messageQueue.offer(message, flushIntervalMs, TimeUnit.MILLISECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.decrementAndGet();
+            throw new IllegalStateException("写缓冲已满，等待数据库恢复时被中断", e);
+        }
+    }
+
+    /**
+     * 标记会话有变化，下次刷新时写入
+     */
+    public void markDirty(AIConversation conversation) {
+        if (isEnabled()) {
+            dirtyConversations.put(conversation.getId(), conversation);
+        }
+    }
+
+    /**
+     * 会话是否还有尚未写入数据库的消息或变更
+     */
+    public boolean hasPending(Long conversationId) {
+        AtomicInteger pending = pendingByConversation.get(conversationId);
+        return (pending != null && pending.get() > 0) || dirtyConversations.containsKey(conversationId);
+    }
+
+    /**
+     * 会话的热数据被淘汰后清理计数；调用方需保证此时该会话没有新的消息入队
+     */
+    public void forget(Long conversationId) {
+        pendingByConversation.remove(conversationId);
+    }
+
+    private void runLoop() {
+        while (running) {
+            try {
+                Thread.sleep(flushIntervalMs);
+                flush();
+                Runnable callback = afterFlush;
+                if (callback != null) {
+                    callback.run();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                System.out.println("[ConversationWriteBehind] 刷新异常: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 写出当前缓冲的全部会话变更和消息；数据库不可用时保留数据等待下次重试
+     */
+    public synchronized void flush() {
+        if (!isEnabled()) {
+            return;
+        }
+        flushConversations();
+        try {
+            // 先重试上次失败的消息，仍然失败时新消息留在队列中，由队列容量限制缓冲总量
+            if (!retryMessages.isEmpty()) {
+                List<AIMessage> retry = new ArrayList<>(retryMessages);
+                retryMessages.clear();
+                if (!writeAll(retry)) {
+                    return;
+                }
+            }
+            List<AIMessage> pending = new ArrayList<>();
+            messageQueue.drainTo(pending);
+            writeAll(pending);
+        } finally {
+            retryBacklog = retryMessages.size();
+        }
+    }
+
+    /**
+     * 分批写入消息，数据库不可用时把未写入的部分放入重试列表并返回false
+     */
+    private boolean writeAll(List<AIMessage> pending) {
+        for (int start = 0; start < pending.size(); start += batchSize) {
+            List<AIMessage> batch = pending.subList(start, Math.min(pending.size(), start + batchSize));
+            try {
+                writeMessages(batch);
+            } catch (DataAccessException e) {
+                failures.incrementAndGet();
+                retryMessages.addAll(pending.subList(start, pending.size()));
+                System.out.println("[ConversationWriteBehind] 消息写入失败，" + retryMessages.size() + " 条等待重试: " + e.getMessage());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void flushConversations() {
+        if (dirtyConversations.isEmpty()) {
+            return;
+        }
+        // 先移除再写入，写入期间的新变更会重新标记，下次再写
+        List<AIConversation> conversations = new ArrayList<>();
+        for (Long conversationId : new ArrayList<>(dirtyConversations.keySet())) {
+            AIConversation conversation = dirtyConversations.remove(conversationId);
+            if (conversation != null) {
+                conversations.add(conversation);
+            }
+        }
+        try {
+            writeConversations(conversations);
+        } catch (DataAccessException e) {
+            // 逐个写入，单个会话的数据问题不影响其他会话
+            for (int i = 0; i < conversations.size(); i++) {
+                AIConversation conversation = conversations.get(i);
+                try {
+                    writeConversations(List.of(conversation));
+                } catch (DataIntegrityViolationException invalid) {
+                    deadLetter("conversation", conversation.getId(), conversation, invalid);
+                } catch (DataAccessException unavailable) {
+                    failures.incrementAndGet();
+                    conversations.subList(i, conversations.size())
+                            .forEach(c -> dirtyConversations.putIfAbsent(c.getId(), c));
+                    System.out.println("[ConversationWriteBehind] 会话写入失败，等待重试: " + unavailable.getMessage());
+                    return;
+                }
+            }
+        }
+    }
+
+    private void writeConversations(List<AIConversation> conversations) {
+        List<Object[]> updates = new ArrayList<>();
+        for (AIConversation c : conversations) {
+            updates.add(new Object[]{c.getRoleId(), c.getSessionTitle(), conversationTypeOf(c), c.getRelatedEventId(),
+                    c.getRelatedGoalId(), c.getStatus(), c.getSummary(), c.getKeyInsights(), c.getSatisfactionRating(),
+                    c.getLastActiveAt(), c.getEndedAt(), c.getUpdatedAt(), c.getId()});
+        }
+        int[] counts = jdbcTemplate.batchUpdate(UPDATE_CONVERSATION_SQL, updates);
+
+        // 更新影响0行的是新会话，改为插入
+        List<Object[]> inserts = new ArrayList<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                AIConversation c = conversations.get(i);
+                inserts.add(new Object[]{c.getId(), c.getUserId(), c.getRoleId(), c.getSessionTitle(), conversationTypeOf(c),
+                        c.getRelatedEventId(), c.getRelatedGoalId(), c.getStatus(), c.getSummary(), c.getKeyInsights(),
+                        c.getSatisfactionRating(), c.getStartedAt(), c.getLastActiveAt(), c.getEndedAt(),
+                        c.getCreatedAt(), c.getUpdatedAt()});
+            }
+        }
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_CONVERSATION_SQL, inserts);
+        }
+        conversationsWritten.addAndGet(conversations.size());
+    }
+
+    private void writeMessages(List<AIMessage> messages) {
+        List<Object[]> rows = new ArrayList<>(messages.size());
+        for (AIMessage m : messages) {
+            rows.add(new Object[]{m.getId(), m.getConversationId(), m.getUserId(), m.getRoleId(), m.getMessageType(),
+                    m.getContent(), m.getContextInfo(), m.getConfidence(), m.getEmotionalAnalysis(), m.getUserFeedback(),
+                    m.getMessageOrder(), m.getIsKeyMessage(), m.getTags(), m.getCreatedAt(), m.getUpdatedAt()});
+        }
+        try {
+            jdbcTemplate.batchUpdate(INSERT_MESSAGE_SQL, rows);
+        } catch (DataAccessException e) {
+            // 逐条插入：重试的批次中可能有已经写入的消息，跳过主键冲突；数据本身无法写入的消息转入死信；
+            // 其他异常（如数据库不可用）向上抛出，整批等待重试
+            for (int i = 0; i < rows.size(); i++) {
+                try {
+                    jdbcTemplate.update(INSERT_MESSAGE_SQL, rows.get(i));
+                } catch (DuplicateKeyException duplicate) {
+                    // 已经写入过
+                } catch (DataIntegrityViolationException invalid) {
+                    AIMessage message = messages.get(i);
+                    deadLetter("message", message.getId(), message, invalid);
+                }
+            }
+        }
+        batches.incrementAndGet();
+        messagesWritten.addAndGet(messages.size());
+        for (AIMessage m : messages) {
+            AtomicInteger pending = pendingByConversation.get(m.getConversationId());
+            if (pending != null) {
+                pending.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 调用方需持有本对象的锁
+     */
+    private void deadLetter(String type, Long id, Object row, DataAccessException cause) {
+        deadLettered.incrementAndGet();
+        deadLetters.addLast(new DeadLetter(type, id, row, cause.getMessage()));
+        while (deadLetters.size() > deadLetterCapacity) {
+            deadLetters.removeFirst();
+        }
+        System.out.println("[ConversationWriteBehind] " + type + " " + id + " 无法写入，已放弃: " + cause.getMessage());
+    }
+
+    /**
+     * 最近放弃写入的行
+     */
+    public synchronized List<DeadLetter> getDeadLetters() {
+        return new ArrayList<>(deadLetters);
+    }
+
+    private String conversationTypeOf(AIConversation conversation) {
+        return conversation.getConversationType() != null ? conversation.getConversationType() : "general";
+    }
+
+    /**
+     * 获取写缓冲统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("queuedMessages", messageQueue.size());
+        stats.put("dirtyConversations", dirtyConversations.size());
+        stats.put("enqueued", enqueued.get());
+        stats.put("messagesWritten", messagesWritten.get());
+        stats.put("conversationsWritten", conversationsWritten.get());
+        stats.put("batches", batches.get());
+        stats.put("failures", failures.get());
+        stats.put("backpressureFlushes", backpressureFlushes.get());
+        stats.put("deadLettered", deadLettered.get());
+        stats.put("retryMessages", retryBacklog);
+        return stats;
+    }
+
+    /**
+     * 放弃写入的一行：类型（message或conversation）、ID、原始对象和数据库错误
+     */
+    public static class DeadLetter {
+        private final String type;
+        private final Long id;
+        private final Object row;
+        private final String error;
+
+        DeadLetter(String type, Long id, Object row, String error) {
+            this.type = type;
+            this.id = id;
+            this.row = row;
+            this.error = error;
+        }
+
+        public String getType() { return type; }
+        public Long getId() { return id; }
+        public Object getRow() { return row; }
+        public String getError() { return error; }
+    }
+}
@@ -0,0 +1,354 @@
+package com.dualtracklife.lifeagent.service;
+
+import com.dualtracklife.lifeagent.model.AIAnalysisRecord;
+import com.dualtracklife.lifeevent.model.LifeEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 事件分析服务
+ * 按事件ID + 内容哈希（事件内容、用户问题、提示词版本）缓存分析结果，事件未变化时直接返回已有结果，
+ * 事件被修改时由EventService调用invalidate清除。同一事件和内容哈希正在分析时（包括预计算），
+ * 后到的请求等待同一个结果，不重复调用模型
+ */
+@Service
+public class EventAnalysisService {
+
+    public static final String ANALYSIS_TYPE = "event";
+
+    // 修改事件分析提示词时需要同步升级版本号，使旧结果失效
+    public static final String PROMPT_VERSION = "event-analysis-v2";
+
+    // 用户打开事件分析但未输入问题时使用的默认问题，预计算也针对这个问题
+    public static final String DEFAULT_QUERY = "请帮我分析这个事件对我的意义和影响，并给出建议";
+
+    @Autowired
+    private SpringAIService springAIService;
+
+    @Autowired
+    private AIRequestScheduler aiRequestScheduler;
+
+    @Autowired
+    private AIAnalysisRecordService aiAnalysisRecordService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${spring.ai.dashscope.chat.options.model:qwen-max}")
+    private String aiModel;
+
+    @Value("${life-agent.ai.speculation.hit-window-minutes:1440}")
+    private long hitWindowMinutes;
+
+    // 尚未被命中的预计算记录ID -> 完成时间（nanoTime）；命中、失效或超出命中窗口后移除
+    private final Map<Long, Long> speculativeRecords = new ConcurrentHashMap<>();
+    // 命中窗口统一，按完成顺序即到期顺序，过期清理只看队首
+    private final Queue<SpeculativeCompletion> speculativeExpiry = new ConcurrentLinkedQueue<>();
+    private final AtomicLong speculativeCompleted = new AtomicLong();
+    private final AtomicLong speculativeHits = new AtomicLong();
+    private final AtomicLong speculativeWasted = new AtomicLong();
+
+    // 正在进行的分析：eventId:contentHash -> 结果
+    private final Map<String, CompletableFuture<EventAnalysisResult>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong joinedInFlight = new AtomicLong();
+
+    /**
+     * 分析事件：命中缓存或同一内容正在分析时不调用AI
+     */
+    public EventAnalysisResult analyzeEvent(LifeEvent event, String userQuery, AIRequestScheduler.Priority priority, AIDeadline deadline) {
+        return analyze(event, userQuery, priority, deadline, false);
+    }
+
+    /**
+     * 预计算事件分析：以后台优先级针对默认问题生成结果，供用户首次打开分析时直接命中
+     */
+    public void precompute(LifeEvent event) {
+        analyze(event, DEFAULT_QUERY, AIRequestScheduler.Priority.BACKGROUND, null, true);
+    }
+
+    private EventAnalysisResult analyze(LifeEvent event, String userQuery, AIRequestScheduler.Priority priority,
+                                        AIDeadline deadline, boolean speculative) {
+        String contentHash = contentHash(event, userQuery);
+        AIAnalysisRecord cached = aiAnalysisRecordService.findByEvent(event.getId(), contentHash);
+        if (cached != null) {
+            return served(cached, analysisText(cached), speculative);
+        }
+
+        String key = event.getId() + ":" + contentHash;
+        CompletableFuture<EventAnalysisResult> future = new CompletableFuture<>();
+        CompletableFuture<EventAnalysisResult> running = inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            joinedInFlight.incrementAndGet();
+            EventAnalysisResult result = await(running, deadline);
+            return served(result, speculative);
+        }
+
+        try {
+            // 注册之前可能刚有分析完成并移出inFlight，再查一次缓存
+            cached = aiAnalysisRecordService.findByEvent(event.getId(), contentHash);
+            EventAnalysisResult result = cached != null
+                    ? new EventAnalysisResult(cached, analysisText(cached), true)
+                    : generate(event, userQuery, contentHash, priority, deadline, speculative);
+            inFlight.remove(key, future);
+            future.complete(result);
+            return cached != null ? served(result, speculative) : result;
+        } catch (Throwable e) {
+            inFlight.remove(key, future);
+            future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private EventAnalysisResult generate(LifeEvent event, String userQuery, String contentHash,
+                                         AIRequestScheduler.Priority priority, AIDeadline deadline, boolean speculative) {
+        long start = System.currentTimeMillis();
+        String analysis = aiRequestScheduler.execute(priority, event.getUserId(), deadline,
+                () -> springAIService.eventAnalysisChat(event.getTitle(), event.getDescription(), event.getEventType(), userQuery));
+
+        AIAnalysisRecord record = new AIAnalysisRecord(event.getUserId(), ANALYSIS_TYPE,
+                toJson(inputData(event, userQuery)), toJson(resultData(analysis)));
+        record.setEventId(event.getId());
+        record.setContentHash(contentHash);
+        record.setAiModel(aiModel);
+        record.setProcessingTime((int) (System.currentTimeMillis() - start));
+        aiAnalysisRecordService.save(record);
+        event.setAiAnalysisId(record.getId());
+
+        if (speculative) {
+            // 在结果对等待者可见之前登记，等待中的用户请求才能计为命中
+            long completedAt = System.nanoTime();
+            speculativeRecords.put(record.getId(), completedAt);
+            speculativeExpiry.add(new SpeculativeCompletion(record.getId(), completedAt));
+            speculativeCompleted.incrementAndGet();
+            expireSpeculative();
+        }
+        return new EventAnalysisResult(record, analysis, false);
+    }
+
+    /**
+     * 没有调用模型、直接使用已有结果（缓存或同一内容正在进行的分析）时调用；
+     * 用户请求在命中窗口内用到预计算结果时计为命中，超出窗口才用到的计为浪费
+     */
+    private EventAnalysisResult served(AIAnalysisRecord record, String analysis, boolean speculative) {
+        if (!speculative) {
+            recordSpeculativeUse(record.getId());
+        }
+        return new EventAnalysisResult(record, analysis, true);
+    }
+
+    private EventAnalysisResult served(EventAnalysisResult result, boolean speculative) {
+        if (!speculative) {
+            recordSpeculativeUse(result.getAnalysisId());
+        }
+        return result.isCached() ? result : result.asShared();
+    }
+
+    private void recordSpeculativeUse(Long recordId) {
+        Long completedAt = speculativeRecords.remove(recordId);
+        if (completedAt == null) {
+            return;
+        }
+        if (System.nanoTime() - completedAt <= hitWindowNanos()) {
+            speculativeHits.incrementAndGet();
+        } else {
+            speculativeWasted.incrementAndGet();
+        }
+    }
+
+    /**
+     * 超出命中窗口仍未被用到的预计算结果计为浪费并停止跟踪
+     */
+    private void expireSpeculative() {
+        long now = System.nanoTime();
+        SpeculativeCompletion head;
+        while ((head = speculativeExpiry.peek()) != null && now - head.completedAt > hitWindowNanos()) {
+            if (!speculativeExpiry.remove(head)) {
+                continue;
+            }
+            // 已命中或已失效的记录不在表中，不重复计数
+            if (speculativeRecords.remove(head.recordId, head.completedAt)) {
+                speculativeWasted.incrementAndGet();
+            }
+        }
+    }
+
+    private long hitWindowNanos() {
+        return TimeUnit.MINUTES.toNanos(hitWindowMinutes);
+    }
+
+    private EventAnalysisResult await(CompletableFuture<EventAnalysisResult> running, AIDeadline deadline) {
+        try {
+            return deadline != null
+                    ? running.get(Math.max(0, deadline.remainingMillis()), TimeUnit.MILLISECONDS)
+                    : running.get();
+        } catch (TimeoutException e) {
+            throw new AIDeadlineExceededException(AIDeadlineExceededException.STAGE_MODEL);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待进行中的事件分析时被中断", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * 预计算命中与浪费统计：浪费指结果在命中窗口内没有被用户请求用到，或在被命中之前就因事件修改或删除而失效
+     */
+    public Map<String, Object> getSpeculationStats() {
+        expireSpeculative();
+        long completed = speculativeCompleted.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("completed", completed);
+        stats.put("hits", speculativeHits.get());
+        stats.put("wasted", speculativeWasted.get());
+        stats.put("pending", speculativeRecords.size());
+        stats.put("hitRate", completed > 0 ? (double) speculativeHits.get() / completed : 0.0);
+        stats.put("wastedRate", completed > 0 ? (double) speculativeWasted.get() / completed : 0.0);
+        stats.put("joinedInFlight", joinedInFlight.get());
+        stats.put("analysesInFlight", inFlight.size());
+        return stats;
+    }
+
+    /**
+     * 只查缓存，不触发AI调用
+     */
+    public EventAnalysisResult findCached(LifeEvent event, String userQuery) {
+        AIAnalysisRecord cached = aiAnalysisRecordService.findByEvent(event.getId(), contentHash(event, userQuery));
+        return cached != null ? new EventAnalysisResult(cached, analysisText(cached), true) : null;
+    }
+
+    /**
+     * 事件内容变化后清除其全部分析结果
+     */
+    public void invalidate(LifeEvent event) {
+        Collection<Long> removed = aiAnalysisRecordService.deleteByEvent(event.getId());
+        event.setAiAnalysisId(null);
+        for (Long recordId : removed) {
+            if (speculativeRecords.remove(recordId) != null) {
+                speculativeWasted.incrementAndGet();
+            }
+        }
+        if (!removed.isEmpty()) {
+            System.out.println("[EventAnalysis] 事件 " + event.getId() + " 已修改，清除 " + removed.size() + " 条分析结果");
+        }
+    }
+
+    /**
+     * 内容哈希只覆盖影响提示词的字段，与分析无关的字段（如地点、私密标记）变化不影响命中
+     */
+    String contentHash(LifeEvent event, String userQuery) {
+        String canonical = String.join("\u0000",
+                PROMPT_VERSION,
+                String.valueOf(event.getTitle()),
+                String.valueOf(event.getDescription()),
+                String.valueOf(event.getEventType()),
+                String.valueOf(userQuery));
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(canonical.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            throw new IllegalStateException("无法计算事件内容哈希", e);
+        }
+    }
+
+    private Map<String, Object> inputData(LifeEvent event, String userQuery) {
+        Map<String, Object> input = new HashMap<>();
+        input.put("eventId", event.getId());
+        input.put("eventTitle", event.getTitle());
+        input.put("eventDescription", event.getDescription());
+        input.put("eventType", event.getEventType());
+        input.put("userQuery", userQuery);
+        input.put("promptVersion", PROMPT_VERSION);
+        return input;
+    }
+
+    private Map<String, Object> resultData(String analysis) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("analysis", analysis);
+        result.put("promptVersion", PROMPT_VERSION);
+        return result;
+    }
+
+    private String analysisText(AIAnalysisRecord record) {
+        try {
+            return objectMapper.readTree(record.getAnalysisResult()).path("analysis").asText("");
+        } catch (Exception e) {
+            throw new IllegalStateException("无法解析分析记录：" + record.getId(), e);
+        }
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (Exception e) {
+            throw new IllegalStateException("无法序列化分析记录", e);
+        }
+    }
+
+    private static class SpeculativeCompletion {
+        private final Long recordId;
+        private final long completedAt;
+
+        SpeculativeCompletion(Long recordId, long completedAt) {
+            this.recordId = recordId;
+            this.completedAt = completedAt;
+        }
+    }
+
+    /**
+     * 事件分析结果
+     */
+    public static class EventAnalysisResult {
+        private final Long analysisId;
+        private final String analysis;
+        private final boolean cached;
+        private final LocalDateTime createdAt;
+
+        public EventAnalysisResult(AIAnalysisRecord record, String analysis, boolean cached) {
+            this(record.getId(), analysis, cached, record.getCreatedAt());
+        }
+
+        private EventAnalysisResult(Long analysisId, String analysis, boolean cached, LocalDateTime createdAt) {
+            this.analysisId = analysisId;
+            this.analysis = analysis;
+            this.cached = cached;
+            this.createdAt = createdAt;
+        }
+
+        /**
+         * 同一结果交给等待的请求时标记为复用，这些请求没有触发模型调用
+         */
+        EventAnalysisResult asShared() {
+            return new EventAnalysisResult(analysisId, analysis, true, createdAt);
+        }
+
+        public Long getAnalysisId() { return analysisId; }
+        public String getAnalysis() { return analysis; }
+        public boolean isCached() { return cached; }
+        public LocalDateTime getCreatedAt() { return createdAt; }
+    }
+}
@@ -0,0 +1,266 @@
+package com.dualtracklife.lifeagent.service;
+
+import com.dualtracklife.lifeevent.model.LifeEvent;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 新事件的AI补全队列
+ * 事件创建时只入队，不等待AI；后台线程把事件攒成小批次（达到批次大小或最早的事件等待超过最大延迟），
+ * 每个批次只发一次请求，由大模型补全人生领域、影响时间范围和建议标签后写回事件。
+ * 请求以后台优先级经AIRequestScheduler发出，不占用交互请求的并发槽位
+ */
+@Service
+public class EventEnrichmentQueue {
+
+    private static final Set<String> DOMAINS = Set.of("career", "health", "relationship", "learning", "finance", "personal_growth");
+    private static final Set<String> TIMEFRAMES = Set.of("immediate", "short_term", "medium_term", "long_term");
+
+    @Autowired
+    private SpringAIService springAIService;
+
+    @Autowired
+    private AIRequestScheduler aiRequestScheduler;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${life-agent.ai.enrichment.enabled:true}")
+    private boolean enabled;
+
+    @Value("${life-agent.ai.enrichment.batch-size:8}")
+    private int batchSize;
+
+    @Value("${life-agent.ai.enrichment.max-delay-ms:2000}")
+    private long maxDelayMs;
+
+    @Value("${life-agent.ai.enrichment.queue-capacity:1000}")
+    private int queueCapacity;
+
+    private BlockingQueue<EnrichmentTask> queue;
+    private Thread worker;
+    private volatile boolean running;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong enriched = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        queue = new LinkedBlockingQueue<>(queueCapacity);
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        worker = new Thread(this::runLoop, "event-enrichment");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    /**
+     * 提交事件等待补全，立即返回；队列已满时放弃补全，事件保留规则推断的结果
+     *
+     * @param fillDomains   是否用AI结果覆盖人生领域（用户未填写时为true）
+     * @param fillTimeframe 是否用AI结果覆盖影响时间范围（用户未填写时为true）
+     */
+    public void submit(LifeEvent event, boolean fillDomains, boolean fillTimeframe) {
+        if (!enabled) {
+            return;
+        }
+        if (queue.offer(new EnrichmentTask(event, fillDomains, fillTimeframe))) {
+            submitted.incrementAndGet();
+        } else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void runLoop() {
+        while (running) {
+            try {
+                List<EnrichmentTask> batch = nextBatch();
+                if (!batch.isEmpty()) {
+                    processBatch(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                System.out.println("[EventEnrichment] 批处理异常: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 阻塞等待第一个事件，然后继续收集，直到攒满一个批次或第一个事件已等待maxDelayMs
+     */
+    private List<EnrichmentTask> nextBatch() throws InterruptedException {
+        List<EnrichmentTask> batch = new ArrayList<>();
+        EnrichmentTask first = queue.take();
+        batch.add(first);
+
+        long deadline = first.enqueuedAt + maxDelayMs;
+        while (batch.size() < batchSize) {
+            long waitMs = deadline - System.currentTimeMillis();
+            if (waitMs <= 0) {
+                queue.drainTo(batch, batchSize - batch.size());
+                break;
+            }
+            EnrichmentTask next = queue.poll(waitMs, TimeUnit.MILLISECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    private void processBatch(List<EnrichmentTask> batch) {
+        batches.incrementAndGet();
+        // 用批次内序号标识事件，部分来源的事件还没有分配ID
+        Map<Integer, EnrichmentTask> byIndex = new HashMap<>();
+        StringBuilder table = new StringBuilder("序号|类型|标题|描述\n");
+        for (int i = 0; i < batch.size(); i++) {
+            LifeEvent event = batch.get(i).event;
+            byIndex.put(i + 1, batch.get(i));
+            table.append(i + 1).append('|')
+                    .append(clean(event.getEventType(), 30)).append('|')
+                    .append(clean(event.getTitle(), 60)).append('|')
+                    .append(clean(event.getDescription(), 200)).append('\n');
+        }
+
+        try {
+            String response = aiRequestScheduler.execute(AIRequestScheduler.Priority.BACKGROUND, null,
+                    () -> springAIService.classifyEventsBatch(table.toString()));
+            int applied = apply(parseArray(response), byIndex);
+            enriched.addAndGet(applied);
+            failed.addAndGet(batch.size() - applied);
+        } catch (Exception e) {
+            failed.addAndGet(batch.size());
+            System.out.println("[EventEnrichment] " + batch.size() + " 个事件补全失败，保留规则推断结果: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 写回补全结果，只接受预定义取值，返回成功写回的事件数。
+     * 事件对象与请求线程共享，写回在事件锁内进行；提交后被用户修改过的字段保持不变
+     */
+    private int apply(JsonNode results, Map<Integer, EnrichmentTask> byIndex) {
+        int applied = 0;
+        for (JsonNode item : results) {
+            EnrichmentTask task = byIndex.remove(item.path("index").asInt(-1));
+            if (task == null) {
+                continue;
+            }
+            List<String> domains = new ArrayList<>();
+            for (JsonNode domain : item.path("domains")) {
+                if (DOMAINS.contains(domain.asText())) {
+                    domains.add(domain.asText());
+                }
+            }
+            String timeframe = item.path("timeframe").asText("");
+            String tags = item.path("tags").isArray() && !item.path("tags").isEmpty() ? item.path("tags").toString() : null;
+
+            LifeEvent event = task.event;
+            synchronized (event) {
+                boolean changed = false;
+                if (task.fillDomains && !domains.isEmpty()
+                        && Objects.equals(event.getLifeDomains(), task.submittedDomains)) {
+                    event.setLifeDomains(String.join(",", domains));
+                    changed = true;
+                }
+                if (task.fillTimeframe && TIMEFRAMES.contains(timeframe)
+                        && Objects.equals(event.getImpactTimeframe(), task.submittedTimeframe)) {
+                    event.setImpactTimeframe(timeframe);
+                    changed = true;
+                }
+                if (tags != null && (event.getTags() == null || event.getTags().isBlank())) {
+                    event.setTags(tags);
+                    changed = true;
+                }
+                if (changed) {
+                    event.setUpdatedAt(LocalDateTime.now());
+                }
+            }
+            applied++;
+        }
+        return applied;
+    }
+
+    /**
+     * 模型偶尔会带上代码块标记或说明文字，只取第一个JSON数组
+     */
+    private JsonNode parseArray(String response) throws Exception {
+        int start = response.indexOf('[');
+        int end = response.lastIndexOf(']');
+        if (start < 0 || end <= start) {
+            throw new IllegalStateException("AI返回中没有JSON数组");
+        }
+        return objectMapper.readTree(response.substring(start, end + 1));
+    }
+
+    private String clean(String text, int limit) {
+        if (text == null) {
+            return "";
+        }
+        String cleaned = text.replaceAll("[|\\r\\n]+", " ").trim();
+        return cleaned.length() > limit ? cleaned.substring(0, limit) : cleaned;
+    }
+
+    /**
+     * 获取补全队列统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("queued", queue.size());
+        stats.put("submitted", submitted.get());
+        stats.put("dropped", dropped.get());
+        stats.put("enriched", enriched.get());
+        stats.put("failed", failed.get());
+        stats.put("batches", batches.get());
+        stats.put("avgBatchSize", batches.get() > 0 ? (double) (enriched.get() + failed.get()) / batches.get() : 0.0);
+        return stats;
+    }
+
+    private static class EnrichmentTask {
+        private final LifeEvent event;
+        private final boolean fillDomains;
+        private final boolean fillTimeframe;
+        // 提交时的取值（规则推断结果或空），写回前据此判断用户是否已修改
+        private final String submittedDomains;
+        private final String submittedTimeframe;
+        private final long enqueuedAt = System.currentTimeMillis();
+
+        private EnrichmentTask(LifeEvent event, boolean fillDomains, boolean fillTimeframe) {
+            this.event = event;
+            this.fillDomains = fillDomains;
+            this.fillTimeframe = fillTimeframe;
+            synchronized (event) {
+                this.submittedDomains = event.getLifeDomains();
+                this.submittedTimeframe = event.getImpactTimeframe();
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.dualtracklife.lifeagent.service;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 空闲超时时间轮
+ * 每个键一个超时项，按到期的tick散列到固定数量的槽中，超过一圈的记录剩余圈数。
+ * touch只更新超时项的到期时间，不移动槽位；工作线程走到该槽时发现尚未到期再按新的到期时间重新放入，
+ * 因此touch是O(1)，每个tick只处理当前槽中的超时项，没有全量扫描
+ */
+public class IdleTimerWheel {
+
+    private final long tickNanos;
+    private final long timeoutNanos;
+    private final int mask;
+    private final Consumer<Long> onExpire;
+    private final String threadName;
+
+    private final Map<Long, Timeout> timeouts = new ConcurrentHashMap<>();
+    // 新建的超时项先进入此队列，由工作线程放入槽中；槽只由工作线程访问
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final ArrayDeque<Timeout>[] wheel;
+
+    private Thread worker;
+    private long startNanos;
+    private long currentTick;
+
+    @SuppressWarnings("unchecked")
+    public IdleTimerWheel(long tickMs, int wheelSize, long timeoutMs, Consumer<Long> onExpire, String threadName) {
+        int size = Integer.highestOneBit(Math.max(2, wheelSize - 1)) << 1;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMs));
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        this.mask = size - 1;
+        this.onExpire = onExpire;
+        this.threadName = threadName;
+        this.wheel = new ArrayDeque[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new ArrayDeque<>();
+        }
+    }
+
+    public void start() {
+        startNanos = System.nanoTime();
+        worker = new Thread(this::runLoop, threadName);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public void stop() {
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    /**
+     * 刷新键的到期时间，不存在或已到期时新建超时项
+     */
+    public void touch(Long key) {
+        long deadline = System.nanoTime() + timeoutNanos;
+        Timeout timeout = timeouts.get(key);
+        if (timeout != null) {
+            synchronized (timeout) {
+                if (!timeout.expired) {
+                    timeout.deadline = deadline;
+                    return;
+                }
+            }
+        }
+        Timeout created = new Timeout(key, deadline);
+        if (timeouts.putIfAbsent(key, created) == null) {
+            pending.add(created);
+        } else {
+            // 并发touch已经新建，再刷新一次
+            touch(key);
+        }
+    }
+
+    /**
+     * 取消键的超时，工作线程走到对应槽时丢弃
+     */
+    public void cancel(Long key) {
+        Timeout timeout = timeouts.remove(key);
+        if (timeout != null) {
+            synchronized (timeout) {
+                timeout.expired = true;
+            }
+        }
+    }
+
+    public int size() {
+        return timeouts.size();
+    }
+
+    private void runLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            long sleepNanos = startNanos + (currentTick + 1) * tickNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            Timeout timeout;
+            while ((timeout = pending.poll()) != null) {
+                place(timeout);
+            }
+            currentTick++;
+            expireBucket(wheel[(int) (currentTick & mask)]);
+        }
+    }
+
+    private void expireBucket(ArrayDeque<Timeout> bucket) {
+        long now = System.nanoTime();
+        int count = bucket.size();
+        for (int i = 0; i < count; i++) {
+            Timeout timeout = bucket.poll();
+            if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+                bucket.add(timeout);
+                continue;
+            }
+            boolean expired;
+            synchronized (timeout) {
+                if (timeout.expired) {
+                    // 已取消
+                    continue;
+                }
+                expired = timeout.deadline <= now;
+                if (expired) {
+                    timeout.expired = true;
+                }
+            }
+            if (!expired) {
+                // 期间被touch过，按新的到期时间重新放入
+                place(timeout);
+                continue;
+            }
+            timeouts.remove(timeout.key, timeout);
+            try {
+                onExpire.accept(timeout.key);
+            } catch (Exception e) {
+                System.out.println("[IdleTimerWheel] 超时处理异常: " + timeout.key + " " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 只在工作线程中调用
+     */
+    private void place(Timeout timeout) {
+        long deadlineTick = (timeout.deadline - startNanos + tickNanos - 1) / tickNanos;
+        long ticks = Math.max(deadlineTick, currentTick + 1);
+        timeout.remainingRounds = (ticks - currentTick - 1) / wheel.length;
+        wheel[(int) (ticks & mask)].add(timeout);
+    }
+
+    private static class Timeout {
+        private final Long key;
+        // 到期时间（nanoTime），touch时更新
+        private volatile long deadline;
+        // 只在工作线程中访问
+        private long remainingRounds;
+        // 已到期或已取消，读写需持有本对象的锁
+        private boolean expired;
+
+        Timeout(Long key, long deadline) {
+            this.key = key;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.dualtracklife.lifeagent.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * 本地意图分类器
+ * 对每条用户消息在进程内判断意图（对应的处理方式）和推荐角色，不调用大模型。
+ * 模型是从资源文件加载的线性模型：特征为字符n-gram和较长的关键词，每个标签一个偏置和一组特征权重，
+ * 得分经softmax得到置信度，置信度不足时由调用方沿用原有的对话类型或规则
+ */
+@Service
+public class IntentClassifier {
+
+    public static final String GENERAL = "general";
+
+    // 单条消息参与打分的最大字符数，保证耗时有上界
+    private static final int MAX_TEXT_LENGTH = 500;
+
+    @Autowired
+    private ResourceLoader resourceLoader;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${life-agent.ai.intent.enabled:true}")
+    private boolean enabled;
+
+    @Value("${life-agent.ai.intent.model-location:classpath:intent-model.json}")
+    private String modelLocation;
+
+    @Value("${life-agent.ai.intent.min-confidence:0.5}")
+    private double minConfidence;
+
+    private String version;
+    private LinearHead intentHead;
+    private LinearHead roleHead;
+
+    @PostConstruct
+    public void load() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        try (InputStream in = resourceLoader.getResource(modelLocation).getInputStream()) {
+            JsonNode root = objectMapper.readTree(in);
+            version = root.path("version").asText("unknown");
+
+            JsonNode sizes = root.path("ngramSizes");
+            int[] ngramSizes = new int[sizes.size()];
+            for (int i = 0; i < sizes.size(); i++) {
+                ngramSizes[i] = sizes.get(i).asInt();
+            }
+
+            intentHead = new LinearHead(root.path("intents"), ngramSizes);
+            roleHead = new LinearHead(root.path("roles"), ngramSizes);
+        }
+        System.out.println("[IntentClassifier] 已加载意图模型 " + version + "，意图" + intentHead.labels.length
+                + "个，角色" + roleHead.labels.length + "个");
+    }
+
+    /**
+     * 对一段文本分类，未启用或文本为空时返回null
+     */
+    public IntentPrediction classify(String text) {
+        if (!enabled || text == null || text.isBlank()) {
+            return null;
+        }
+        String normalized = text.length() > MAX_TEXT_LENGTH ? text.substring(0, MAX_TEXT_LENGTH) : text;
+        normalized = normalized.toLowerCase(Locale.ROOT);
+
+        double[] intentScores = intentHead.score(normalized);
+        double[] roleScores = roleHead.score(normalized);
+        int intentIndex = argmax(intentScores);
+        int roleIndex = argmax(roleScores);
+        double intentConfidence = softmax(intentScores, intentIndex);
+        double roleConfidence = softmax(roleScores, roleIndex);
+
+        return new IntentPrediction(
+                intentHead.labels[intentIndex], intentConfidence, intentConfidence >= minConfidence,
+                roleHead.labels[roleIndex], roleConfidence, roleConfidence >= minConfidence);
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * 选择消息的处理方式：意图置信度足够且不是一般对话时按消息意图，否则沿用会话的对话类型（没有时为一般对话）
+     */
+    public static String resolveHandler(IntentPrediction intent, String conversationType) {
+        String confidentIntent = intent != null ? intent.confidentIntent() : null;
+        if (confidentIntent != null) {
+            return confidentIntent;
+        }
+        return conversationType != null ? conversationType : GENERAL;
+    }
+
+    private static int argmax(double[] scores) {
+        int best = 0;
+        for (int i = 1; i < scores.length; i++) {
+            if (scores[i] > scores[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 第index个标签的softmax概率，作为置信度
+     */
+    private static double softmax(double[] scores, int index) {
+        double sum = 0;
+        for (double score : scores) {
+            sum += Math.exp(score - scores[index]);
+        }
+        return 1.0 / sum;
+    }
+
+    /**
+     * 一组标签上的线性模型
+     */
+    private static class LinearHead {
+        private final String[] labels;
+        private final double[] bias;
+        private final int[] ngramSizes;
+        // 长度等于n-gram长度的特征按n-gram查表，其余按关键词包含匹配
+        private final Map<String, double[]> ngramWeights = new HashMap<>();
+        private final Map<String, double[]> keywordWeights = new HashMap<>();
+
+        LinearHead(JsonNode node, int[] ngramSizes) {
+            this.ngramSizes = ngramSizes;
+            JsonNode labelNodes = node.path("labels");
+            labels = new String[labelNodes.size()];
+            Map<String, Integer> indexes = new HashMap<>();
+            for (int i = 0; i < labels.length; i++) {
+                labels[i] = labelNodes.get(i).asText();
+                indexes.put(labels[i], i);
+            }
+            if (labels.length == 0) {
+                throw new IllegalStateException("意图模型缺少标签");
+            }
+
+            bias = new double[labels.length];
+            node.path("bias").fields().forEachRemaining(entry -> {
+                Integer index = indexes.get(entry.getKey());
+                if (index != null) {
+                    bias[index] = entry.getValue().asDouble();
+                }
+            });
+
+            Set<Integer> sizes = new HashSet<>();
+            for (int size : ngramSizes) {
+                sizes.add(size);
+            }
+            node.path("weights").fields().forEachRemaining(feature -> {
+                double[] weights = new double[labels.length];
+                feature.getValue().fields().forEachRemaining(entry -> {
+                    Integer index = indexes.get(entry.getKey());
+                    if (index != null) {
+                        weights[index] = entry.getValue().asDouble();
+                    }
+                });
+                String key = feature.getKey().toLowerCase(Locale.ROOT);
+                (sizes.contains(key.length()) ? ngramWeights : keywordWeights).put(key, weights);
+            });
+        }
+
+        double[] score(String text) {
+            double[] scores = bias.clone();
+            for (int n : ngramSizes) {
+                for (int i = 0; i + n <= text.length(); i++) {
+                    add(scores, ngramWeights.get(text.substring(i, i + n)));
+                }
+            }
+            for (Map.Entry<String, double[]> keyword : keywordWeights.entrySet()) {
+                if (text.contains(keyword.getKey())) {
+                    add(scores, keyword.getValue());
+                }
+            }
+            return scores;
+        }
+
+        private static void add(double[] scores, double[] weights) {
+            if (weights == null) {
+                return;
+            }
+            for (int i = 0; i < scores.length; i++) {
+                scores[i] += weights[i];
+            }
+        }
+    }
+
+    /**
+     * 分类结果
+     */
+    public static class IntentPrediction {
+        private final String intent;
+        private final double intentConfidence;
+        private final boolean intentConfident;
+        private final String roleId;
+        private final double roleConfidence;
+        private final boolean roleConfident;
+
+        public IntentPrediction(String intent, double intentConfidence, boolean intentConfident,
+                                String roleId, double roleConfidence, boolean roleConfident) {
+            this.intent = intent;
+            this.intentConfidence = intentConfidence;
+            this.intentConfident = intentConfident;
+            this.roleId = roleId;
+            this.roleConfidence = roleConfidence;
+            this.roleConfident = roleConfident;
+        }
+
+        public String getIntent() { return intent; }
+        public double getIntentConfidence() { return intentConfidence; }
+        public boolean isIntentConfident() { return intentConfident; }
+        public String getRoleId() { return roleId; }
+        public double getRoleConfidence() { return roleConfidence; }
+        public boolean isRoleConfident() { return roleConfident; }
+
+        /**
+         * 置信度足够且不是一般对话时返回意图，否则返回null
+         */
+        public String confidentIntent() {
+            return intentConfident && !GENERAL.equals(intent) ? intent : null;
+        }
+
+        /**
+         * 写入消息contextInfo的JSON
+         */
+        public String toContextInfo() {
+            return String.format(Locale.ROOT,
+                    "{\"intent\":\"%s\",\"intentConfidence\":%.3f,\"recommendedRoleId\":\"%s\",\"roleConfidence\":%.3f}",
+                    intent, intentConfidence, roleId, roleConfidence);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.dualtracklife.lifeagent.service;
+
+import com.dualtracklife.lifeevent.model.LifeEvent;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * 人生事件的紧凑提示词编码
+ * 把事件列表编码为带字典的竖线分隔表格：类型、情绪、领域用短码表示，日期用距今天数表示，
+ * 描述按token预算逐级截断，仍然超出预算时按重要性和时间丢弃次要事件
+ *
+ * 输出示例：
+ * 字典 类型:a=career b=learning|情绪:a=happy|领域:a=career
+ * 列 天前|类型|情绪|强度|重要|里程碑|领域|标题|描述
+ * 30|a|a|8|9|Y|a|拿到新工作offer|经过三轮面试...
+ */
+@Component
+public class LifeEventPromptSerializer {
+
+    // 描述截断长度，逐级降低直到满足预算
+    private static final int[] DESCRIPTION_LIMITS = {80, 40, 16, 0};
+
+    /**
+     * 按token预算编码事件列表
+     */
+    public SerializedEvents serialize(List<LifeEvent> events, LocalDate today, int tokenBudget) {
+        List<LifeEvent> included = new ArrayList<>(events);
+        included.sort(Comparator.comparing(LifeEvent::getEventDate, Comparator.nullsFirst(Comparator.naturalOrder())));
+
+        String text = null;
+        for (int limit : DESCRIPTION_LIMITS) {
+            text = encode(included, today, limit, events.size() - included.size());
+            if (estimateTokens(text) <= tokenBudget) {
+                return new SerializedEvents(text, included.size(), 0, estimateTokens(text), estimateTokens(naive(events)));
+            }
+        }
+
+        // 不带描述仍然超出预算：保留重要性高、时间近的事件
+        List<LifeEvent> ranked = new ArrayList<>(events);
+        ranked.sort(Comparator.comparing((LifeEvent e) -> e.getImportanceLevel() != null ? e.getImportanceLevel() : 0).reversed()
+                .thenComparing(LifeEvent::getEventDate, Comparator.nullsLast(Comparator.reverseOrder())));
+        int low = 0;
+        int high = ranked.size();
+        while (low < high) {
+            int mid = (low + high + 1) / 2;
+            List<LifeEvent> candidate = chronological(ranked.subList(0, mid));
+            if (estimateTokens(encode(candidate, today, 0, events.size() - mid)) <= tokenBudget) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        included = chronological(ranked.subList(0, low));
+        text = encode(included, today, 0, events.size() - low);
+        return new SerializedEvents(text, low, events.size() - low, estimateTokens(text), estimateTokens(naive(events)));
+    }
+
+    /**
+     * 逐字段展开的常规格式，作为节省量的对照基准
+     */
+    public String naive(List<LifeEvent> events) {
+        StringBuilder sb = new StringBuilder();
+        for (LifeEvent event : events) {
+            sb.append("事件标题：").append(nullToEmpty(event.getTitle())).append("\n");
+            sb.append("事件描述：").append(nullToEmpty(event.getDescription())).append("\n");
+            sb.append("事件类型：").append(nullToEmpty(event.getEventType())).append("\n");
+            sb.append("事件日期：").append(event.getEventDate()).append("\n");
+            sb.append("情感状态：").append(nullToEmpty(event.getEmotionalState())).append("\n");
+            sb.append("情绪强度：").append(event.getEmotionalIntensity()).append("\n");
+            sb.append("重要程度：").append(event.getImportanceLevel()).append("\n");
+            sb.append("是否里程碑：").append(Boolean.TRUE.equals(event.getIsMilestone()) ? "是" : "否").append("\n");
+            sb.append("人生领域：").append(nullToEmpty(event.getLifeDomains())).append("\n\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 估算token数：中日韩字符按每字1个token，其他字符按每4个字符1个token
+     * 与通义千问分词器的实际计数有偏差，但足以比较两种格式和控制预算
+     */
+    public static int estimateTokens(String text) {
+        int cjk = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x2E80) {
+                cjk++;
+            } else {
+                other++;
+            }
+        }
+        return cjk + (other + 3) / 4;
+    }
+
+    private String encode(List<LifeEvent> events, LocalDate today, int descriptionLimit, int omitted) {
+        Map<String, String> types = new LinkedHashMap<>();
+        Map<String, String> emotions = new LinkedHashMap<>();
+        Map<String, String> domains = new LinkedHashMap<>();
+
+        StringBuilder rows = new StringBuilder();
+        for (LifeEvent event : events) {
+            rows.append(event.getEventDate() != null ? ChronoUnit.DAYS.between(event.getEventDate(), today) : "").append('|')
+                    .append(code(types, event.getEventType())).append('|')
+                    .append(code(emotions, event.getEmotionalState())).append('|')
+                    .append(event.getEmotionalIntensity() != null ? event.getEmotionalIntensity() : "").append('|')
+                    .append(event.getImportanceLevel() != null ? event.getImportanceLevel() : "").append('|')
+                    .append(Boolean.TRUE.equals(event.getIsMilestone()) ? "Y" : "").append('|');
+            List<String> domainCodes = new ArrayList<>();
+            for (String domain : splitDomains(event.getLifeDomains())) {
+                domainCodes.add(code(domains, domain));
+            }
+            rows.append(String.join(",", domainCodes)).append('|')
+                    .append(clean(event.getTitle(), 40));
+            if (descriptionLimit > 0 && event.getDescription() != null && !event.getDescription().isBlank()) {
+                rows.append('|').append(clean(event.getDescription(), descriptionLimit));
+            }
+            rows.append('\n');
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("字典 类型:").append(legend(types))
+                .append("|情绪:").append(legend(emotions))
+                .append("|领域:").append(legend(domains)).append('\n');
+        sb.append("列 天前|类型|情绪|强度|重要|里程碑|领域|标题|描述\n");
+        sb.append(rows);
+        if (omitted > 0) {
+            sb.append("另有").append(omitted).append("条次要事件已省略\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 按首次出现顺序分配短码：a-z，之后为两位字母
+     */
+    private String code(Map<String, String> dictionary, String value) {
+        if (value == null || value.isBlank()) {
+            return "";
+        }
+        return dictionary.computeIfAbsent(value.trim(), v -> {
+            int index = dictionary.size();
+            return index < 26 ? String.valueOf((char) ('a' + index))
+                    : "" + (char) ('a' + index / 26 - 1) + (char) ('a' + index % 26);
+        });
+    }
+
+    private String legend(Map<String, String> dictionary) {
+        StringJoiner joiner = new StringJoiner(" ");
+        dictionary.forEach((value, code) -> joiner.add(code + "=" + value));
+        return joiner.toString();
+    }
+
+    /**
+     * 领域字段可能是JSON数组或逗号分隔的字符串
+     */
+    private List<String> splitDomains(String lifeDomains) {
+        if (lifeDomains == null || lifeDomains.isBlank()) {
+            return List.of();
+        }
+        List<String> result = new ArrayList<>();
+        for (String part : lifeDomains.replaceAll("[\\[\\]\"]", "").split("[,，]")) {
+            if (!part.isBlank()) {
+                result.add(part.trim());
+            }
+        }
+        return result;
+    }
+
+    private String clean(String text, int limit) {
+        if (text == null) {
+            return "";
+        }
+        String cleaned = text.replaceAll("[|\\r\\n]+", " ").trim();
+        return cleaned.length() > limit ? cleaned.substring(0, limit) + "…" : cleaned;
+    }
+
+    private List<LifeEvent> chronological(List<LifeEvent> events) {
+        List<LifeEvent> sorted = new ArrayList<>(events);
+        sorted.sort(Comparator.comparing(LifeEvent::getEventDate, Comparator.nullsFirst(Comparator.naturalOrder())));
+        return sorted;
+    }
+
+    private String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+
+    /**
+     * 编码结果
+     */
+    public static class SerializedEvents {
+        private final String text;
+        private final int includedEvents;
+        private final int omittedEvents;
+        private final int estimatedTokens;
+        private final int naiveEstimatedTokens;
+
+        public SerializedEvents(String text, int includedEvents, int omittedEvents, int estimatedTokens, int naiveEstimatedTokens) {
+            this.text = text;
+            this.includedEvents = includedEvents;
+            this.omittedEvents = omittedEvents;
+            this.estimatedTokens = estimatedTokens;
+            this.naiveEstimatedTokens = naiveEstimatedTokens;
+        }
+
+        public String getText() { return text; }
+        public int getIncludedEvents() { return includedEvents; }
+        public int getOmittedEvents() { return omittedEvents; }
+        public int getEstimatedTokens() { return estimatedTokens; }
+        public int getNaiveEstimatedTokens() { return naiveEstimatedTokens; }
+
+        public int getTokensSaved() {
+            return naiveEstimatedTokens - estimatedTokens;
+        }
+
+        public Map<String, Object> toStats() {
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("includedEvents", includedEvents);
+            stats.put("omittedEvents", omittedEvents);
+            stats.put("estimatedTokens", estimatedTokens);
+            stats.put("naiveEstimatedTokens", naiveEstimatedTokens);
+            stats.put("tokensSaved", getTokensSaved());
+            stats.put("savedRatio", naiveEstimatedTokens > 0 ? (double) getTokensSaved() / naiveEstimatedTokens : 0.0);
+            return stats;
+        }
+    }
+}
@@ -2,12 +2,15 @@ package com.dualtracklife.lifeagent.service;
 
 import com.dualtracklife.lifeagent.model.*;
 import com.dualtracklife.lifeevent.model.LifeEvent;
+import com.dualtracklife.lifeevent.service.EventService;
 import org.springframework.stereotype.Service;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
 
 /**
@@ -20,22 +23,43 @@ public class LifeTrajectoryService {
     @Autowired
     private AIRoleService aiRoleService;
     
-    // 模拟数据存储
-    private Map<Long, List<LifeEvent>> userEventsRepository = new HashMap<>();
+    @Autowired
+    private EventEnrichmentQueue eventEnrichmentQueue;
+    
+    @Autowired
+    private SpeculativeAnalysisService speculativeAnalysisService;
+    
+    @Autowired
+    private EventService eventService;
+    
+    // 模拟数据存储，请求线程并发读写；事件列表在遍历时可能被追加，使用写时复制列表
+    private final Map<Long, List<LifeEvent>> userEventsRepository = new ConcurrentHashMap<>();
+    private final Map<Long, LifeEvent> eventsById = new ConcurrentHashMap<>();
     
     /**
      * 添加人生事件
      */
     public LifeEvent addLifeEvent(LifeEvent event) {
-        // 自动分析和增强事件信息
+        boolean fillDomains = event.getLifeDomains() == null;
+        boolean fillTimeframe = event.getImpactTimeframe() == null;
+        
+        // 先用规则即时补全，AI补全结果稍后异步写回
         enhanceEventWithAI(event);
+        eventEnrichmentQueue.submit(event, fillDomains, fillTimeframe);
         
         // 推荐相关AI角色
         List<String> recommendedRoles = aiRoleService.recommendMultipleRoles(event);
         event.setRecommendedRoles(String.join(",", recommendedRoles));
         
-        // 存储事件
-        userEventsRepository.computeIfAbsent(event.getUserId(), k -> new ArrayList<>()).add(event);
+        // 存储事件，ID与EventService共用一个序列
+        if (event.getId() == null) {
+            event.setId(eventService.nextEventId());
+        }
+        userEventsRepository.computeIfAbsent(event.getUserId(), k -> new CopyOnWriteArrayList<>()).add(event);
+        eventsById.put(event.getId(), event);
+        
+        // 重要事件预先生成AI分析
+        speculativeAnalysisService.onEventCreated(event);
         
         return event;
     }
@@ -130,6 +154,13 @@ public class LifeTrajectoryService {
         return overview;
     }
     
+    /**
+     * 根据ID获取事件
+     */
+    public LifeEvent getEventById(Long eventId) {
+        return eventsById.get(eventId);
+    }
+    
     /**
      * 获取用户的所有事件
      */
@@ -0,0 +1,36 @@
+package com.dualtracklife.lifeagent.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 消息分页游标
+ * 游标对客户端不透明，内容为会话ID和消息序号，URL安全的Base64编码；
+ * 解码时校验会话ID，其他会话的游标和格式错误的游标都视为无效
+ */
+final class MessageCursor {
+
+    private MessageCursor() {
+    }
+
+    static String encode(Long conversationId, int messageOrder) {
+        String raw = conversationId + ":" + messageOrder;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static int decode(Long conversationId, String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            if (separator > 0 && Long.parseLong(raw.substring(0, separator)) == conversationId) {
+                int messageOrder = Integer.parseInt(raw.substring(separator + 1));
+                if (messageOrder >= 0) {
+                    return messageOrder;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            // Base64或数字格式错误，NumberFormatException也在此处理
+        }
+        throw new IllegalArgumentException("无效的分页游标");
+    }
+}
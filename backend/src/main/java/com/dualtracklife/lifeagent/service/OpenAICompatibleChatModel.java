@@ -0,0 +1,154 @@
+package com.dualtracklife.lifeagent.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * OpenAI兼容接口的ChatModel
+ * 调用任意实现了 /chat/completions 的服务（如vLLM、Ollama或本地替身服务），作为DashScope之外的备用提供方
+ */
+public class OpenAICompatibleChatModel implements ChatModel {
+
+    private final WebClient webClient;
+    private final ObjectMapper objectMapper;
+    private final String model;
+    private final Duration requestTimeout;
+
+    /**
+     * @param baseUrl        接口根地址，例如 http://localhost:8000/v1
+     * @param requestTimeout 阻塞调用的最长等待时间，流式调用等待首个分片的最长时间；超时按失败处理，由路由器切换到其他提供方
+     */
+    public OpenAICompatibleChatModel(WebClient.Builder webClientBuilder, ObjectMapper objectMapper,
+                                     String baseUrl, String apiKey, String model, Duration requestTimeout) {
+        WebClient.Builder builder = webClientBuilder.clone().baseUrl(baseUrl);
+        if (apiKey != null && !apiKey.isBlank()) {
+            builder.defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey);
+        }
+        this.webClient = builder.build();
+        this.objectMapper = objectMapper;
+        this.model = model;
+        this.requestTimeout = requestTimeout;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        JsonNode body = webClient.post()
+                .uri("/chat/completions")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(requestBody(prompt, false))
+                .retrieve()
+                .bodyToMono(JsonNode.class)
+                .timeout(requestTimeout)
+                .onErrorMap(TimeoutException.class, this::timedOut)
+                .block();
+        if (body == null) {
+            throw new IllegalStateException("OpenAI兼容接口返回为空");
+        }
+        String content = body.path("choices").path(0).path("message").path("content").asText("");
+        return toResponse(content, body);
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return webClient.post()
+                .uri("/chat/completions")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .bodyValue(requestBody(prompt, true))
+                .retrieve()
+                .bodyToFlux(new ParameterizedTypeReference<ServerSentEvent<String>>() {})
+                // 只限制首个分片的等待时间，之后的分片间隔由请求截止时间约束
+                .timeout(Mono.delay(requestTimeout), event -> Mono.never())
+                .onErrorMap(TimeoutException.class, this::timedOut)
+                .mapNotNull(ServerSentEvent::data)
+                .takeWhile(data -> !"[DONE]".equals(data.trim()))
+                .map(data -> {
+                    JsonNode chunk = readTree(data);
+                    String content = chunk.path("choices").path(0).path("delta").path("content").asText("");
+                    return toResponse(content, chunk);
+                });
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return ChatOptions.builder().model(model).build();
+    }
+
+    private Map<String, Object> requestBody(Prompt prompt, boolean stream) {
+        List<Map<String, String>> messages = new ArrayList<>();
+        for (Message message : prompt.getInstructions()) {
+            Map<String, String> item = new HashMap<>();
+            item.put("role", message.getMessageType().getValue());
+            item.put("content", message.getText());
+            messages.add(item);
+        }
+
+        Map<String, Object> body = new HashMap<>();
+        body.put("model", model);
+        body.put("messages", messages);
+        body.put("stream", stream);
+        if (stream) {
+            body.put("stream_options", Map.of("include_usage", true));
+        }
+
+        // 只透传通用参数，模型名始终使用本提供方配置的模型
+        ChatOptions options = prompt.getOptions();
+        if (options != null) {
+            if (options.getTemperature() != null) {
+                body.put("temperature", options.getTemperature());
+            }
+            if (options.getTopP() != null) {
+                body.put("top_p", options.getTopP());
+            }
+            if (options.getMaxTokens() != null) {
+                body.put("max_tokens", options.getMaxTokens());
+            }
+        }
+        return body;
+    }
+
+    private ChatResponse toResponse(String content, JsonNode body) {
+        ChatResponseMetadata.Builder metadata = ChatResponseMetadata.builder().model(body.path("model").asText(model));
+        JsonNode usage = body.path("usage");
+        if (usage.isObject()) {
+            metadata.usage(new DefaultUsage(
+                    usage.path("prompt_tokens").asInt(0),
+                    usage.path("completion_tokens").asInt(0),
+                    usage.path("total_tokens").asInt(0),
+                    usage));
+        }
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(content))), metadata.build());
+    }
+
+    private IllegalStateException timedOut(TimeoutException e) {
+        return new IllegalStateException("OpenAI兼容接口在 " + requestTimeout.toMillis() + "ms 内没有响应", e);
+    }
+
+    private JsonNode readTree(String data) {
+        try {
+            return objectMapper.readTree(data);
+        } catch (Exception e) {
+            throw new IllegalStateException("无法解析OpenAI兼容接口的流式分片：" + data, e);
+        }
+    }
+}
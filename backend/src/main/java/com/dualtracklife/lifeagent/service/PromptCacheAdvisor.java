@@ -0,0 +1,155 @@
+package com.dualtracklife.lifeagent.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import reactor.core.publisher.Flux;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 提示词前缀缓存统计Advisor
+ * 按请求携带的前缀名称（见PREFIX_PARAM）统计输入token和命中提供方前缀缓存的token。
+ * 命中数取自提供方原生usage中的cached_tokens（OpenAI兼容接口和DashScope的prompt_tokens_details），
+ * 提供方不返回时只统计输入token
+ */
+public class PromptCacheAdvisor implements CallAdvisor, StreamAdvisor {
+
+    // 请求上下文中标识静态前缀的参数名
+    public static final String PREFIX_PARAM = "life-agent.prompt-prefix";
+
+    private static final String UNKNOWN_PREFIX = "unknown";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, PrefixStats> statsByPrefix = new ConcurrentHashMap<>();
+
+    @Override
+    public String getName() {
+        return "PromptCacheAdvisor";
+    }
+
+    @Override
+    public int getOrder() {
+        // 最靠近模型调用，拿到的是原始响应
+        return LOWEST_PRECEDENCE - 1;
+    }
+
+    @Override
+    public ChatClientResponse adviseCall(ChatClientRequest request, CallAdvisorChain chain) {
+        ChatClientResponse response = chain.nextCall(request);
+        record(prefixOf(request), usageOf(response.chatResponse()));
+        return response;
+    }
+
+    @Override
+    public Flux<ChatClientResponse> adviseStream(ChatClientRequest request, StreamAdvisorChain chain) {
+        // 流式响应的usage可能在每个分片中累计出现，只记录最后一次
+        AtomicReference<Usage> lastUsage = new AtomicReference<>();
+        return chain.nextStream(request)
+                .doOnNext(response -> {
+                    Usage usage = usageOf(response.chatResponse());
+                    if (usage != null) {
+                        lastUsage.set(usage);
+                    }
+                })
+                .doOnComplete(() -> record(prefixOf(request), lastUsage.get()));
+    }
+
+    private String prefixOf(ChatClientRequest request) {
+        Object prefix = request.context().get(PREFIX_PARAM);
+        return prefix != null ? prefix.toString() : UNKNOWN_PREFIX;
+    }
+
+    private Usage usageOf(ChatResponse chatResponse) {
+        if (chatResponse == null || chatResponse.getMetadata() == null) {
+            return null;
+        }
+        Usage usage = chatResponse.getMetadata().getUsage();
+        if (usage == null || usage.getPromptTokens() == null || usage.getPromptTokens() == 0) {
+            return null;
+        }
+        return usage;
+    }
+
+    private void record(String prefix, Usage usage) {
+        PrefixStats stats = statsByPrefix.computeIfAbsent(prefix, key -> new PrefixStats());
+        stats.requests.incrementAndGet();
+        if (usage == null) {
+            return;
+        }
+        stats.promptTokens.addAndGet(usage.getPromptTokens());
+        long cached = cachedTokens(usage.getNativeUsage());
+        if (cached >= 0) {
+            stats.reportedRequests.incrementAndGet();
+            stats.cachedTokens.addAndGet(cached);
+        }
+    }
+
+    /**
+     * 从提供方原生usage中读取缓存命中token数，没有该字段时返回-1
+     */
+    private long cachedTokens(Object nativeUsage) {
+        if (nativeUsage == null) {
+            return -1;
+        }
+        try {
+            JsonNode node = nativeUsage instanceof JsonNode json ? json : objectMapper.valueToTree(nativeUsage);
+            JsonNode cached = node.findValue("cached_tokens");
+            if (cached == null) {
+                cached = node.findValue("cachedTokens");
+            }
+            return cached != null && cached.isNumber() ? cached.asLong() : -1;
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 获取前缀缓存统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> byPrefix = new HashMap<>();
+        long totalPrompt = 0;
+        long totalCached = 0;
+        for (Map.Entry<String, PrefixStats> entry : statsByPrefix.entrySet()) {
+            PrefixStats stats = entry.getValue();
+            long prompt = stats.promptTokens.get();
+            long cached = stats.cachedTokens.get();
+            totalPrompt += prompt;
+            totalCached += cached;
+
+            Map<String, Object> item = new HashMap<>();
+            item.put("requests", stats.requests.get());
+            item.put("cacheReportedRequests", stats.reportedRequests.get());
+            item.put("promptTokens", prompt);
+            item.put("cachedTokens", cached);
+            item.put("cachedRatio", prompt > 0 ? (double) cached / prompt : 0.0);
+            byPrefix.put(entry.getKey(), item);
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("promptTokens", totalPrompt);
+        result.put("cachedTokens", totalCached);
+        result.put("cachedRatio", totalPrompt > 0 ? (double) totalCached / totalPrompt : 0.0);
+        result.put("prefixes", byPrefix);
+        return result;
+    }
+
+    private static class PrefixStats {
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong reportedRequests = new AtomicLong();
+        private final AtomicLong promptTokens = new AtomicLong();
+        private final AtomicLong cachedTokens = new AtomicLong();
+    }
+}
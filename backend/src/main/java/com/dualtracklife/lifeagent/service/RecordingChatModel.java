@@ -0,0 +1,74 @@
+package com.dualtracklife.lifeagent.service;
+
+import com.dualtracklife.lifeagent.service.AIInteractionStore.AIInteractionRecord;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 录制模式的ChatModel
+ * 透明地代理真实模型，同时把请求/响应对和流式分片时间写入录制文件
+ */
+public class RecordingChatModel implements ChatModel {
+
+    private final ChatModel delegate;
+    private final AIInteractionStore store;
+
+    public RecordingChatModel(ChatModel delegate, AIInteractionStore store) {
+        this.delegate = delegate;
+        this.store = store;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        long start = System.nanoTime();
+        ChatResponse response = delegate.call(prompt);
+        long latencyMs = (System.nanoTime() - start) / 1_000_000;
+
+        store.append(new AIInteractionRecord(AIInteractionStore.keyOf(prompt), AIInteractionStore.TYPE_CALL,
+                latencyMs, textOf(response), null));
+        return response;
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return Flux.defer(() -> {
+            String key = AIInteractionStore.keyOf(prompt);
+            long start = System.nanoTime();
+            long[] lastChunkAt = {start};
+            List<List<Object>> chunks = new ArrayList<>();
+            StringBuilder fullResponse = new StringBuilder();
+
+            return delegate.stream(prompt)
+                    .doOnNext(response -> {
+                        String text = textOf(response);
+                        if (text == null || text.isEmpty()) {
+                            return;
+                        }
+                        long now = System.nanoTime();
+                        chunks.add(List.of((now - lastChunkAt[0]) / 1_000_000, text));
+                        lastChunkAt[0] = now;
+                        fullResponse.append(text);
+                    })
+                    .doOnComplete(() -> store.append(new AIInteractionRecord(key, AIInteractionStore.TYPE_STREAM,
+                            (System.nanoTime() - start) / 1_000_000, fullResponse.toString(), chunks)));
+        });
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return delegate.getDefaultOptions();
+    }
+
+    private String textOf(ChatResponse response) {
+        if (response == null || response.getResult() == null || response.getResult().getOutput() == null) {
+            return null;
+        }
+        return response.getResult().getOutput().getText();
+    }
+}
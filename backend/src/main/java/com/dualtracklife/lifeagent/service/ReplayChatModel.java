@@ -0,0 +1,93 @@
+package com.dualtracklife.lifeagent.service;
+
+import com.dualtracklife.lifeagent.service.AIInteractionStore.AIInteractionRecord;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 回放模式的ChatModel
+ * 从录制文件中按请求键返回录制的回复，并按原始（或缩放后的）时间节奏输出流式分片，不访问网络
+ */
+public class ReplayChatModel implements ChatModel {
+
+    private final Map<String, List<AIInteractionRecord>> records;
+    private final Map<String, AtomicInteger> cursors = new ConcurrentHashMap<>();
+    private final double timeScale;
+
+    /**
+     * @param timeScale 时间缩放系数：1.0为原始节奏，0为不等待
+     */
+    public ReplayChatModel(AIInteractionStore store, double timeScale) {
+        this.records = store.load();
+        this.timeScale = Math.max(0.0, timeScale);
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        AIInteractionRecord record = nextRecord(prompt);
+        sleepQuietly(scaled(record.getL()));
+        return toResponse(record.getR());
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return Flux.defer(() -> {
+            AIInteractionRecord record = nextRecord(prompt);
+            if (record.getC() == null || record.getC().isEmpty()) {
+                // 录制时为同步调用，整体作为一个分片返回
+                return Mono.just(toResponse(record.getR()))
+                        .delayElement(Duration.ofMillis(scaled(record.getL())))
+                        .flux();
+            }
+            return Flux.fromIterable(record.getC())
+                    .concatMap(chunk -> {
+                        long delayMs = scaled(((Number) chunk.get(0)).longValue());
+                        Mono<ChatResponse> response = Mono.just(toResponse((String) chunk.get(1)));
+                        return delayMs > 0 ? response.delayElement(Duration.ofMillis(delayMs)) : response;
+                    });
+        });
+    }
+
+    /**
+     * 同一请求被录制多次时轮流返回，以保留真实的耗时分布
+     */
+    private AIInteractionRecord nextRecord(Prompt prompt) {
+        String key = AIInteractionStore.keyOf(prompt);
+        List<AIInteractionRecord> candidates = records.get(key);
+        if (candidates == null || candidates.isEmpty()) {
+            throw new IllegalStateException("回放文件中没有匹配的录制记录：" + key);
+        }
+        int index = cursors.computeIfAbsent(key, k -> new AtomicInteger()).getAndIncrement();
+        return candidates.get(Math.floorMod(index, candidates.size()));
+    }
+
+    private long scaled(Long millis) {
+        return millis == null ? 0 : Math.round(millis * timeScale);
+    }
+
+    private void sleepQuietly(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private ChatResponse toResponse(String text) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text != null ? text : ""))));
+    }
+}
@@ -0,0 +1,97 @@
+package com.dualtracklife.lifeagent.service;
+
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 多提供方路由ChatModel
+ * 每次请求按ChatBackendRegistry给出的顺序尝试，失败时自动切换到下一个提供方；
+ * 熔断中的提供方跳过，半开状态的提供方只放行一个探测请求；
+ * 流式请求只在输出第一个分片之前切换，已经输出部分内容后的错误直接向上抛出
+ */
+public class RoutingChatModel implements ChatModel {
+
+    private final ChatBackendRegistry registry;
+
+    public RoutingChatModel(ChatBackendRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        RuntimeException lastError = null;
+        for (ChatBackend backend : registry.rankedBackends(false)) {
+            if (!backend.tryAcquire()) {
+                continue;
+            }
+            long start = System.currentTimeMillis();
+            try {
+                ChatResponse response = backend.getChatModel().call(prompt);
+                backend.recordSuccess(System.currentTimeMillis() - start, false);
+                return response;
+            } catch (RuntimeException e) {
+                backend.recordFailure(System.currentTimeMillis() - start, false);
+                lastError = e;
+                System.out.println("[RoutingChatModel] 提供方 " + backend.getName() + " 调用失败，尝试切换：" + e.getMessage());
+            }
+        }
+        throw lastError != null ? lastError : noBackendAvailable();
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return Flux.defer(() -> streamFrom(registry.rankedBackends(true), 0, prompt, null));
+    }
+
+    private Flux<ChatResponse> streamFrom(List<ChatBackend> candidates, int index, Prompt prompt, Throwable lastError) {
+        while (index < candidates.size() && !candidates.get(index).tryAcquire()) {
+            index++;
+        }
+        if (index >= candidates.size()) {
+            return Flux.error(lastError != null ? lastError : noBackendAvailable());
+        }
+        ChatBackend backend = candidates.get(index);
+        int next = index + 1;
+        long start = System.currentTimeMillis();
+        AtomicBoolean emitted = new AtomicBoolean(false);
+
+        return backend.getChatModel().stream(prompt)
+                .doOnNext(response -> {
+                    if (emitted.compareAndSet(false, true)) {
+                        backend.recordSuccess(System.currentTimeMillis() - start, true);
+                    }
+                })
+                .doOnComplete(() -> {
+                    if (emitted.compareAndSet(false, true)) {
+                        backend.recordSuccess(System.currentTimeMillis() - start, true);
+                    }
+                })
+                .doOnCancel(() -> {
+                    // 还没有结果就被取消，不计入成功或失败，但要归还半开状态的探测机会
+                    if (emitted.compareAndSet(false, true)) {
+                        backend.releaseProbe();
+                    }
+                })
+                .onErrorResume(e -> {
+                    if (emitted.get()) {
+                        // 已经输出内容，首个分片延迟已记为成功，这里只计入错误率
+                        backend.recordFailure(0, true);
+                        return Flux.error(e);
+                    }
+                    backend.recordFailure(System.currentTimeMillis() - start, true);
+                    if (next < candidates.size()) {
+                        System.out.println("[RoutingChatModel] 提供方 " + backend.getName() + " 流式调用失败，尝试切换：" + e.getMessage());
+                    }
+                    return streamFrom(candidates, next, prompt, e);
+                });
+    }
+
+    private IllegalStateException noBackendAvailable() {
+        return new IllegalStateException("没有可用的AI服务提供方：全部处于熔断中");
+    }
+}
@@ -0,0 +1,104 @@
+package com.dualtracklife.lifeagent.service;
+
+import com.dualtracklife.lifeevent.model.LifeEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 事件分析预计算服务
+ * 重要性或情绪强度达到阈值的新事件，用户大概率会马上打开AI分析，创建后即在后台针对默认问题预先生成分析结果。
+ * 预计算受并发预算约束，预算用完时直接放弃，不排队；请求以后台优先级发出，不与交互请求争抢槽位
+ */
+@Service
+public class SpeculativeAnalysisService {
+
+    @Autowired
+    private EventAnalysisService eventAnalysisService;
+
+    @Value("${life-agent.ai.speculation.enabled:true}")
+    private boolean enabled;
+
+    @Value("${life-agent.ai.speculation.importance-threshold:8}")
+    private int importanceThreshold;
+
+    @Value("${life-agent.ai.speculation.emotional-intensity-threshold:8}")
+    private int emotionalIntensityThreshold;
+
+    @Value("${life-agent.ai.speculation.max-in-flight:2}")
+    private int maxInFlight;
+
+    private Semaphore budget;
+    private ExecutorService executor;
+
+    private final AtomicLong triggered = new AtomicLong();
+    private final AtomicLong skippedBudget = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        budget = new Semaphore(maxInFlight);
+        executor = Executors.newFixedThreadPool(maxInFlight, runnable -> {
+            Thread thread = new Thread(runnable, "speculative-analysis");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 新事件创建后调用，满足阈值且有预算时提交后台预计算，立即返回
+     */
+    public void onEventCreated(LifeEvent event) {
+        if (!enabled || event.getId() == null || !worthSpeculating(event)) {
+            return;
+        }
+        if (!budget.tryAcquire()) {
+            skippedBudget.incrementAndGet();
+            return;
+        }
+
+        triggered.incrementAndGet();
+        executor.execute(() -> {
+            try {
+                eventAnalysisService.precompute(event);
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                System.out.println("[SpeculativeAnalysis] 事件 " + event.getId() + " 预计算失败: " + e.getMessage());
+            } finally {
+                budget.release();
+            }
+        });
+    }
+
+    private boolean worthSpeculating(LifeEvent event) {
+        return (event.getImportanceLevel() != null && event.getImportanceLevel() >= importanceThreshold)
+                || (event.getEmotionalIntensity() != null && event.getEmotionalIntensity() >= emotionalIntensityThreshold);
+    }
+
+    /**
+     * 获取预计算统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>(eventAnalysisService.getSpeculationStats());
+        stats.put("enabled", enabled);
+        stats.put("triggered", triggered.get());
+        stats.put("skippedBudget", skippedBudget.get());
+        stats.put("failed", failed.get());
+        stats.put("inFlight", maxInFlight - budget.availablePermits());
+        return stats;
+    }
+}
@@ -9,6 +9,8 @@ import reactor.core.publisher.Flux;
 
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
 
 /**
  * Spring AI集成服务 - 基于markdown-it-sse-template最佳实践优化
@@ -19,6 +21,8 @@ public class SpringAIService {
     
     private final ChatClient dashScopeChatClient;
     
+    private final PromptCacheAdvisor promptCacheAdvisor = new PromptCacheAdvisor();
+    
     // 优化的Markdown格式指令
     private static final String OPTIMIZED_MARKDOWN_INSTRUCTION = """
             
@@ -57,12 +61,229 @@ public class SpringAIService {
             
             请确保输出的内容结构清晰、层次分明，便于SSE流式传输和前端markdown-it渲染。
             """;
+
+    /*
+     * 提示词按"静态前缀 + 可变内容"组织，以命中提供方的前缀缓存：
+     * 所有系统提示词都以同一段格式规范开头，再接角色或任务说明，并在类加载时一次构建，
+     * 同一角色每次请求的系统提示词逐字节相同；每次请求变化的内容只出现在用户消息中，
+     * 并且变化慢的内容（事件轨迹、背景）在前，本轮问题在后
+     */
+    private static final String SHARED_PREFIX = OPTIMIZED_MARKDOWN_INSTRUCTION.strip() + "\n\n";
+
+    // 优化的系统提示词
+    private static final String OPTIMIZED_SYSTEM_PROMPT = SHARED_PREFIX + """
+            你是一个专业的人生导师和心理咨询师，具有丰富的人生阅历和专业知识。
+            你善于倾听、理解和引导，能够为用户提供有价值的人生建议和情感支持。
+
+            ## 你的核心能力
+            - **深度倾听**：理解用户的真实需求和情感状态
+            - **专业分析**：从心理学和人生发展角度提供洞察
+            - **实用建议**：提供具体可行的行动方案
+            - **情感支持**：给予温暖、理解和鼓励
+
+            ## 回复原则
+            1. **个性化**：根据用户的具体情况和需求定制回复
+            2. **结构化**：使用清晰的逻辑结构组织内容
+            3. **实用性**：提供具体可行的建议和方法
+            4. **温暖感**：保持温暖、支持性的语调
+            5. **专业性**：基于心理学和人生发展理论
+
+            ## 内容组织建议
+            - 先理解和共情用户的情况
+            - 然后提供分析和洞察
+            - 最后给出具体的建议和行动方案
+            - 适当使用例子和类比帮助理解
+            """;
+
+    // 事件分析系统提示词
+    private static final String EVENT_ANALYSIS_SYSTEM_PROMPT = SHARED_PREFIX + """
+            你是一个专业的人生事件分析师，擅长帮助用户深入理解和分析人生中的重要事件。
+
+            ## 分析框架
+            1. **事件理解**：深入理解事件的背景和意义
+            2. **多角度分析**：从情感、认知、行为、社会等角度分析
+            3. **影响评估**：分析事件对用户的短期和长期影响
+            4. **成长洞察**：发现事件中的成长机会和学习点
+            5. **行动建议**：提供具体的后续行动建议
+
+            ## 分析原则
+            - 保持客观和专业
+            - 关注积极的成长可能性
+            - 提供实用的洞察和建议
+            - 尊重用户的感受和经历
+            """;
+
+    // 事件分类系统提示词，要求只输出JSON以便程序解析
+    private static final String EVENT_CLASSIFICATION_SYSTEM_PROMPT = """
+            你是人生事件分类助手。用户会给出一个以竖线分隔的事件表格，请为每个事件判断：
+            - domains：涉及的人生领域，取值 career, health, relationship, learning, finance, personal_growth，可多选
+            - timeframe：影响的时间范围，取值 immediate, short_term, medium_term, long_term 之一
+            - tags：2-4个简短的中文标签
+
+            只输出一个JSON数组，不要输出任何其他文字，每个元素对应一个事件，例如：
+            [{"index":1,"domains":["career"],"timeframe":"long_term","tags":["升职","职业发展"]}]
+            """;
+
+    // 轨迹分析系统提示词
+    private static final String TRAJECTORY_ANALYSIS_SYSTEM_PROMPT = SHARED_PREFIX + """
+            你是一位专业的人生轨迹分析师，能够从用户的人生事件中发现模式、趋势和深层含义。
+
+            ## 分析维度
+            1. **模式识别**：识别行为模式、决策模式、情感模式
+            2. **趋势分析**：分析发展趋势和变化轨迹
+            3. **关键节点**：识别重要的转折点和里程碑
+            4. **影响因素**：分析内外部影响因素
+            5. **未来预测**：基于历史轨迹预测可能的发展方向
+
+            ## 输出结构
+            - 先总结观察到的主要模式和趋势
+            - 然后深入分析关键发现
+            - 最后提供前瞻性的建议和指导
+            """;
+
+    // 个性化建议系统提示词
+    private static final String PERSONALIZED_ADVICE_SYSTEM_PROMPT = SHARED_PREFIX + """
+            你是一位专业的人生规划师，能够根据用户的个人情况、当前状态和目标，提供个性化的建议和行动计划。
+
+            ## 建议框架
+            1. **现状分析**：深入理解用户的当前状况
+            2. **目标解析**：分析目标的可行性和路径
+            3. **资源评估**：评估可用的内外部资源
+            4. **策略制定**：制定具体的实现策略
+            5. **行动计划**：提供详细的行动步骤
+            6. **风险预警**：识别可能的风险和应对方案
+
+            ## 个性化原则
+            - 充分考虑用户的个人特质和情况
+            - 提供切实可行的建议
+            - 平衡理想与现实
+            - 注重可操作性和时效性
+            """;
+
+    // 情感支持系统提示词
+    private static final String EMOTIONAL_SUPPORT_SYSTEM_PROMPT = SHARED_PREFIX + """
+            你是一位温暖、有同理心的情感支持专家。你善于理解用户的情感状态，提供安慰、鼓励和支持。
+
+            ## 支持原则
+            1. **深度共情**：真正理解和感受用户的情感
+            2. **无条件接纳**：接纳用户的所有感受
+            3. **温暖陪伴**：提供温暖的情感陪伴
+            4. **积极引导**：引导向积极的方向发展
+            5. **实用支持**：提供实用的情感调节方法
+
+            ## 回复特色
+            - 语调温暖、理解、支持
+            - 先共情，再引导
+            - 提供具体的情感调节建议
+            - 给予希望和力量
+            """;
+
+    // 决策支持系统提示词
+    private static final String DECISION_SUPPORT_SYSTEM_PROMPT = SHARED_PREFIX + """
+            你是一位专业的决策分析师，能够帮助用户理性分析各种选择的利弊，提供客观的决策支持。
+
+            ## 分析框架
+            1. **问题澄清**：明确决策的核心问题
+            2. **选项分析**：详细分析每个选项的利弊
+            3. **风险评估**：评估各选项的风险和不确定性
+            4. **价值权衡**：基于用户价值观进行权衡
+            5. **决策建议**：提供基于分析的决策建议
+            6. **实施指导**：提供决策实施的指导
+
+            ## 分析原则
+            - 保持客观和理性
+            - 全面考虑各种因素
+            - 尊重用户的价值观和偏好
+            - 提供实用的决策工具和方法
+            """;
+
+    // 角色系统提示词
+    private static final Map<String, String> ROLE_SYSTEM_PROMPTS = Map.of(
+            "life_mentor", SHARED_PREFIX + """
+                    你是一位智慧的人生导师，拥有丰富的人生阅历和深刻的洞察力。
+
+                    ## 你的特质
+                    - **宏观视野**：能从更高层面看待问题
+                    - **深刻洞察**：发现事物的本质和规律
+                    - **智慧引导**：用智慧启发而非直接给答案
+                    - **温暖支持**：给予温暖和鼓励
+
+                    ## 回复风格
+                    - 富有哲理但不晦涩
+                    - 启发性强，引导用户思考
+                    - 结合人生智慧和实用建议
+                    - 语调温暖而有力量
+                    """,
+            "counselor", SHARED_PREFIX + """
+                    你是一位专业的心理咨询师，具有深厚的心理学背景和丰富的咨询经验。
+
+                    ## 专业能力
+                    - **深度倾听**：理解用户的真实感受
+                    - **专业分析**：运用心理学理论分析问题
+                    - **情感支持**：提供温暖的情感支持
+                    - **技能指导**：教授实用的心理调节技能
+
+                    ## 咨询原则
+                    - 无条件积极关注
+                    - 共情和理解优先
+                    - 尊重用户的感受和选择
+                    - 注重情感处理和心理健康
+                    """,
+            "career_mentor", SHARED_PREFIX + """
+                    你是一位资深的职业导师，对各行各业都有深入的了解。
+
+                    ## 专业领域
+                    - **行业洞察**：深入了解各行业发展趋势
+                    - **职业规划**：制定科学的职业发展路径
+                    - **技能提升**：指导专业技能和软技能发展
+                    - **机会识别**：帮助发现和把握职业机会
+
+                    ## 指导特色
+                    - 基于数据和趋势的分析
+                    - 实用性强的具体建议
+                    - 关注长期职业发展
+                    - 平衡理想与现实
+                    """,
+            "life_coach", SHARED_PREFIX + """
+                    你是一位专业的生活教练，擅长帮助用户改善生活习惯、提高生活质量。
+
+                    ## 核心能力
+                    - **目标设定**：帮助设定清晰可达成的目标
+                    - **行动规划**：制定具体的行动计划
+                    - **习惯养成**：指导建立良好的生活习惯
+                    - **效率提升**：优化时间和精力管理
+
+                    ## 教练风格
+                    - 积极正面，充满能量
+                    - 注重实际行动和结果
+                    - 提供具体可操作的方法
+                    - 持续激励和支持
+                    """,
+            "philosopher", SHARED_PREFIX + """
+                    你是一位深思的哲学家，善于从哲学角度思考人生的根本问题。
+
+                    ## 思考维度
+                    - **存在意义**：探索生命和存在的意义
+                    - **价值观念**：帮助澄清和建立价值观
+                    - **伦理思考**：从伦理角度分析问题
+                    - **智慧启发**：用哲学智慧启发思考
+
+                    ## 表达特色
+                    - 深刻而不晦涩
+                    - 思辨性强但贴近生活
+                    - 引导深度思考
+                    - 富有哲理和启发性
+                    """
+    );
+
+    // 未知角色使用的系统提示词
+    private static final String DEFAULT_ROLE_SYSTEM_PROMPT = SHARED_PREFIX + "你是一个专业的AI助手，能够为用户提供有价值的建议和支持。\n";
     
     @Autowired
     public SpringAIService(ChatClient.Builder chatClientBuilder) {
         this.dashScopeChatClient = chatClientBuilder
-                .defaultSystem(buildOptimizedSystemPrompt())
-                .defaultAdvisors(new SimpleLoggerAdvisor())
+                .defaultSystem(OPTIMIZED_SYSTEM_PROMPT)
+                .defaultAdvisors(new SimpleLoggerAdvisor(), promptCacheAdvisor)
                 .defaultOptions(
                         DashScopeChatOptions.builder()
                                 .withTopP(0.7)
@@ -74,56 +295,72 @@ public class SpringAIService {
     }
     
     /**
-     * 构建优化的系统提示词
+     * 简单AI对话
      */
-    private String buildOptimizedSystemPrompt() {
-        return """
-                你是一个专业的人生导师和心理咨询师，具有丰富的人生阅历和专业知识。
-                你善于倾听、理解和引导，能够为用户提供有价值的人生建议和情感支持。
-                
-                ## 你的核心能力
-                - **深度倾听**：理解用户的真实需求和情感状态
-                - **专业分析**：从心理学和人生发展角度提供洞察
-                - **实用建议**：提供具体可行的行动方案
-                - **情感支持**：给予温暖、理解和鼓励
-                
-                ## 回复原则
-                1. **个性化**：根据用户的具体情况和需求定制回复
-                2. **结构化**：使用清晰的逻辑结构组织内容
-                3. **实用性**：提供具体可行的建议和方法
-                4. **温暖感**：保持温暖、支持性的语调
-                5. **专业性**：基于心理学和人生发展理论
-                
-                ## 内容组织建议
-                - 先理解和共情用户的情况
-                - 然后提供分析和洞察
-                - 最后给出具体的建议和行动方案
-                - 适当使用例子和类比帮助理解
-                
-                """ + OPTIMIZED_MARKDOWN_INSTRUCTION;
+    public String simpleChat(String query) {
+        return complete(defaultPrompt(query));
     }
     
     /**
-     * 简单AI对话
+     * 使用默认系统提示词构建请求
      */
-    public String simpleChat(String query) {
-        return dashScopeChatClient.prompt(query).call().content();
+    private ChatClient.ChatClientRequestSpec defaultPrompt(String query) {
+        return dashScopeChatClient.prompt(query)
+                .advisors(advisor -> advisor.param(PromptCacheAdvisor.PREFIX_PARAM, "default"));
+    }
+    
+    /**
+     * 使用指定的静态系统提示词构建请求，并标记前缀名称用于缓存命中统计
+     */
+    private ChatClient.ChatClientRequestSpec prompt(String prefixName, String systemPrompt, String userPrompt) {
+        return dashScopeChatClient.prompt()
+                .system(systemPrompt)
+                .user(userPrompt)
+                .advisors(advisor -> advisor.param(PromptCacheAdvisor.PREFIX_PARAM, prefixName));
+    }
+    
+    /**
+     * 获取提示词前缀缓存统计信息
+     */
+    public Map<String, Object> getPromptCacheStats() {
+        return promptCacheAdvisor.getStats();
+    }
+    
+    /**
+     * 执行阻塞式模型调用
+     * 当前线程绑定了截止时间时改为收集流式结果并设置超时，超时后取消订阅即可中断底层HTTP请求，
+     * 不会在调用方离开后继续占用模型容量
+     */
+    private String complete(ChatClient.ChatClientRequestSpec requestSpec) {
+        AIDeadline deadline = AIDeadline.current();
+        if (deadline == null) {
+            return requestSpec.call().content();
+        }
+        deadline.checkNotExpired(AIDeadlineExceededException.STAGE_MODEL);
+        
+        return requestSpec.stream()
+                .content()
+                .collect(Collectors.joining())
+                .timeout(deadline.remaining())
+                .onErrorMap(TimeoutException.class,
+                        e -> new AIDeadlineExceededException(AIDeadlineExceededException.STAGE_MODEL))
+                .block();
     }
     
     /**
      * 流式AI对话 - 优化SSE传输
      */
     public Flux<String> streamChat(String query) {
-        return dashScopeChatClient.prompt(query)
+        return defaultPrompt(query)
                 .stream()
                 .content()
                 .map(this::optimizeStreamChunk); // 优化流式数据块
     }
     
     /**
-     * 优化流式数据块，确保markdown兼容性
+     * 优化流式数据块，确保markdown兼容性（包级可见，供benchmarks模块测量）
      */
-    private String optimizeStreamChunk(String chunk) {
+    String optimizeStreamChunk(String chunk) {
         if (chunk == null || chunk.isEmpty()) {
             return chunk;
         }
@@ -144,26 +381,28 @@ public class SpringAIService {
      * 基于角色的AI对话
      */
     public String roleBasedChat(String roleId, String query, String context) {
-        String systemPrompt = buildRoleSystemPrompt(roleId);
-        String fullPrompt = buildFullPrompt(query, context);
-        
-        return dashScopeChatClient.prompt()
-                .system(systemPrompt)
-                .user(fullPrompt)
-                .call()
-                .content();
+        return complete(prompt(rolePrefixName(roleId), buildRoleSystemPrompt(roleId), buildFullPrompt(query, context)));
     }
     
     /**
      * 基于角色的流式AI对话 - 优化版本
      */
     public Flux<String> roleBasedStreamChat(String roleId, String query, String context) {
-        String systemPrompt = buildRoleSystemPrompt(roleId);
-        String fullPrompt = buildFullPrompt(query, context);
-        
-        return dashScopeChatClient.prompt()
-                .system(systemPrompt)
-                .user(fullPrompt)
+        return streamWithSystem(rolePrefixName(roleId), buildRoleSystemPrompt(roleId), buildFullPrompt(query, context));
+    }
+    
+    /**
+     * 角色提示词的前缀名称，未知角色共用默认提示词
+     */
+    private String rolePrefixName(String roleId) {
+        return "role:" + (ROLE_SYSTEM_PROMPTS.containsKey(roleId) ? roleId : "default");
+    }
+    
+    /**
+     * 使用指定系统提示词发起流式对话，统一应用流式数据块优化
+     */
+    private Flux<String> streamWithSystem(String prefixName, String systemPrompt, String userPrompt) {
+        return prompt(prefixName, systemPrompt, userPrompt)
                 .stream()
                 .content()
                 .map(this::optimizeStreamChunk); // 应用流式优化
@@ -173,9 +412,23 @@ public class SpringAIService {
      * 事件分析AI对话 - 增强版本
      */
     public String eventAnalysisChat(String eventTitle, String eventDescription, String eventType, String userQuery) {
-        String systemPrompt = buildEventAnalysisSystemPrompt();
-        
-        String contextPrompt = String.format("""
+        return complete(prompt("event-analysis", EVENT_ANALYSIS_SYSTEM_PROMPT,
+                buildEventAnalysisPrompt(eventTitle, eventDescription, eventType, userQuery)));
+    }
+    
+    /**
+     * 事件分析AI对话 - 流式版本
+     */
+    public Flux<String> eventAnalysisStreamChat(String eventTitle, String eventDescription, String eventType, String userQuery) {
+        return streamWithSystem("event-analysis", EVENT_ANALYSIS_SYSTEM_PROMPT,
+                buildEventAnalysisPrompt(eventTitle, eventDescription, eventType, userQuery));
+    }
+    
+    /**
+     * 构建事件分析用户提示词（包级可见，供benchmarks模块测量）
+     */
+    String buildEventAnalysisPrompt(String eventTitle, String eventDescription, String eventType, String userQuery) {
+        return String.format("""
                 ## 用户记录的人生事件
                 
                 **事件标题**：%s
@@ -188,176 +441,80 @@ public class SpringAIService {
                 
                 请基于以上信息，提供深入的分析和建设性的建议。
                 """, eventTitle, eventDescription, getEventTypeDescription(eventType), userQuery);
-        
-        return dashScopeChatClient.prompt()
-                .system(systemPrompt)
-                .user(contextPrompt)
-                .call()
-                .content();
     }
     
     /**
-     * 构建事件分析系统提示词
+     * 批量事件分类：一次请求补全一批事件的人生领域、影响时间范围和建议标签，返回JSON数组文本
      */
-    private String buildEventAnalysisSystemPrompt() {
-        return """
-                你是一个专业的人生事件分析师，擅长帮助用户深入理解和分析人生中的重要事件。
-                
-                ## 分析框架
-                1. **事件理解**：深入理解事件的背景和意义
-                2. **多角度分析**：从情感、认知、行为、社会等角度分析
-                3. **影响评估**：分析事件对用户的短期和长期影响
-                4. **成长洞察**：发现事件中的成长机会和学习点
-                5. **行动建议**：提供具体的后续行动建议
-                
-                ## 分析原则
-                - 保持客观和专业
-                - 关注积极的成长可能性
-                - 提供实用的洞察和建议
-                - 尊重用户的感受和经历
-                
-                """ + OPTIMIZED_MARKDOWN_INSTRUCTION;
+    public String classifyEventsBatch(String eventsTable) {
+        return complete(prompt("event-classification", EVENT_CLASSIFICATION_SYSTEM_PROMPT,
+                "请为以下事件分类：\n" + eventsTable));
     }
-    
+
     /**
      * 人生轨迹分析 - 增强版本
      */
     public String lifeTrajectoryAnalysis(String userEvents, String analysisType) {
-        String systemPrompt = buildTrajectoryAnalysisSystemPrompt();
-        
-        String prompt = String.format("""
-                ## 人生轨迹分析请求
-                
-                **分析重点**：%s
-                
-                **用户事件轨迹**：
-                %s
-                
-                请基于以上信息，提供深入的轨迹分析和有价值的洞察。
-                """, getAnalysisTypeDescription(analysisType), userEvents);
-        
-        return dashScopeChatClient.prompt()
-                .system(systemPrompt)
-                .user(prompt)
-                .call()
-                .content();
+        return complete(prompt("trajectory-analysis", TRAJECTORY_ANALYSIS_SYSTEM_PROMPT,
+                buildTrajectoryAnalysisPrompt(userEvents, analysisType)));
     }
     
     /**
-     * 构建轨迹分析系统提示词
+     * 人生轨迹分析 - 流式版本
      */
-    private String buildTrajectoryAnalysisSystemPrompt() {
-        return """
-                你是一位专业的人生轨迹分析师，能够从用户的人生事件中发现模式、趋势和深层含义。
-                
-                ## 分析维度
-                1. **模式识别**：识别行为模式、决策模式、情感模式
-                2. **趋势分析**：分析发展趋势和变化轨迹
-                3. **关键节点**：识别重要的转折点和里程碑
-                4. **影响因素**：分析内外部影响因素
-                5. **未来预测**：基于历史轨迹预测可能的发展方向
-                
-                ## 输出结构
-                - 先总结观察到的主要模式和趋势
-                - 然后深入分析关键发现
-                - 最后提供前瞻性的建议和指导
-                
-                """ + OPTIMIZED_MARKDOWN_INSTRUCTION;
+    public Flux<String> lifeTrajectoryAnalysisStream(String userEvents, String analysisType) {
+        return streamWithSystem("trajectory-analysis", TRAJECTORY_ANALYSIS_SYSTEM_PROMPT,
+                buildTrajectoryAnalysisPrompt(userEvents, analysisType));
     }
     
     /**
-     * 构建角色系统提示词 - 优化版本
+     * 人生轨迹增量分析：只提交上次分析结果和之后新增或修改的事件
      */
-    private String buildRoleSystemPrompt(String roleId) {
-        Map<String, String> rolePrompts = new HashMap<>();
-        
-        rolePrompts.put("life_mentor", 
-                """
-                你是一位智慧的人生导师，拥有丰富的人生阅历和深刻的洞察力。
-                
-                ## 你的特质
-                - **宏观视野**：能从更高层面看待问题
-                - **深刻洞察**：发现事物的本质和规律
-                - **智慧引导**：用智慧启发而非直接给答案
-                - **温暖支持**：给予温暖和鼓励
-                
-                ## 回复风格
-                - 富有哲理但不晦涩
-                - 启发性强，引导用户思考
-                - 结合人生智慧和实用建议
-                - 语调温暖而有力量
-                """ + OPTIMIZED_MARKDOWN_INSTRUCTION);
-        
-        rolePrompts.put("counselor", 
-                """
-                你是一位专业的心理咨询师，具有深厚的心理学背景和丰富的咨询经验。
-                
-                ## 专业能力
-                - **深度倾听**：理解用户的真实感受
-                - **专业分析**：运用心理学理论分析问题
-                - **情感支持**：提供温暖的情感支持
-                - **技能指导**：教授实用的心理调节技能
-                
-                ## 咨询原则
-                - 无条件积极关注
-                - 共情和理解优先
-                - 尊重用户的感受和选择
-                - 注重情感处理和心理健康
-                """ + OPTIMIZED_MARKDOWN_INSTRUCTION);
-        
-        rolePrompts.put("career_mentor", 
-                """
-                你是一位资深的职业导师，对各行各业都有深入的了解。
-                
-                ## 专业领域
-                - **行业洞察**：深入了解各行业发展趋势
-                - **职业规划**：制定科学的职业发展路径
-                - **技能提升**：指导专业技能和软技能发展
-                - **机会识别**：帮助发现和把握职业机会
-                
-                ## 指导特色
-                - 基于数据和趋势的分析
-                - 实用性强的具体建议
-                - 关注长期职业发展
-                - 平衡理想与现实
-                """ + OPTIMIZED_MARKDOWN_INSTRUCTION);
-        
-        rolePrompts.put("life_coach", 
-                """
-                你是一位专业的生活教练，擅长帮助用户改善生活习惯、提高生活质量。
-                
-                ## 核心能力
-                - **目标设定**：帮助设定清晰可达成的目标
-                - **行动规划**：制定具体的行动计划
-                - **习惯养成**：指导建立良好的生活习惯
-                - **效率提升**：优化时间和精力管理
+    public String lifeTrajectoryIncrementalAnalysis(String previousAnalysis, String changedEvents, String analysisType) {
+        return complete(prompt("trajectory-analysis", TRAJECTORY_ANALYSIS_SYSTEM_PROMPT,
+                buildIncrementalTrajectoryAnalysisPrompt(previousAnalysis, changedEvents, analysisType)));
+    }
+
+    /**
+     * 构建轨迹增量分析用户提示词
+     */
+    private String buildIncrementalTrajectoryAnalysisPrompt(String previousAnalysis, String changedEvents, String analysisType) {
+        return String.format("""
+                ## 人生轨迹增量分析请求
+
+                **上次的分析结果**：
+                %s
+
+                **上次分析之后新增或修改的事件**：
+                %s
+
+                **分析重点**：%s
+
+                请在上次分析的基础上，结合这些新事件更新轨迹分析，输出完整的新分析结果，并指出相比上次的主要变化。
+                """, previousAnalysis, changedEvents, getAnalysisTypeDescription(analysisType));
+    }
+
+    /**
+     * 构建轨迹分析用户提示词
+     */
+    private String buildTrajectoryAnalysisPrompt(String userEvents, String analysisType) {
+        return String.format("""
+                ## 人生轨迹分析请求
                 
-                ## 教练风格
-                - 积极正面，充满能量
-                - 注重实际行动和结果
-                - 提供具体可操作的方法
-                - 持续激励和支持
-                """ + OPTIMIZED_MARKDOWN_INSTRUCTION);
-        
-        rolePrompts.put("philosopher", 
-                """
-                你是一位深思的哲学家，善于从哲学角度思考人生的根本问题。
+                **用户事件轨迹**：
+                %s
                 
-                ## 思考维度
-                - **存在意义**：探索生命和存在的意义
-                - **价值观念**：帮助澄清和建立价值观
-                - **伦理思考**：从伦理角度分析问题
-                - **智慧启发**：用哲学智慧启发思考
+                **分析重点**：%s
                 
-                ## 表达特色
-                - 深刻而不晦涩
-                - 思辨性强但贴近生活
-                - 引导深度思考
-                - 富有哲理和启发性
-                """ + OPTIMIZED_MARKDOWN_INSTRUCTION);
-        
-        return rolePrompts.getOrDefault(roleId, 
-                "你是一个专业的AI助手，能够为用户提供有价值的建议和支持。" + OPTIMIZED_MARKDOWN_INSTRUCTION);
+                请基于以上信息，提供深入的轨迹分析和有价值的洞察。
+                """, userEvents, getAnalysisTypeDescription(analysisType));
+    }
+    
+    /**
+     * 构建角色系统提示词 - 优化版本（包级可见，供benchmarks模块测量）
+     */
+    String buildRoleSystemPrompt(String roleId) {
+        return ROLE_SYSTEM_PROMPTS.getOrDefault(roleId, DEFAULT_ROLE_SYSTEM_PROMPT);
     }
     
     /**
@@ -416,9 +573,23 @@ public class SpringAIService {
      * 生成个性化建议 - 增强版本
      */
     public String generatePersonalizedAdvice(String userProfile, String currentSituation, String goals) {
-        String systemPrompt = buildPersonalizedAdviceSystemPrompt();
-        
-        String prompt = String.format("""
+        return complete(prompt("personalized-advice", PERSONALIZED_ADVICE_SYSTEM_PROMPT,
+                buildPersonalizedAdvicePrompt(userProfile, currentSituation, goals)));
+    }
+    
+    /**
+     * 生成个性化建议 - 流式版本
+     */
+    public Flux<String> generatePersonalizedAdviceStream(String userProfile, String currentSituation, String goals) {
+        return streamWithSystem("personalized-advice", PERSONALIZED_ADVICE_SYSTEM_PROMPT,
+                buildPersonalizedAdvicePrompt(userProfile, currentSituation, goals));
+    }
+    
+    /**
+     * 构建个性化建议用户提示词
+     */
+    private String buildPersonalizedAdvicePrompt(String userProfile, String currentSituation, String goals) {
+        return String.format("""
                 ## 个性化建议请求
                 
                 **用户档案**：%s
@@ -429,45 +600,29 @@ public class SpringAIService {
                 
                 请基于以上信息，提供个性化的建议和具体的行动计划。
                 """, userProfile, currentSituation, goals);
-        
-        return dashScopeChatClient.prompt()
-                .system(systemPrompt)
-                .user(prompt)
-                .call()
-                .content();
     }
     
     /**
-     * 构建个性化建议系统提示词
+     * 情感支持对话 - 增强版本
      */
-    private String buildPersonalizedAdviceSystemPrompt() {
-        return """
-                你是一位专业的人生规划师，能够根据用户的个人情况、当前状态和目标，提供个性化的建议和行动计划。
-                
-                ## 建议框架
-                1. **现状分析**：深入理解用户的当前状况
-                2. **目标解析**：分析目标的可行性和路径
-                3. **资源评估**：评估可用的内外部资源
-                4. **策略制定**：制定具体的实现策略
-                5. **行动计划**：提供详细的行动步骤
-                6. **风险预警**：识别可能的风险和应对方案
-                
-                ## 个性化原则
-                - 充分考虑用户的个人特质和情况
-                - 提供切实可行的建议
-                - 平衡理想与现实
-                - 注重可操作性和时效性
-                
-                """ + OPTIMIZED_MARKDOWN_INSTRUCTION;
+    public String emotionalSupportChat(String emotionalState, String situation, String userMessage) {
+        return complete(prompt("emotional-support", EMOTIONAL_SUPPORT_SYSTEM_PROMPT,
+                buildEmotionalSupportPrompt(emotionalState, situation, userMessage)));
     }
     
     /**
-     * 情感支持对话 - 增强版本
+     * 情感支持对话 - 流式版本
      */
-    public String emotionalSupportChat(String emotionalState, String situation, String userMessage) {
-        String systemPrompt = buildEmotionalSupportSystemPrompt();
-        
-        String contextPrompt = String.format("""
+    public Flux<String> emotionalSupportStreamChat(String emotionalState, String situation, String userMessage) {
+        return streamWithSystem("emotional-support", EMOTIONAL_SUPPORT_SYSTEM_PROMPT,
+                buildEmotionalSupportPrompt(emotionalState, situation, userMessage));
+    }
+    
+    /**
+     * 构建情感支持用户提示词
+     */
+    private String buildEmotionalSupportPrompt(String emotionalState, String situation, String userMessage) {
+        return String.format("""
                 ## 情感支持请求
                 
                 **用户情感状态**：%s
@@ -478,84 +633,39 @@ public class SpringAIService {
                 
                 请提供温暖的情感支持和专业的指导。
                 """, emotionalState, situation, userMessage);
-        
-        return dashScopeChatClient.prompt()
-                .system(systemPrompt)
-                .user(contextPrompt)
-                .call()
-                .content();
     }
     
     /**
-     * 构建情感支持系统提示词
+     * 决策支持分析 - 增强版本
      */
-    private String buildEmotionalSupportSystemPrompt() {
-        return """
-                你是一位温暖、有同理心的情感支持专家。你善于理解用户的情感状态，提供安慰、鼓励和支持。
-                
-                ## 支持原则
-                1. **深度共情**：真正理解和感受用户的情感
-                2. **无条件接纳**：接纳用户的所有感受
-                3. **温暖陪伴**：提供温暖的情感陪伴
-                4. **积极引导**：引导向积极的方向发展
-                5. **实用支持**：提供实用的情感调节方法
-                
-                ## 回复特色
-                - 语调温暖、理解、支持
-                - 先共情，再引导
-                - 提供具体的情感调节建议
-                - 给予希望和力量
-                
-                """ + OPTIMIZED_MARKDOWN_INSTRUCTION;
+    public String decisionSupportAnalysis(String decision, String options, String considerations) {
+        return complete(prompt("decision-support", DECISION_SUPPORT_SYSTEM_PROMPT,
+                buildDecisionSupportPrompt(decision, options, considerations)));
     }
     
     /**
-     * 决策支持分析 - 增强版本
+     * 决策支持分析 - 流式版本
      */
-    public String decisionSupportAnalysis(String decision, String options, String considerations) {
-        String systemPrompt = buildDecisionSupportSystemPrompt();
-        
-        String prompt = String.format("""
-                ## 决策支持分析请求
-                
-                **需要决策的问题**：%s
-                
-                **可选方案**：%s
-                
-                **考虑因素**：%s
-                
-                请提供客观的分析和决策建议。
-                """, decision, options, considerations);
-        
-        return dashScopeChatClient.prompt()
-                .system(systemPrompt)
-                .user(prompt)
-                .call()
-                .content();
+    public Flux<String> decisionSupportAnalysisStream(String decision, String options, String considerations) {
+        return streamWithSystem("decision-support", DECISION_SUPPORT_SYSTEM_PROMPT,
+                buildDecisionSupportPrompt(decision, options, considerations));
     }
     
     /**
-     * 构建决策支持系统提示词
+     * 构建决策支持用户提示词
      */
-    private String buildDecisionSupportSystemPrompt() {
-        return """
-                你是一位专业的决策分析师，能够帮助用户理性分析各种选择的利弊，提供客观的决策支持。
+    private String buildDecisionSupportPrompt(String decision, String options, String considerations) {
+        return String.format("""
+                ## 决策支持分析请求
+                
+                **考虑因素**：%s
                 
-                ## 分析框架
-                1. **问题澄清**：明确决策的核心问题
-                2. **选项分析**：详细分析每个选项的利弊
-                3. **风险评估**：评估各选项的风险和不确定性
-                4. **价值权衡**：基于用户价值观进行权衡
-                5. **决策建议**：提供基于分析的决策建议
-                6. **实施指导**：提供决策实施的指导
+                **可选方案**：%s
                 
-                ## 分析原则
-                - 保持客观和理性
-                - 全面考虑各种因素
-                - 尊重用户的价值观和偏好
-                - 提供实用的决策工具和方法
+                **需要决策的问题**：%s
                 
-                """ + OPTIMIZED_MARKDOWN_INSTRUCTION;
+                请提供客观的分析和决策建议。
+                """, considerations, options, decision);
     }
 }
 
@@ -0,0 +1,181 @@
+package com.dualtracklife.lifeagent.service;
+
+import com.dualtracklife.lifeagent.model.AIAnalysisRecord;
+import com.dualtracklife.lifeevent.model.LifeEvent;
+import com.dualtracklife.lifeevent.service.EventService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * 人生轨迹分析服务
+ * 直接读取用户已保存的事件，经紧凑编码后提交轨迹分析，提示词大小受token预算约束。
+ * 增量模式下按用户和分析类型保存上次结果及水位线（已分析事件的最晚修改时间），
+ * 之后只提交水位线之后新增或修改的事件和上次结果。
+ * 分析记录只保存事件数和最大事件ID，不保存事件ID列表，记录大小与事件数量无关
+ */
+@Service
+public class TrajectoryAnalysisService {
+
+    public static final String MODE_FULL = "full";
+    public static final String MODE_INCREMENTAL = "incremental";
+    public static final String MODE_UNCHANGED = "unchanged";
+
+    @Autowired
+    private EventService eventService;
+
+    @Autowired
+    private SpringAIService springAIService;
+
+    @Autowired
+    private AIRequestScheduler aiRequestScheduler;
+
+    @Autowired
+    private LifeEventPromptSerializer lifeEventPromptSerializer;
+
+    @Autowired
+    private AIAnalysisRecordService aiAnalysisRecordService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${life-agent.ai.trajectory.token-budget:3000}")
+    private int tokenBudget;
+
+    // 连续增量分析多少次后强制全量分析一次，避免误差在结果链上累积
+    @Value("${life-agent.ai.trajectory.full-refresh-every:10}")
+    private int fullRefreshEvery;
+
+    /**
+     * 分析用户的全部事件
+     */
+    public Map<String, Object> analyzeUserTrajectory(Long userId, String analysisType, AIDeadline deadline) {
+        return analyzeUserTrajectory(userId, analysisType, false, deadline);
+    }
+
+    /**
+     * 分析用户事件轨迹；incremental为true时尽量只提交上次分析之后的变化
+     */
+    public Map<String, Object> analyzeUserTrajectory(Long userId, String analysisType, boolean incremental, AIDeadline deadline) {
+        List<LifeEvent> events = eventService.getUserEvents(userId);
+        if (events.isEmpty()) {
+            throw new IllegalArgumentException("用户暂无事件记录");
+        }
+
+        String recordType = "trajectory:" + analysisType;
+        LocalDateTime watermark = events.stream().map(this::lastModified).filter(Objects::nonNull)
+                .max(Comparator.naturalOrder()).orElse(null);
+        long maxEventId = events.stream().mapToLong(LifeEvent::getId).max().orElse(0);
+        // 修改时间正好等于水位的事件中最大的ID，下次与水位时间相同时据此区分是否已分析过
+        long watermarkEventId = events.stream()
+                .filter(event -> watermark != null && watermark.equals(lastModified(event)))
+                .mapToLong(LifeEvent::getId).max().orElse(0);
+
+        AIAnalysisRecord previous = incremental ? aiAnalysisRecordService.findLatest(userId, recordType) : null;
+        JsonNode previousInput = previous != null ? readTree(previous.getInputData()) : null;
+        List<LifeEvent> changed = previousInput != null ? changedSince(events, previousInput) : null;
+
+        Map<String, Object> result = new HashMap<>();
+        if (changed != null && changed.isEmpty()) {
+            result.put("analysis", readTree(previous.getAnalysisResult()).path("analysis").asText(""));
+            result.put("mode", MODE_UNCHANGED);
+            result.put("analysisId", previous.getId());
+            return result;
+        }
+
+        long start = System.currentTimeMillis();
+        String mode;
+        int chainLength;
+        LifeEventPromptSerializer.SerializedEvents serialized;
+        String analysis;
+        if (changed != null) {
+            mode = MODE_INCREMENTAL;
+            chainLength = previousInput.path("chainLength").asInt(0) + 1;
+            String previousAnalysis = readTree(previous.getAnalysisResult()).path("analysis").asText("");
+            serialized = lifeEventPromptSerializer.serialize(changed, LocalDate.now(), tokenBudget);
+            analysis = aiRequestScheduler.execute(AIRequestScheduler.Priority.INTERACTIVE_BLOCKING, userId, deadline,
+                    () -> springAIService.lifeTrajectoryIncrementalAnalysis(previousAnalysis, serialized.getText(), analysisType));
+        } else {
+            mode = MODE_FULL;
+            chainLength = 0;
+            serialized = lifeEventPromptSerializer.serialize(events, LocalDate.now(), tokenBudget);
+            analysis = aiRequestScheduler.execute(AIRequestScheduler.Priority.INTERACTIVE_BLOCKING, userId, deadline,
+                    () -> springAIService.lifeTrajectoryAnalysis(serialized.getText(), analysisType));
+        }
+
+        Map<String, Object> input = new HashMap<>();
+        input.put("analysisType", analysisType);
+        input.put("mode", mode);
+        input.put("watermark", watermark != null ? watermark.toString() : null);
+        input.put("eventCount", events.size());
+        input.put("maxEventId", maxEventId);
+        input.put("watermarkEventId", watermarkEventId);
+        input.put("chainLength", chainLength);
+        input.put("sentEvents", serialized.getIncludedEvents());
+        AIAnalysisRecord record = new AIAnalysisRecord(userId, recordType, toJson(input), toJson(Map.of("analysis", analysis)));
+        record.setProcessingTime((int) (System.currentTimeMillis() - start));
+        aiAnalysisRecordService.save(record);
+
+        result.put("analysis", analysis);
+        result.put("mode", mode);
+        result.put("analysisId", record.getId());
+        result.put("serialization", serialized.toStats());
+        return result;
+    }
+
+    /**
+     * 上次分析之后新增或修改的事件；有事件被删除、上次记录缺少水位信息或增量链过长时返回null，表示需要全量分析
+     */
+    private List<LifeEvent> changedSince(List<LifeEvent> events, JsonNode previousInput) {
+        if (previousInput.path("chainLength").asInt(0) + 1 >= fullRefreshEvery || previousInput.path("watermark").isNull()
+                || !previousInput.hasNonNull("maxEventId")) {
+            return null;
+        }
+
+        // 事件ID递增分配，上次分析时的事件就是ID不超过当时最大ID的事件；这部分数量变少说明有事件被删除
+        long previousMaxEventId = previousInput.path("maxEventId").asLong();
+        long stillPresent = events.stream().filter(event -> event.getId() <= previousMaxEventId).count();
+        if (stillPresent < previousInput.path("eventCount").asLong()) {
+            return null;
+        }
+
+        // 水位为 (修改时间, 事件ID)：晚于水位时间的事件，以及时间相同但ID大于水位事件ID的事件都算变化
+        LocalDateTime watermark = LocalDateTime.parse(previousInput.path("watermark").asText());
+        long watermarkEventId = previousInput.path("watermarkEventId").asLong();
+        List<LifeEvent> changed = new ArrayList<>();
+        for (LifeEvent event : events) {
+            LocalDateTime modified = lastModified(event);
+            if (modified == null || modified.isAfter(watermark)
+                    || (modified.isEqual(watermark) && event.getId() > watermarkEventId)) {
+                changed.add(event);
+            }
+        }
+        return changed;
+    }
+
+    private LocalDateTime lastModified(LifeEvent event) {
+        return event.getUpdatedAt() != null ? event.getUpdatedAt() : event.getCreatedAt();
+    }
+
+    private JsonNode readTree(String json) {
+        try {
+            return objectMapper.readTree(json);
+        } catch (Exception e) {
+            throw new IllegalStateException("无法解析轨迹分析记录", e);
+        }
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (Exception e) {
+            throw new IllegalStateException("无法序列化轨迹分析记录", e);
+        }
+    }
+}
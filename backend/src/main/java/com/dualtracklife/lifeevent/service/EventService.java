@@ -1,5 +1,8 @@
 package com.dualtracklife.lifeevent.service;
 
+import com.dualtracklife.lifeagent.service.EventAnalysisService;
+import com.dualtracklife.lifeagent.service.EventEnrichmentQueue;
+import com.dualtracklife.lifeagent.service.SpeculativeAnalysisService;
 import com.dualtracklife.lifeevent.model.LifeEvent;
 import com.dualtracklife.user.model.User;
 import com.dualtracklife.user.service.UserService;
@@ -23,6 +26,15 @@ public class EventService {
     @Autowired
     private UserService userService;
     
+    @Autowired
+    private EventAnalysisService eventAnalysisService;
+    
+    @Autowired
+    private EventEnrichmentQueue eventEnrichmentQueue;
+    
+    @Autowired
+    private SpeculativeAnalysisService speculativeAnalysisService;
+    
     // 内存存储 - 实际项目中应该使用数据库
     private final Map<Long, LifeEvent> events = new ConcurrentHashMap<>();
     private final Map<Long, List<Long>> userEvents = new ConcurrentHashMap<>(); // userId -> List<eventId>
@@ -42,13 +54,23 @@ public class EventService {
      * 创建新事件
      */
     public LifeEvent createEvent(Long userId, Map<String, Object> eventData) {
+        LifeEvent event = saveNewEvent(userId, eventData);
+        
+        // 异步补全人生领域、影响时间范围和标签，不阻塞事件创建
+        eventEnrichmentQueue.submit(event, true, true);
+        // 重要事件预先生成AI分析
+        speculativeAnalysisService.onEventCreated(event);
+        return event;
+    }
+    
+    private LifeEvent saveNewEvent(Long userId, Map<String, Object> eventData) {
         User user = userService.getUserById(userId);
         if (user == null) {
             throw new RuntimeException("用户不存在");
         }
         
         LifeEvent event = new LifeEvent();
-        event.setId(nextEventId++);
+        event.setId(nextEventId());
         event.setUserId(userId);
         event.setTitle((String) eventData.get("title"));
         event.setDescription((String) eventData.get("description"));
@@ -91,6 +113,13 @@ public class EventService {
         return event;
     }
     
+    /**
+     * 分配事件ID，LifeTrajectoryService中的事件也使用同一个ID序列，保证AI分析记录按事件ID不冲突
+     */
+    public synchronized Long nextEventId() {
+        return nextEventId++;
+    }
+    
     /**
      * 获取用户的所有事件
      */
@@ -123,39 +152,44 @@ public class EventService {
             throw new RuntimeException("无权限修改此事件");
         }
         
-        // 更新允许的字段
-        if (updates.containsKey("title")) {
-            event.setTitle((String) updates.get("title"));
-        }
-        if (updates.containsKey("description")) {
-            event.setDescription((String) updates.get("description"));
-        }
-        if (updates.containsKey("eventType")) {
-            event.setEventType((String) updates.get("eventType"));
-        }
-        if (updates.containsKey("eventDate")) {
-            event.setEventDate(LocalDate.parse((String) updates.get("eventDate")));
-        }
-        if (updates.containsKey("emotionalState")) {
-            event.setEmotionalState((String) updates.get("emotionalState"));
-        }
-        if (updates.containsKey("emotionalIntensity")) {
-            event.setEmotionalIntensity((Integer) updates.get("emotionalIntensity"));
-        }
-        if (updates.containsKey("importanceLevel")) {
-            event.setImportanceLevel((Integer) updates.get("importanceLevel"));
-        }
-        if (updates.containsKey("location")) {
-            event.setLocation((String) updates.get("location"));
-        }
-        if (updates.containsKey("tags")) {
-            event.setTags((String) updates.get("tags"));
-        }
-        if (updates.containsKey("isPrivate")) {
-            event.setIsPrivate((Boolean) updates.get("isPrivate"));
+        // 后台补全线程也会写回事件字段，修改在事件锁内进行
+        synchronized (event) {
+            if (updates.containsKey("title")) {
+                event.setTitle((String) updates.get("title"));
+            }
+            if (updates.containsKey("description")) {
+                event.setDescription((String) updates.get("description"));
+            }
+            if (updates.containsKey("eventType")) {
+                event.setEventType((String) updates.get("eventType"));
+            }
+            if (updates.containsKey("eventDate")) {
+                event.setEventDate(LocalDate.parse((String) updates.get("eventDate")));
+            }
+            if (updates.containsKey("emotionalState")) {
+                event.setEmotionalState((String) updates.get("emotionalState"));
+            }
+            if (updates.containsKey("emotionalIntensity")) {
+                event.setEmotionalIntensity((Integer) updates.get("emotionalIntensity"));
+            }
+            if (updates.containsKey("importanceLevel")) {
+                event.setImportanceLevel((Integer) updates.get("importanceLevel"));
+            }
+            if (updates.containsKey("location")) {
+                event.setLocation((String) updates.get("location"));
+            }
+            if (updates.containsKey("tags")) {
+                event.setTags((String) updates.get("tags"));
+            }
+            if (updates.containsKey("isPrivate")) {
+                event.setIsPrivate((Boolean) updates.get("isPrivate"));
+            }
+        
+            event.setUpdatedAt(LocalDateTime.now());
         }
         
-        event.setUpdatedAt(LocalDateTime.now());
+        // 事件内容变化，已缓存的AI分析结果失效
+        eventAnalysisService.invalidate(event);
         return event;
     }
     
@@ -173,6 +207,7 @@ public class EventService {
         }
         
         events.remove(eventId);
+        eventAnalysisService.invalidate(event);
         List<Long> userEventList = userEvents.get(userId);
         if (userEventList != null) {
             userEventList.remove(eventId);
@@ -326,8 +361,9 @@ public class EventService {
             createSampleEventData("健身计划开始", "制定了新的健身计划，每周三次健身房，希望能够保持健康的生活方式。", "health", LocalDate.now().minusDays(45), "determined", 6, "健身房")
         );
         
+        // 示例事件不提交AI补全，避免启动时访问大模型
         for (Map<String, Object> eventData : sampleEvents) {
-            createEvent(userId, eventData);
+            saveNewEvent(userId, eventData);
         }
     }
     
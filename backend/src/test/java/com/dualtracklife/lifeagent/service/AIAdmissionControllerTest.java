@@ -0,0 +1,142 @@
+package com.dualtracklife.lifeagent.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * AIAdmissionController：用模拟时钟和按固定处理能力出队的假调度器驱动请求洪峰，
+ * 验证短时突发不拒绝、时延持续超标一个观察窗口后拒绝所有新请求、接收量接近处理能力、积压消退后恢复接收
+ */
+class AIAdmissionControllerTest {
+
+    private static final long TARGET_DELAY_MS = 2000;
+    private static final long INTERVAL_MS = 5000;
+    // 假调度器每秒处理的请求数
+    private static final int CAPACITY_PER_SECOND = 10;
+
+    private long now;
+    private SimulatedScheduler scheduler;
+    private AIAdmissionController controller;
+
+    @BeforeEach
+    void setUp() {
+        now = 1_000_000;
+        scheduler = new SimulatedScheduler();
+        controller = new AIAdmissionController();
+        ReflectionTestUtils.setField(controller, "aiRequestScheduler", scheduler);
+        ReflectionTestUtils.setField(controller, "enabled", true);
+        ReflectionTestUtils.setField(controller, "targetDelayMs", TARGET_DELAY_MS);
+        ReflectionTestUtils.setField(controller, "intervalMs", INTERVAL_MS);
+        ReflectionTestUtils.setField(controller, "clock", (LongSupplier) () -> now);
+    }
+
+    @Test
+    void loadWithinCapacityIsNeverRejected() {
+        Run run = drive(8, 60_000);
+        assertEquals(0, run.rejected);
+        assertTrue(run.maxDelayMs < TARGET_DELAY_MS);
+    }
+
+    @Test
+    void shortBurstIsAbsorbed() {
+        // 3秒内到达的请求需要约5秒才能处理完，时延超过目标值的时间短于观察窗口
+        Run burst = drive(25, 3_000);
+        Run drain = drive(0, 10_000);
+        assertEquals(0, burst.rejected + drain.rejected);
+        assertTrue(burst.maxDelayMs + drain.maxDelayMs > TARGET_DELAY_MS);
+    }
+
+    @Test
+    void sustainedSpikeIsShedWithinOneInterval() {
+        Run spike = drive(50, 60_000);
+
+        // 时延超过目标值后再过一个观察窗口开始拒绝
+        assertTrue(spike.firstAboveTargetAt > 0);
+        assertTrue(spike.firstRejectAt > 0);
+        long lag = spike.firstRejectAt - spike.firstAboveTargetAt;
+        assertTrue(lag <= INTERVAL_MS + 100, "时延超标 " + lag + "ms 后才开始拒绝");
+        // 到达速率是处理能力的5倍，接收的请求应接近处理能力，超出部分全部拒绝
+        long admitted = spike.arrivals - spike.rejected;
+        assertTrue(admitted <= 60 * CAPACITY_PER_SECOND * 5 / 4, "接收 " + admitted + " / " + spike.arrivals);
+
+        // 洪峰结束、积压消化后恢复接收
+        drive(0, 40_000);
+        Run after = drive(5, 10_000);
+        assertEquals(0, after.rejected);
+        assertEquals(Boolean.FALSE, controller.getStats().get("dropping"));
+    }
+
+    @Test
+    void standingQueueFormedBetweenChecksIsShedImmediately() {
+        // 排队最久的请求已等待超过 目标值 + 观察窗口，说明时延早已持续超标
+        scheduler.queued.add(now - TARGET_DELAY_MS - INTERVAL_MS - 1);
+        assertTrue(controller.tryAdmit() > 0);
+    }
+
+    @Test
+    void disabledControllerAdmitsEverything() {
+        ReflectionTestUtils.setField(controller, "enabled", false);
+        scheduler.queued.add(now - 60_000);
+        assertEquals(0, controller.tryAdmit());
+    }
+
+    /**
+     * 以每秒perSecond个请求的速度持续durationMs毫秒，每毫秒推进一次模拟时钟
+     */
+    private Run drive(int perSecond, long durationMs) {
+        Run run = new Run();
+        long end = now + durationMs;
+        long arrivalInterval = perSecond > 0 ? 1000 / perSecond : Long.MAX_VALUE;
+        long serviceInterval = 1000 / CAPACITY_PER_SECOND;
+        for (; now < end; now++) {
+            if (now % serviceInterval == 0) {
+                scheduler.queued.pollFirst();
+            }
+            long delay = scheduler.interactiveQueueDelayMillis();
+            if (delay >= TARGET_DELAY_MS && run.firstAboveTargetAt == 0) {
+                run.firstAboveTargetAt = now;
+            }
+            if (now % arrivalInterval == 0) {
+                run.arrivals++;
+                if (controller.tryAdmit() == 0) {
+                    scheduler.queued.addLast(now);
+                } else {
+                    run.rejected++;
+                    if (run.firstRejectAt == 0) {
+                        run.firstRejectAt = now;
+                    }
+                }
+            }
+            run.maxDelayMs = Math.max(run.maxDelayMs, scheduler.interactiveQueueDelayMillis());
+        }
+        return run;
+    }
+
+    private static class Run {
+        long arrivals;
+        long rejected;
+        long firstRejectAt;
+        long firstAboveTargetAt;
+        long maxDelayMs;
+    }
+
+    /**
+     * 排队时延取排队最久的请求已等待的时间，与AIRequestScheduler的定义一致
+     */
+    private class SimulatedScheduler extends AIRequestScheduler {
+        private final Deque<Long> queued = new ArrayDeque<>();
+
+        @Override
+        public long interactiveQueueDelayMillis() {
+            Long oldest = queued.peekFirst();
+            return oldest != null ? now - oldest : 0;
+        }
+    }
+}
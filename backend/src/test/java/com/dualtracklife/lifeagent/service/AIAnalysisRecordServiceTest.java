@@ -0,0 +1,118 @@
+package com.dualtracklife.lifeagent.service;
+
+import com.dualtracklife.lifeagent.model.AIAnalysisRecord;
+import com.dualtracklife.lifeagent.repository.AIAnalysisRecordRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * AIAnalysisRecordService：删除事件的分析结果后最新记录索引指向剩余记录；
+ * 开启持久化时查找走仓库，内存缓存不超过容量
+ */
+class AIAnalysisRecordServiceTest {
+
+    @Test
+    void deletingLatestRecordFallsBackToPreviousOne() {
+        AIAnalysisRecordService service = new AIAnalysisRecordService();
+        AIAnalysisRecord older = service.save(record(1L, 10L, "hash-a"));
+        AIAnalysisRecord latest = service.save(record(1L, 20L, "hash-b"));
+        assertSame(latest, service.findLatest(1L, "event"));
+
+        assertEquals(Set.of(latest.getId()), new HashSet<>(service.deleteByEvent(20L)));
+
+        assertSame(older, service.findLatest(1L, "event"));
+        assertNull(service.findByEvent(20L, "hash-b"));
+        assertSame(older, service.findByEvent(10L, "hash-a"));
+        assertEquals(1, service.size());
+
+        service.deleteByEvent(10L);
+        assertNull(service.findLatest(1L, "event"));
+        assertEquals(0, service.size());
+    }
+
+    @Test
+    void persistentLookupsUseRepositoryAndCacheStaysBounded() {
+        FakeRepository database = new FakeRepository();
+        AIAnalysisRecordService service = new AIAnalysisRecordService();
+        ReflectionTestUtils.setField(service, "repository", database.proxy());
+        ReflectionTestUtils.setField(service, "cacheCapacity", 3);
+
+        for (long eventId = 1; eventId <= 10; eventId++) {
+            service.save(record(1L, eventId, "hash-" + eventId));
+        }
+        Map<?, ?> cached = (Map<?, ?>) ReflectionTestUtils.getField(service, "records");
+        assertEquals(3, cached.size());
+        assertEquals(10, service.size());
+
+        // 已被淘汰的记录从仓库读回
+        assertEquals(1L, (long) service.getById(1L).getEventId());
+        assertEquals(3, cached.size());
+        assertEquals(10L, (long) service.findLatest(1L, "event").getId());
+
+        service.deleteByEvent(10L);
+        assertEquals(9L, (long) service.findLatest(1L, "event").getId());
+        assertNull(service.findByEvent(10L, "hash-10"));
+        assertNull(service.getById(10L));
+        assertTrue(database.queries.get() > 0);
+    }
+
+    private static AIAnalysisRecord record(Long userId, Long eventId, String contentHash) {
+        AIAnalysisRecord record = new AIAnalysisRecord(userId, "event", "{}", "{}");
+        record.setEventId(eventId);
+        record.setContentHash(contentHash);
+        return record;
+    }
+
+    /**
+     * 只实现服务用到的仓库方法，数据保存在按ID排序的内存表中
+     */
+    private static class FakeRepository {
+        private final TreeMap<Long, AIAnalysisRecord> rows = new TreeMap<>();
+        private final AtomicInteger queries = new AtomicInteger();
+        private long nextId = 1;
+
+        AIAnalysisRecordRepository proxy() {
+            return (AIAnalysisRecordRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[]{AIAnalysisRecordRepository.class}, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "save": {
+                                AIAnalysisRecord record = (AIAnalysisRecord) args[0];
+                                record.setId(nextId++);
+                                rows.put(record.getId(), record);
+                                return record;
+                            }
+                            case "findById":
+                                queries.incrementAndGet();
+                                return Optional.ofNullable(rows.get((Long) args[0]));
+                            case "findFirstByEventIdAndContentHashOrderByIdDesc":
+                                queries.incrementAndGet();
+                                return rows.descendingMap().values().stream()
+                                        .filter(r -> r.getEventId().equals(args[0]) && r.getContentHash().equals(args[1]))
+                                        .findFirst();
+                            case "findFirstByUserIdAndAnalysisTypeOrderByIdDesc":
+                                queries.incrementAndGet();
+                                return rows.descendingMap().values().stream()
+                                        .filter(r -> r.getUserId().equals(args[0]) && r.getAnalysisType().equals(args[1]))
+                                        .findFirst();
+                            case "findIdsByEventId":
+                                return rows.values().stream().filter(r -> r.getEventId().equals(args[0]))
+                                        .map(AIAnalysisRecord::getId).toList();
+                            case "deleteByEventId":
+                                int before = rows.size();
+                                rows.values().removeIf(r -> r.getEventId().equals(args[0]));
+                                return before - rows.size();
+                            case "count":
+                                return (long) rows.size();
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                        }
+                    });
+        }
+    }
+}
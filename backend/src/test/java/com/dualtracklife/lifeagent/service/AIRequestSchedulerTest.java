@@ -0,0 +1,288 @@
+package com.dualtracklife.lifeagent.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * AIRequestScheduler：用阻塞在闸门上的假调用占满槽位，逐个放行后观察调用开始的顺序；
+ * 验证优先级顺序、热点用户下的按用户公平、交互请求排队时后台任务不超过上限、超过饥饿阈值的请求被提前调度，
+ * 以及专家团的各角色作为一个请求一起拿到槽位、逐个归还
+ */
+class AIRequestSchedulerTest {
+
+    private static final Long PANEL_USER = 1L;
+    private static final Long OTHER_USER = 2L;
+    private static final Long HOT_USER = 3L;
+    private static final Long LIGHT_USER = 4L;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final List<String> started = new CopyOnWriteArrayList<>();
+    private final Map<String, CountDownLatch> gates = new ConcurrentHashMap<>();
+    private AIRequestScheduler scheduler;
+
+    @AfterEach
+    void tearDown() {
+        gates.values().forEach(CountDownLatch::countDown);
+        executor.shutdownNow();
+    }
+
+    @Test
+    void queuedRequestsStartInPriorityOrder() throws Exception {
+        scheduler = scheduler(1, 1, 60_000);
+        submit(AIRequestScheduler.Priority.INTERACTIVE_BLOCKING, OTHER_USER, "blocker");
+        awaitStarted(1);
+
+        // 按优先级从低到高入队
+        submit(AIRequestScheduler.Priority.BACKGROUND, OTHER_USER, "background");
+        awaitWaiting(AIRequestScheduler.Priority.BACKGROUND, 1);
+        submit(AIRequestScheduler.Priority.INTERACTIVE_BLOCKING, OTHER_USER, "blocking");
+        awaitWaiting(AIRequestScheduler.Priority.INTERACTIVE_BLOCKING, 1);
+        submit(AIRequestScheduler.Priority.INTERACTIVE_STREAMING, OTHER_USER, "streaming");
+        awaitWaiting(AIRequestScheduler.Priority.INTERACTIVE_STREAMING, 1);
+
+        releaseInTurn(4);
+        assertEquals(List.of("blocker", "streaming", "blocking", "background"), started);
+        assertEquals(0L, scheduler.getStats().get("starvationPromotions"));
+    }
+
+    @Test
+    void lightUserIsNotQueuedBehindHotUser() throws Exception {
+        scheduler = scheduler(1, 1, 60_000);
+        submit(AIRequestScheduler.Priority.INTERACTIVE_BLOCKING, OTHER_USER, "blocker");
+        awaitStarted(1);
+        for (int i = 0; i < 6; i++) {
+            submitInOrder(AIRequestScheduler.Priority.INTERACTIVE_BLOCKING, HOT_USER, "hot-" + i);
+        }
+        awaitWaiting(AIRequestScheduler.Priority.INTERACTIVE_BLOCKING, 6);
+        submit(AIRequestScheduler.Priority.INTERACTIVE_BLOCKING, LIGHT_USER, "light");
+        awaitWaiting(AIRequestScheduler.Priority.INTERACTIVE_BLOCKING, 7);
+
+        releaseInTurn(8);
+        // 后到的轻量用户与热点用户的第一个请求虚拟完成时间相同，只排在它后面，而不是排在全部6个请求之后
+        assertEquals("light", started.get(2), "开始顺序：" + started);
+        assertEquals(List.of("hot-0", "hot-1", "hot-2", "hot-3", "hot-4", "hot-5"),
+                started.stream().filter(label -> label.startsWith("hot-")).toList());
+    }
+
+    @Test
+    void backgroundStaysCappedAndFreedSlotsGoToQueuedInteractiveWork() throws Exception {
+        scheduler = scheduler(3, 1, 60_000);
+        for (int i = 0; i < 3; i++) {
+            submitInOrder(AIRequestScheduler.Priority.BACKGROUND, OTHER_USER, "background-" + i);
+        }
+        awaitStarted(1);
+        awaitWaiting(AIRequestScheduler.Priority.BACKGROUND, 2);
+        // 即使还有空闲槽位，后台任务也只占用上限数量的槽位
+        assertEquals(1, inFlight());
+        assertEquals(1, backgroundInFlight());
+
+        for (int i = 0; i < 4; i++) {
+            submitInOrder(AIRequestScheduler.Priority.INTERACTIVE_BLOCKING, LIGHT_USER, "interactive-" + i);
+        }
+        awaitStarted(3);
+        awaitWaiting(AIRequestScheduler.Priority.INTERACTIVE_BLOCKING, 2);
+
+        // 后台任务归还的槽位先给排队中的交互请求
+        release("background-0");
+        awaitStarted(4);
+        assertEquals("interactive-2", started.get(3));
+        assertEquals(0, backgroundInFlight());
+
+        release("interactive-0");
+        awaitStarted(5);
+        assertEquals("interactive-3", started.get(4));
+
+        // 交互请求全部开始后，后台任务才继续，且仍不超过上限
+        release("interactive-1");
+        awaitStarted(6);
+        assertEquals("background-1", started.get(5));
+        assertEquals(1, backgroundInFlight());
+        assertEquals(1, waiting(AIRequestScheduler.Priority.BACKGROUND));
+    }
+
+    @Test
+    void requestWaitingPastStarvationThresholdIsPromoted() throws Exception {
+        scheduler = scheduler(1, 1, 200);
+        submit(AIRequestScheduler.Priority.INTERACTIVE_BLOCKING, OTHER_USER, "blocker");
+        awaitStarted(1);
+        submit(AIRequestScheduler.Priority.BACKGROUND, OTHER_USER, "background");
+        awaitWaiting(AIRequestScheduler.Priority.BACKGROUND, 1);
+        submitInOrder(AIRequestScheduler.Priority.INTERACTIVE_STREAMING, LIGHT_USER, "streaming-0");
+        submitInOrder(AIRequestScheduler.Priority.INTERACTIVE_STREAMING, LIGHT_USER, "streaming-1");
+        awaitWaiting(AIRequestScheduler.Priority.INTERACTIVE_STREAMING, 2);
+
+        // 后台任务等待超过阈值，排在所有更高优先级的请求之前
+        Thread.sleep(250);
+        releaseInTurn(4);
+        assertEquals(List.of("blocker", "background", "streaming-0", "streaming-1"), started);
+        assertEquals(1L, scheduler.getStats().get("starvationPromotions"));
+    }
+
+    @Test
+    void panelWaitsUntilAllRolesCanStartTogether() throws Exception {
+        scheduler = scheduler(3, 1, 60_000);
+        for (int i = 0; i < 3; i++) {
+            submit(AIRequestScheduler.Priority.INTERACTIVE_BLOCKING, OTHER_USER, "other-" + i);
+        }
+        awaitStarted(3);
+        List<Future<List<String>>> panel = submitPanel(PANEL_USER, "role-a", "role-b", "role-c");
+        awaitWaiting(AIRequestScheduler.Priority.INTERACTIVE_STREAMING, 1);
+
+        // 空出的槽位不够整个专家团时先保留，不让角色分批开始
+        release("other-0");
+        release("other-1");
+        Thread.sleep(100);
+        assertEquals(3, started.size());
+        assertEquals(1, inFlight());
+
+        release("other-2");
+        awaitStarted(6);
+        assertEquals(List.of("role-a", "role-b", "role-c"), started.subList(3, 6).stream().sorted().toList());
+        assertEquals(3, inFlight());
+
+        release("role-a");
+        release("role-b");
+        release("role-c");
+        for (Future<List<String>> role : panel) {
+            assertEquals(1, role.get(5, TimeUnit.SECONDS).size());
+        }
+        assertEquals(0, inFlight());
+    }
+
+    @Test
+    void panelRolesReturnSlotsOneByOne() throws Exception {
+        scheduler = scheduler(3, 1, 60_000);
+        submitPanel(PANEL_USER, "role-a", "role-b");
+        awaitStarted(2);
+        assertEquals(2, inFlight());
+
+        // 一个角色结束后它的槽位立即可以给其他用户
+        submit(AIRequestScheduler.Priority.INTERACTIVE_BLOCKING, OTHER_USER, "other-0");
+        submit(AIRequestScheduler.Priority.INTERACTIVE_BLOCKING, OTHER_USER, "other-1");
+        awaitStarted(3);
+        release("role-a");
+        awaitStarted(4);
+        assertEquals(3, inFlight());
+    }
+
+    private AIRequestScheduler scheduler(int maxConcurrent, int backgroundMaxConcurrent, long starvationThresholdMs) {
+        AIRequestScheduler scheduler = new AIRequestScheduler();
+        ReflectionTestUtils.setField(scheduler, "maxConcurrent", maxConcurrent);
+        ReflectionTestUtils.setField(scheduler, "backgroundMaxConcurrent", backgroundMaxConcurrent);
+        ReflectionTestUtils.setField(scheduler, "starvationThresholdMs", starvationThresholdMs);
+        ReflectionTestUtils.setField(scheduler, "deadlineMetrics", new AIDeadlineMetrics());
+        return scheduler;
+    }
+
+    /**
+     * 提交一个阻塞调用：拿到槽位后记录开始，并一直占用槽位直到release(label)
+     */
+    private Future<String> submit(AIRequestScheduler.Priority priority, Long userId, String label) {
+        CountDownLatch gate = gate(label);
+        return executor.submit(() -> scheduler.execute(priority, userId, () -> {
+            started.add(label);
+            awaitGate(gate);
+            return label;
+        }));
+    }
+
+    /**
+     * 提交后等到它已开始或已入队，使多个调用的入队顺序与提交顺序一致
+     */
+    private void submitInOrder(AIRequestScheduler.Priority priority, Long userId, String label) throws InterruptedException {
+        int before = started.size() + waiting(priority);
+        submit(priority, userId, label);
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (started.size() + waiting(priority) <= before && System.currentTimeMillis() < deadline) {
+            Thread.sleep(2);
+        }
+    }
+
+    private List<Future<List<String>>> submitPanel(Long userId, String... labels) {
+        List<Supplier<Flux<String>>> calls = new ArrayList<>();
+        for (String label : labels) {
+            CountDownLatch gate = gate(label);
+            calls.add(() -> {
+                started.add(label);
+                awaitGate(gate);
+                return Flux.just(label);
+            });
+        }
+        List<Future<List<String>>> results = new ArrayList<>();
+        for (Flux<String> role : scheduler.scheduleGroup(AIRequestScheduler.Priority.INTERACTIVE_STREAMING, userId, null, calls)) {
+            results.add(executor.submit(() -> role.collectList().block()));
+        }
+        return results;
+    }
+
+    private CountDownLatch gate(String label) {
+        CountDownLatch gate = new CountDownLatch(1);
+        gates.put(label, gate);
+        return gate;
+    }
+
+    private void release(String label) {
+        gates.get(label).countDown();
+    }
+
+    private static void awaitGate(CountDownLatch gate) {
+        try {
+            gate.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void awaitStarted(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (started.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, started.size(), "已开始：" + started);
+    }
+
+    /**
+     * 每次等到第k个调用开始后放行它，直到count个调用都开始
+     */
+    private void releaseInTurn(int count) throws InterruptedException {
+        for (int k = 1; k <= count; k++) {
+            awaitStarted(k);
+            release(started.get(k - 1));
+        }
+    }
+
+    private void awaitWaiting(AIRequestScheduler.Priority priority, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (waiting(priority) < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, waiting(priority));
+    }
+
+    private int waiting(AIRequestScheduler.Priority priority) {
+        Map<?, ?> classStats = (Map<?, ?>) scheduler.getStats().get(priority.name().toLowerCase());
+        return (int) classStats.get("waiting");
+    }
+
+    private int inFlight() throws InterruptedException {
+        // 调用结束到槽位归还之间没有同步点，稍等片刻再读
+        Thread.sleep(20);
+        return (int) scheduler.getStats().get("inFlight");
+    }
+
+    private int backgroundInFlight() throws InterruptedException {
+        Thread.sleep(20);
+        return (int) scheduler.getStats().get("backgroundInFlight");
+    }
+}
@@ -0,0 +1,120 @@
+package com.dualtracklife.lifeagent.service;
+
+import com.dualtracklife.lifeagent.model.AIMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ChatIdempotencyCache：重复键返回同一结果，失败不缓存且重试复用已保存的用户消息，异常时等待方不会一直阻塞
+ */
+class ChatIdempotencyCacheTest {
+
+    private static final Long CONVERSATION_ID = 1L;
+    private static final Long USER_ID = 7L;
+
+    private ChatIdempotencyCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new ChatIdempotencyCache();
+        ReflectionTestUtils.setField(cache, "ttlMinutes", 10L);
+        ReflectionTestUtils.setField(cache, "maxKeysPerConversation", 64);
+    }
+
+    @Test
+    void repeatedKeyReturnsFirstResultWithoutRunningAgain() {
+        AtomicInteger runs = new AtomicInteger();
+        AIMessage first = cache.execute(CONVERSATION_ID, "k1", USER_ID, "你好", null, attempt -> reply(runs, "回复"));
+        AIMessage second = cache.execute(CONVERSATION_ID, "k1", USER_ID, "你好", null, attempt -> reply(runs, "另一个回复"));
+
+        assertSame(first, second);
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void sameKeyWithDifferentContentIsRejected() {
+        cache.execute(CONVERSATION_ID, "k1", USER_ID, "你好", null, attempt -> message("回复"));
+
+        assertThrows(ChatIdempotencyCache.KeyReuseException.class,
+                () -> cache.execute(CONVERSATION_ID, "k1", USER_ID, "再见", null, attempt -> message("回复")));
+        assertThrows(ChatIdempotencyCache.KeyReuseException.class,
+                () -> cache.execute(CONVERSATION_ID, "k1", 8L, "你好", null, attempt -> message("回复")));
+    }
+
+    @Test
+    void failureIsNotCachedAndRetryReusesSavedUserMessage() {
+        AtomicInteger userMessagesSaved = new AtomicInteger();
+        assertThrows(AIReplyFailedException.class, () -> cache.execute(CONVERSATION_ID, "k1", USER_ID, "你好", null,
+                attempt -> {
+                    saveUserMessageOnce(attempt, userMessagesSaved);
+                    throw new AIReplyFailedException(new IllegalStateException("模型不可用"));
+                }));
+
+        AIMessage retried = cache.execute(CONVERSATION_ID, "k1", USER_ID, "你好", null, attempt -> {
+            saveUserMessageOnce(attempt, userMessagesSaved);
+            return message("回复");
+        });
+
+        assertEquals("回复", retried.getContent());
+        assertEquals(1, userMessagesSaved.get());
+        // 成功后的重复请求直接返回结果
+        assertSame(retried, cache.execute(CONVERSATION_ID, "k1", USER_ID, "你好", null, attempt -> message("另一个回复")));
+    }
+
+    @Test
+    void errorInChatCompletesWaitersWithoutDeadline() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<AIMessage> owner = executor.submit(() -> cache.execute(CONVERSATION_ID, "k1", USER_ID, "你好", null,
+                    attempt -> {
+                        started.countDown();
+                        await(release);
+                        throw new Error("模拟Error");
+                    }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<AIMessage> waiter = executor.submit(() -> cache.execute(CONVERSATION_ID, "k1", USER_ID, "你好", null,
+                    attempt -> message("不应执行")));
+            Thread.sleep(50);
+            release.countDown();
+
+            ExecutionException ownerFailure = assertThrows(ExecutionException.class, () -> owner.get(5, TimeUnit.SECONDS));
+            assertEquals("模拟Error", ownerFailure.getCause().getMessage());
+            ExecutionException waiterFailure = assertThrows(ExecutionException.class, () -> waiter.get(5, TimeUnit.SECONDS));
+            assertEquals("模拟Error", waiterFailure.getCause().getMessage());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void saveUserMessageOnce(ChatIdempotencyCache.Attempt attempt, AtomicInteger saved) {
+        if (attempt.getSavedUserMessage() == null) {
+            saved.incrementAndGet();
+            attempt.userMessageSaved(new AIMessage(CONVERSATION_ID, USER_ID, "role", "user", "你好"));
+        }
+    }
+
+    private static AIMessage reply(AtomicInteger runs, String content) {
+        runs.incrementAndGet();
+        return message(content);
+    }
+
+    private static AIMessage message(String content) {
+        return new AIMessage(CONVERSATION_ID, USER_ID, "role", "ai", content);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.dualtracklife.lifeagent.service;
+
+import com.dualtracklife.lifeagent.model.AIMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ConversationMessageLog：跨分块追加后的序号与按位置读取，以及并发读取只看到已发布的消息
+ */
+class ConversationMessageLogTest {
+
+    // 超过两个1024条的分块，外层分块数组需要扩容两次
+    private static final int MESSAGES = 3000;
+
+    @Test
+    void assignsOrdersAcrossChunkBoundaries() {
+        ConversationMessageLog log = filledLog(MESSAGES);
+
+        assertEquals(MESSAGES, log.size());
+        for (int order : new int[]{1, 1024, 1025, 2048, 2049, MESSAGES}) {
+            AIMessage message = log.get(order);
+            assertNotNull(message);
+            assertEquals(order, (int) message.getMessageOrder());
+            assertEquals("消息" + order, message.getContent());
+        }
+        assertNull(log.get(0));
+        assertNull(log.get(MESSAGES + 1));
+        assertOrders(log.snapshot(), 1, MESSAGES);
+    }
+
+    @Test
+    void tailAndRangeClampToBounds() {
+        ConversationMessageLog log = filledLog(MESSAGES);
+
+        assertOrders(log.tail(5), MESSAGES - 4, MESSAGES);
+        assertTrue(log.tail(0).isEmpty());
+        assertOrders(log.tail(MESSAGES * 2), 1, MESSAGES);
+
+        assertOrders(log.range(1020, 1030), 1020, 1030);
+        assertOrders(log.range(-5, 3), 1, 3);
+        assertOrders(log.range(MESSAGES - 5, MESSAGES + 100), MESSAGES - 5, MESSAGES);
+        assertTrue(log.range(10, 5).isEmpty());
+        assertTrue(log.range(MESSAGES + 1, MESSAGES + 10).isEmpty());
+    }
+
+    @Test
+    void concurrentReadersOnlySeePublishedMessages() throws Exception {
+        ConversationMessageLog log = new ConversationMessageLog();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicReference<String> failure = new AtomicReference<>();
+
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < 3; r++) {
+            Thread reader = new Thread(() -> {
+                while (writing.get() && failure.get() == null) {
+                    int size = log.size();
+                    AIMessage last = log.get(size);
+                    if (size > 0 && (last == null || last.getMessageOrder() != size)) {
+                        failure.set("get(" + size + ") 读到未发布的消息");
+                    }
+                    List<AIMessage> tail = log.tail(50);
+                    for (int i = 0; i < tail.size(); i++) {
+                        AIMessage message = tail.get(i);
+                        if (message == null || (i > 0 && message.getMessageOrder() != tail.get(i - 1).getMessageOrder() + 1)) {
+                            failure.set("tail 中的消息缺失或不连续");
+                        }
+                    }
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+
+        for (int i = 1; i <= 50_000; i++) {
+            log.append(message(i));
+        }
+        writing.set(false);
+        for (Thread reader : readers) {
+            reader.join(5000);
+        }
+
+        assertNull(failure.get(), failure.get());
+        assertEquals(50_000, log.size());
+    }
+
+    private static ConversationMessageLog filledLog(int count) {
+        ConversationMessageLog log = new ConversationMessageLog();
+        for (int i = 1; i <= count; i++) {
+            log.append(message(i));
+        }
+        return log;
+    }
+
+    private static AIMessage message(int i) {
+        return new AIMessage(1L, 7L, "role", i % 2 == 1 ? "user" : "ai", "消息" + i);
+    }
+
+    private static void assertOrders(List<AIMessage> messages, int fromOrder, int toOrder) {
+        assertEquals(toOrder - fromOrder + 1, messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            assertEquals(fromOrder + i, (int) messages.get(i).getMessageOrder());
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.dualtracklife.lifeagent.service;
+
+import com.dualtracklife.lifeagent.model.AIMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ConversationSegmentStore：消息移出堆再读回后字段不变，空段文件删除，有效记录很少的段被整理，段大小校验和按进程隔离的目录
+ */
+class ConversationSegmentStoreTest {
+
+    @TempDir
+    Path baseDir;
+
+    private ConversationSegmentStore store;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    @Test
+    void pageOutAndPageInRoundTripAllFields() throws IOException {
+        store = newStore(1);
+        List<AIMessage> messages = List.of(
+                message(1L, 1, "最近在考虑要不要换工作", 0.87f, true, LocalDateTime.of(2024, 3, 1, 9, 30, 15, 123_456_789)),
+                message(2L, 2, "可以先列出你最看重的三件事", null, false, null));
+        messages.get(1).setContextInfo(null);
+        messages.get(1).setTags(null);
+
+        store.pageOut(10L, messages);
+
+        assertTrue(store.contains(10L));
+        assertEquals(2, store.getMessageCount(10L));
+        List<AIMessage> streamed = new ArrayList<>();
+        assertTrue(store.forEachMessage(10L, streamed::add));
+        assertMessagesEqual(messages, streamed);
+        // 逐条读取不移除冷数据
+        assertTrue(store.contains(10L));
+
+        assertMessagesEqual(messages, store.pageIn(10L));
+        assertFalse(store.contains(10L));
+        assertEquals(-1, store.getMessageCount(10L));
+        assertNull(store.pageIn(10L));
+        assertFalse(store.forEachMessage(10L, message -> fail("不应再读到消息")));
+    }
+
+    @Test
+    void oversizedRecordGetsOwnSegmentAndEmptySegmentsAreDeleted() throws IOException {
+        store = newStore(1);
+        store.pageOut(1L, List.of(message(1L, 1, "短消息", null, false, null)));
+        // 超过1MB段大小的记录单独占用一个段
+        String longContent = "很长的消息".repeat(100_000);
+        store.pageOut(2L, List.of(message(2L, 1, longContent, null, false, null)));
+        assertEquals(2, segmentFiles().size());
+
+        // 第一个段已不是当前追加的段，最后一条记录读回后删除
+        store.pageIn(1L);
+        assertEquals(1, segmentFiles().size());
+        assertEquals(longContent, store.pageIn(2L).get(0).getContent());
+    }
+
+    @Test
+    void sparseSegmentIsCompactedIntoActiveSegment() throws IOException {
+        store = newStore(1);
+        // 每条记录约200KB，1MB的段放得下5条
+        String content = "x".repeat(200_000);
+        for (long id = 1; id <= 6; id++) {
+            store.pageOut(id, List.of(message(id, 1, content + id, null, false, null)));
+        }
+        assertEquals(2, segmentFiles().size());
+
+        // 读回前三条后第一个段还有40%有效，不整理
+        for (long id = 1; id <= 3; id++) {
+            store.pageIn(id);
+        }
+        assertEquals(2, segmentFiles().size());
+        assertEquals(0L, store.getStats().get("compactions"));
+
+        // 只剩一条长期空闲的记录（20%）时复制到当前段，旧段删除
+        store.pageIn(4L);
+        assertEquals(1, segmentFiles().size());
+        assertEquals(1L, store.getStats().get("compactions"));
+        assertTrue(store.contains(5L));
+        List<AIMessage> streamed = new ArrayList<>();
+        assertTrue(store.forEachMessage(5L, streamed::add));
+        assertEquals(content + 5, streamed.get(0).getContent());
+        assertEquals(content + 5, store.pageIn(5L).get(0).getContent());
+        assertEquals(content + 6, store.pageIn(6L).get(0).getContent());
+    }
+
+    @Test
+    void rejectsSegmentSizeOutsideIntRange() {
+        ConversationSegmentStore tooSmall = configured(0);
+        assertThrows(IllegalArgumentException.class, tooSmall::init);
+        ConversationSegmentStore tooLarge = configured(2048);
+        assertThrows(IllegalArgumentException.class, tooLarge::init);
+    }
+
+    @Test
+    void usesPerProcessDirectoryAndRemovesOnlyStaleOnes() throws IOException {
+        Path stale = Files.createDirectories(baseDir.resolve("pid-" + Long.MAX_VALUE));
+        Files.createFile(stale.resolve("00000001.seg"));
+        Path foreign = Files.createFile(baseDir.resolve("other.seg"));
+
+        store = newStore(1);
+        store.pageOut(1L, List.of(message(1L, 1, "消息", null, false, null)));
+        Path own = baseDir.resolve("pid-" + ProcessHandle.current().pid());
+
+        assertFalse(Files.exists(stale));
+        assertTrue(Files.exists(foreign));
+        assertEquals(1, segmentFiles().size());
+
+        store.close();
+        store = null;
+        assertFalse(Files.exists(own));
+        assertTrue(Files.exists(foreign));
+    }
+
+    private ConversationSegmentStore newStore(int segmentSizeMb) throws IOException {
+        ConversationSegmentStore segmentStore = configured(segmentSizeMb);
+        segmentStore.init();
+        return segmentStore;
+    }
+
+    private ConversationSegmentStore configured(int segmentSizeMb) {
+        ConversationSegmentStore segmentStore = new ConversationSegmentStore();
+        ReflectionTestUtils.setField(segmentStore, "enabled", true);
+        ReflectionTestUtils.setField(segmentStore, "directory", baseDir.toString());
+        ReflectionTestUtils.setField(segmentStore, "segmentSizeMb", segmentSizeMb);
+        ReflectionTestUtils.setField(segmentStore, "compactLiveRatio", 0.25);
+        return segmentStore;
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(baseDir.resolve("pid-" + ProcessHandle.current().pid()))) {
+            return files.filter(path -> path.toString().endsWith(".seg")).toList();
+        }
+    }
+
+    private static AIMessage message(Long id, int order, String content, Float confidence, boolean key,
+                                     LocalDateTime createdAt) {
+        AIMessage message = new AIMessage(10L, 7L, "career_mentor", order % 2 == 1 ? "user" : "ai", content);
+        message.setId(id);
+        message.setMessageOrder(order);
+        message.setContextInfo("{\"intent\":\"decision_support\"}");
+        message.setConfidence(confidence);
+        message.setEmotionalAnalysis("焦虑");
+        message.setUserFeedback(null);
+        message.setIsKeyMessage(key);
+        message.setTags("intent:decision_support");
+        message.setCreatedAt(createdAt);
+        message.setUpdatedAt(createdAt != null ? createdAt.plusSeconds(1) : null);
+        return message;
+    }
+
+    private static void assertMessagesEqual(List<AIMessage> expected, List<AIMessage> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            AIMessage e = expected.get(i);
+            AIMessage a = actual.get(i);
+            assertEquals(e.getId(), a.getId());
+            assertEquals(e.getConversationId(), a.getConversationId());
+            assertEquals(e.getUserId(), a.getUserId());
+            assertEquals(e.getRoleId(), a.getRoleId());
+            assertEquals(e.getMessageType(), a.getMessageType());
+            assertEquals(e.getContent(), a.getContent());
+            assertEquals(e.getContextInfo(), a.getContextInfo());
+            assertEquals(e.getConfidence(), a.getConfidence());
+            assertEquals(e.getEmotionalAnalysis(), a.getEmotionalAnalysis());
+            assertEquals(e.getUserFeedback(), a.getUserFeedback());
+            assertEquals(e.getMessageOrder(), a.getMessageOrder());
+            assertEquals(e.getIsKeyMessage(), a.getIsKeyMessage());
+            assertEquals(e.getTags(), a.getTags());
+            assertEquals(e.getCreatedAt(), a.getCreatedAt());
+            assertEquals(e.getUpdatedAt(), a.getUpdatedAt());
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.dualtracklife.lifeagent.service;
+
+import com.dualtracklife.lifeagent.model.AIConversation;
+import com.dualtracklife.lifeagent.model.AIMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ConversationStore并发压力测试：数百个线程同时向共享会话追加消息并刷新活跃时间
+ */
+class ConversationStoreConcurrencyTest {
+
+    private static final int WRITERS = 300;
+    private static final int MESSAGES_PER_WRITER = 40;
+    private static final int USERS = 5;
+    private static final int CONVERSATIONS_PER_USER = 4;
+    private static final String[] ROLES = {"life_mentor", "counselor"};
+
+    private ConversationStore store;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        store = newStore();
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.stop();
+    }
+
+    /**
+     * 未开启持久化和冷数据层的存储，与应用默认配置相同
+     */
+    static ConversationStore newStore() throws Exception {
+        ConversationWriteBehind writeBehind = new ConversationWriteBehind();
+        ReflectionTestUtils.setField(writeBehind, "queueCapacity", 1000);
+        writeBehind.start();
+
+        ConversationStore store = new ConversationStore();
+        ReflectionTestUtils.setField(store, "writeBehind", writeBehind);
+        ReflectionTestUtils.setField(store, "segmentStore", new ConversationSegmentStore());
+        ReflectionTestUtils.setField(store, "hotCapacity", 10000);
+        ReflectionTestUtils.setField(store, "idleTimeoutMinutes", 30L);
+        ReflectionTestUtils.setField(store, "idleTickMs", 1000L);
+        ReflectionTestUtils.setField(store, "idleWheelSize", 512);
+        store.init();
+        return store;
+    }
+
+    @Test
+    void concurrentAppendsAndTouchesKeepIdsOrdersAndIndexesConsistent() throws Exception {
+        List<AIConversation> shared = new ArrayList<>();
+        for (long userId = 1; userId <= USERS; userId++) {
+            for (int i = 0; i < CONVERSATIONS_PER_USER; i++) {
+                shared.add(store.createConversation(new AIConversation(userId, ROLES[i % ROLES.length], "general_chat")));
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            int writer = w;
+            writers.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < MESSAGES_PER_WRITER; i++) {
+                    AIConversation conversation = shared.get((writer + i) % shared.size());
+                    store.appendMessage(conversation.getId(), new AIMessage(conversation.getId(),
+                            conversation.getUserId(), conversation.getRoleId(), "user", writer + ":" + i));
+                    store.touch(conversation);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> writer : writers) {
+            writer.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // 消息ID全局唯一，每个会话的序号从1开始连续且与位置一致
+        Set<Long> messageIds = new HashSet<>();
+        Map<Long, Long> messagesPerUser = new HashMap<>();
+        int total = 0;
+        for (AIConversation conversation : shared) {
+            List<AIMessage> messages = store.getMessages(conversation.getId());
+            for (int i = 0; i < messages.size(); i++) {
+                AIMessage message = messages.get(i);
+                assertEquals(i + 1, (int) message.getMessageOrder(), "会话 " + conversation.getId() + " 的序号");
+                assertEquals(conversation.getId(), message.getConversationId());
+                assertTrue(messageIds.add(message.getId()), "重复的消息ID " + message.getId());
+            }
+            assertEquals(messages.size(), store.getMessageCount(conversation.getId()));
+            messagesPerUser.merge(conversation.getUserId(), (long) messages.size(), Long::sum);
+            total += messages.size();
+        }
+        assertEquals(WRITERS * MESSAGES_PER_WRITER, total);
+        assertEquals(total, messageIds.size());
+
+        // 用户索引和用户+角色索引：每个会话恰好出现一次，按最后活跃时间倒序
+        for (long userId = 1; userId <= USERS; userId++) {
+            long user = userId;
+            List<AIConversation> listed = store.getUserConversations(userId, Integer.MAX_VALUE);
+            assertEquals(CONVERSATIONS_PER_USER, listed.size());
+            assertEquals(CONVERSATIONS_PER_USER, listed.stream().map(AIConversation::getId).distinct().count());
+            assertTrue(listed.stream().allMatch(c -> c.getUserId().equals(user)));
+            assertSortedByActivity(listed);
+
+            int byRole = 0;
+            for (String roleId : ROLES) {
+                List<AIConversation> roleListed = store.getUserRoleConversations(userId, roleId, Integer.MAX_VALUE);
+                assertTrue(roleListed.stream().allMatch(c -> c.getRoleId().equals(roleId)));
+                assertSortedByActivity(roleListed);
+                byRole += roleListed.size();
+            }
+            assertEquals(CONVERSATIONS_PER_USER, byRole);
+
+            ConversationCounters counters = store.getUserCounters(userId);
+            assertEquals(CONVERSATIONS_PER_USER, counters.getConversations());
+            assertEquals((long) messagesPerUser.get(userId), counters.getMessages());
+        }
+    }
+
+    @Test
+    void concurrentCreatesAssignUniqueConversationIds() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Long>> created = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            long userId = 1 + w % USERS;
+            created.add(executor.submit(() -> {
+                start.await();
+                return store.createConversation(new AIConversation(userId, ROLES[0], "general_chat")).getId();
+            }));
+        }
+        start.countDown();
+        Set<Long> ids = new HashSet<>();
+        for (Future<Long> id : created) {
+            assertTrue(ids.add(id.get(30, TimeUnit.SECONDS)));
+        }
+        executor.shutdown();
+
+        int listed = 0;
+        for (long userId = 1; userId <= USERS; userId++) {
+            listed += store.getUserConversations(userId, Integer.MAX_VALUE).size();
+        }
+        assertEquals(WRITERS, listed);
+    }
+
+    private static void assertSortedByActivity(List<AIConversation> conversations) {
+        for (int i = 1; i < conversations.size(); i++) {
+            assertFalse(conversations.get(i).getLastActiveAt().isAfter(conversations.get(i - 1).getLastActiveAt()),
+                    "会话列表未按最后活跃时间倒序");
+        }
+    }
+}
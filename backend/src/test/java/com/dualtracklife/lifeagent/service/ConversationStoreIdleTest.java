@@ -0,0 +1,105 @@
+package com.dualtracklife.lifeagent.service;
+
+import com.dualtracklife.lifeagent.model.AIConversation;
+import com.dualtracklife.lifeagent.model.AIMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ConversationStore空闲超时：自动结束的会话以最后活跃时间为结束时间，消息写入冷数据段后仍可读回；
+ * 超时触发前刚刷新过活跃时间的会话保持活跃
+ */
+class ConversationStoreIdleTest {
+
+    @TempDir
+    Path baseDir;
+
+    private ConversationStore store;
+    private ConversationSegmentStore segmentStore;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        store = ConversationStoreConcurrencyTest.newStore();
+        segmentStore = new ConversationSegmentStore();
+        ReflectionTestUtils.setField(segmentStore, "enabled", true);
+        ReflectionTestUtils.setField(segmentStore, "directory", baseDir.toString());
+        ReflectionTestUtils.setField(segmentStore, "segmentSizeMb", 1);
+        segmentStore.init();
+        ReflectionTestUtils.setField(store, "segmentStore", segmentStore);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        store.stop();
+        segmentStore.close();
+    }
+
+    @Test
+    void idleConversationEndsAtLastActivityAndIsPagedOut() {
+        AIConversation conversation = store.createConversation(new AIConversation(1L, "life_mentor", "general_chat"));
+        for (int i = 0; i < 3; i++) {
+            store.appendMessage(conversation.getId(), new AIMessage(conversation.getId(), 1L, "life_mentor", "user", "消息" + i));
+        }
+        LocalDateTime startedAt = LocalDateTime.now().minusMinutes(50);
+        LocalDateTime lastActiveAt = LocalDateTime.now().minusMinutes(40);
+        conversation.setStartedAt(startedAt);
+        conversation.setLastActiveAt(lastActiveAt);
+
+        store.onIdle(conversation.getId());
+
+        assertFalse(conversation.isActive());
+        assertEquals(lastActiveAt, conversation.getEndedAt());
+        assertEquals(10, conversation.getDurationMinutes());
+        ConversationCounters counters = store.getUserCounters(1L);
+        assertEquals(0, counters.getActiveConversations());
+        assertEquals(10.0, counters.getAverageSessionMinutes(), 0.001);
+        assertEquals(1L, store.getStats().get("idleCompletions"));
+        assertEquals(1L, store.getStats().get("idleEvictions"));
+
+        // 已移出堆的消息按原顺序读回
+        List<AIMessage> messages = store.getMessages(conversation.getId());
+        assertEquals(3, messages.size());
+        assertEquals("消息0", messages.get(0).getContent());
+        assertEquals(3, (int) messages.get(2).getMessageOrder());
+    }
+
+    @Test
+    void conversationTouchedBeforeTimeoutFiresStaysActive() {
+        AIConversation conversation = store.createConversation(new AIConversation(1L, "life_mentor", "general_chat"));
+        store.appendMessage(conversation.getId(), new AIMessage(conversation.getId(), 1L, "life_mentor", "user", "你好"));
+        store.touch(conversation);
+
+        store.onIdle(conversation.getId());
+
+        assertTrue(conversation.isActive());
+        assertNull(conversation.getEndedAt());
+        assertEquals(0L, store.getStats().get("idleCompletions"));
+        assertEquals(0L, store.getStats().get("idleEvictions"));
+        assertEquals(1, store.getMessageCount(conversation.getId()));
+    }
+
+    @Test
+    void alreadyEndedConversationIsOnlyPagedOut() {
+        AIConversation conversation = store.createConversation(new AIConversation(1L, "life_mentor", "general_chat"));
+        store.appendMessage(conversation.getId(), new AIMessage(conversation.getId(), 1L, "life_mentor", "user", "再见"));
+        store.endConversation(conversation, "用户结束", null);
+        LocalDateTime endedAt = conversation.getEndedAt();
+        conversation.setLastActiveAt(LocalDateTime.now().minusMinutes(40));
+
+        store.onIdle(conversation.getId());
+
+        assertEquals(endedAt, conversation.getEndedAt());
+        assertEquals("用户结束", conversation.getSummary());
+        assertEquals(0L, store.getStats().get("idleCompletions"));
+        assertEquals(1L, store.getStats().get("idleEvictions"));
+    }
+}
@@ -0,0 +1,157 @@
+package com.dualtracklife.lifeagent.service;
+
+import com.dualtracklife.lifeagent.model.AIConversation;
+import com.dualtracklife.lifeagent.model.AIMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ConversationTransferService：导出后导入到另一个用户得到相同的会话和消息；
+ * 格式错误、缺少必填字段或指向未知会话的行使导入停止，此前写入的部分保留并在结果中列出
+ */
+class ConversationTransferServiceTest {
+
+    private static final Long SOURCE_USER = 1L;
+    private static final Long TARGET_USER = 2L;
+
+    private ConversationStore store;
+    private ConversationTransferService transferService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        store = ConversationStoreConcurrencyTest.newStore();
+        transferService = new ConversationTransferService();
+        ReflectionTestUtils.setField(transferService, "conversationStore", store);
+        ReflectionTestUtils.setField(transferService, "objectMapper", new ObjectMapper().findAndRegisterModules());
+        ReflectionTestUtils.setField(transferService, "importBatchSize", 2);
+        transferService.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.stop();
+    }
+
+    @Test
+    void exportedConversationsImportIntoAnotherUser() throws Exception {
+        AIConversation career = store.createConversation(new AIConversation(SOURCE_USER, "career_mentor", "general_chat"));
+        for (int i = 0; i < 5; i++) {
+            store.appendMessage(career.getId(), new AIMessage(career.getId(), SOURCE_USER, "career_mentor",
+                    i % 2 == 0 ? "user" : "ai", "关于换工作的第" + i + "条消息"));
+        }
+        AIConversation support = store.createConversation(new AIConversation(SOURCE_USER, "counselor", "emotional_support"));
+        store.appendMessage(support.getId(), new AIMessage(support.getId(), SOURCE_USER, "counselor", "user", "最近压力很大"));
+        store.endConversation(support, "聊了压力来源", "每天留出休息时间");
+
+        ByteArrayOutputStream exported = new ByteArrayOutputStream();
+        assertEquals(6, transferService.exportUserConversations(SOURCE_USER, exported));
+
+        ConversationTransferService.ImportResult result = transferService.importUserConversations(TARGET_USER,
+                new ByteArrayInputStream(exported.toByteArray()));
+
+        assertTrue(result.isSuccess(), result.getError());
+        assertEquals(2, result.getConversations());
+        assertEquals(6, result.getMessages());
+        List<AIConversation> imported = store.getUserConversations(TARGET_USER, 10);
+        assertEquals(2, imported.size());
+        for (AIConversation original : List.of(career, support)) {
+            AIConversation copy = imported.stream()
+                    .filter(c -> c.getRoleId().equals(original.getRoleId())).findFirst().orElseThrow();
+            assertNotEquals(original.getId(), copy.getId());
+            assertEquals(TARGET_USER, copy.getUserId());
+            assertEquals(original.getSessionTitle(), copy.getSessionTitle());
+            assertEquals(original.getStatus(), copy.getStatus());
+            assertEquals(original.getSummary(), copy.getSummary());
+            assertEquals(original.getEndedAt(), copy.getEndedAt());
+
+            List<AIMessage> originalMessages = store.getMessages(original.getId());
+            List<AIMessage> copiedMessages = store.getMessages(copy.getId());
+            assertEquals(originalMessages.size(), copiedMessages.size());
+            for (int i = 0; i < originalMessages.size(); i++) {
+                assertEquals(originalMessages.get(i).getContent(), copiedMessages.get(i).getContent());
+                assertEquals(originalMessages.get(i).getMessageOrder(), copiedMessages.get(i).getMessageOrder());
+                assertEquals(copy.getId(), copiedMessages.get(i).getConversationId());
+                assertEquals(TARGET_USER, copiedMessages.get(i).getUserId());
+            }
+        }
+        assertEquals(1, store.getUserCounters(TARGET_USER).getActiveConversations());
+    }
+
+    @Test
+    void messageForUnknownConversationStopsImportAndKeepsEarlierLines() throws Exception {
+        String ndjson = conversationLine(100L, "career_mentor") + "\n"
+                + messageLine(100L, "第一条") + "\n"
+                + messageLine(100L, "第二条") + "\n"
+                + messageLine(100L, "第三条") + "\n"
+                // 指向文件中不存在的会话，不能落到上一个会话里
+                + messageLine(999L, "不属于任何会话") + "\n"
+                + conversationLine(101L, "counselor") + "\n";
+
+        ConversationTransferService.ImportResult result = importString(ndjson);
+
+        assertFalse(result.isSuccess());
+        assertTrue(result.getError().startsWith("第5行"), result.getError());
+        assertEquals(1, result.getConversations());
+        assertEquals(3, result.getMessages());
+        assertEquals(1, result.getConversationIds().size());
+        List<AIMessage> messages = store.getMessages(result.getConversationIds().get(0));
+        assertEquals(List.of("第一条", "第二条", "第三条"), messages.stream().map(AIMessage::getContent).toList());
+    }
+
+    @Test
+    void conversationMissingRequiredFieldIsRejectedBeforeReachingStore() throws Exception {
+        String ndjson = conversationLine(100L, "career_mentor") + "\n"
+                + messageLine(100L, "你好") + "\n"
+                + "{\"type\":\"conversation\",\"conversation\":{\"id\":101,\"conversationType\":\"general_chat\",\"sessionTitle\":\"缺少角色\"}}\n";
+
+        ConversationTransferService.ImportResult result = importString(ndjson);
+
+        assertFalse(result.isSuccess());
+        assertTrue(result.getError().startsWith("第3行"), result.getError());
+        assertTrue(result.getError().contains("roleId"), result.getError());
+        assertEquals(1, result.getConversations());
+        assertEquals(1, result.getMessages());
+        assertEquals(1, store.getUserConversations(TARGET_USER, 10).size());
+        assertEquals(1, store.getUserCounters(TARGET_USER).getConversations());
+    }
+
+    @Test
+    void malformedJsonAndMessageBeforeConversationAreReported() throws Exception {
+        ConversationTransferService.ImportResult orphan = importString(messageLine(100L, "没有会话") + "\n");
+        assertFalse(orphan.isSuccess());
+        assertTrue(orphan.getError().startsWith("第1行"), orphan.getError());
+        assertEquals(0, orphan.getConversations());
+
+        ConversationTransferService.ImportResult malformed = importString(conversationLine(100L, "career_mentor") + "\n{\"type\":");
+        assertFalse(malformed.isSuccess());
+        assertTrue(malformed.getError().startsWith("第2行"), malformed.getError());
+        assertEquals(1, malformed.getConversations());
+        assertNotNull(store.getConversation(malformed.getConversationIds().get(0)));
+    }
+
+    private ConversationTransferService.ImportResult importString(String ndjson) throws Exception {
+        return transferService.importUserConversations(TARGET_USER,
+                new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String conversationLine(Long id, String roleId) {
+        return "{\"type\":\"conversation\",\"conversation\":{\"id\":" + id + ",\"userId\":" + SOURCE_USER
+                + ",\"roleId\":\"" + roleId + "\",\"sessionTitle\":\"导入的会话\",\"conversationType\":\"general_chat\","
+                + "\"status\":\"active\",\"startedAt\":\"2024-03-01T09:30:00\",\"lastActiveAt\":\"2024-03-01T10:00:00\"}}";
+    }
+
+    private static String messageLine(Long conversationId, String content) {
+        return "{\"type\":\"message\",\"message\":{\"conversationId\":" + conversationId + ",\"userId\":" + SOURCE_USER
+                + ",\"roleId\":\"career_mentor\",\"messageType\":\"user\",\"content\":\"" + content + "\",\"messageOrder\":1}}";
+    }
+}
@@ -0,0 +1,291 @@
+package com.dualtracklife.lifeagent.service;
+
+import com.dualtracklife.lifeagent.model.AIConversation;
+import com.dualtracklife.lifeagent.model.AIMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ConversationWriteBehind：用内存中的假JdbcTemplate模拟数据库不可用、提交后断开和超长数据，
+ * 验证未写入计数、失败重试、重试时跳过已经写入的消息、坏行转入死信以及数据库不可用时缓冲有界
+ */
+class ConversationWriteBehindTest {
+
+    private FakeJdbcTemplate database;
+    private ConversationWriteBehind writeBehind;
+
+    @BeforeEach
+    void setUp() {
+        database = new FakeJdbcTemplate();
+        writeBehind = newWriteBehind(1000);
+    }
+
+    private ConversationWriteBehind newWriteBehind(int queueCapacity) {
+        ConversationWriteBehind buffer = new ConversationWriteBehind();
+        ReflectionTestUtils.setField(buffer, "jdbcTemplate", database);
+        // 后台线程不会在测试期间刷新，刷新时机由测试控制
+        ReflectionTestUtils.setField(buffer, "flushIntervalMs", 3_600_000L);
+        ReflectionTestUtils.setField(buffer, "batchSize", 2);
+        ReflectionTestUtils.setField(buffer, "queueCapacity", queueCapacity);
+        ReflectionTestUtils.setField(buffer, "deadLetterCapacity", 10);
+        buffer.start();
+        return buffer;
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        database.down = false;
+        writeBehind.stop();
+    }
+
+    @Test
+    void pendingCountsClearOnceFlushed() {
+        writeBehind.enqueueMessage(message(1L, 1L));
+        writeBehind.enqueueMessage(message(2L, 1L));
+        writeBehind.enqueueMessage(message(3L, 1L));
+        writeBehind.enqueueMessage(message(4L, 2L));
+        writeBehind.markDirty(conversation(3L));
+
+        assertTrue(writeBehind.hasPending(1L));
+        assertTrue(writeBehind.hasPending(2L));
+        assertTrue(writeBehind.hasPending(3L));
+        assertFalse(writeBehind.hasPending(4L));
+
+        writeBehind.flush();
+
+        assertFalse(writeBehind.hasPending(1L));
+        assertFalse(writeBehind.hasPending(2L));
+        assertFalse(writeBehind.hasPending(3L));
+        assertEquals(Set.of(1L, 2L, 3L, 4L), database.messageInserts.keySet());
+        assertTrue(database.conversations.contains(3L));
+        assertEquals(4L, writeBehind.getStats().get("messagesWritten"));
+    }
+
+    @Test
+    void failedWritesAreRetriedOnNextFlush() {
+        database.down = true;
+        for (long id = 1; id <= 5; id++) {
+            writeBehind.enqueueMessage(message(id, 1L));
+        }
+        writeBehind.markDirty(conversation(1L));
+
+        writeBehind.flush();
+
+        assertTrue(database.messageInserts.isEmpty());
+        assertTrue(writeBehind.hasPending(1L));
+        assertEquals(2L, writeBehind.getStats().get("failures"));
+
+        database.down = false;
+        writeBehind.flush();
+
+        assertEquals(Set.of(1L, 2L, 3L, 4L, 5L), database.messageInserts.keySet());
+        assertTrue(database.conversations.contains(1L));
+        assertFalse(writeBehind.hasPending(1L));
+    }
+
+    @Test
+    void retrySkipsMessagesCommittedBeforeTheFailure() {
+        for (long id = 1; id <= 4; id++) {
+            writeBehind.enqueueMessage(message(id, 1L));
+        }
+        // 第二批写入成功后连接断开，调用方只看到异常
+        database.failAfterBatches = 2;
+
+        writeBehind.flush();
+
+        assertEquals(Set.of(1L, 2L, 3L, 4L), database.messageInserts.keySet());
+        assertTrue(writeBehind.hasPending(1L));
+
+        database.down = false;
+        writeBehind.flush();
+
+        assertFalse(writeBehind.hasPending(1L));
+        database.messageInserts.values().forEach(count -> assertEquals(1, (int) count));
+    }
+
+    @Test
+    void invalidMessageIsDeadLetteredWithoutBlockingOthers() {
+        writeBehind.enqueueMessage(message(1L, 1L));
+        AIMessage tooLong = message(2L, 1L);
+        tooLong.setContent("超长".repeat(FakeJdbcTemplate.MAX_LENGTH));
+        writeBehind.enqueueMessage(tooLong);
+        writeBehind.enqueueMessage(message(3L, 1L));
+        writeBehind.enqueueMessage(message(4L, 1L));
+
+        writeBehind.flush();
+
+        assertEquals(Set.of(1L, 3L, 4L), database.messageInserts.keySet());
+        assertFalse(writeBehind.hasPending(1L));
+        assertEquals(1L, writeBehind.getStats().get("deadLettered"));
+        assertEquals(0, writeBehind.getStats().get("retryMessages"));
+        List<ConversationWriteBehind.DeadLetter> deadLetters = writeBehind.getDeadLetters();
+        assertEquals(1, deadLetters.size());
+        assertEquals("message", deadLetters.get(0).getType());
+        assertEquals(2L, (long) deadLetters.get(0).getId());
+        assertSame(tooLong, deadLetters.get(0).getRow());
+
+        // 后续刷新不再重试坏行
+        writeBehind.enqueueMessage(message(5L, 1L));
+        writeBehind.flush();
+        assertTrue(database.messageInserts.containsKey(5L));
+        assertEquals(1L, writeBehind.getStats().get("deadLettered"));
+    }
+
+    @Test
+    void invalidConversationDoesNotBlockOtherConversations() {
+        AIConversation invalid = conversation(1L);
+        ReflectionTestUtils.setField(invalid, "sessionTitle", "超长".repeat(FakeJdbcTemplate.MAX_LENGTH));
+        writeBehind.markDirty(invalid);
+        writeBehind.markDirty(conversation(2L));
+
+        writeBehind.flush();
+
+        assertEquals(Set.of(2L), database.conversations);
+        assertFalse(writeBehind.hasPending(1L));
+        assertFalse(writeBehind.hasPending(2L));
+        assertEquals("conversation", writeBehind.getDeadLetters().get(0).getType());
+    }
+
+    @Test
+    void bufferStaysBoundedWhileDatabaseIsDown() throws Exception {
+        writeBehind.stop();
+        writeBehind = newWriteBehind(3);
+        database.down = true;
+        for (long id = 1; id <= 3; id++) {
+            writeBehind.enqueueMessage(message(id, 1L));
+        }
+        writeBehind.flush();
+        for (long id = 4; id <= 6; id++) {
+            writeBehind.enqueueMessage(message(id, 1L));
+        }
+        writeBehind.flush();
+
+        // 重试失败时不再从队列取新消息
+        assertEquals(3, writeBehind.getStats().get("retryMessages"));
+        assertEquals(3, writeBehind.getStats().get("queuedMessages"));
+
+        // 缓冲已满，入队的请求线程等待数据库恢复
+        Thread producer = new Thread(() -> writeBehind.enqueueMessage(message(7L, 1L)));
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive());
+
+        database.down = false;
+        writeBehind.flush();
+        producer.join(TimeUnit.SECONDS.toMillis(5));
+        assertFalse(producer.isAlive());
+        writeBehind.flush();
+
+        assertEquals(Set.of(1L, 2L, 3L, 4L, 5L, 6L, 7L), database.messageInserts.keySet());
+        assertFalse(writeBehind.hasPending(1L));
+    }
+
+    @Test
+    void forgetDropsPendingCount() {
+        writeBehind.enqueueMessage(message(1L, 1L));
+        assertTrue(writeBehind.hasPending(1L));
+
+        writeBehind.forget(1L);
+
+        assertFalse(writeBehind.hasPending(1L));
+    }
+
+    private static AIMessage message(Long id, Long conversationId) {
+        AIMessage message = new AIMessage(conversationId, 7L, "role", "user", "消息" + id);
+        message.setId(id);
+        return message;
+    }
+
+    private static AIConversation conversation(Long id) {
+        AIConversation conversation = new AIConversation(7L, "role", "general");
+        conversation.setId(id);
+        return conversation;
+    }
+
+    /**
+     * 按SQL前缀区分消息插入、会话更新和会话插入，把写入保存在内存中；
+     * 消息内容或会话标题超过MAX_LENGTH时像真实数据库一样整批失败
+     */
+    private static class FakeJdbcTemplate extends JdbcTemplate {
+        private static final int MAX_LENGTH = 50;
+
+        // 消息ID -> 成功插入的次数
+        private final Map<Long, Integer> messageInserts = new ConcurrentHashMap<>();
+        private final Set<Long> conversations = ConcurrentHashMap.newKeySet();
+        private volatile boolean down;
+        // 成功写入这么多批消息后断开连接，0表示不断开
+        private volatile int failAfterBatches;
+        private int messageBatches;
+
+        @Override
+        public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+            checkAvailable();
+            int[] counts = new int[batchArgs.size()];
+            if (sql.startsWith("INSERT INTO ai_messages")) {
+                for (Object[] row : batchArgs) {
+                    checkLength(row[5]);
+                    if (messageInserts.containsKey((Long) row[0])) {
+                        throw new DuplicateKeyException("重复的消息ID " + row[0]);
+                    }
+                }
+                for (int i = 0; i < batchArgs.size(); i++) {
+                    messageInserts.merge((Long) batchArgs.get(i)[0], 1, Integer::sum);
+                    counts[i] = 1;
+                }
+                if (++messageBatches == failAfterBatches) {
+                    down = true;
+                    throw new DataAccessResourceFailureException("提交后连接断开");
+                }
+            } else if (sql.startsWith("UPDATE ai_conversations")) {
+                batchArgs.forEach(row -> checkLength(row[1]));
+                for (int i = 0; i < batchArgs.size(); i++) {
+                    Object[] row = batchArgs.get(i);
+                    counts[i] = conversations.contains((Long) row[row.length - 1]) ? 1 : 0;
+                }
+            } else if (sql.startsWith("INSERT INTO ai_conversations")) {
+                batchArgs.forEach(row -> checkLength(row[3]));
+                for (int i = 0; i < batchArgs.size(); i++) {
+                    conversations.add((Long) batchArgs.get(i)[0]);
+                    counts[i] = 1;
+                }
+            }
+            return counts;
+        }
+
+        @Override
+        public int update(String sql, Object... args) {
+            checkAvailable();
+            checkLength(args[5]);
+            if (messageInserts.putIfAbsent((Long) args[0], 1) != null) {
+                throw new DuplicateKeyException("重复的消息ID " + args[0]);
+            }
+            return 1;
+        }
+
+        private static void checkLength(Object value) {
+            if (value instanceof String text && text.length() > MAX_LENGTH) {
+                throw new DataIntegrityViolationException("Value too long: " + text.length());
+            }
+        }
+
+        private void checkAvailable() {
+            if (down) {
+                throw new DataAccessResourceFailureException("数据库不可用");
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.dualtracklife.lifeagent.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * IdleTimerWheel：超时项按时到期、touch后按新的到期时间重新放入、取消后不再到期；
+ * 轮子只有8个槽，200ms的超时需要跨越多圈
+ */
+class IdleTimerWheelTest {
+
+    private static final long TICK_MS = 10;
+    private static final int WHEEL_SIZE = 8;
+    private static final long TIMEOUT_MS = 200;
+
+    private final BlockingQueue<Expired> expired = new LinkedBlockingQueue<>();
+    private final IdleTimerWheel wheel = new IdleTimerWheel(TICK_MS, WHEEL_SIZE, TIMEOUT_MS,
+            key -> expired.add(new Expired(key, System.nanoTime())), "idle-timer-wheel-test");
+
+    @AfterEach
+    void tearDown() {
+        wheel.stop();
+    }
+
+    @Test
+    void expiresOnceAfterTimeout() throws Exception {
+        wheel.start();
+        long touchedAt = System.nanoTime();
+        wheel.touch(1L);
+        assertEquals(1, wheel.size());
+
+        Expired first = expired.poll(2, TimeUnit.SECONDS);
+        assertNotNull(first);
+        assertEquals(1L, first.key);
+        assertTrue(elapsedMs(touchedAt, first.at) >= TIMEOUT_MS, "提前到期");
+        assertEquals(0, wheel.size());
+        assertNull(expired.poll(3 * TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void touchPostponesExpiry() throws Exception {
+        wheel.start();
+        long lastTouch = 0;
+        // 持续touch的时间超过两个超时周期
+        for (int i = 0; i < 10; i++) {
+            lastTouch = System.nanoTime();
+            wheel.touch(1L);
+            Thread.sleep(TIMEOUT_MS / 4);
+        }
+        assertTrue(expired.isEmpty(), "活跃期间不应到期");
+
+        Expired first = expired.poll(2, TimeUnit.SECONDS);
+        assertNotNull(first);
+        assertTrue(elapsedMs(lastTouch, first.at) >= TIMEOUT_MS, "应按最后一次touch计算到期时间");
+    }
+
+    @Test
+    void touchAfterExpiryArmsNewTimeout() throws Exception {
+        wheel.start();
+        wheel.touch(1L);
+        assertNotNull(expired.poll(2, TimeUnit.SECONDS));
+
+        wheel.touch(1L);
+        assertEquals(1, wheel.size());
+        Expired second = expired.poll(2, TimeUnit.SECONDS);
+        assertNotNull(second);
+        assertEquals(1L, second.key);
+    }
+
+    @Test
+    void cancelPreventsExpiry() throws Exception {
+        wheel.start();
+        wheel.touch(1L);
+        wheel.touch(2L);
+        wheel.cancel(1L);
+        assertEquals(1, wheel.size());
+
+        Expired only = expired.poll(2, TimeUnit.SECONDS);
+        assertNotNull(only);
+        assertEquals(2L, only.key);
+        assertNull(expired.poll(3 * TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    private static long elapsedMs(long fromNanos, long toNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(toNanos - fromNanos);
+    }
+
+    private static class Expired {
+        private final long key;
+        private final long at;
+
+        Expired(long key, long at) {
+            this.key = key;
+            this.at = at;
+        }
+    }
+}
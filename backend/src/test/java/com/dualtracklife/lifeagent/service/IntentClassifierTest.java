@@ -0,0 +1,83 @@
+package com.dualtracklife.lifeagent.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * IntentClassifier：用打包的intent-model.json判断典型消息的意图，置信度不足时沿用会话的对话类型
+ */
+class IntentClassifierTest {
+
+    @Test
+    void knownPhrasesMapToTheirIntent() throws IOException {
+        IntentClassifier classifier = classifier(0.5);
+
+        assertIntent(classifier, "最近压力好大，晚上总是失眠，心情很难受", "emotional_support");
+        assertIntent(classifier, "我拿到了两个offer，不知道是否应该跳槽", "decision_support");
+        assertIntent(classifier, "想和你一起做一份未来五年的人生规划", "life_planning");
+        assertIntent(classifier, "你好", IntentClassifier.GENERAL);
+    }
+
+    @Test
+    void lowConfidenceFallsBackToConversationType() throws IOException {
+        // 阈值高于任何softmax概率，所有预测都不够置信
+        IntentClassifier strict = classifier(1.01);
+        IntentClassifier.IntentPrediction prediction = strict.classify("我拿到了两个offer，不知道是否应该跳槽");
+
+        assertEquals("decision_support", prediction.getIntent());
+        assertFalse(prediction.isIntentConfident());
+        assertNull(prediction.confidentIntent());
+        assertEquals("event_analysis", IntentClassifier.resolveHandler(prediction, "event_analysis"));
+        assertEquals(IntentClassifier.GENERAL, IntentClassifier.resolveHandler(prediction, null));
+    }
+
+    @Test
+    void confidentIntentOverridesConversationType() throws IOException {
+        IntentClassifier.IntentPrediction prediction = classifier(0.5).classify("我拿到了两个offer，不知道是否应该跳槽");
+
+        assertEquals("decision_support", IntentClassifier.resolveHandler(prediction, "event_analysis"));
+    }
+
+    @Test
+    void generalIntentKeepsConversationType() throws IOException {
+        IntentClassifier.IntentPrediction prediction = classifier(0.0).classify("你好");
+
+        assertEquals(IntentClassifier.GENERAL, prediction.getIntent());
+        assertTrue(prediction.isIntentConfident());
+        assertEquals("event_analysis", IntentClassifier.resolveHandler(prediction, "event_analysis"));
+    }
+
+    @Test
+    void disabledClassifierReturnsNullAndKeepsConversationType() throws IOException {
+        IntentClassifier disabled = new IntentClassifier();
+        ReflectionTestUtils.setField(disabled, "enabled", false);
+        disabled.load();
+
+        assertNull(disabled.classify("最近压力好大"));
+        assertNull(classifier(0.5).classify("   "));
+        assertEquals("emotional_support", IntentClassifier.resolveHandler(null, "emotional_support"));
+    }
+
+    private static IntentClassifier classifier(double minConfidence) throws IOException {
+        IntentClassifier classifier = new IntentClassifier();
+        ReflectionTestUtils.setField(classifier, "resourceLoader", new DefaultResourceLoader());
+        ReflectionTestUtils.setField(classifier, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(classifier, "enabled", true);
+        ReflectionTestUtils.setField(classifier, "modelLocation", "classpath:intent-model.json");
+        ReflectionTestUtils.setField(classifier, "minConfidence", minConfidence);
+        classifier.load();
+        return classifier;
+    }
+
+    private static void assertIntent(IntentClassifier classifier, String text, String expected) {
+        IntentClassifier.IntentPrediction prediction = classifier.classify(text);
+        assertEquals(expected, prediction.getIntent(), text);
+        assertTrue(prediction.isIntentConfident(), text + " 置信度 " + prediction.getIntentConfidence());
+    }
+}
@@ -0,0 +1,45 @@
+package com.dualtracklife.lifeagent.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MessageCursor：编码后可原样解码、URL安全，其他会话的游标和格式错误的游标被拒绝
+ */
+class MessageCursorTest {
+
+    @Test
+    void roundTripsConversationAndOrder() {
+        for (int order : new int[]{0, 1, 20, Integer.MAX_VALUE}) {
+            assertEquals(order, MessageCursor.decode(42L, MessageCursor.encode(42L, order)));
+        }
+        assertEquals(7, MessageCursor.decode(Long.MAX_VALUE, MessageCursor.encode(Long.MAX_VALUE, 7)));
+    }
+
+    @Test
+    void cursorIsUrlSafeWithoutPadding() {
+        for (long conversationId = 1; conversationId < 200; conversationId++) {
+            String cursor = MessageCursor.encode(conversationId, (int) conversationId * 37);
+            assertTrue(cursor.matches("[A-Za-z0-9_-]+"), cursor);
+        }
+    }
+
+    @Test
+    void rejectsCursorOfAnotherConversation() {
+        String cursor = MessageCursor.encode(1L, 5);
+        assertThrows(IllegalArgumentException.class, () -> MessageCursor.decode(2L, cursor));
+    }
+
+    @Test
+    void rejectsMalformedCursors() {
+        for (String raw : new String[]{"42", "42:", ":5", "42:abc", "42:-1", "abc:5", "42:99999999999"}) {
+            String cursor = Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+            assertThrows(IllegalArgumentException.class, () -> MessageCursor.decode(42L, cursor), raw);
+        }
+        assertThrows(IllegalArgumentException.class, () -> MessageCursor.decode(42L, "不是Base64!"));
+    }
+}
@@ -0,0 +1,275 @@
+package com.dualtracklife.lifeagent.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RoutingChatModel与ChatBackendRegistry：用两个本地假提供方注入延迟和失败，验证切换、熔断、恢复、半开探测，
+ * 首选提供方变慢后流量转向更快的提供方，以及流式请求只在首个分片之前切换
+ */
+class RoutingChatModelTest {
+
+    private static final Prompt PROMPT = new Prompt("你好");
+
+    @Test
+    void failsOverToSecondaryWhenPrimaryFails() {
+        FakeChatModel primary = new FakeChatModel("primary", 0);
+        FakeChatModel secondary = new FakeChatModel("secondary", 30);
+        primary.failing = true;
+        RoutingChatModel router = router(new ChatBackend("primary", primary, 3, 60_000),
+                new ChatBackend("secondary", secondary, 3, 60_000));
+
+        assertEquals("secondary", text(router.call(PROMPT)));
+        assertEquals(1, primary.calls.get());
+        assertEquals(1, secondary.calls.get());
+    }
+
+    @Test
+    void opensCircuitAfterThresholdAndRecoversAfterCooldown() throws Exception {
+        FakeChatModel primary = new FakeChatModel("primary", 0);
+        FakeChatModel slow = new FakeChatModel("slow", 30);
+        ChatBackend primaryBackend = new ChatBackend("primary", primary, 3, 200);
+        RoutingChatModel router = router(primaryBackend, new ChatBackend("slow", slow, 3, 60_000));
+
+        // 首选提供方先积累延迟样本，之后一直排在慢提供方前面
+        assertEquals("primary", text(router.call(PROMPT)));
+
+        primary.failing = true;
+        for (int i = 0; i < 3; i++) {
+            assertEquals("slow", text(router.call(PROMPT)));
+        }
+        assertFalse(primaryBackend.isHealthy());
+        assertEquals(4, primary.calls.get());
+
+        // 熔断期间不再调用失败的提供方
+        assertEquals("slow", text(router.call(PROMPT)));
+        assertEquals(4, primary.calls.get());
+
+        // 冷却结束后的探测请求成功，提供方恢复
+        primary.failing = false;
+        Thread.sleep(250);
+        assertEquals("primary", text(router.call(PROMPT)));
+        assertTrue(primaryBackend.isHealthy());
+        assertEquals(5, primary.calls.get());
+    }
+
+    @Test
+    void halfOpenLetsOnlyOneProbeThrough() throws Exception {
+        FakeChatModel flaky = new FakeChatModel("flaky", 0);
+        ChatBackend backend = new ChatBackend("flaky", flaky, 1, 100);
+        RoutingChatModel router = router(backend);
+
+        flaky.failing = true;
+        assertThrows(IllegalStateException.class, () -> router.call(PROMPT));
+        assertFalse(backend.isHealthy());
+
+        flaky.failing = false;
+        flaky.gate = new CountDownLatch(1);
+        Thread.sleep(150);
+
+        int callers = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(executor.submit(() -> text(router.call(PROMPT))));
+            }
+            // 探测请求阻塞在提供方内，其余调用方立即被拒绝
+            int rejected = 0;
+            Future<String> probe = null;
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (rejected < callers - 1 && System.currentTimeMillis() < deadline) {
+                rejected = 0;
+                for (Future<String> result : results) {
+                    if (result.isDone()) {
+                        ExecutionException e = assertThrows(ExecutionException.class, result::get);
+                        assertInstanceOf(IllegalStateException.class, e.getCause());
+                        rejected++;
+                    }
+                }
+                Thread.sleep(10);
+            }
+            assertEquals(callers - 1, rejected);
+            for (Future<String> result : results) {
+                if (!result.isDone()) {
+                    probe = result;
+                }
+            }
+            assertNotNull(probe);
+
+            flaky.gate.countDown();
+            assertEquals("flaky", probe.get(5, TimeUnit.SECONDS));
+            assertEquals(2, flaky.calls.get());
+            assertTrue(backend.isHealthy());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void tryAcquireGrantsSingleProbeUntilOutcomeRecorded() throws Exception {
+        ChatBackend backend = new ChatBackend("flaky", new FakeChatModel("flaky", 0), 1, 50);
+        backend.recordFailure(0, false);
+        assertFalse(backend.tryAcquire());
+
+        Thread.sleep(80);
+        assertTrue(backend.isAvailable());
+        assertTrue(backend.tryAcquire());
+        assertFalse(backend.tryAcquire());
+        assertFalse(backend.isAvailable());
+
+        // 探测被取消后可以重新探测，探测失败则重新熔断
+        backend.releaseProbe();
+        assertTrue(backend.tryAcquire());
+        backend.recordFailure(0, false);
+        assertFalse(backend.tryAcquire());
+    }
+
+    @Test
+    void slowedPrimaryLosesTrafficToFasterBackend() {
+        FakeChatModel primary = new FakeChatModel("primary", 0);
+        FakeChatModel secondary = new FakeChatModel("secondary", 30);
+        RoutingChatModel router = router(new ChatBackend("primary", primary, 3, 60_000),
+                new ChatBackend("secondary", secondary, 3, 60_000));
+
+        // 先让备用提供方积累一个延迟样本
+        primary.failing = true;
+        assertEquals("secondary", text(router.call(PROMPT)));
+        primary.failing = false;
+        for (int i = 0; i < 3; i++) {
+            assertEquals("primary", text(router.call(PROMPT)));
+        }
+
+        // 首选提供方变慢后，几次调用内延迟EWMA超过备用提供方，之后的流量全部转走
+        primary.delayMs = 150;
+        int slowCalls = 0;
+        while (slowCalls < 10 && "primary".equals(text(router.call(PROMPT)))) {
+            slowCalls++;
+        }
+        assertTrue(slowCalls < 10, "首选提供方变慢后仍在接收流量");
+        int primaryCalls = primary.calls.get();
+        for (int i = 0; i < 5; i++) {
+            assertEquals("secondary", text(router.call(PROMPT)));
+        }
+        assertEquals(primaryCalls, primary.calls.get());
+    }
+
+    @Test
+    void failureLatencyRaisesLatencyEstimate() {
+        ChatBackend backend = new ChatBackend("primary", new FakeChatModel("primary", 0), 3, 60_000);
+        backend.recordSuccess(20, false);
+        double before = (double) backend.getStats().get("callLatencyEwmaMs");
+
+        // 等到超时才失败的请求把延迟估计拉高
+        backend.recordFailure(5_000, false);
+        double afterTimeout = (double) backend.getStats().get("callLatencyEwmaMs");
+        assertTrue(afterTimeout > before + 900, "超时后延迟EWMA " + afterTimeout);
+
+        // 立即返回的失败不会让提供方显得更快
+        backend.recordFailure(1, false);
+        assertEquals(afterTimeout, (double) backend.getStats().get("callLatencyEwmaMs"), 0.001);
+    }
+
+    @Test
+    void streamFailsOverWhenPrimaryFailsBeforeFirstChunk() {
+        FakeChatModel primary = new FakeChatModel("primary", 0);
+        FakeChatModel secondary = new FakeChatModel("secondary", 0);
+        ChatBackend primaryBackend = new ChatBackend("primary", primary, 3, 60_000);
+        ChatBackend secondaryBackend = new ChatBackend("secondary", secondary, 3, 60_000);
+        RoutingChatModel router = router(primaryBackend, secondaryBackend);
+        primary.failing = true;
+
+        List<ChatResponse> chunks = router.stream(PROMPT).collectList().block();
+
+        assertEquals(List.of("secondary", "secondary"), chunks.stream().map(RoutingChatModelTest::text).toList());
+        assertEquals(1, primary.calls.get());
+        assertEquals(1L, (long) primaryBackend.getStats().get("totalFailures"));
+        assertTrue((double) secondaryBackend.getStats().get("firstChunkLatencyEwmaMs") >= 0);
+    }
+
+    @Test
+    void streamErrorAfterFirstChunkIsNotRetried() {
+        FakeChatModel primary = new FakeChatModel("primary", 0);
+        FakeChatModel secondary = new FakeChatModel("secondary", 0);
+        ChatBackend primaryBackend = new ChatBackend("primary", primary, 3, 60_000);
+        RoutingChatModel router = router(primaryBackend, new ChatBackend("secondary", secondary, 3, 60_000));
+        primary.failAfterFirstChunk = true;
+
+        // 已经输出部分内容，切换会让客户端收到两个提供方拼接的回答
+        assertThrows(IllegalStateException.class, () -> router.stream(PROMPT).collectList().block());
+        assertEquals(0, secondary.calls.get());
+        assertEquals(1L, (long) primaryBackend.getStats().get("totalFailures"));
+    }
+
+    private static RoutingChatModel router(ChatBackend... backends) {
+        return new RoutingChatModel(new ChatBackendRegistry(List.of(backends), 0.0));
+    }
+
+    private static String text(ChatResponse response) {
+        return response.getResult().getOutput().getText();
+    }
+
+    /**
+     * 本地假提供方：按设定延迟返回自己的名字，可切换为失败，可用gate阻塞在调用中；
+     * 流式调用输出两个分片，可设置为输出第一个分片后失败
+     */
+    private static class FakeChatModel implements ChatModel {
+        private final String name;
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile long delayMs;
+        private volatile boolean failing;
+        private volatile boolean failAfterFirstChunk;
+        private volatile CountDownLatch gate;
+
+        FakeChatModel(String name, long delayMs) {
+            this.name = name;
+            this.delayMs = delayMs;
+        }
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            calls.incrementAndGet();
+            try {
+                if (delayMs > 0) {
+                    Thread.sleep(delayMs);
+                }
+                CountDownLatch current = gate;
+                if (current != null) {
+                    current.await();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+            if (failing) {
+                throw new IllegalStateException(name + " 不可用");
+            }
+            return new ChatResponse(List.of(new Generation(new AssistantMessage(name))));
+        }
+
+        @Override
+        public Flux<ChatResponse> stream(Prompt prompt) {
+            calls.incrementAndGet();
+            if (failing) {
+                return Flux.error(new IllegalStateException(name + " 不可用"));
+            }
+            ChatResponse chunk = new ChatResponse(List.of(new Generation(new AssistantMessage(name))));
+            if (failAfterFirstChunk) {
+                return Flux.just(chunk).concatWith(Flux.error(new IllegalStateException(name + " 连接中断")));
+            }
+            return Flux.just(chunk, chunk);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.dualtracklife.lifeagent.service;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 基准测试入口
+ * 默认启用GC分析器，报告每次操作的分配字节数（gc.alloc.rate.norm），其余参数与JMH命令行相同，例如：
+ * java -jar target/benchmarks.jar PromptPipelineBenchmark -f 1 -wi 3 -i 5
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
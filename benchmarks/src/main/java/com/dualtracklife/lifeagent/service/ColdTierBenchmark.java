@@ -0,0 +1,61 @@
+package com.dualtracklife.lifeagent.service;
+
+import com.dualtracklife.lifeagent.model.AIMessage;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 冷数据段读写基准
+ * 测量一个会话的消息写入内存映射段文件再读回（移出堆、访问时读回）的耗时
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ColdTierBenchmark {
+
+    private static final Long CONVERSATION_ID = 1L;
+    private static final Long USER_ID = 1L;
+
+    @Param({"10", "100", "1000"})
+    private int messageCount;
+
+    private AnnotationConfigApplicationContext context;
+    private ConversationSegmentStore segmentStore;
+    private List<AIMessage> messages;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new AnnotationConfigApplicationContext();
+        context.registerBean(ConversationSegmentStore.class);
+        context.refresh();
+        segmentStore = context.getBean(ConversationSegmentStore.class);
+
+        messages = new ArrayList<>();
+        for (int i = 0; i < messageCount; i++) {
+            AIMessage message = new AIMessage(CONVERSATION_ID, USER_ID, "life_mentor", i % 2 == 0 ? "user" : "ai",
+                    "第" + i + "条消息：最近工作压力很大，不知道该不该换一份工作，想听听你的建议。");
+            message.setId((long) i + 1);
+            message.setMessageOrder(i + 1);
+            messages.add(message);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<AIMessage> pageOutAndIn() throws IOException {
+        segmentStore.pageOut(CONVERSATION_ID, messages);
+        return segmentStore.pageIn(CONVERSATION_ID);
+    }
+}
@@ -0,0 +1,92 @@
+package com.dualtracklife.lifeagent.service;
+
+import com.dualtracklife.lifeagent.model.AIConversation;
+import com.dualtracklife.lifeagent.model.AIMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对话链路开销基准
+ * 用最小的Spring上下文装配真实的对话服务（调度器、角色、SpringAIService），模型为零延迟实现，
+ * 按历史消息数量测量历史查询、上下文拼装和一次完整对话轮次的开销
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConversationPipelineBenchmark {
+
+    private static final Long USER_ID = 1L;
+
+    @Param({"10", "100", "1000"})
+    private int historySize;
+
+    private AnnotationConfigApplicationContext context;
+    private AIConversationService conversationService;
+    private IntentClassifier intentClassifier;
+    private AIConversation conversation;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new AnnotationConfigApplicationContext();
+        context.registerBean(ChatClient.Builder.class, () -> ChatClient.builder(new ZeroLatencyChatModel()));
+        context.registerBean(ObjectMapper.class);
+        context.registerBean(IntentClassifier.class);
+        context.registerBean(AIRoleService.class);
+        context.registerBean(SpringAIService.class);
+        context.registerBean(AIDeadlineMetrics.class);
+        context.registerBean(AIRequestScheduler.class);
+        context.registerBean(ConversationWriteBehind.class);
+        context.registerBean(ConversationSegmentStore.class);
+        context.registerBean(ConversationStore.class);
+        context.registerBean(ChatIdempotencyCache.class);
+        context.registerBean(AIConversationService.class);
+        context.refresh();
+        conversationService = context.getBean(AIConversationService.class);
+        intentClassifier = context.getBean(IntentClassifier.class);
+    }
+
+    /**
+     * 每轮迭代重建会话，避免chatWithAI不断追加消息导致历史规模偏离参数
+     */
+    @Setup(Level.Iteration)
+    public void resetConversation() {
+        conversation = conversationService.startConversation(USER_ID, "life_mentor", "general");
+        for (int i = 0; i < historySize; i++) {
+            String type = i % 2 == 0 ? "user" : "ai";
+            conversationService.sendMessage(conversation.getId(), USER_ID, "life_mentor", type, "第" + i + "条消息：最近工作压力有点大，想聊聊怎么调整节奏");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<AIMessage> getConversationHistory() {
+        return conversationService.getConversationHistory(conversation.getId(), 5);
+    }
+
+    @Benchmark
+    public String buildConversationContext() {
+        return conversationService.buildConversationContext(conversation, "我该怎么平衡工作和生活？");
+    }
+
+    @Benchmark
+    public IntentClassifier.IntentPrediction classifyIntent() {
+        return intentClassifier.classify("最近工作压力很大，纠结要不要跳槽，拿了两个offer不知道选哪个");
+    }
+
+    @Benchmark
+    public AIMessage chatWithAI() {
+        return conversationService.chatWithAI(conversation.getId(), USER_ID, "我该怎么平衡工作和生活？");
+    }
+}
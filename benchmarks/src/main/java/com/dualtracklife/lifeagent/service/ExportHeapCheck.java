@@ -0,0 +1,129 @@
+package com.dualtracklife.lifeagent.service;
+
+import com.dualtracklife.lifeagent.model.AIConversation;
+import com.dualtracklife.lifeagent.model.AIMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.OutputStream;
+import java.lang.management.*;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 大规模导出的堆占用验证（不是JMH基准）
+ * 生成一个拥有大量历史的用户，消息写入后立即移入冷数据段，再把全部对话以NDJSON导出到丢弃输出流，
+ * 期间记录每次GC后的堆占用。用较小的堆运行，导出若在内存中组装会直接OOM：
+ * java -Xmx256m -cp target/benchmarks.jar com.dualtracklife.lifeagent.service.ExportHeapCheck [会话数] [每会话消息数]
+ * 默认1500个会话、每会话500条约1000字的消息，导出约2GB
+ */
+public class ExportHeapCheck {
+
+    private static final Long USER_ID = 1L;
+    private static final int BATCH_SIZE = 500;
+
+    public static void main(String[] args) throws Exception {
+        int conversations = args.length > 0 ? Integer.parseInt(args[0]) : 1500;
+        int messagesPerConversation = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.registerBean(ObjectMapper.class, () -> new ObjectMapper().findAndRegisterModules());
+        context.registerBean(ConversationWriteBehind.class);
+        context.registerBean(ConversationSegmentStore.class);
+        context.registerBean(ConversationStore.class);
+        context.registerBean(ConversationTransferService.class);
+        context.refresh();
+
+        ConversationStore store = context.getBean(ConversationStore.class);
+        ConversationTransferService transferService = context.getBean(ConversationTransferService.class);
+        String content = "最近在考虑要不要换工作，现在的团队氛围不错但成长有限。".repeat(36);
+
+        HeapSampler sampler = new HeapSampler();
+        for (int c = 0; c < conversations; c++) {
+            AIConversation conversation = store.createConversation(new AIConversation(USER_ID, "career_mentor", "general"));
+            for (int from = 0; from < messagesPerConversation; from += BATCH_SIZE) {
+                List<AIMessage> batch = new ArrayList<>();
+                for (int i = from; i < Math.min(messagesPerConversation, from + BATCH_SIZE); i++) {
+                    batch.add(new AIMessage(conversation.getId(), USER_ID, "career_mentor", i % 2 == 0 ? "user" : "ai", content));
+                }
+                store.appendMessages(conversation.getId(), batch);
+            }
+            store.pageOut(conversation.getId());
+        }
+        long generatedPeak = sampler.peak;
+        System.out.printf("生成完成：%d 个会话，%d 条消息，GC后堆占用峰值 %.1f MB%n",
+                conversations, (long) conversations * messagesPerConversation, generatedPeak / 1048576.0);
+
+        sampler.peak = 0;
+        CountingOutputStream out = new CountingOutputStream();
+        long start = System.nanoTime();
+        long exported = transferService.exportUserConversations(USER_ID, out);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        System.out.printf("导出完成：%d 条消息，%.2f GB，耗时 %d ms，导出期间GC后堆占用峰值 %.1f MB%n",
+                exported, out.count / 1073741824.0, elapsedMs, sampler.peak / 1048576.0);
+
+        context.close();
+    }
+
+    /**
+     * 统计写入字节数并丢弃内容
+     */
+    private static class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    /**
+     * 监听每次GC（包括新生代GC）的通知，记录GC后各堆内存池占用之和（存活对象）的峰值。
+     * 不用MemoryPoolMXBean.getCollectionUsage：老年代的该值只在老年代GC后更新，只有新生代GC时一直是0
+     */
+    private static class HeapSampler implements NotificationListener {
+        private final Set<String> heapPools = new HashSet<>();
+        private volatile long peak;
+
+        HeapSampler() {
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    heapPools.add(pool.getName());
+                }
+            }
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                ((NotificationEmitter) collector).addNotificationListener(this, null, null);
+            }
+        }
+
+        @Override
+        public void handleNotification(Notification notification, Object handback) {
+            if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                return;
+            }
+            GcInfo gcInfo = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData()).getGcInfo();
+            long used = 0;
+            for (Map.Entry<String, MemoryUsage> pool : gcInfo.getMemoryUsageAfterGc().entrySet()) {
+                if (heapPools.contains(pool.getKey())) {
+                    used += pool.getValue().getUsed();
+                }
+            }
+            peak = Math.max(peak, used);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.dualtracklife.lifeagent.service;
+
+import com.dualtracklife.lifeagent.model.AIMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 长会话历史读取基准
+ * 对比只追加消息日志的tail/range读取与原先"整表按序号排序再取最后N条"的做法
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageLogBenchmark {
+
+    private static final Long CONVERSATION_ID = 1L;
+    private static final Long USER_ID = 1L;
+
+    @Param({"10000", "100000"})
+    private int messageCount;
+
+    private ConversationMessageLog log;
+    private List<AIMessage> legacyList;
+
+    @Setup
+    public void setUp() {
+        log = new ConversationMessageLog();
+        legacyList = new ArrayList<>();
+        for (int i = 0; i < messageCount; i++) {
+            AIMessage message = new AIMessage(CONVERSATION_ID, USER_ID, "life_mentor", i % 2 == 0 ? "user" : "ai", "第" + i + "条消息");
+            message.setId((long) i + 1);
+            log.append(message);
+            legacyList.add(message);
+        }
+    }
+
+    @Benchmark
+    public List<AIMessage> tail5() {
+        return log.tail(5);
+    }
+
+    @Benchmark
+    public List<AIMessage> range50() {
+        int from = messageCount / 2;
+        return log.range(from, from + 49);
+    }
+
+    /**
+     * 原先getConversationHistory的实现，作为对照
+     */
+    @Benchmark
+    public List<AIMessage> legacySortedTail5() {
+        return legacyList.stream()
+                .sorted(Comparator.comparing(AIMessage::getMessageOrder))
+                .skip(Math.max(0, legacyList.size() - 5))
+                .collect(Collectors.toList());
+    }
+}
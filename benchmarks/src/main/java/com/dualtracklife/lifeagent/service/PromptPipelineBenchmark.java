@@ -0,0 +1,60 @@
+package com.dualtracklife.lifeagent.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.ai.chat.client.ChatClient;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SpringAIService请求链路开销基准
+ * 模型为零延迟的进程内实现，测得的时间和分配全部来自提示词构建、ChatClient/Advisor链路和流式分片处理
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PromptPipelineBenchmark {
+
+    private static final List<String> CHUNKS = List.of(
+            "##分析", "-第一点", "1.先完成", "普通的一段文字，没有需要修正的格式", "**粗体**内容");
+
+    private SpringAIService springAIService;
+
+    @Setup
+    public void setUp() {
+        springAIService = new SpringAIService(ChatClient.builder(new ZeroLatencyChatModel()));
+    }
+
+    @Benchmark
+    public String buildEventAnalysisPrompt() {
+        return springAIService.buildEventAnalysisPrompt("拿到新工作offer", "经过三轮面试，终于拿到了心仪公司的offer", "career", "这个选择对我意味着什么？");
+    }
+
+    @Benchmark
+    public String buildRoleSystemPrompt() {
+        return springAIService.buildRoleSystemPrompt("life_mentor");
+    }
+
+    @Benchmark
+    public void optimizeStreamChunk(Blackhole blackhole) {
+        for (String chunk : CHUNKS) {
+            blackhole.consume(springAIService.optimizeStreamChunk(chunk));
+        }
+    }
+
+    @Benchmark
+    public String eventAnalysisChat() {
+        return springAIService.eventAnalysisChat("拿到新工作offer", "经过三轮面试，终于拿到了心仪公司的offer", "career", "这个选择对我意味着什么？");
+    }
+
+    @Benchmark
+    public List<String> eventAnalysisStreamChat() {
+        return springAIService.eventAnalysisStreamChat("拿到新工作offer", "经过三轮面试，终于拿到了心仪公司的offer", "career", "这个选择对我意味着什么？")
+                .collectList()
+                .block();
+    }
+}
@@ -0,0 +1,64 @@
+package com.dualtracklife.lifeagent.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SSE事件序列化开销基准
+ * 按Spring MVC写出SseEmitter事件的方式：字符串片段原样写出，对象数据经Jackson序列化为JSON
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SseSerializationBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+
+    private Map<String, Object> panel;
+
+    @Setup
+    public void setUp() {
+        panel = new HashMap<>();
+        panel.put("type", "event_analysis");
+        panel.put("eventId", 42L);
+        panel.put("title", "拿到新工作offer");
+        panel.put("importance", 9);
+        panel.put("timestamp", System.currentTimeMillis());
+    }
+
+    @Benchmark
+    public int chunkEvent() throws IOException {
+        return write(SseEmitter.event().name("message").data("这是一个**很有意义**的事件"));
+    }
+
+    @Benchmark
+    public int panelEvent() throws IOException {
+        return write(SseEmitter.event().name("panel").data(panel, MediaType.APPLICATION_JSON));
+    }
+
+    private int write(SseEmitter.SseEventBuilder builder) throws IOException {
+        out.reset();
+        for (var item : builder.build()) {
+            Object data = item.getData();
+            if (data instanceof String text) {
+                out.write(text.getBytes(StandardCharsets.UTF_8));
+            } else {
+                objectMapper.writeValue(out, data);
+            }
+        }
+        return out.size();
+    }
+}
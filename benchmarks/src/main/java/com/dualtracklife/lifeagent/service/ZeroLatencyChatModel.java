@@ -0,0 +1,55 @@
+package com.dualtracklife.lifeagent.service;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 零延迟的进程内ChatModel
+ * 立即返回固定的Markdown回复，流式调用按固定分片输出，使基准测试只测量我们自己代码的开销
+ */
+public class ZeroLatencyChatModel implements ChatModel {
+
+    static final String REPLY = """
+            ## 分析
+
+            这是一个**很有意义**的事件，说明你在持续成长。
+
+            - 第一点：保持节奏
+            - 第二点：记录感受
+            1.先完成最重要的事
+            2.再安排休息
+
+            > 每一步都算数。
+            """;
+
+    private final List<ChatResponse> chunks = new ArrayList<>();
+    private final ChatResponse full = response(REPLY);
+
+    public ZeroLatencyChatModel() {
+        // 按约8个字符切分，接近真实流式输出的分片粒度
+        for (int i = 0; i < REPLY.length(); i += 8) {
+            chunks.add(response(REPLY.substring(i, Math.min(REPLY.length(), i + 8))));
+        }
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        return full;
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return Flux.fromIterable(chunks);
+    }
+
+    private static ChatResponse response(String text) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+    }
+}
@@ -47,15 +47,22 @@ INSERT INTO ai_roles (role_id, role_name, description, expertise, personality, s
  '深邃、理性、善于思辨，能够引发深层思考',
  '你是一位富有智慧的哲学家，善于引导他人进行深度思考。请以启发性的方式帮助用户探索人生的意义。');
 
--- 2. AI对话记录表
+-- 2. AI对话记录表（列与AIConversation实体及ConversationWriteBehind的写入语句一致）
 CREATE TABLE IF NOT EXISTS ai_conversations (
-    id BIGINT PRIMARY KEY AUTO_INCREMENT,
+    id BIGINT PRIMARY KEY COMMENT '会话ID，由应用分配',
     user_id BIGINT NOT NULL COMMENT '用户ID',
-    role_id VARCHAR(50) COMMENT 'AI角色ID',
-    conversation_type VARCHAR(50) DEFAULT 'general' COMMENT '对话类型: general, event_analysis, trajectory, advice, support',
-    title VARCHAR(200) COMMENT '对话标题',
-    context_data JSON COMMENT '对话上下文数据',
-    status VARCHAR(20) DEFAULT 'active' COMMENT '对话状态: active, archived, deleted',
+    role_id VARCHAR(50) NOT NULL COMMENT 'AI角色ID',
+    session_title VARCHAR(200) NOT NULL COMMENT '会话标题，超长时由应用截断',
+    conversation_type VARCHAR(50) NOT NULL DEFAULT 'general' COMMENT '会话类型: general, event_analysis, goal_planning, emotional_support, decision_making',
+    related_event_id BIGINT COMMENT '关联的人生事件ID',
+    related_goal_id BIGINT COMMENT '关联的目标ID',
+    status VARCHAR(20) NOT NULL DEFAULT 'active' COMMENT '会话状态: active, paused, completed, archived, deleted',
+    summary VARCHAR(1000) COMMENT '会话摘要',
+    key_insights VARCHAR(2000) COMMENT '关键洞察和建议',
+    satisfaction_rating FLOAT COMMENT '用户满意度评分(1-5)',
+    started_at TIMESTAMP NOT NULL COMMENT '会话开始时间',
+    last_active_at TIMESTAMP NULL COMMENT '最后活跃时间',
+    ended_at TIMESTAMP NULL COMMENT '会话结束时间',
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
     INDEX idx_user_id (user_id),
@@ -66,23 +73,28 @@ CREATE TABLE IF NOT EXISTS ai_conversations (
     FOREIGN KEY (role_id) REFERENCES ai_roles(role_id) ON UPDATE CASCADE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='AI对话记录表';
 
--- 3. AI消息表
+-- 3. AI消息表（列与AIMessage实体及ConversationWriteBehind的写入语句一致）
 CREATE TABLE IF NOT EXISTS ai_messages (
-    id BIGINT PRIMARY KEY AUTO_INCREMENT,
+    id BIGINT PRIMARY KEY COMMENT '消息ID，由应用分配',
     conversation_id BIGINT NOT NULL COMMENT '对话ID',
     user_id BIGINT NOT NULL COMMENT '用户ID',
-    role_id VARCHAR(50) COMMENT 'AI角色ID',
-    message_type ENUM('user', 'ai') NOT NULL COMMENT '消息类型',
+    role_id VARCHAR(50) NOT NULL COMMENT 'AI角色ID',
+    message_type VARCHAR(20) NOT NULL COMMENT '消息类型: user, ai, system',
     content TEXT NOT NULL COMMENT '消息内容',
-    metadata JSON COMMENT '消息元数据(如token数量、响应时间等)',
+    context_info TEXT COMMENT '消息上下文信息(JSON)',
+    confidence FLOAT COMMENT 'AI响应的置信度(0-1)',
+    emotional_analysis VARCHAR(255) COMMENT '消息情感分析结果',
+    user_feedback VARCHAR(20) COMMENT '用户反馈: helpful, not_helpful, neutral',
     message_order INT NOT NULL COMMENT '消息顺序',
-    timestamp TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    is_key_message BOOLEAN NOT NULL DEFAULT FALSE COMMENT '是否为关键消息',
+    tags VARCHAR(255) COMMENT '消息标签',
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
     INDEX idx_conversation_id (conversation_id),
     INDEX idx_user_id (user_id),
     INDEX idx_role_id (role_id),
     INDEX idx_message_type (message_type),
-    INDEX idx_timestamp (timestamp),
-    INDEX idx_message_order (message_order),
+    INDEX idx_created_at (created_at),
     FOREIGN KEY (conversation_id) REFERENCES ai_conversations(id) ON DELETE CASCADE,
     FOREIGN KEY (role_id) REFERENCES ai_roles(role_id) ON UPDATE CASCADE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='AI消息表';
@@ -91,7 +103,9 @@ CREATE TABLE IF NOT EXISTS ai_messages (
 CREATE TABLE IF NOT EXISTS ai_analysis_records (
     id BIGINT PRIMARY KEY AUTO_INCREMENT,
     user_id BIGINT NOT NULL COMMENT '用户ID',
+    event_id BIGINT COMMENT '关联的事件ID（仅事件分析）',
     analysis_type VARCHAR(50) NOT NULL COMMENT '分析类型: event, trajectory, personalized_advice, emotional_support, decision_support',
+    content_hash VARCHAR(64) COMMENT '输入内容哈希（事件内容 + 用户问题 + 提示词版本）',
     input_data JSON NOT NULL COMMENT '输入数据',
     analysis_result JSON NOT NULL COMMENT '分析结果',
     ai_model VARCHAR(50) COMMENT '使用的AI模型',
@@ -99,7 +113,8 @@ CREATE TABLE IF NOT EXISTS ai_analysis_records (
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     INDEX idx_user_id (user_id),
     INDEX idx_analysis_type (analysis_type),
-    INDEX idx_created_at (created_at)
+    INDEX idx_created_at (created_at),
+    INDEX idx_event_content (event_id, content_hash)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='AI分析记录表';
 
 -- 5. 用户AI关系表
@@ -187,7 +202,7 @@ SELECT
     COUNT(DISTINCT c.id) as total_conversations,
     COUNT(m.id) as total_messages,
     COUNT(DISTINCT m.role_id) as unique_roles_used,
-    MAX(m.timestamp) as last_interaction,
+    MAX(m.created_at) as last_interaction,
     SUM(CASE WHEN m.message_type = 'user' THEN 1 ELSE 0 END) as user_messages,
     SUM(CASE WHEN m.message_type = 'ai' THEN 1 ELSE 0 END) as ai_responses
 FROM users u
@@ -204,7 +219,7 @@ SELECT
     COUNT(c.id) as total_conversations,
     COUNT(m.id) as total_messages,
     AVG(CASE WHEN m.message_type = 'ai' THEN 1 ELSE 0 END) as avg_ai_responses,
-    MAX(m.timestamp) as last_used
+    MAX(m.created_at) as last_used
 FROM ai_roles r
 LEFT JOIN ai_conversations c ON r.role_id = c.role_id
 LEFT JOIN ai_messages m ON c.id = m.conversation_id
@@ -217,6 +232,7 @@ GROUP BY r.role_id, r.role_name;
 -- 为高频查询创建复合索引
 CREATE INDEX idx_messages_conversation_order ON ai_messages(conversation_id, message_order);
 CREATE INDEX idx_conversations_user_updated ON ai_conversations(user_id, updated_at DESC);
+CREATE INDEX idx_conversations_user_active ON ai_conversations(user_id, last_active_at DESC);
 CREATE INDEX idx_analysis_user_type_created ON ai_analysis_records(user_id, analysis_type, created_at DESC);
 
 -- =============================================